@@ -58,6 +58,18 @@ public class HL7StoreAdminServiceClient {
         }
     }
 
+    /**
+     * @param lastId id of the last message of the previous page, or null for the first page
+     */
+    public TransferableHL7Message[] getMessagesAfter(String storeName, String lastId) throws Exception {
+        try {
+            return stub.getMessagesAfter(storeName, lastId);
+        } catch (RemoteException e) {
+            handleException("Could not retrieve messages from HL7 Store.");
+            return null;
+        }
+    }
+
     public TransferableHL7Message getMessage(String storeName, String messageId) throws Exception {
         try {
             return stub.getMessage(storeName, messageId);
@@ -94,6 +106,18 @@ public class HL7StoreAdminServiceClient {
         }
     }
 
+    /**
+     * @param lastId id of the last message of the previous page, or null for the first page
+     */
+    public TransferableHL7Message[] searchAfter(String storeName, String query, String lastId) throws Exception {
+        try {
+            return stub.searchAfter(storeName, query, lastId);
+        } catch (RemoteException e) {
+            handleException("Could not search for messages.");
+            return null;
+        }
+    }
+
     public boolean purgeMessages(String storeName) throws Exception {
         try {
             return stub.flushMessages(storeName);
@@ -42,7 +42,11 @@
     String errorMsg = "";
 
     String name = request.getParameter("store").trim();
-    String pageNumber = request.getParameter("page").trim();
+    // id of the last message of the previous page, empty for the first page
+    String after = request.getParameter("after");
+    if (after != null && after.trim().isEmpty()) {
+        after = null;
+    }
 
     HL7StoreAdminServiceClient client = new HL7StoreAdminServiceClient(cookie, url, configContext);
 
@@ -52,13 +56,18 @@
 
     try {
         size = client.getSize(name);
-        TransferableHL7Message[] messages = client.getMessages(name, Integer.parseInt(pageNumber));
+        TransferableHL7Message[] messages = client.getMessagesAfter(name, after);
 
         JsonArray array = new JsonArray();
 
         String actions;
         JsonObject object = new JsonObject();
 
+        if (messages == null) {
+            // an empty page comes back as no array at all
+            messages = new TransferableHL7Message[0];
+        }
+
         for(TransferableHL7Message message: messages) {
             object = new JsonObject();
 
@@ -24,9 +24,19 @@ jqNew(function() {
         }).show();
     }
 
+    // pages are read after the last message of the page before them, so pageCursors[n - 1] holds the id of the
+    // message page n starts after, and the first page starts after none
+    var pageCursors = [null];
+    var searchQuery = null;
+
     function getStoreData(storeName, pageNumber) {
         $("#txtFilter").val("");
-        var queryParam = {"store": storeName, "page": pageNumber};
+        if(pageNumber === 1 || searchQuery !== null) {
+            pageCursors = [null];
+            pageNumber = 1;
+        }
+        searchQuery = null;
+        var queryParam = {"store": storeName, "after": pageCursors[pageNumber - 1]};
         jqNew.ajax({
             type: "GET",
             url: "getMessages-ajaxprocessor.jsp",
@@ -34,8 +44,7 @@ jqNew(function() {
             success: function(data) {
                 var json = jqNew.parseJSON(data);
                 if(json.success === true) {
-                    populateTable(json);
-                    jqNew("#currentPage").text(pageNumber);
+                    populateTable(json, pageNumber);
                 } else {
                     if(json.resultsSize === 0) {
                         CARBON.showInfoDialog(jsi18n["store.empty"]);
@@ -50,9 +59,14 @@ jqNew(function() {
         });
     }
 
-    function searchStore(storeName, query) {
+    function searchStore(storeName, query, pageNumber) {
         $("#txtFilter").val("");
-        var queryParam = {"store": storeName, "query": query};
+        if(pageNumber === 1 || searchQuery !== query) {
+            pageCursors = [null];
+            pageNumber = 1;
+        }
+        searchQuery = query;
+        var queryParam = {"store": storeName, "query": query, "after": pageCursors[pageNumber - 1]};
         jqNew.ajax({
             type: "POST",
             url: "search-ajaxprocessor.jsp",
@@ -60,7 +74,7 @@ jqNew(function() {
             success: function(data) {
                 var json = jqNew.parseJSON(data);
                 if(json.success  === true) {
-                    populateTable(json);
+                    populateTable(json, pageNumber);
                 } else {
                     CARBON.showErrorDialog(jsi18n["could.not.find.any.matching.messages"]);
                 }
@@ -71,6 +85,14 @@ jqNew(function() {
         });
     }
 
+    function loadPage(storeName, pageNumber) {
+        if(searchQuery === null) {
+            getStoreData(storeName, pageNumber);
+        } else {
+            searchStore(storeName, searchQuery, pageNumber);
+        }
+    }
+
     function purgeStore(storeName) {
         var queryParam = {"store": storeName};
         jqNew.ajax({
@@ -91,7 +113,7 @@ jqNew(function() {
         });
     }
 
-    function populateTable(json) {
+    function populateTable(json, pageNumber) {
         var htmlStr = "";
         jqNew.each(json.resultsArray, function() {
             htmlStr = htmlStr + "<tr class=\"storeRow\"><td class=\"filterDate\">" + this.date + "</td><td class=\"filterMessageId\">" + this.messageId + "</td>" +
@@ -100,6 +122,10 @@ jqNew(function() {
 
         jqNew("#storeTableBody").html(htmlStr);
         jqNew("#totalPages").text(json.totalPages);
+        jqNew("#currentPage").text(pageNumber);
+        if(json.resultsArray.length > 0) {
+            pageCursors[pageNumber] = json.resultsArray[json.resultsArray.length - 1].id;
+        }
     }
 
     function nextPage(storeName) {
@@ -107,7 +133,14 @@ jqNew(function() {
         if(next >= parseInt(jqNew("#totalPages").text())) {
             next = parseInt(jqNew("#totalPages").text());
         }
-        getStoreData(storeName, next);
+        if(next > pageCursors.length) {
+            // the page before it was not read, such as when the current page came back empty
+            next = pageCursors.length;
+        }
+        if(next <= 0) {
+            next = 1;
+        }
+        loadPage(storeName, next);
     }
 
     function previousPage(storeName) {
@@ -115,7 +148,7 @@ jqNew(function() {
         if(prev <= 0) {
             prev = 1;
         }
-        getStoreData(storeName, prev);
+        loadPage(storeName, prev);
     }
 
     function init() {
@@ -141,7 +174,7 @@ jqNew(function() {
 
         jqNew("#txtSearch").keyup(function(event) {
            if(event.keyCode === 13) {
-               searchStore(jqNew("#store").val(), jqNew(this).val());
+               searchStore(jqNew("#store").val(), jqNew(this).val(), 1);
            } else {
                if(jqNew(this).val() === '') {
                    getStoreData(jqNew("#store").val(), 1);
@@ -150,7 +183,7 @@ jqNew(function() {
         });
 
         jqNew("#btnSearch").click(function() {
-            searchStore(jqNew("#store").val(), jqNew("#txtSearch").val());
+            searchStore(jqNew("#store").val(), jqNew("#txtSearch").val(), 1);
         });
 
         jqNew("#nextPage").click(function() {
@@ -46,6 +46,11 @@
 
     String storeName = request.getParameter("store").trim();
     String query = request.getParameter("query").trim();
+    // id of the last message of the previous page, empty for the first page
+    String after = request.getParameter("after");
+    if (after != null && after.trim().isEmpty()) {
+        after = null;
+    }
 
     int size;
 
@@ -53,11 +58,18 @@
         HL7StoreAdminServiceClient client = new HL7StoreAdminServiceClient(cookie, url, configContext);
         size = client.getSearchSize(storeName, query);
 
-        TransferableHL7Message[] messages = client.search(storeName, query);
+        TransferableHL7Message[] messages = client.searchAfter(storeName, query, after);
         JsonObject object = new JsonObject();
         JsonArray array = new JsonArray();
 
+        if (messages == null) {
+            // an empty page comes back as no array at all
+            messages = new TransferableHL7Message[0];
+        }
+
         for(TransferableHL7Message message: messages) {
+            object = new JsonObject();
+
             actions = "<a class=\"editLink\" href=\"edit.jsp?store=" + message.getStoreName() + "&uuid=" + message.getMessageId() + "\">Resend</a>";
 
             object.addProperty("id", StringEscapeUtils.escapeXml(message.getId()));
@@ -141,11 +141,25 @@ public class HL7StoreAdminService extends AbstractServiceBusAdmin {
         log.error(msg);
     }
 
+    /**
+     * Search the messages by control id or message id.
+     *
+     * @return first page of the matching messages, newest first
+     */
     public List<TransferableHL7Message> search(String storeName, String query) throws AxisFault {
+        return searchAfter(storeName, query, null);
+    }
+
+    /**
+     * Get the page of messages matching the search following the given message, newest first.
+     *
+     * @param lastId id of the last message of the previous page, or null for the first page
+     */
+    public List<TransferableHL7Message> searchAfter(String storeName, String query, String lastId) throws AxisFault {
         JPAStore store = (JPAStore) getMessageStoreImpl(storeName);
 
         if(store != null) {
-            return getTransferableMessages(store, store.search(query));
+            return getTransferableMessages(store, store.searchAfter(query, lastId, MSGS_PER_PAGE));
         } else {
             handleException(log, "Message Store " + storeName + " does not exist !!!", null);
         }
@@ -157,8 +171,7 @@ public class HL7StoreAdminService extends AbstractServiceBusAdmin {
         JPAStore store = (JPAStore) getMessageStoreImpl(storeName);
 
         if(store != null) {
-            List<PersistentHL7Message> results = store.search(query);
-            return getTransferableMessages(store, results).size();
+            return store.searchSize(query);
         } else {
             handleException(log, "Message Store " + storeName + " does not exist !!!", null);
         }
@@ -348,6 +361,23 @@ public class HL7StoreAdminService extends AbstractServiceBusAdmin {
 
     }
 
+    /**
+     * Get the page of messages following the given message, newest first.
+     *
+     * @param lastId id of the last message of the previous page, or null for the first page
+     */
+    public List<TransferableHL7Message> getMessagesAfter(String storeName, String lastId) throws AxisFault {
+        JPAStore store = (JPAStore) getMessageStoreImpl(storeName);
+
+        if(store != null) {
+            return getTransferableMessages(store, store.getMessagesAfter(lastId, MSGS_PER_PAGE));
+        } else {
+            handleException(log, "Message Store " + storeName + " does not exist", null);
+        }
+
+        return null;
+    }
+
     public TransferableHL7Message getMessage(String storeName, String messageId) throws HL7Exception, IOException, ClassNotFoundException {
         JPAStore store = (JPAStore) getMessageStoreImpl(storeName);
 
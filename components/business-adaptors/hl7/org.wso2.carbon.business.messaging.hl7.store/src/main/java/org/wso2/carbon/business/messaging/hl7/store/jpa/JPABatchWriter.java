@@ -0,0 +1,141 @@
+package org.wso2.carbon.business.messaging.hl7.store.jpa;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.business.messaging.hl7.store.entity.PersistentHL7Message;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the messages of a store with group commit. A producer which finds no write in progress persists every
+ * message waiting at that time, up to the batch size, in one transaction, which the JPA provider sends as JDBC
+ * batches. Producers arriving meanwhile wait, and the messages they brought go in the next transaction. An idle
+ * store commits each message right away, while a busy one commits many messages per transaction.
+ */
+public class JPABatchWriter {
+
+    private static final Log logger = LogFactory.getLog(JPABatchWriter.class.getName());
+
+    private final JPAStore store;
+    private final int batchSize;
+
+    private final Object lock = new Object();
+    private final List<PendingMessage> pendingMessages = new ArrayList<PendingMessage>();
+    private boolean writing = false;
+
+    public JPABatchWriter(JPAStore store, int batchSize) {
+        this.store = store;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Store a message, waiting until the transaction holding it is over.
+     *
+     * @return whether the message was committed
+     */
+    public boolean write(PersistentHL7Message message) {
+        PendingMessage pendingMessage = new PendingMessage(message);
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                pendingMessages.add(pendingMessage);
+            }
+            while (true) {
+                List<PendingMessage> batch;
+                synchronized (lock) {
+                    while (writing && !pendingMessage.done) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            // the message may already be in a transaction, so wait for its outcome anyway
+                            interrupted = true;
+                        }
+                    }
+                    if (pendingMessage.done) {
+                        return pendingMessage.stored;
+                    }
+                    writing = true;
+                    int count = Math.min(batchSize, pendingMessages.size());
+                    List<PendingMessage> head = pendingMessages.subList(0, count);
+                    batch = new ArrayList<PendingMessage>(head);
+                    head.clear();
+                }
+                try {
+                    commit(batch);
+                } finally {
+                    synchronized (lock) {
+                        writing = false;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void commit(List<PendingMessage> batch) {
+        EntityManager manager = store.getEntityManager();
+        try {
+            if (persist(manager, batch)) {
+                return;
+            }
+            if (batch.size() > 1) {
+                // one message should not fail the others written with it
+                logger.warn("Could not store a batch of " + batch.size() + " HL7 messages in store "
+                        + store.getName() + ". Storing them one by one.");
+                for (PendingMessage pendingMessage : batch) {
+                    List<PendingMessage> single = new ArrayList<PendingMessage>(1);
+                    single.add(pendingMessage);
+                    persist(manager, single);
+                }
+            }
+        } finally {
+            for (PendingMessage pendingMessage : batch) {
+                pendingMessage.done = true;
+            }
+        }
+    }
+
+    private boolean persist(EntityManager manager, List<PendingMessage> batch) {
+        EntityTransaction transaction = manager.getTransaction();
+        try {
+            transaction.begin();
+            for (PendingMessage pendingMessage : batch) {
+                manager.persist(pendingMessage.message);
+            }
+            transaction.commit();
+            for (PendingMessage pendingMessage : batch) {
+                pendingMessage.stored = true;
+            }
+            return true;
+        } catch (Exception e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            if (batch.size() == 1) {
+                logger.error("Could not store HL7 message. " + e.getMessage());
+            }
+            return false;
+        } finally {
+            // the written messages are not read back through this manager
+            manager.clear();
+        }
+    }
+
+    private static class PendingMessage {
+
+        private final PersistentHL7Message message;
+        private boolean done = false;
+        private boolean stored = false;
+
+        private PendingMessage(PersistentHL7Message message) {
+            this.message = message;
+        }
+    }
+}
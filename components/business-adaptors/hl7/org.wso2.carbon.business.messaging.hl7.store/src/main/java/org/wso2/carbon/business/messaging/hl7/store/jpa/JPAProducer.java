@@ -12,8 +12,6 @@ import org.wso2.carbon.business.messaging.hl7.store.util.SerializableMessageCont
 import org.wso2.carbon.business.messaging.hl7.store.util.SerializerUtils;
 import org.wso2.carbon.business.messaging.hl7.transport.HL7TransportOutInfo;
 
-import javax.persistence.EntityManager;
-
 public class JPAProducer implements MessageProducer {
     private static final Log logger = LogFactory.getLog(JPAProducer.class.getName());
 
@@ -43,18 +41,12 @@ public class JPAProducer implements MessageProducer {
             controlId = outInfo.getMessageControllerID();
         }
 
-        EntityManager manager = store.getEntityManager();
-
-        try {
-            PersistentHL7Message persistentHL7Message = new PersistentHL7Message(store.getName(), messageContext.getMessageID(), controlId, SerializerUtils.serialize(serializableMessageContext));
-            manager.getTransaction().begin();
-            manager.persist(persistentHL7Message);
-            manager.getTransaction().commit();
-            return true;
-        } catch (Exception e) {
-            logger.error("Could not store HL7 message. " + e.getMessage());
+        byte[] message = SerializerUtils.serialize(serializableMessageContext);
+        if (message == null) {
             return false;
         }
+        PersistentHL7Message persistentHL7Message = new PersistentHL7Message(store.getName(), messageContext.getMessageID(), controlId, message);
+        return store.getBatchWriter().write(persistentHL7Message);
     }
 
     @Override
@@ -2,6 +2,12 @@ package org.wso2.carbon.business.messaging.hl7.store.jpa;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+import org.apache.openjpa.jdbc.schema.Index;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
@@ -28,6 +34,14 @@ public class JPAStore implements MessageStore {
 
     private static final Log logger = LogFactory.getLog(JPAStore.class.getName());
 
+    /** Number of messages written in one transaction at most */
+    public static final String BATCH_SIZE = "store.batch.size";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Index the pages of a store are read through, newest first */
+    private static final String STORE_DATE_INDEX = "I_HL7STORE_NAME_DATE";
+
     /**
      * synapse environment reference
      */
@@ -52,6 +66,8 @@ public class JPAStore implements MessageStore {
 
     private Properties jpaProperties = new Properties();
 
+    private JPABatchWriter batchWriter;
+
     private void parseParameters() {
 
         for(String key : parameters.keySet()) {
@@ -83,7 +99,22 @@ public class JPAStore implements MessageStore {
         if(!this.jpaProperties.contains("openjpa.Log")) {
             this.jpaProperties.put("openjpa.Log", "none");
         }
+        if(!this.jpaProperties.containsKey("openjpa.jdbc.DBDictionary")) {
+            // send the inserts of a transaction in JDBC batches, the dictionary itself is still detected
+            this.jpaProperties.put("openjpa.jdbc.DBDictionary", "batchLimit=" + DEFAULT_BATCH_SIZE);
+        }
 
+        int batchSize = DEFAULT_BATCH_SIZE;
+        Object batchSizeParameter = parameters.get(BATCH_SIZE);
+        if (batchSizeParameter != null) {
+            try {
+                batchSize = Integer.parseInt(batchSizeParameter.toString().trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid " + BATCH_SIZE + " " + batchSizeParameter + " for " + toString()
+                        + ". Using " + DEFAULT_BATCH_SIZE + ".");
+            }
+        }
+        this.batchWriter = new JPABatchWriter(this, Math.max(1, batchSize));
     }
 
     @Override
@@ -132,10 +163,42 @@ public class JPAStore implements MessageStore {
         entityManagerFactory = Persistence.createEntityManagerFactory("hl7store", this.jpaProperties);
 
         getEntityManager();
+        createStoreDateIndex();
 
         return true;
     }
 
+    /**
+     * Pages are read by store name and date, which the single column indexes of the entity cannot serve, so the
+     * composite index is created from the mapping of the entity once the schema is in place.
+     */
+    private void createStoreDateIndex() {
+        EntityManager manager = getEntityManager();
+        try {
+            JDBCConfiguration configuration = (JDBCConfiguration) ((OpenJPAEntityManagerFactorySPI)
+                    OpenJPAPersistence.cast(entityManagerFactory)).getConfiguration();
+            ClassMapping mapping = configuration.getMappingRepositoryInstance()
+                    .getMapping(PersistentHL7Message.class, null, true);
+            Index index = new Index(DBIdentifier.newIndex(STORE_DATE_INDEX), mapping.getTable());
+            index.addColumn(mapping.getFieldMapping("storeName").getColumns()[0]);
+            index.addColumn(mapping.getFieldMapping("date").getColumns()[0]);
+
+            manager.getTransaction().begin();
+            for (String sql : configuration.getDBDictionaryInstance().getCreateIndexSQL(index)) {
+                manager.createNativeQuery(sql).executeUpdate();
+            }
+            manager.getTransaction().commit();
+        } catch (RuntimeException e) {
+            // the store works without the index, only paging is slower
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Index " + STORE_DATE_INDEX + " was not created, it may already exist. " + e.getMessage());
+            }
+        }
+    }
+
     @Override
     public void destroy() {
         closeEntityManager();
@@ -166,6 +229,10 @@ public class JPAStore implements MessageStore {
     }
 
 
+    public JPABatchWriter getBatchWriter() {
+        return batchWriter;
+    }
+
     @Override
     public MessageProducer getProducer() {
         JPAProducer producer = new JPAProducer(this);
@@ -218,15 +285,17 @@ public class JPAStore implements MessageStore {
     public int size() {
         EntityManager manager = getEntityManager();
         Query q = manager.createQuery(
-                "SELECT x FROM " + getTableName() + " x WHERE x.storeName='" + getName() + "'");
-        int size = q.getResultList().size();
-        return size;
+                "SELECT COUNT(x) FROM " + getTableName() + " x WHERE x.storeName = :storeName");
+        q.setParameter("storeName", getName());
+        return ((Number) q.getSingleResult()).intValue();
     }
 
     public PersistentHL7Message getMessage(String messageId) {
         EntityManager manager = getEntityManager();
         Query q = manager.createQuery(
-                "SELECT x FROM " + getTableName() + " x WHERE x.messageId='" + messageId + "' AND x.storeName='" + getName() + "'");
+                "SELECT x FROM " + getTableName() + " x WHERE x.messageId = :messageId AND x.storeName = :storeName");
+        q.setParameter("messageId", messageId);
+        q.setParameter("storeName", getName());
 
         PersistentHL7Message result = (PersistentHL7Message) q.getSingleResult();
         return result;
@@ -235,21 +304,82 @@ public class JPAStore implements MessageStore {
     public List<PersistentHL7Message> getMessages() {
         EntityManager manager = getEntityManager();
         Query q = manager.createQuery(
-                "SELECT x FROM " + getTableName() + " x WHERE x.storeName='" + getName() + "' ORDER BY x.date DESC");
+                "SELECT x FROM " + getTableName() + " x WHERE x.storeName = :storeName ORDER BY x.date DESC, x.id DESC");
+        q.setParameter("storeName", getName());
 
         List<PersistentHL7Message> result = q.getResultList();
         return result;
     }
 
+    /**
+     * Next page of messages, newest first. The page starts right after the given message, found through the
+     * store name and date index, so reading a page costs the same however deep into the store it is.
+     *
+     * @param lastId id of the last message of the previous page, or null for the first page
+     */
+    public List<PersistentHL7Message> getMessagesAfter(String lastId, int rowsPerPage) {
+        return getPageAfter(null, lastId, rowsPerPage);
+    }
+
     public List<PersistentHL7Message> search(String query) {
         EntityManager manager = getEntityManager();
-        Query q = manager.createQuery("SELECT x FROM " + getTableName() + " x WHERE x.storeName='" + getName() + "' " +
-                "AND (x.controlId LIKE '" + query + "' OR x.messageId LIKE '" + query + "') ORDER BY x.date DESC");
+        Query q = manager.createQuery("SELECT x FROM " + getTableName() + " x WHERE x.storeName = :storeName " +
+                "AND (x.controlId LIKE :query OR x.messageId LIKE :query) ORDER BY x.date DESC, x.id DESC");
+        q.setParameter("storeName", getName());
+        q.setParameter("query", query);
+
+        List<PersistentHL7Message> result = q.getResultList();
+        return result;
+    }
+
+    /**
+     * Next page of the messages matching the query by control id or message id, newest first, read the same way
+     * as {@link #getMessagesAfter(String, int)}.
+     *
+     * @param lastId id of the last message of the previous page, or null for the first page
+     */
+    public List<PersistentHL7Message> searchAfter(String query, String lastId, int rowsPerPage) {
+        return getPageAfter(query, lastId, rowsPerPage);
+    }
+
+    private List<PersistentHL7Message> getPageAfter(String query, String lastId, int rowsPerPage) {
+        EntityManager manager = getEntityManager();
+        PersistentHL7Message last = lastId == null ? null : manager.find(PersistentHL7Message.class, lastId);
+
+        StringBuilder jpql = new StringBuilder("SELECT x FROM ").append(getTableName())
+                .append(" x WHERE x.storeName = :storeName");
+        if (query != null) {
+            jpql.append(" AND (x.controlId LIKE :query OR x.messageId LIKE :query)");
+        }
+        if (last != null) {
+            jpql.append(" AND (x.date < :date OR (x.date = :date AND x.id < :id))");
+        }
+        jpql.append(" ORDER BY x.date DESC, x.id DESC");
+
+        Query q = manager.createQuery(jpql.toString());
+        q.setParameter("storeName", getName());
+        if (query != null) {
+            q.setParameter("query", query);
+        }
+        if (last != null) {
+            q.setParameter("date", last.getDate());
+            q.setParameter("id", last.getId());
+        }
+        q.setMaxResults(rowsPerPage);
 
         List<PersistentHL7Message> result = q.getResultList();
         return result;
     }
 
+    public int searchSize(String query) {
+        EntityManager manager = getEntityManager();
+        Query q = manager.createQuery("SELECT COUNT(x) FROM " + getTableName() + " x WHERE x.storeName = :storeName " +
+                "AND (x.controlId LIKE :query OR x.messageId LIKE :query)");
+        q.setParameter("storeName", getName());
+        q.setParameter("query", query);
+        return ((Number) q.getSingleResult()).intValue();
+    }
+
     public SynapseEnvironment getSynapseEnvironment() {
         return synapseEnvironment;
     }
@@ -272,7 +402,8 @@ public class JPAStore implements MessageStore {
 
         EntityManager manager = getEntityManager();
         Query q = manager.createQuery(
-                "SELECT x FROM " + getTableName() + " x WHERE x.storeName='" + getName() + "' ORDER BY x.date DESC");
+                "SELECT x FROM " + getTableName() + " x WHERE x.storeName = :storeName ORDER BY x.date DESC, x.id DESC");
+        q.setParameter("storeName", getName());
 
         q.setFirstResult(startIndex);
         q.setMaxResults(itemsPerPageInt);
@@ -286,7 +417,8 @@ public class JPAStore implements MessageStore {
         manager.getTransaction().begin();
 
         Query q = manager.createQuery(
-                "DELETE FROM " + getTableName() + " x WHERE x.storeName='" + getName() +"'");
+                "DELETE FROM " + getTableName() + " x WHERE x.storeName = :storeName");
+        q.setParameter("storeName", getName());
 
         int deleted = q.executeUpdate();
         manager.getTransaction().commit();
@@ -313,10 +445,16 @@ public class JPAStore implements MessageStore {
         EntityManager manager = getEntityManager();
         try {
             Query q = manager.createQuery(
-                    "SELECT x FROM " + getTableName() + " x WHERE x.storeName='" + getName() + "'");
+                    "SELECT x FROM " + getTableName() + " x WHERE x.storeName = :storeName ORDER BY x.date, x.id");
+            q.setParameter("storeName", getName());
+            q.setFirstResult(i);
+            q.setMaxResults(1);
 
             List<PersistentHL7Message> messages = q.getResultList();
-            SerializableMessageContext serializableMessageContext = (SerializableMessageContext) SerializerUtils.deserialize(messages.get(i).getMessage());
+            if (messages.isEmpty()) {
+                return null;
+            }
+            SerializableMessageContext serializableMessageContext = (SerializableMessageContext) SerializerUtils.deserialize(messages.get(0).getMessage());
             return retrieveMessageContext(serializableMessageContext);
 
         } catch (IOException e) {
@@ -343,7 +481,8 @@ public class JPAStore implements MessageStore {
     public List<MessageContext> getAll() {
         EntityManager manager = getEntityManager();
         Query q = manager.createQuery(
-                "SELECT x FROM " + getTableName() + " x WHERE x.storeName='" + getName() + "'");
+                "SELECT x FROM " + getTableName() + " x WHERE x.storeName = :storeName");
+        q.setParameter("storeName", getName());
 
         List<PersistentHL7Message> messages = q.getResultList();
         return retrieveMessageContextList(messages);
@@ -378,7 +517,9 @@ public class JPAStore implements MessageStore {
         EntityManager manager = getEntityManager();
         try {
             Query q = manager.createQuery(
-                    "SELECT x FROM " + getTableName() + " x WHERE x.storeName='" + getName() + "' AND x.messageId='" + s +"'");
+                    "SELECT x FROM " + getTableName() + " x WHERE x.storeName = :storeName AND x.messageId = :messageId");
+            q.setParameter("storeName", getName());
+            q.setParameter("messageId", s);
 
             PersistentHL7Message message = (PersistentHL7Message) q.getSingleResult();
             SerializableMessageContext serializableMessageContext = (SerializableMessageContext) SerializerUtils.deserialize(message.getMessage());
@@ -0,0 +1,242 @@
+package org.wso2.carbon.business.messaging.hl7.store.util;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.validation.impl.NoValidation;
+import org.apache.synapse.message.store.impl.commons.Axis2Message;
+import org.apache.synapse.message.store.impl.commons.SynapseMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Binary encoding of a {@link SerializableMessageContext}. Fields are written one after the other behind a short
+ * header instead of going through object serialization, and the HL7 message object is written as its ER7 text
+ * instead of the serialized HAPI object graph, which is where most of the size of a stored message went.
+ */
+class CompactMessageCodec {
+
+    private static final byte[] HEADER = {'H', 'L', '7', 'C'};
+    private static final byte VERSION = 1;
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte HL7_MESSAGE_VALUE = 2;
+    private static final byte SERIALIZED_VALUE = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CompactMessageCodec() {
+    }
+
+    /**
+     * @return whether the bytes were written by this codec, rather than by object serialization
+     */
+    static boolean isEncoded(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER.length + 1) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (bytes[i] != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte[] encode(SerializableMessageContext message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(HEADER);
+        out.writeByte(VERSION);
+
+        Axis2Message axis2Message = message.getAxis2message();
+        out.writeBoolean(axis2Message != null);
+        if (axis2Message != null) {
+            writeString(out, axis2Message.getMessageID());
+            writeString(out, axis2Message.getOperationAction());
+            writeString(out, axis2Message.getOperationName());
+            writeString(out, axis2Message.getAction());
+            writeString(out, axis2Message.getService());
+            writeString(out, axis2Message.getRelatesToMessageId());
+            writeString(out, axis2Message.getReplyToAddress());
+            writeString(out, axis2Message.getFaultToAddress());
+            writeString(out, axis2Message.getFromAddress());
+            writeString(out, axis2Message.getToAddress());
+            out.writeBoolean(axis2Message.isDoingPOX());
+            out.writeBoolean(axis2Message.isDoingMTOM());
+            out.writeBoolean(axis2Message.isDoingSWA());
+            writeString(out, axis2Message.getSoapEnvelope());
+            out.writeInt(axis2Message.getFLOW());
+            writeString(out, axis2Message.getTransportInName());
+            writeString(out, axis2Message.getTransportOutName());
+
+            Map<String, Object> properties = axis2Message.getProperties();
+            out.writeInt(properties.size());
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                writeString(out, property.getKey());
+                writeValue(out, property.getValue());
+            }
+        }
+
+        SynapseMessage synapseMessage = message.getSynapseMessage();
+        out.writeBoolean(synapseMessage != null);
+        if (synapseMessage != null) {
+            out.writeBoolean(synapseMessage.isFaultResponse());
+            out.writeBoolean(synapseMessage.isResponse());
+            out.writeInt(synapseMessage.getTracingState());
+
+            Map<String, String> properties = synapseMessage.getProperties();
+            out.writeInt(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                writeString(out, property.getKey());
+                writeString(out, property.getValue());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static SerializableMessageContext decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(HEADER.length);
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported HL7 store message encoding version " + version);
+        }
+        SerializableMessageContext message = new SerializableMessageContext();
+
+        if (in.readBoolean()) {
+            Axis2Message axis2Message = new Axis2Message();
+            axis2Message.setMessageID(readString(in));
+            axis2Message.setOperationAction(readString(in));
+            axis2Message.setOperationName(readString(in));
+            axis2Message.setAction(readString(in));
+            axis2Message.setService(readString(in));
+            axis2Message.setRelatesToMessageId(readString(in));
+            axis2Message.setReplyToAddress(readString(in));
+            axis2Message.setFaultToAddress(readString(in));
+            axis2Message.setFromAddress(readString(in));
+            axis2Message.setToAddress(readString(in));
+            axis2Message.setDoingPOX(in.readBoolean());
+            axis2Message.setDoingMTOM(in.readBoolean());
+            axis2Message.setDoingSWA(in.readBoolean());
+            axis2Message.setSoapEnvelope(readString(in));
+            axis2Message.setFLOW(in.readInt());
+            axis2Message.setTransportInName(readString(in));
+            axis2Message.setTransportOutName(readString(in));
+
+            int propertyCount = in.readInt();
+            for (int i = 0; i < propertyCount; i++) {
+                String key = readString(in);
+                axis2Message.addProperty(key, readValue(in));
+            }
+            message.setAxis2message(axis2Message);
+        }
+
+        if (in.readBoolean()) {
+            SynapseMessage synapseMessage = new SynapseMessage();
+            synapseMessage.setFaultResponse(in.readBoolean());
+            synapseMessage.setResponse(in.readBoolean());
+            synapseMessage.setTracingState(in.readInt());
+
+            int propertyCount = in.readInt();
+            for (int i = 0; i < propertyCount; i++) {
+                String key = readString(in);
+                synapseMessage.addProperty(key, readString(in));
+            }
+            message.setSynapseMessage(synapseMessage);
+        }
+        return message;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        String er7 = value instanceof Message ? encodeER7((Message) value) : null;
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof String) {
+            out.writeByte(STRING_VALUE);
+            writeString(out, (String) value);
+        } else if (er7 != null) {
+            out.writeByte(HL7_MESSAGE_VALUE);
+            writeString(out, er7);
+        } else {
+            out.writeByte(SERIALIZED_VALUE);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(value);
+            objectOut.close();
+            writeBytes(out, bytes.toByteArray());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL_VALUE:
+                return null;
+            case STRING_VALUE:
+                return readString(in);
+            case HL7_MESSAGE_VALUE:
+                String er7 = readString(in);
+                try {
+                    // the message was accepted when it was stored, so it is not validated again
+                    PipeParser parser = new PipeParser();
+                    parser.setValidationContext(new NoValidation());
+                    return parser.parse(er7);
+                } catch (HL7Exception e) {
+                    throw new IOException("Could not parse stored HL7 message. " + e.getMessage());
+                }
+            case SERIALIZED_VALUE:
+                ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+                return objectIn.readObject();
+            default:
+                throw new IOException("Unknown property type " + type + " in stored HL7 message");
+        }
+    }
+
+    private static String encodeER7(Message message) {
+        try {
+            return new PipeParser().encode(message);
+        } catch (HL7Exception e) {
+            // such a message is kept as a serialized object
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
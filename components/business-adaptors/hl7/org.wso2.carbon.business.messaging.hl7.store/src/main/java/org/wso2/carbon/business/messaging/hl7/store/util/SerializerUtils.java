@@ -39,6 +39,9 @@ public class SerializerUtils {
 
     public static byte[] serialize(Object obj) {
         try {
+            if (obj instanceof SerializableMessageContext) {
+                return CompactMessageCodec.encode((SerializableMessageContext) obj);
+            }
             ByteArrayOutputStream b = new ByteArrayOutputStream();
             ObjectOutputStream o = new ObjectOutputStream(b);
             o.writeObject(obj);
@@ -49,7 +52,14 @@ public class SerializerUtils {
         }
     }
 
+    /**
+     * Reads a message context written by {@link #serialize(Object)}, or an object serialized before the compact
+     * encoding was introduced.
+     */
     public static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (CompactMessageCodec.isEncoded(bytes)) {
+            return CompactMessageCodec.decode(bytes);
+        }
         ByteArrayInputStream b = new ByteArrayInputStream(bytes);
         ObjectInputStream o = new ObjectInputStream(b);
         return o.readObject();
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.business.messaging.hl7.store.util;
+
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.validation.impl.NoValidation;
+import junit.framework.TestCase;
+import org.apache.synapse.message.store.impl.commons.Axis2Message;
+import org.apache.synapse.message.store.impl.commons.SynapseMessage;
+import org.wso2.carbon.business.messaging.hl7.common.HL7Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * Test the encoding of the message contexts written to the HL7 store by {@link CompactMessageCodec}
+ */
+public class CompactMessageCodecTest extends TestCase {
+
+    private static final String ER7_MESSAGE = "MSH|^~\\&|SENDER|SENDER_FACILITY|RECEIVER|RECEIVER_FACILITY|"
+            + "20170101120000||ADT^A01|MSG00001|P|2.5\r"
+            + "EVN|A01|20170101120000\r"
+            + "PID|1||12345^^^HOSPITAL||Doe^John||19700101|M\r";
+
+    /**
+     * Test case for a message context written and read back through the compact encoding.
+     */
+    public void testRoundTrip() throws Exception {
+        SerializableMessageContext message = createMessageContext(null);
+
+        byte[] bytes = SerializerUtils.serialize(message);
+        assertTrue("Message context is not written in the compact encoding.", CompactMessageCodec.isEncoded(bytes));
+        assertMessageContext(message, (SerializableMessageContext) SerializerUtils.deserialize(bytes));
+    }
+
+    /**
+     * Test case for a row written through object serialization, before the compact encoding was introduced.
+     */
+    public void testLegacySerializedMessage() throws Exception {
+        SerializableMessageContext message = createMessageContext(null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+
+        assertFalse("Serialized object is taken for the compact encoding.",
+                CompactMessageCodec.isEncoded(bytes.toByteArray()));
+        assertMessageContext(message, (SerializableMessageContext) SerializerUtils.deserialize(bytes.toByteArray()));
+    }
+
+    /**
+     * Test case for the HL7 message object, which is written as its ER7 text and parsed again when read.
+     */
+    public void testHL7MessageReparse() throws Exception {
+        PipeParser parser = new PipeParser();
+        parser.setValidationContext(new NoValidation());
+        Message hl7Message = parser.parse(ER7_MESSAGE);
+        SerializableMessageContext message = createMessageContext(hl7Message);
+
+        SerializableMessageContext read =
+                (SerializableMessageContext) SerializerUtils.deserialize(SerializerUtils.serialize(message));
+
+        Object readHL7Message = read.getAxis2message().getProperties().get(HL7Constants.HL7_MESSAGE_OBJECT);
+        assertTrue("HL7 message is not parsed again.", readHL7Message instanceof Message);
+        assertEquals(parser.encode(hl7Message), parser.encode((Message) readHL7Message));
+        assertEquals("ADT", ((Message) readHL7Message).getName().substring(0, 3));
+    }
+
+    /**
+     * Test case for bytes of an encoding version this codec does not know.
+     */
+    public void testUnknownVersion() throws Exception {
+        byte[] bytes = SerializerUtils.serialize(createMessageContext(null));
+        bytes[4] = 99;
+        try {
+            SerializerUtils.deserialize(bytes);
+            fail("Unknown encoding version is read.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private SerializableMessageContext createMessageContext(Message hl7Message) {
+        Axis2Message axis2Message = new Axis2Message();
+        axis2Message.setMessageID("urn:uuid:1234");
+        axis2Message.setAction("urn:mediate");
+        axis2Message.setService("HL7Proxy");
+        axis2Message.setToAddress("hl7://localhost:9988");
+        axis2Message.setDoingPOX(false);
+        axis2Message.setDoingMTOM(true);
+        axis2Message.setSoapEnvelope("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<soapenv:Body/></soapenv:Envelope>");
+        axis2Message.setFLOW(1);
+        axis2Message.setTransportInName("hl7");
+        axis2Message.addProperty("CONTENT_TYPE", "application/edi-hl7");
+        axis2Message.addProperty("RETRY_COUNT", 3);
+        axis2Message.addProperty(HL7Constants.HL7_MESSAGE_OBJECT, hl7Message);
+
+        SynapseMessage synapseMessage = new SynapseMessage();
+        synapseMessage.setResponse(false);
+        synapseMessage.setFaultResponse(true);
+        synapseMessage.setTracingState(2);
+        synapseMessage.addProperty("HL7_APPLICATION_ACK", "true");
+
+        SerializableMessageContext message = new SerializableMessageContext();
+        message.setAxis2message(axis2Message);
+        message.setSynapseMessage(synapseMessage);
+        return message;
+    }
+
+    private void assertMessageContext(SerializableMessageContext expected, SerializableMessageContext actual) {
+        Axis2Message expectedAxis2 = expected.getAxis2message();
+        Axis2Message actualAxis2 = actual.getAxis2message();
+        assertEquals(expectedAxis2.getMessageID(), actualAxis2.getMessageID());
+        assertEquals(expectedAxis2.getAction(), actualAxis2.getAction());
+        assertEquals(expectedAxis2.getService(), actualAxis2.getService());
+        assertNull(actualAxis2.getOperationName());
+        assertEquals(expectedAxis2.getToAddress(), actualAxis2.getToAddress());
+        assertEquals(expectedAxis2.isDoingPOX(), actualAxis2.isDoingPOX());
+        assertEquals(expectedAxis2.isDoingMTOM(), actualAxis2.isDoingMTOM());
+        assertEquals(expectedAxis2.getSoapEnvelope(), actualAxis2.getSoapEnvelope());
+        assertEquals(expectedAxis2.getFLOW(), actualAxis2.getFLOW());
+        assertEquals(expectedAxis2.getTransportInName(), actualAxis2.getTransportInName());
+        assertEquals(expectedAxis2.getProperties(), actualAxis2.getProperties());
+
+        SynapseMessage expectedSynapse = expected.getSynapseMessage();
+        SynapseMessage actualSynapse = actual.getSynapseMessage();
+        assertEquals(expectedSynapse.isResponse(), actualSynapse.isResponse());
+        assertEquals(expectedSynapse.isFaultResponse(), actualSynapse.isFaultResponse());
+        assertEquals(expectedSynapse.getTracingState(), actualSynapse.getTracingState());
+        assertEquals(expectedSynapse.getProperties(), actualSynapse.getProperties());
+    }
+}
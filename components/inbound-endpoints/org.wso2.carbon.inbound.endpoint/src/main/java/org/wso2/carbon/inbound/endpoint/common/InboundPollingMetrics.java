@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) 2005-2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.common;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
+
+public class InboundPollingMetrics implements InboundPollingMetricsMBean {
+
+    private static final String MBEAN_CATEGORY = "InboundPolling";
+
+    private final String name;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong emptyPolls = new AtomicLong();
+    private final AtomicLong reportedPolls = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong pollNanos = new AtomicLong();
+    private final AtomicLong maxPollNanos = new AtomicLong();
+    private volatile long pollDelay;
+
+    public InboundPollingMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param yield messages the cycle returned, or {@link InboundTask#UNKNOWN_POLL_YIELD}
+     */
+    public void pollCompleted(int yield, long nanos) {
+        polls.incrementAndGet();
+        pollNanos.addAndGet(nanos);
+        long max = maxPollNanos.get();
+        while (nanos > max && !maxPollNanos.compareAndSet(max, nanos)) {
+            max = maxPollNanos.get();
+        }
+        if (yield != InboundTask.UNKNOWN_POLL_YIELD) {
+            reportedPolls.incrementAndGet();
+            messages.addAndGet(yield);
+            if (yield == 0) {
+                emptyPolls.incrementAndGet();
+            }
+        }
+    }
+
+    public void setPollDelay(long pollDelay) {
+        this.pollDelay = pollDelay;
+    }
+
+    @Override
+    public long getPollCount() {
+        return polls.get();
+    }
+
+    @Override
+    public long getEmptyPollCount() {
+        return emptyPolls.get();
+    }
+
+    @Override
+    public long getMessageCount() {
+        return messages.get();
+    }
+
+    @Override
+    public double getAverageBatchYield() {
+        long count = reportedPolls.get();
+        return count == 0 ? 0 : (double) messages.get() / count;
+    }
+
+    @Override
+    public long getAveragePollLatency() {
+        long count = polls.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(pollNanos.get() / count);
+    }
+
+    @Override
+    public long getMaxPollLatency() {
+        return TimeUnit.NANOSECONDS.toMicros(maxPollNanos.get());
+    }
+
+    @Override
+    public long getCurrentPollDelay() {
+        return pollDelay;
+    }
+
+    @Override
+    public void reset() {
+        polls.set(0);
+        emptyPolls.set(0);
+        reportedPolls.set(0);
+        messages.set(0);
+        pollNanos.set(0);
+        maxPollNanos.set(0);
+    }
+
+    public void register() {
+        MBeanRegistrar.getInstance().registerMBean(this, MBEAN_CATEGORY, getMBeanId());
+    }
+
+    public void unregister() {
+        MBeanRegistrar.getInstance().unRegisterMBean(MBEAN_CATEGORY, getMBeanId());
+    }
+
+    private String getMBeanId() {
+        return ObjectName.quote(name);
+    }
+}
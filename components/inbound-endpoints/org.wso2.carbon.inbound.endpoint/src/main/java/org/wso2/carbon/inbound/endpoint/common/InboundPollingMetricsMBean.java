@@ -0,0 +1,65 @@
+/*
+ *  Copyright (c) 2005-2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.common;
+
+/**
+ * Poll cycle figures of a polling inbound endpoint, exposed through JMX.
+ */
+public interface InboundPollingMetricsMBean {
+
+    /**
+     * @return number of poll cycles run
+     */
+    long getPollCount();
+
+    /**
+     * @return number of poll cycles which returned no message
+     */
+    long getEmptyPollCount();
+
+    /**
+     * @return number of messages the poll cycles handed to mediation. Endpoints which do not report the
+     *         messages of a cycle are not counted
+     */
+    long getMessageCount();
+
+    /**
+     * @return average number of messages a poll cycle returned, over the cycles which reported it
+     */
+    double getAverageBatchYield();
+
+    /**
+     * @return average time in microseconds a poll cycle took
+     */
+    long getAveragePollLatency();
+
+    /**
+     * @return longest time in microseconds a poll cycle took
+     */
+    long getMaxPollLatency();
+
+    /**
+     * @return delay in milliseconds before the next poll cycle, as last decided by the scheduler
+     */
+    long getCurrentPollDelay();
+
+    /**
+     * Start counting from zero again
+     */
+    void reset();
+}
@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) 2005-2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler shared by the polling inbound endpoints which are not coordinated through the task manager. A single
+ * timer thread waits out the delays between the poll cycles, and the cycles themselves run on a cached pool, so an
+ * endpoint only holds a thread while it is polling.
+ */
+public class InboundPollingScheduler {
+
+    private static final InboundPollingScheduler instance = new InboundPollingScheduler();
+
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new PollingThreadFactory("inbound-polling-timer"));
+    private final ExecutorService workers =
+            Executors.newCachedThreadPool(new PollingThreadFactory("inbound-polling-worker"));
+
+    private InboundPollingScheduler() {
+    }
+
+    public static InboundPollingScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Run the cycle once the delay has passed, right away if the delay is not positive
+     */
+    public void schedule(final Runnable cycle, long delay) {
+        if (delay <= 0) {
+            workers.execute(cycle);
+            return;
+        }
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                workers.execute(cycle);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static class PollingThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        PollingThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -38,10 +38,7 @@ import org.wso2.carbon.mediation.ntask.NTaskTaskManager;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
 
@@ -58,7 +55,8 @@ public abstract class InboundRequestProcessorImpl implements InboundRequestProce
     protected boolean coordination;
 
     private List<StartUpController> startUpControllersList = new ArrayList<>();
-    private HashMap<Thread, InboundRunner> inboundRunnersThreadsMap = new HashMap<>();
+    private List<InboundRunner> inboundRunners = new ArrayList<>();
+    private InboundPollingMetrics pollingMetrics;
     private static final Log log = LogFactory.getLog(InboundRequestProcessorImpl.class);
     private InboundEndpointsDataStore dataStore;
     
@@ -137,9 +135,37 @@ public abstract class InboundRequestProcessorImpl implements InboundRequestProce
 
     private void startInboundRunnerThread(InboundTask task, String tenantDomain, boolean mgrOverride) {
         InboundRunner inboundRunner = new InboundRunner(task, interval, tenantDomain, mgrOverride);
-        Thread runningThread = new Thread(inboundRunner);
-        inboundRunnersThreadsMap.put(runningThread, inboundRunner);
-        runningThread.start();
+        Properties properties = task.getInboundProperties();
+        inboundRunner.setAdaptive(isAdaptivePollingEnabled(properties), getAdaptivePollingInitialBackoff(properties));
+        if (pollingMetrics == null) {
+            // the consumers of an endpoint share its metrics
+            pollingMetrics = new InboundPollingMetrics(name);
+            pollingMetrics.register();
+        }
+        inboundRunner.setMetrics(pollingMetrics);
+        inboundRunners.add(inboundRunner);
+        inboundRunner.start();
+    }
+
+    private boolean isAdaptivePollingEnabled(Properties inboundProperties) {
+        String adaptive = inboundProperties == null ? null
+                : inboundProperties.getProperty(PollingConstants.INBOUND_ADAPTIVE_POLLING);
+        return adaptive != null && Boolean.parseBoolean(adaptive.trim());
+    }
+
+    private long getAdaptivePollingInitialBackoff(Properties inboundProperties) {
+        String initialBackoff = inboundProperties == null ? null
+                : inboundProperties.getProperty(PollingConstants.INBOUND_ADAPTIVE_POLLING_INITIAL_BACKOFF);
+        if (initialBackoff != null) {
+            try {
+                return Long.parseLong(initialBackoff.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + PollingConstants.INBOUND_ADAPTIVE_POLLING_INITIAL_BACKOFF + " of inbound "
+                        + "endpoint " + name + " : " + initialBackoff + ". Using the default of "
+                        + PollingConstants.DEFAULT_ADAPTIVE_POLLING_INITIAL_BACKOFF + "ms.");
+            }
+        }
+        return PollingConstants.DEFAULT_ADAPTIVE_POLLING_INITIAL_BACKOFF;
     }
 
     /**
@@ -158,23 +184,15 @@ public abstract class InboundRequestProcessorImpl implements InboundRequestProce
                 sc.destroy();
             }
             startUpControllersList.clear();
-        } else if (!inboundRunnersThreadsMap.isEmpty()) {
-
-            Iterator itr = inboundRunnersThreadsMap.entrySet().iterator();
-            while (itr.hasNext()) {
-                Map.Entry entry = (Map.Entry)itr.next();
-                Thread thread = (Thread)entry.getKey();
-                InboundRunner inboundRunner = (InboundRunner)entry.getValue();
-
+        } else if (!inboundRunners.isEmpty()) {
+            for (InboundRunner inboundRunner : inboundRunners) {
                 inboundRunner.terminate();
-                thread.interrupt();
-                try {
-                    thread.join();
-                } catch (InterruptedException e) {
-                    log.error("Error while stopping the inbound thread.");
-                }
             }
-            inboundRunnersThreadsMap.clear();
+            inboundRunners.clear();
+        }
+        if (pollingMetrics != null) {
+            pollingMetrics.unregister();
+            pollingMetrics = null;
         }
     }
 
@@ -21,6 +21,7 @@ import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.description.Parameter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.core.multitenancy.utils.TenantAxisUtils;
 import org.wso2.carbon.inbound.endpoint.osgi.service.ServiceReferenceHolder;
 import org.wso2.carbon.inbound.endpoint.persistence.service.InboundEndpointPersistenceServiceDSComponent;
@@ -28,13 +29,12 @@ import org.wso2.carbon.mediation.clustering.ClusteringAgentUtil;
 import org.wso2.carbon.utils.CarbonUtils;
 import org.wso2.carbon.utils.ConfigurationContextService;
 
-import java.util.Date;
-
 /**
- * 
- * InboundRunner class is used to run the non coordinated processors in
- * background according to the scheduled interval
- * 
+ * Runs the poll cycles of a polling inbound endpoint on the shared {@link InboundPollingScheduler}. With adaptive
+ * polling the next cycle starts right away while cycles mediate messages successfully, and the delay doubles from
+ * the initial backoff up to the interval while they mediate none, including cycles whose messages all failed or
+ * were rolled back. Cycles of tasks which do not report their messages, and all cycles when adaptive polling is
+ * off, are run on the fixed interval.
  */
 public class InboundRunner implements Runnable {
 
@@ -43,12 +43,14 @@ public class InboundRunner implements Runnable {
 
     private volatile boolean execute = true;
     private volatile boolean init = false;
-    // Following will be used to calculate the sleeping interval
-    private long lastRuntime;
-    private long currentRuntime;
-    private long cycleInterval;
+    private volatile Thread runningThread;
+    private final Object cycleLock = new Object();
     private String tenantDomain;
     private boolean runOnManagerOverride = false;
+    private boolean adaptive = false;
+    private long initialBackoff;
+    private long backoff;
+    private InboundPollingMetrics metrics;
 
     private static final String CLUSTERING_PATTERN = "clusteringPattern";
     private static final String CLUSTERING_PATTERN_WORKER_MANAGER = "WorkerManager";
@@ -62,78 +64,134 @@ public class InboundRunner implements Runnable {
     }
 
     /**
-     * Exit the running while loop and terminate the thread
+     * Start the next cycle right away while cycles return messages, and back off from the given delay when idle
+     */
+    public void setAdaptive(boolean adaptive, long initialBackoff) {
+        this.adaptive = adaptive;
+        this.initialBackoff = Math.max(1, Math.min(initialBackoff, interval));
+    }
+
+    public void setMetrics(InboundPollingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Schedule the first cycle on the shared scheduler
+     */
+    protected void start() {
+        InboundPollingScheduler.getInstance().schedule(this, 0);
+    }
+
+    /**
+     * Stop scheduling cycles, interrupt the running cycle and wait for it to finish
      */
     protected void terminate() {
         execute = false;
+        Thread thread = runningThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        synchronized (cycleLock) {
+            log.debug("Exit the Inbound Endpoint polling cycles.");
+        }
     }
 
     @Override
     public void run() {
-        log.debug("Starting the Inbound Endpoint.");
-        // Wait for the clustering configuration to be loaded.
-        while (!init) {
-            log.debug("Waiting for the configuration context to be loaded to run Inbound Endpoint.");
-            Boolean isSingleNode = ClusteringAgentUtil.getClusteringAgent() == null ? true : false;
-            if (!isSingleNode) {
-                Parameter clusteringPattern = ServiceReferenceHolder.getInstance().getConfigurationContextService().
-                        getServerConfigContext().getAxisConfiguration().getClusteringAgent().
-                        getParameter(CLUSTERING_PATTERN);
-                Boolean isWorkerManager = clusteringPattern != null && clusteringPattern.getValue() != null
-                        && clusteringPattern.getValue().toString().equals(CLUSTERING_PATTERN_WORKER_MANAGER);
-                if (!isSingleNode && !CarbonUtils.isWorkerNode() && !runOnManagerOverride && isWorkerManager) {
-                    // Given node is the manager in the cluster, and not
-                    // required to run the service
-                    execute = false;
-                    log.info("Inbound EP will not run in manager node. Same will run on worker(s).");
-                }
+        synchronized (cycleLock) {
+            if (!execute) {
+                return;
             }
-            init = true;
-
+            runningThread = Thread.currentThread();
+            long delay;
             try {
-                Thread.sleep(interval);
-            } catch (InterruptedException e) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Unable to sleep the inbound thread for interval of : " + interval + "ms.");
+                if (!init) {
+                    initialize();
+                    delay = interval;
+                } else {
+                    delay = runCycle();
                 }
+            } finally {
+                runningThread = null;
+                // do not leave the interrupt of a terminated cycle to the next user of the thread
+                Thread.interrupted();
+            }
+            if (execute) {
+                if (metrics != null) {
+                    metrics.setPollDelay(delay);
+                }
+                InboundPollingScheduler.getInstance().schedule(this, delay);
             }
         }
+    }
 
+    private void initialize() {
+        log.debug("Starting the Inbound Endpoint.");
+        // Check whether the endpoint runs on this node of the cluster.
+        Boolean isSingleNode = ClusteringAgentUtil.getClusteringAgent() == null ? true : false;
+        if (!isSingleNode) {
+            Parameter clusteringPattern = ServiceReferenceHolder.getInstance().getConfigurationContextService().
+                    getServerConfigContext().getAxisConfiguration().getClusteringAgent().
+                    getParameter(CLUSTERING_PATTERN);
+            Boolean isWorkerManager = clusteringPattern != null && clusteringPattern.getValue() != null
+                    && clusteringPattern.getValue().toString().equals(CLUSTERING_PATTERN_WORKER_MANAGER);
+            if (!isSingleNode && !CarbonUtils.isWorkerNode() && !runOnManagerOverride && isWorkerManager) {
+                // Given node is the manager in the cluster, and not
+                // required to run the service
+                execute = false;
+                log.info("Inbound EP will not run in manager node. Same will run on worker(s).");
+            }
+        }
+        init = true;
         log.debug("Configuration context loaded. Running the Inbound Endpoint.");
-        // Run the poll cycles
-        while (execute) {
-            log.debug("Executing the Inbound Endpoint.");
-            lastRuntime = getTime();
-            try {
-                task.taskExecute();
-            } catch (Exception e) {
-                log.error("Error executing the inbound endpoint polling cycle.", e);
+    }
+
+    /**
+     * Run a poll cycle in a tenant flow of its own, since the threads of the scheduler are shared
+     *
+     * @return delay before the next cycle
+     */
+    private long runCycle() {
+        log.debug("Executing the Inbound Endpoint.");
+        long start = System.nanoTime();
+        int yield = InboundTask.UNKNOWN_POLL_YIELD;
+        PrivilegedCarbonContext.startTenantFlow();
+        try {
+            if (tenantDomain != null) {
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
             }
-            currentRuntime = getTime();
-            cycleInterval = interval - (currentRuntime - lastRuntime);
-            if (cycleInterval > 0) {
-                try {
-                    Thread.sleep(interval);
-                } catch (InterruptedException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Unable to sleep the inbound thread for interval of : " + interval + "ms.");
-                    }
-                }
+            yield = task.pollCycle();
+        } catch (Exception e) {
+            log.error("Error executing the inbound endpoint polling cycle.", e);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (metrics != null) {
+            metrics.pollCompleted(yield, elapsed);
+        }
+        //Keep the tenant loaded
+        if (tenantDomain != null) {
+            ConfigurationContextService configurationContext =
+                    InboundEndpointPersistenceServiceDSComponent.getConfigContextService();
+            if (configurationContext != null) {
+                ConfigurationContext mainConfigCtx = configurationContext.getServerConfigContext();
+                TenantAxisUtils.getTenantConfigurationContext(tenantDomain, mainConfigCtx);
             }
-            //Keep the tenant loaded
-    		   if (tenantDomain != null) {
-                ConfigurationContextService configurationContext =
-				                                           InboundEndpointPersistenceServiceDSComponent.getConfigContextService();
-                if(configurationContext != null){
-                    ConfigurationContext mainConfigCtx = configurationContext.getServerConfigContext();
-                    TenantAxisUtils.getTenantConfigurationContext(tenantDomain, mainConfigCtx);
-                }
-    		   }
         }
-        log.debug("Exit the Inbound Endpoint running loop.");
+        return nextDelay(yield, elapsed / 1000000);
     }
 
-    private Long getTime() {
-        return new Date().getTime();
+    private long nextDelay(int yield, long elapsedMillis) {
+        if (!adaptive || yield == InboundTask.UNKNOWN_POLL_YIELD) {
+            // wait the interval unless the cycle took longer than that
+            return interval - elapsedMillis > 0 ? interval : 0;
+        }
+        if (yield > 0) {
+            backoff = 0;
+            return 0;
+        }
+        backoff = backoff == 0 ? initialBackoff : Math.min(backoff * 2, interval);
+        return backoff;
     }
 }
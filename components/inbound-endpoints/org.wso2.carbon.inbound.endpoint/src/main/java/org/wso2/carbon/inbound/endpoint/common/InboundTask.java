@@ -36,6 +36,11 @@ public abstract class InboundTask implements org.apache.synapse.task.Task, Manag
     protected long interval;
     
     public static final int TASK_THRESHOLD_INTERVAL = 1000;
+
+    /**
+     * Yield of a poll cycle whose number of messages is not known
+     */
+    public static final int UNKNOWN_POLL_YIELD = -1;
     
     public void execute() {
         logger.debug("Common Inbound Task executing.");
@@ -66,5 +71,17 @@ public abstract class InboundTask implements org.apache.synapse.task.Task, Manag
     
     protected abstract void taskExecute();
 
+    /**
+     * Run a poll cycle for the inbound runner, which schedules the cycles itself and adapts the delay to what
+     * the cycle returned. Tasks which can tell how many messages a cycle handed to mediation override this,
+     * the others are polled on the fixed interval.
+     *
+     * @return number of messages the cycle mediated successfully, or {@link #UNKNOWN_POLL_YIELD}
+     */
+    protected int pollCycle() {
+        taskExecute();
+        return UNKNOWN_POLL_YIELD;
+    }
+
     public abstract Properties getInboundProperties();
 }
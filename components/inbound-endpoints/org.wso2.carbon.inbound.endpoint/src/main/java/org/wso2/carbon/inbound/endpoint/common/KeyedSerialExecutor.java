@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the tasks of the same key one after the other in the order they are submitted, while tasks of different
+ * keys run in parallel on the shared worker pool. The inbound endpoints key the tasks by connection or topic, so
+ * the messages of that key are mediated in the order they were received.
+ */
+public class KeyedSerialExecutor {
+
+    private static final Log log = LogFactory.getLog(KeyedSerialExecutor.class);
+
+    private final Executor executor;
+    private final ConcurrentMap<Object, SerialQueue> queues = new ConcurrentHashMap<Object, SerialQueue>();
+
+    public KeyedSerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Run the task after the tasks of the key submitted before it
+     */
+    public void execute(Object key, Runnable task) {
+        while (true) {
+            SerialQueue queue = queues.get(key);
+            if (queue == null) {
+                SerialQueue newQueue = new SerialQueue(key);
+                queue = queues.putIfAbsent(key, newQueue);
+                if (queue == null) {
+                    queue = newQueue;
+                }
+            }
+            if (queue.offer(task)) {
+                return;
+            }
+            // the queue drained and left the map in the meantime
+        }
+    }
+
+    /**
+     * Called when the worker pool rejects the tasks of a key, which are dropped. Override to release whatever the
+     * dropped tasks hold.
+     *
+     * @param key     key of the dropped tasks
+     * @param dropped tasks which will not run
+     */
+    protected void rejected(Object key, Collection<Runnable> dropped, RejectedExecutionException e) {
+        log.error("Worker pool rejected " + dropped.size() + " tasks of " + key + ".", e);
+    }
+
+    /**
+     * Tasks of a key. The queue leaves the map once it has no task left, and takes no task after that.
+     */
+    private class SerialQueue implements Runnable {
+
+        private final Object key;
+        private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+        private boolean running = false;
+        private boolean retired = false;
+
+        private SerialQueue(Object key) {
+            this.key = key;
+        }
+
+        private synchronized boolean offer(Runnable task) {
+            if (retired) {
+                return false;
+            }
+            tasks.add(task);
+            if (!running) {
+                running = true;
+                schedule();
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("Error while running a task of " + key + ".", t);
+            }
+            synchronized (this) {
+                if (tasks.isEmpty()) {
+                    retire();
+                } else {
+                    // one task at a time, so the keys share the workers fairly
+                    schedule();
+                }
+            }
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                Collection<Runnable> dropped = new ArrayList<Runnable>(tasks);
+                tasks.clear();
+                retire();
+                rejected(key, dropped, e);
+            }
+        }
+
+        private void retire() {
+            running = false;
+            retired = true;
+            queues.remove(key, this);
+        }
+    }
+}
@@ -34,4 +34,11 @@ public class PollingConstants {
 
    public static final String INBOUND_CONCURRENT_CONSUMERS = "concurrent.consumers";
 
+   // polls again right away while cycles mediate messages, off unless set to true
+   public static final String INBOUND_ADAPTIVE_POLLING = "adaptive.polling";
+
+   public static final String INBOUND_ADAPTIVE_POLLING_INITIAL_BACKOFF = "adaptive.polling.initial.backoff";
+
+   public static final long DEFAULT_ADAPTIVE_POLLING_INITIAL_BACKOFF = 100;
+
 }
@@ -0,0 +1,60 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.protocol.file;
+
+/**
+ *
+ * Constants of the inbound file protocol, in addition to the ones shared with
+ * the synapse vfs transport in {@link org.apache.synapse.commons.vfs.VFSConstants}
+ *
+ */
+public class FileConstants {
+
+    // Number of files of a directory processed in parallel. 1 processes them one after the other.
+    public static final String PARALLEL_FILE_PROCESSING_COUNT = "transport.vfs.ParallelFileProcessingCount";
+
+    // Local file where the names of the already handled files are kept across restarts.
+    public static final String SEEN_FILE_STORE = "transport.vfs.SeenFileStore";
+
+    // Splits a file into records injected as messages of their own: line, delimiter or xml.
+    public static final String RECORD_SPLIT_MODE = "transport.vfs.RecordSplitMode";
+
+    // Record delimiter of the delimiter split mode. \n, \r and \t are unescaped.
+    public static final String RECORD_DELIMITER = "transport.vfs.RecordDelimiter";
+
+    // Slash separated path of the record elements of the xml split mode, absolute if it starts with a slash.
+    public static final String RECORD_ELEMENT_PATH = "transport.vfs.RecordElementPath";
+
+    // Maximum number of records of a file in mediation at the same time. 1 mediates them in order.
+    public static final String MAX_RECORDS_IN_FLIGHT = "transport.vfs.MaxRecordsInFlight";
+
+    // Local directory of the checkpoints used to resume a file after the last mediated record.
+    public static final String RECORD_CHECKPOINT_DIRECTORY = "transport.vfs.RecordCheckpointDirectory";
+
+    // Number of mediated records between two checkpoint writes.
+    public static final String RECORD_CHECKPOINT_INTERVAL = "transport.vfs.RecordCheckpointInterval";
+
+    public static final int DEFAULT_RECORD_CHECKPOINT_INTERVAL = 100;
+
+    // Message context property holding the number of the record within its file, starting from 1.
+    public static final String RECORD_NUMBER = "file.record.number";
+
+    public static final String LOCK_FILE_SUFFIX = ".lock";
+
+    public static final String FAIL_FILE_SUFFIX = ".fail";
+}
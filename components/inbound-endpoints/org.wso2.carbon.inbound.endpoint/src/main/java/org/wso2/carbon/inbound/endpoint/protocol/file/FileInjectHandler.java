@@ -17,16 +17,29 @@
 */
 package org.wso2.carbon.inbound.endpoint.protocol.file;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.mail.internet.ContentType;
 import javax.mail.internet.ParseException;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.util.UUIDGenerator;
+import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.builder.Builder;
 import org.apache.axis2.builder.BuilderUtil;
@@ -40,6 +53,7 @@ import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.commons.vfs.FileObjectDataSource;
 import org.apache.synapse.commons.vfs.VFSConstants;
@@ -60,6 +74,18 @@ public class FileInjectHandler {
     private Properties vfsProperties;
     private SynapseEnvironment synapseEnvironment;
     private Map<String, Object> transportHeaders;
+
+    // streaming of a file as records
+    private String recordSplitMode;
+    private String recordDelimiter;
+    private String recordElementPath;
+    private int maxRecordsInFlight = 1;
+    private String recordCheckpointDirectory;
+    private int recordCheckpointInterval = FileConstants.DEFAULT_RECORD_CHECKPOINT_INTERVAL;
+    // checkpoints of the files left in place after a failed record, by file URI, without a checkpoint directory
+    private final ConcurrentMap<String, FileRecordCheckpoint> memoryCheckpoints =
+            new ConcurrentHashMap<String, FileRecordCheckpoint>();
+    private ExecutorService recordPool;
     
 	public FileInjectHandler(String injectingSeq, String onErrorSeq, boolean sequential, SynapseEnvironment synapseEnvironment, Properties vfsProperties){
 		this.injectingSeq = injectingSeq;
@@ -67,17 +93,30 @@ public class FileInjectHandler {
 		this.sequential = sequential;
 		this.synapseEnvironment = synapseEnvironment;
 		this.vfsProperties = vfsProperties;
+		setupRecordParams();
 	}	 
 	/**
 	 * Inject the message to the sequence
 	 * */
 	public boolean invoke(Object object, String name)throws SynapseException{
+		return invoke(object, name, transportHeaders);
+	}
+
+	/**
+	 * Inject the message to the sequence with the given transport headers. Unlike setting the headers on
+	 * the handler, this can be called for several files in parallel
+	 * */
+	public boolean invoke(Object object, String name, Map<String, Object> transportHeaders)
+			throws SynapseException {
 		
 		ManagedDataSource dataSource = null;;
 		FileObject file = (FileObject)object;
 		InputStream in =  null;
+        if (recordSplitMode != null) {
+            return invokeRecords(file, name, transportHeaders);
+        }
         try {
-            org.apache.synapse.MessageContext msgCtx = createMessageContext();
+            org.apache.synapse.MessageContext msgCtx = createMessageContext(transportHeaders);
             msgCtx.setProperty("inbound.endpoint.name", name);
             InboundEndpoint inboundEndpoint = msgCtx.getConfiguration().getInboundEndpoint(name);
             CustomLogSetter.getInstance().setLogAppender(inboundEndpoint.getArtifactContainerName());
@@ -106,22 +145,7 @@ public class FileInjectHandler {
             }             
     		MessageContext axis2MsgCtx = ((org.apache.synapse.core.axis2.Axis2MessageContext)msgCtx).getAxis2MessageContext();
     		// Determine the message builder to use
-            Builder builder;
-            if (contentType == null) {
-                log.debug("No content type specified. Using SOAP builder.");
-                builder = new SOAPBuilder();
-            } else {
-                int index = contentType.indexOf(';');
-                String type = index > 0 ? contentType.substring(0, index) : contentType;
-                builder = BuilderUtil.getBuilderFromSelector(type, axis2MsgCtx);
-                if (builder == null) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("No message builder found for type '" + type +
-                                "'. Falling back to SOAP.");
-                    }
-                    builder = new SOAPBuilder();
-                }
-            }
+            Builder builder = getBuilder(contentType, axis2MsgCtx);
     
             // set the message payload to the message context
             String streaming = vfsProperties.getProperty(VFSConstants.STREAMING);
@@ -187,6 +211,293 @@ public class FileInjectHandler {
         return true;
 	}
 	
+    /**
+     * Stream the file as records, each injected as a message of its own, with at most
+     * maxRecordsInFlight records in mediation. Records are injected sequentially, so a record counts
+     * as mediated once its sequence returns.
+     *
+     * @return false if the mediation of a record failed. The file is then left in place and resumed
+     *         from the checkpoint in a later cycle
+     */
+    private boolean invokeRecords(FileObject file, final String name, final Map<String, Object> transportHeaders)
+            throws SynapseException {
+        final String contentType = getContentType(file);
+        final String charSetEnc = getCharSetEncoding(contentType);
+        Charset charset = charSetEnc != null ? Charset.forName(charSetEnc) : Charset.forName("UTF-8");
+        final FileRecordCheckpoint checkpoint = createCheckpoint(file, name);
+        long resumeAfter = checkpoint.getCompletedRecords();
+        if (resumeAfter > 0) {
+            log.info("Resuming file : " + file + " after record " + resumeAfter);
+        }
+
+        final Semaphore inFlight = new Semaphore(maxRecordsInFlight);
+        final AtomicBoolean mediationFailed = new AtomicBoolean(false);
+        final AtomicReference<Exception> recordError = new AtomicReference<>();
+        final String tenantDomain = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        FileRecordSplitter splitter = null;
+        long recordNumber = 0;
+        try {
+            splitter = FileRecordSplitter.create(recordSplitMode, file.getContent().getInputStream(), charset,
+                    recordDelimiter, recordElementPath);
+            byte[] record;
+            while (!mediationFailed.get() && recordError.get() == null && (record = splitter.nextRecord()) != null) {
+                recordNumber++;
+                if (recordNumber <= resumeAfter) {
+                    continue;
+                }
+                if (maxRecordsInFlight <= 1) {
+                    if (injectRecord(record, recordNumber, contentType, charSetEnc, name, transportHeaders)) {
+                        checkpoint.complete(recordNumber);
+                    } else {
+                        mediationFailed.set(true);
+                    }
+                    continue;
+                }
+                inFlight.acquire();
+                final byte[] currentRecord = record;
+                final long currentRecordNumber = recordNumber;
+                try {
+                    getRecordPool(name).execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            PrivilegedCarbonContext.startTenantFlow();
+                            try {
+                                PrivilegedCarbonContext.getThreadLocalCarbonContext()
+                                        .setTenantDomain(tenantDomain, true);
+                                if (injectRecord(currentRecord, currentRecordNumber, contentType, charSetEnc, name,
+                                        transportHeaders)) {
+                                    checkpoint.complete(currentRecordNumber);
+                                } else {
+                                    mediationFailed.set(true);
+                                }
+                            } catch (Exception e) {
+                                recordError.compareAndSet(null, e);
+                            } finally {
+                                PrivilegedCarbonContext.endTenantFlow();
+                                inFlight.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    mediationFailed.set(true);
+                }
+            }
+        } catch (SynapseException se) {
+            recordError.compareAndSet(null, se);
+        } catch (Exception e) {
+            recordError.compareAndSet(null, e);
+        } finally {
+            // wait for the records in mediation
+            inFlight.acquireUninterruptibly(maxRecordsInFlight);
+            inFlight.release(maxRecordsInFlight);
+            if (splitter != null) {
+                try {
+                    splitter.close();
+                } catch (IOException e) {
+                    log.error("Error while closing the input stream", e);
+                }
+            }
+        }
+
+        Exception error = recordError.get();
+        if (error != null) {
+            // the file is moved to the failure location, it will not be resumed
+            deleteCheckpoint(file, checkpoint);
+            if (error instanceof SynapseException) {
+                throw (SynapseException) error;
+            }
+            log.error("Error while processing the records of the file", error);
+            throw new SynapseException("Error while processing the records of the file", error);
+        }
+        checkpoint.save();
+        if (mediationFailed.get()) {
+            log.warn("Mediation of a record of file : " + file + " failed. The file will be resumed after record "
+                    + checkpoint.getCompletedRecords());
+            return false;
+        }
+        deleteCheckpoint(file, checkpoint);
+        if (log.isDebugEnabled()) {
+            log.debug("Injected " + (recordNumber - resumeAfter) + " records of file : " + file);
+        }
+        return true;
+    }
+
+    /**
+     * Build a message out of a record and inject it to the sequence, on the calling thread
+     */
+    private boolean injectRecord(byte[] record, long recordNumber, String contentType, String charSetEnc,
+            String name, Map<String, Object> transportHeaders) throws Exception {
+        // headers of the file are copied for every record, mediation may change them
+        org.apache.synapse.MessageContext msgCtx = createMessageContext(
+                transportHeaders == null ? null : new HashMap<String, Object>(transportHeaders));
+        msgCtx.setProperty("inbound.endpoint.name", name);
+        msgCtx.setProperty(FileConstants.RECORD_NUMBER, recordNumber);
+        InboundEndpoint inboundEndpoint = msgCtx.getConfiguration().getInboundEndpoint(name);
+        CustomLogSetter.getInstance().setLogAppender(inboundEndpoint.getArtifactContainerName());
+        if (charSetEnc != null) {
+            msgCtx.setProperty(Constants.Configuration.CHARACTER_SET_ENCODING, charSetEnc);
+        }
+        MessageContext axis2MsgCtx = ((org.apache.synapse.core.axis2.Axis2MessageContext) msgCtx)
+                .getAxis2MessageContext();
+        Builder builder = getBuilder(contentType, axis2MsgCtx);
+        OMElement documentElement = builder.processDocument(new ByteArrayInputStream(record), contentType,
+                axis2MsgCtx);
+        msgCtx.setEnvelope(TransportUtils.createSOAPEnvelope(documentElement));
+
+        SequenceMediator seq = (SequenceMediator) synapseEnvironment.getSynapseConfiguration()
+                .getSequence(injectingSeq);
+        if (seq == null) {
+            log.error("Sequence: " + injectingSeq + " not found");
+            return true;
+        }
+        if (!seq.isInitialized()) {
+            seq.init(synapseEnvironment);
+        }
+        seq.setErrorHandler(onErrorSeq);
+        return synapseEnvironment.injectInbound(msgCtx, seq, true);
+    }
+
+    private synchronized ExecutorService getRecordPool(String name) {
+        if (recordPool == null) {
+            // the number of busy threads is bounded by the records in flight of the files in process
+            recordPool = Executors.newCachedThreadPool(new FileThreadFactory(name, "record"));
+        }
+        return recordPool;
+    }
+
+    /**
+     * Get the checkpoint of a file, written to the checkpoint directory if one is configured, or else kept in
+     * memory, so that a file left in place after a failed record is resumed in the next cycle either way
+     */
+    private FileRecordCheckpoint createCheckpoint(FileObject file, String name) {
+        long fileSize;
+        long fileLastModified;
+        try {
+            fileSize = file.getContent().getSize();
+            fileLastModified = file.getContent().getLastModifiedTime();
+        } catch (FileSystemException e) {
+            log.warn("Unable to read the attributes of file : " + file + ". The file will not be checkpointed.", e);
+            return new FileRecordCheckpoint(null, -1, -1, recordCheckpointInterval);
+        }
+        if (recordCheckpointDirectory == null) {
+            String fileURI = file.getName().getURI();
+            FileRecordCheckpoint checkpoint = memoryCheckpoints.get(fileURI);
+            if (checkpoint == null || !checkpoint.isFor(fileSize, fileLastModified)) {
+                checkpoint = new FileRecordCheckpoint(null, fileSize, fileLastModified, recordCheckpointInterval);
+                memoryCheckpoints.put(fileURI, checkpoint);
+            }
+            return checkpoint;
+        }
+        File store = null;
+        File directory = new File(recordCheckpointDirectory);
+        if (directory.isDirectory() || directory.mkdirs()) {
+            String storeName = (name + "_" + file.getName().getBaseName()).replaceAll("[^A-Za-z0-9._-]", "_");
+            store = new File(directory, storeName + ".checkpoint");
+        } else {
+            log.warn("Unable to create the record checkpoint directory : " + recordCheckpointDirectory);
+        }
+        return new FileRecordCheckpoint(store, fileSize, fileLastModified, recordCheckpointInterval);
+    }
+
+    private void deleteCheckpoint(FileObject file, FileRecordCheckpoint checkpoint) {
+        checkpoint.delete();
+        memoryCheckpoints.remove(file.getName().getURI(), checkpoint);
+    }
+
+    private String getContentType(FileObject file) {
+        String contentType = vfsProperties.getProperty(VFSConstants.TRANSPORT_FILE_CONTENT_TYPE);
+        if (contentType == null || contentType.trim().equals("")) {
+            if (file.getName().getExtension().toLowerCase().endsWith("xml")) {
+                contentType = "text/xml";
+            } else if (file.getName().getExtension().toLowerCase().endsWith("txt")) {
+                contentType = "text/plain";
+            }
+        }
+        return contentType;
+    }
+
+    private String getCharSetEncoding(String contentType) {
+        try {
+            if (contentType != null) {
+                return new ContentType(contentType).getParameter("charset");
+            }
+        } catch (ParseException ex) {
+            // ignore
+        }
+        return null;
+    }
+
+    private Builder getBuilder(String contentType, MessageContext axis2MsgCtx) throws AxisFault {
+        Builder builder;
+        if (contentType == null) {
+            log.debug("No content type specified. Using SOAP builder.");
+            builder = new SOAPBuilder();
+        } else {
+            int index = contentType.indexOf(';');
+            String type = index > 0 ? contentType.substring(0, index) : contentType;
+            builder = BuilderUtil.getBuilderFromSelector(type, axis2MsgCtx);
+            if (builder == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("No message builder found for type '" + type +
+                            "'. Falling back to SOAP.");
+                }
+                builder = new SOAPBuilder();
+            }
+        }
+        return builder;
+    }
+
+    private void setupRecordParams() {
+        recordSplitMode = vfsProperties.getProperty(FileConstants.RECORD_SPLIT_MODE);
+        if (recordSplitMode == null || recordSplitMode.trim().isEmpty()) {
+            recordSplitMode = null;
+            return;
+        }
+        recordSplitMode = recordSplitMode.trim();
+        if (!FileRecordSplitter.SPLIT_MODE_LINE.equalsIgnoreCase(recordSplitMode)
+                && !FileRecordSplitter.SPLIT_MODE_DELIMITER.equalsIgnoreCase(recordSplitMode)
+                && !FileRecordSplitter.SPLIT_MODE_XML.equalsIgnoreCase(recordSplitMode)) {
+            throw new SynapseException("Invalid value for " + FileConstants.RECORD_SPLIT_MODE + " : "
+                    + recordSplitMode + ". Expected line, delimiter or xml.");
+        }
+        recordDelimiter = vfsProperties.getProperty(FileConstants.RECORD_DELIMITER);
+        if (recordDelimiter != null) {
+            recordDelimiter = recordDelimiter.replace("\\n", "\n").replace("\\r", "\r").replace("\\t", "\t");
+        }
+        recordElementPath = vfsProperties.getProperty(FileConstants.RECORD_ELEMENT_PATH);
+        String strMaxRecordsInFlight = vfsProperties.getProperty(FileConstants.MAX_RECORDS_IN_FLIGHT);
+        if (strMaxRecordsInFlight != null) {
+            try {
+                maxRecordsInFlight = Math.max(1, Integer.parseInt(strMaxRecordsInFlight.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid param value for " + FileConstants.MAX_RECORDS_IN_FLIGHT + " : "
+                        + strMaxRecordsInFlight + ". Records will be mediated in order.");
+            }
+        }
+        recordCheckpointDirectory = vfsProperties.getProperty(FileConstants.RECORD_CHECKPOINT_DIRECTORY);
+        String strCheckpointInterval = vfsProperties.getProperty(FileConstants.RECORD_CHECKPOINT_INTERVAL);
+        if (strCheckpointInterval != null) {
+            try {
+                recordCheckpointInterval = Integer.parseInt(strCheckpointInterval.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid param value for " + FileConstants.RECORD_CHECKPOINT_INTERVAL + " : "
+                        + strCheckpointInterval + ". Default value of "
+                        + FileConstants.DEFAULT_RECORD_CHECKPOINT_INTERVAL + " will be used.");
+            }
+        }
+    }
+
+    /**
+     * Stop the threads mediating records
+     */
+    public synchronized void destroy() {
+        if (recordPool != null) {
+            recordPool.shutdown();
+            recordPool = null;
+        }
+    }
+
     /**
      * @param transportHeaders the transportHeaders to set
      */
@@ -196,7 +507,7 @@ public class FileInjectHandler {
     /**
      * Create the initial message context for the file
      * */
-    private org.apache.synapse.MessageContext createMessageContext() {
+    private org.apache.synapse.MessageContext createMessageContext(Map<String, Object> transportHeaders) {
         org.apache.synapse.MessageContext msgCtx = synapseEnvironment.createMessageContext();
         MessageContext axis2MsgCtx = ((org.apache.synapse.core.axis2.Axis2MessageContext)msgCtx).getAxis2MessageContext();
         axis2MsgCtx.setServerSide(true);
@@ -17,6 +17,7 @@
  */
 package org.wso2.carbon.inbound.endpoint.protocol.file;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.FileContent;
@@ -34,15 +35,36 @@ import org.apache.synapse.commons.vfs.VFSConstants;
 import org.apache.synapse.commons.vfs.VFSParamDTO;
 import org.apache.synapse.commons.vfs.VFSUtils;
 import org.apache.synapse.core.SynapseEnvironment;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.mediation.clustering.ClusteringServiceUtil;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * 
@@ -78,6 +100,16 @@ public class FilePollingConsumer {
     private boolean distributedLock;
     private Long distributedLockTimeout;
     private FileSystemOptions fso;
+    private Pattern filePattern;
+
+    private int parallelFileProcessingCount = 1;
+    private ExecutorService fileProcessingPool;
+    // names of the handled files which are still listed, with the last modified time they were handled with
+    private final Map<String, Long> seenFiles = new ConcurrentHashMap<>();
+    private final AtomicBoolean seenFilesModified = new AtomicBoolean(false);
+    private String seenFileStore;
+    // files processed successfully during the current cycle, possibly by the parallel processing pool
+    private final AtomicInteger processedFileCount = new AtomicInteger();
     
     public FilePollingConsumer(Properties vfsProperties, String name,
             SynapseEnvironment synapseEnvironment, long scanInterval) {
@@ -88,6 +120,7 @@ public class FilePollingConsumer {
         this.lastRanTime = null;
 
         setupParams();
+        loadSeenFiles();
         try {
             StandardFileSystemManager fsm = new StandardFileSystemManager();
             fsm.setConfiguration(getClass().getClassLoader().getResource("providers.xml"));
@@ -122,6 +155,18 @@ public class FilePollingConsumer {
      * interval. Timestamp based check is done to avoid that.
      */
     public void execute() {
+        execute(true);
+    }
+
+    /**
+     * Run a scan cycle.
+     *
+     * @param checkInterval skip the cycle if the scan interval has not passed since the last cycle. The inbound
+     *                      runner schedules the cycles itself and does not check it
+     * @return number of files the cycle processed successfully
+     */
+    public int execute(boolean checkInterval) {
+        processedFileCount.set(0);
         try {
             if (log.isDebugEnabled()) {
                 log.debug("Start : File Inbound EP : " + name);
@@ -129,7 +174,7 @@ public class FilePollingConsumer {
             // Check if the cycles are running in correct interval and start
             // scan
             long currentTime = (new Date()).getTime();
-            if (lastRanTime == null || ((lastRanTime + (scanInterval)) <= currentTime)) {
+            if (!checkInterval || lastRanTime == null || ((lastRanTime + (scanInterval)) <= currentTime)) {
                 lastRanTime = currentTime;
                 poll();
             } else if (log.isDebugEnabled()) {
@@ -142,6 +187,7 @@ public class FilePollingConsumer {
         } catch (Exception e) {
             log.error("Error while reading file. " + e.getMessage(), e);
         }
+        return processedFileCount.get();
     }
 
     /**
@@ -195,7 +241,7 @@ public class FilePollingConsumer {
                     } else {
                         try {
                             lastCycle = 2;
-                            moveOrDeleteAfterProcessing(fileObject);
+                            moveOrDeleteAfterProcessing(fileObject, lastCycle);
                         } catch (SynapseException synapseException) {
                             log.error("File object '" + VFSUtils.maskURLPassword(fileObject.getURL().toString()) + "' "
                                     + "cloud not be moved after first attempt", synapseException);
@@ -271,7 +317,7 @@ public class FilePollingConsumer {
 
                 if (runPostProcess) {
                     try {
-                        moveOrDeleteAfterProcessing(fileObject);
+                        moveOrDeleteAfterProcessing(fileObject, lastCycle);
                     } catch (SynapseException synapseException) {
                         lastCycle = 3;
                         log.error("File object '" + VFSUtils.maskURLPassword(fileObject.getURL().toString()) + "' "
@@ -316,6 +362,9 @@ public class FilePollingConsumer {
         }
 
         strFilePattern = vfsProperties.getProperty(VFSConstants.TRANSPORT_FILE_FILE_NAME_PATTERN);
+        if (strFilePattern != null) {
+            filePattern = Pattern.compile(strFilePattern);
+        }
         if (vfsProperties.getProperty(VFSConstants.TRANSPORT_FILE_INTERVAL) != null) {
             try {
                 iFileProcessingInterval = Integer.valueOf(vfsProperties
@@ -429,6 +478,17 @@ public class FilePollingConsumer {
 
         }
 
+        String strParallelCount = vfsProperties.getProperty(FileConstants.PARALLEL_FILE_PROCESSING_COUNT);
+        if (strParallelCount != null) {
+            try {
+                parallelFileProcessingCount = Math.max(1, Integer.parseInt(strParallelCount.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid param value for " + FileConstants.PARALLEL_FILE_PROCESSING_COUNT + " : "
+                        + strParallelCount + ". Files will be processed one after the other.");
+            }
+        }
+        seenFileStore = vfsProperties.getProperty(FileConstants.SEEN_FILE_STORE);
+
         waitTimeBeforeRead = null;
         String strWaitTimeBeforeRead = vfsProperties.getProperty(VFSConstants.WAIT_TIME_BEFORE_READ);
         if(strWaitTimeBeforeRead != null) {
@@ -443,7 +503,9 @@ public class FilePollingConsumer {
     
     /**
      * 
-     * Handle directory with chile elements
+     * Handle directory with chile elements. Lock and fail markers, the file name
+     * pattern and the already handled files are resolved from the listing
+     * itself, so the file system is only accessed for the remaining candidates.
      * 
      * @param children
      * @return
@@ -452,176 +514,386 @@ public class FilePollingConsumer {
     private FileObject directoryHandler(FileObject[] children) throws FileSystemException {
         // Process Directory
         lastCycle = 0;
-        int failCount = 0;
-        int successCount = 0;
-        int processCount = 0;
+        ScanResult result = new ScanResult();
 
         if (log.isDebugEnabled()) {
             log.debug("File name pattern : "
                     + vfsProperties.getProperty(VFSConstants.TRANSPORT_FILE_FILE_NAME_PATTERN));
         }
 
-        // Sort the files
-        String strSortParam = vfsProperties.getProperty(VFSConstants.FILE_SORT_PARAM);
-        if (strSortParam != null && !"NONE".equals(strSortParam)) {
-            log.debug("Start Sorting the files.");
-            String strSortOrder = vfsProperties.getProperty(VFSConstants.FILE_SORT_ORDER);
-            boolean bSortOrderAsscending = true;
-            if (strSortOrder != null && strSortOrder.toLowerCase().equals("false")) {
-                bSortOrderAsscending = false;
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Sorting the files by : " + strSortOrder + ". (" + bSortOrderAsscending
-                        + ")");
-            }
-            if (strSortParam.equals(VFSConstants.FILE_SORT_VALUE_NAME) && bSortOrderAsscending) {
-                Arrays.sort(children, new FileNameAscComparator());
-            } else if (strSortParam.equals(VFSConstants.FILE_SORT_VALUE_NAME)
-                    && !bSortOrderAsscending) {
-                Arrays.sort(children, new FileNameDesComparator());
-            } else if (strSortParam.equals(VFSConstants.FILE_SORT_VALUE_SIZE)
-                    && bSortOrderAsscending) {
-                Arrays.sort(children, new FileSizeAscComparator());
-            } else if (strSortParam.equals(VFSConstants.FILE_SORT_VALUE_SIZE)
-                    && !bSortOrderAsscending) {
-                Arrays.sort(children, new FileSizeDesComparator());
-            } else if (strSortParam.equals(VFSConstants.FILE_SORT_VALUE_LASTMODIFIEDTIMESTAMP)
-                    && bSortOrderAsscending) {
-                Arrays.sort(children, new FileLastmodifiedtimestampAscComparator());
-            } else if (strSortParam.equals(VFSConstants.FILE_SORT_VALUE_LASTMODIFIEDTIMESTAMP)
-                    && !bSortOrderAsscending) {
-                Arrays.sort(children, new FileLastmodifiedtimestampDesComparator());
-            }
-            log.debug("End Sorting the files.");
-        }      
-        
+        Set<String> listedNames = new HashSet<>(children.length * 2);
+        for (FileObject child : children) {
+            listedNames.add(child.getName().getBaseName());
+        }
+        // handled files which are gone from the directory can be handled again if dropped again
+        if (seenFiles.keySet().retainAll(listedNames)) {
+            seenFilesModified.set(true);
+        }
+
+        List<ScannedFile> candidates = new ArrayList<>();
         for (FileObject child : children) {
+            String baseName = child.getName().getBaseName();
             // skipping *.lock / *.fail file
-            if (child.getName().getBaseName().endsWith(".lock")
-                    || child.getName().getBaseName().endsWith(".fail")) {
+            if (baseName.endsWith(FileConstants.LOCK_FILE_SUFFIX)
+                    || baseName.endsWith(FileConstants.FAIL_FILE_SUFFIX)) {
                 continue;
             }
-            boolean isFailedRecord = VFSUtils.isFailRecord(fsManager, child, fso);
-            boolean isReadyToRead = VFSUtils.isReadyToRead(child, waitTimeBeforeRead);
-            
-            // child's file name matches the file name pattern or process all
-            // files now we try to get the lock and process
-            if ((strFilePattern == null || child.getName().getBaseName().matches(strFilePattern))
-                    && !isFailedRecord && isReadyToRead) {
-
+            if (listedNames.contains(baseName + FileConstants.FAIL_FILE_SUFFIX)) {
+                // it is a failed record
+                handleFailedRecord(child);
+            } else if (filePattern != null && !filePattern.matcher(baseName).matches()) {
+                // child's file name does not match the file name pattern
+                if (log.isDebugEnabled()) {
+                    log.debug("Non-Matching file : " + baseName);
+                }
+            } else if (fileLock && !autoLockRelease
+                    && listedNames.contains(baseName + FileConstants.LOCK_FILE_SUFFIX)) {
                 if (log.isDebugEnabled()) {
-                    log.debug("Matching file : " + child.getName().getBaseName());
+                    log.debug("File is locked by another process : " + baseName);
                 }
+            } else {
+                ScannedFile scannedFile = new ScannedFile(child);
+                if (isSeen(scannedFile)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("File has already been handled : " + baseName);
+                    }
+                } else if (!VFSUtils.isReadyToRead(child, waitTimeBeforeRead)) {
+                    log.debug("File cannot be read as it has to wait for some time: " + baseName);
+                } else {
+                    candidates.add(scannedFile);
+                    continue;
+                }
+            }
+            //close the file system after processing
+            try{
+                child.close();
+            }catch(Exception e){}
+        }
 
-                if ((!fileLock || (fileLock && acquireLock(fsManager, child)))) {
-                    // process the file
-                    boolean runPostProcess = true;
-                    try {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Processing file :" + VFSUtils.maskURLPassword(child.toString()));
-                        }
-                        processCount++;
-                        if (processFile(child) == null) {
-                            runPostProcess = false;
-                        } else {
-                            successCount++;
-                        }
-                        // tell moveOrDeleteAfterProcessing() file was success
-                        lastCycle = 1;
-                    } catch (Exception e) {
-                        if (e.getCause() instanceof FileNotFoundException) {
-                            log.warn("Error processing File URI : " +
-                                     VFSUtils.maskURLPassword(child.getName().toString()) +
-                                     ". This can be due to file moved from another process.");
-                            runPostProcess = false;
-                        } else {
-                            log.error("Error processing File URI : " +
-                                      VFSUtils.maskURLPassword(child.getName().toString()), e);
-                            failCount++;
-                            // tell moveOrDeleteAfterProcessing() file failed
-                            lastCycle = 2;
-                        }
+        // Sort the files
+        Comparator<ScannedFile> comparator = getFileComparator();
+        if (comparator != null) {
+            log.debug("Start Sorting the files.");
+            Collections.sort(candidates, comparator);
+            log.debug("End Sorting the files.");
+        }
 
+        // the file count only limits a cycle if there is no interval between files
+        Integer processingLimit = null;
+        if ((iFileProcessingInterval == null || iFileProcessingInterval <= 0) && iFileProcessingCount != null) {
+            processingLimit = iFileProcessingCount;
+        }
+
+        try {
+            if (parallelFileProcessingCount > 1 && injectHandler != null) {
+                processInParallel(candidates, result, processingLimit);
+            } else {
+                for (ScannedFile candidate : candidates) {
+                    if (processingLimit != null && result.processCount.get() >= processingLimit) {
+                        break;
                     }
-                    // skipping un-locking file if failed to do delete/move
-                    // after process
-                    boolean skipUnlock = false;
-                    if (runPostProcess) {
-                        try {
-                            moveOrDeleteAfterProcessing(child);
-                        } catch (SynapseException synapseException) {
-                            log.error("File object '" + VFSUtils.maskURLPassword(child.getURL().toString())
-                                    + "'cloud not be moved, will remain in \"locked\" state",
-                                    synapseException);
-                            skipUnlock = true;
-                            failCount++;
-                            lastCycle = 3;
-                            VFSUtils.markFailRecord(fsManager, child);
-                        }
-                    }
-                    // if there is a failure or not we'll try to release the
-                    // lock
-                    if (fileLock && !skipUnlock) {
-                        // TODO: passing null to avoid build break. Fix properly
-                        VFSUtils.releaseLock(fsManager, child, fso);
-                    }
-                    if (injectHandler == null) {
-                        return child;
+                    if (processDirectoryFile(candidate, result, processingLimit) && injectHandler == null) {
+                        return candidate.fileObject;
                     }
+                    throttle();
                 }
-            } else if (log.isDebugEnabled() && strFilePattern != null
-                    && !child.getName().getBaseName().matches(strFilePattern) && !isFailedRecord) {
-                // child's file name does not match the file name pattern
-                log.debug("Non-Matching file : " + child.getName().getBaseName());
-            } else if (isFailedRecord) {
-                // it is a failed record
+            }
+        } finally {
+            saveSeenFiles();
+        }
+        if (result.failCount.get() == 0 && result.successCount.get() > 0) {
+            lastCycle = 1;
+        } else if (result.successCount.get() == 0 && result.failCount.get() > 0) {
+            lastCycle = 4;
+        } else {
+            lastCycle = 5;
+        }
+        return null;
+    }
+
+    /**
+     * Lock, process and move or delete a file of the scanned directory, and release the lock afterwards.
+     * This is called concurrently for different files when parallel processing is enabled.
+     *
+     * @return false if the file could not be locked or the processing limit of the cycle was reached
+     */
+    private boolean processDirectoryFile(ScannedFile file, ScanResult result, Integer processingLimit) {
+        FileObject child = file.fileObject;
+        if (log.isDebugEnabled()) {
+            log.debug("Matching file : " + child.getName().getBaseName());
+        }
+        if (fileLock && !acquireLock(fsManager, child)) {
+            return false;
+        }
+        if (!result.startProcessing(processingLimit)) {
+            if (fileLock) {
+                VFSUtils.releaseLock(fsManager, child, fso);
+            }
+            return false;
+        }
+        // read before the file is moved or deleted, to recognize the file if it stays
+        long lastModifiedTime = file.getLastModifiedTime();
+        int cycle;
+        // process the file
+        boolean runPostProcess = true;
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Processing file :" + VFSUtils.maskURLPassword(child.toString()));
+            }
+            if (processFile(child) == null) {
+                runPostProcess = false;
+            } else {
+                result.successCount.incrementAndGet();
+            }
+            // tell moveOrDeleteAfterProcessing() file was success
+            cycle = 1;
+        } catch (Exception e) {
+            if (e.getCause() instanceof FileNotFoundException) {
+                log.warn("Error processing File URI : " +
+                         VFSUtils.maskURLPassword(child.getName().toString()) +
+                         ". This can be due to file moved from another process.");
+                runPostProcess = false;
+            } else {
+                log.error("Error processing File URI : " +
+                          VFSUtils.maskURLPassword(child.getName().toString()), e);
+                result.failCount.incrementAndGet();
+            }
+            // tell moveOrDeleteAfterProcessing() file failed
+            cycle = 2;
+        }
+        // skipping un-locking file if failed to do delete/move
+        // after process
+        boolean skipUnlock = false;
+        if (runPostProcess) {
+            try {
+                moveOrDeleteAfterProcessing(child, cycle);
+            } catch (SynapseException synapseException) {
                 try {
-                    lastCycle = 1;
-                    moveOrDeleteAfterProcessing(child);
-                } catch (SynapseException synapseException) {
                     log.error("File object '" + VFSUtils.maskURLPassword(child.getURL().toString())
-                            + "'cloud not be moved, will remain in \"fail\" state", synapseException);
-                }
-                if (fileLock) {
-                    // TODO: passing null to avoid build break. Fix properly
-                    VFSUtils.releaseLock(fsManager, child, fso);
-                    VFSUtils.releaseLock(fsManager, fileObject, fso);
+                            + "'cloud not be moved, will remain in \"locked\" state",
+                            synapseException);
+                } catch (FileSystemException ignored) {
+                    log.error("File object could not be moved, will remain in \"locked\" state",
+                            synapseException);
                 }
-                if (log.isDebugEnabled()) {
-                    log.debug("File '" + VFSUtils.maskURLPassword(fileObject.getURL().toString())
-                            + "' has been marked as a failed record, it will not " + "process");
-                }
-            } else if (!isReadyToRead) {
-                log.debug("File cannot be read as it has to wait for some time: " + child.getName().getBaseName());
+                skipUnlock = true;
+                result.failCount.incrementAndGet();
+                VFSUtils.markFailRecord(fsManager, child);
             }
-
+            // files which stay in the directory are not picked again in the next cycles
+            if (stillExists(child)) {
+                seenFiles.put(child.getName().getBaseName(), lastModifiedTime);
+                seenFilesModified.set(true);
+            }
+        }
+        // if there is a failure or not we'll try to release the
+        // lock
+        if (fileLock && !skipUnlock) {
+            // TODO: passing null to avoid build break. Fix properly
+            VFSUtils.releaseLock(fsManager, child, fso);
+        }
+        if (injectHandler != null) {
             //close the file system after processing
             try{
                 child.close();
             }catch(Exception e){}
-            
-            // Manage throttling of file processing
-            if (iFileProcessingInterval != null && iFileProcessingInterval > 0) {
+        }
+        return true;
+    }
+
+    /**
+     * Process the candidate files on the file processing pool, with at most as many files locked and in
+     * process as parallel workers. Returns once all the dispatched files are processed.
+     */
+    private void processInParallel(List<ScannedFile> candidates, final ScanResult result,
+                                   final Integer processingLimit) {
+        if (fileProcessingPool == null) {
+            fileProcessingPool = Executors.newFixedThreadPool(parallelFileProcessingCount,
+                    new FileThreadFactory(name, "worker"));
+        }
+        final Semaphore workers = new Semaphore(parallelFileProcessingCount);
+        final String tenantDomain = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        try {
+            for (final ScannedFile candidate : candidates) {
+                workers.acquire();
+                if (processingLimit != null && result.processCount.get() >= processingLimit) {
+                    workers.release();
+                    break;
+                }
                 try {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Put the VFS processor to sleep for : " + iFileProcessingInterval);
-                    }
-                    Thread.sleep(iFileProcessingInterval);
-                } catch (InterruptedException ie) {
-                    log.error("Unable to set the interval between file processors." + ie);
+                    fileProcessingPool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            PrivilegedCarbonContext.startTenantFlow();
+                            try {
+                                PrivilegedCarbonContext.getThreadLocalCarbonContext()
+                                        .setTenantDomain(tenantDomain, true);
+                                processDirectoryFile(candidate, result, processingLimit);
+                            } catch (Exception e) {
+                                log.error("Error while processing file of inbound endpoint " + name, e);
+                            } finally {
+                                PrivilegedCarbonContext.endTenantFlow();
+                                workers.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    workers.release();
+                    log.warn("File processing of inbound endpoint " + name + " is shutting down.");
+                    break;
                 }
-            } else if (iFileProcessingCount != null && iFileProcessingCount <= processCount) {
-                break;
+                throttle();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // wait for the dispatched files
+            workers.acquireUninterruptibly(parallelFileProcessingCount);
         }
-        if (failCount == 0 && successCount > 0) {
-            lastCycle = 1;
-        } else if (successCount == 0 && failCount > 0) {
-            lastCycle = 4;
-        } else {
-            lastCycle = 5;
+    }
+
+    /**
+     * Move or delete a file which is marked as a failed record and release its locks
+     */
+    private void handleFailedRecord(FileObject child) throws FileSystemException {
+        try {
+            moveOrDeleteAfterProcessing(child, 1);
+        } catch (SynapseException synapseException) {
+            log.error("File object '" + VFSUtils.maskURLPassword(child.getURL().toString())
+                    + "'cloud not be moved, will remain in \"fail\" state", synapseException);
+        }
+        if (fileLock) {
+            // TODO: passing null to avoid build break. Fix properly
+            VFSUtils.releaseLock(fsManager, child, fso);
+            VFSUtils.releaseLock(fsManager, fileObject, fso);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("File '" + VFSUtils.maskURLPassword(fileObject.getURL().toString())
+                    + "' has been marked as a failed record, it will not " + "process");
+        }
+    }
+
+    /**
+     * Manage throttling of file processing
+     */
+    private void throttle() {
+        if (iFileProcessingInterval != null && iFileProcessingInterval > 0) {
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug("Put the VFS processor to sleep for : " + iFileProcessingInterval);
+                }
+                Thread.sleep(iFileProcessingInterval);
+            } catch (InterruptedException ie) {
+                log.error("Unable to set the interval between file processors." + ie);
+            }
+        }
+    }
+
+    private boolean stillExists(FileObject file) {
+        try {
+            file.refresh();
+            return file.exists();
+        } catch (FileSystemException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the file was handled before and has not been modified since
+     */
+    private boolean isSeen(ScannedFile file) {
+        String baseName = file.fileObject.getName().getBaseName();
+        Long handledLastModifiedTime = seenFiles.get(baseName);
+        if (handledLastModifiedTime == null) {
+            return false;
+        }
+        long lastModifiedTime = file.getLastModifiedTime();
+        if (lastModifiedTime < 0 || lastModifiedTime == handledLastModifiedTime) {
+            return true;
+        }
+        // a new file with the same name
+        seenFiles.remove(baseName);
+        seenFilesModified.set(true);
+        return false;
+    }
+
+    /**
+     * @return comparator for the configured sort order, or null if the files need not be sorted
+     */
+    private Comparator<ScannedFile> getFileComparator() {
+        String strSortParam = vfsProperties.getProperty(VFSConstants.FILE_SORT_PARAM);
+        if (!VFSConstants.FILE_SORT_VALUE_NAME.equals(strSortParam)
+                && !VFSConstants.FILE_SORT_VALUE_SIZE.equals(strSortParam)
+                && !VFSConstants.FILE_SORT_VALUE_LASTMODIFIEDTIMESTAMP.equals(strSortParam)) {
+            return null;
+        }
+        String strSortOrder = vfsProperties.getProperty(VFSConstants.FILE_SORT_ORDER);
+        boolean bSortOrderAsscending = true;
+        if (strSortOrder != null && strSortOrder.toLowerCase().equals("false")) {
+            bSortOrderAsscending = false;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Sorting the files by : " + strSortParam + ". (" + bSortOrderAsscending + ")");
+        }
+        return new ScannedFileComparator(strSortParam, bSortOrderAsscending);
+    }
+
+    /**
+     * Load the names of the already handled files from the seen file store, if configured
+     */
+    private void loadSeenFiles() {
+        if (seenFileStore == null) {
+            return;
+        }
+        File store = new File(seenFileStore);
+        if (!store.exists()) {
+            return;
+        }
+        Properties entries = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(store);
+            entries.load(in);
+        } catch (IOException e) {
+            log.warn("Unable to load the handled files of inbound endpoint " + name + " from " + seenFileStore, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        for (String baseName : entries.stringPropertyNames()) {
+            try {
+                seenFiles.put(baseName, Long.parseLong(entries.getProperty(baseName)));
+            } catch (NumberFormatException ignored) {
+                // a corrupted entry is handled again
+            }
+        }
+    }
+
+    /**
+     * Write the names of the handled files to the seen file store, if configured and changed
+     */
+    private void saveSeenFiles() {
+        if (seenFileStore == null || !seenFilesModified.getAndSet(false)) {
+            return;
+        }
+        Properties entries = new Properties();
+        for (Map.Entry<String, Long> entry : seenFiles.entrySet()) {
+            entries.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        File store = new File(seenFileStore);
+        File tempStore = new File(seenFileStore + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempStore);
+            entries.store(out, "Handled files of inbound endpoint " + name);
+            out.close();
+            out = null;
+            Files.move(tempStore.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            seenFilesModified.set(true);
+            log.warn("Unable to save the handled files of inbound endpoint " + name + " to " + seenFileStore, e);
+        } finally {
+            IOUtils.closeQuietly(out);
         }
-        return null;
     }
 
     /**
@@ -741,11 +1013,11 @@ public class FilePollingConsumer {
                     log.warn("Unable to set file length or last modified date header.", e);
                 }
 
-                injectHandler.setTransportHeaders(transportHeaders);
                 // injectHandler
-                if (!injectHandler.invoke(file, name)) {
+                if (!injectHandler.invoke(file, name, transportHeaders)) {
                     return null;
                 }
+                processedFileCount.incrementAndGet();
             }
 
         } catch (FileSystemException e) {
@@ -758,13 +1030,14 @@ public class FilePollingConsumer {
      * Do the post processing actions
      * 
      * @param fileObject
+     * @param cycle 1 if the file was processed, 2 if the processing failed
      * @throws synapseException
      */
-    private void moveOrDeleteAfterProcessing(FileObject fileObject) throws SynapseException {
+    private void moveOrDeleteAfterProcessing(FileObject fileObject, int cycle) throws SynapseException {
 
         String moveToDirectoryURI = null;
         try {
-            switch (lastCycle) {
+            switch (cycle) {
             case 1:
                 if ("MOVE".equals(vfsProperties
                         .getProperty(VFSConstants.TRANSPORT_FILE_ACTION_AFTER_PROCESS))) {
@@ -869,73 +1142,93 @@ public class FilePollingConsumer {
         }
     }
     /**
-     * Comparator classed used to sort the files according to user input
-     * */
-    class FileNameAscComparator implements Comparator<FileObject> {
-        @Override
-        public int compare(FileObject o1, FileObject o2) {
-            return o1.getName().compareTo(o2.getName());
+     * A candidate file of the scanned directory. Attributes are read from the file system
+     * at most once per scan, instead of on every comparison while sorting
+     */
+    private static class ScannedFile {
+
+        private final FileObject fileObject;
+        private Long size;
+        private Long lastModifiedTime;
+
+        ScannedFile(FileObject fileObject) {
+            this.fileObject = fileObject;
         }
-    }
 
-    class FileLastmodifiedtimestampAscComparator implements Comparator<FileObject> {
-        @Override
-        public int compare(FileObject o1, FileObject o2) {
-            Long lDiff = 0l;
-            try {
-                lDiff = o1.getContent().getLastModifiedTime()
-                        - o2.getContent().getLastModifiedTime();
-            } catch (FileSystemException e) {
-                log.warn("Unable to compare lastmodified timestamp of the two files.", e);
+        long getSize() {
+            if (size == null) {
+                try {
+                    size = fileObject.getContent().getSize();
+                } catch (FileSystemException e) {
+                    log.warn("Unable to read the size of the file.", e);
+                    size = -1L;
+                }
             }
-            return lDiff.intValue();
+            return size;
         }
-    }
 
-    class FileSizeAscComparator implements Comparator<FileObject> {
-        @Override
-        public int compare(FileObject o1, FileObject o2) {
-            Long lDiff = 0l;
-            try {
-                lDiff = o1.getContent().getSize() - o2.getContent().getSize();
-            } catch (FileSystemException e) {
-                log.warn("Unable to compare size of the two files.", e);
+        long getLastModifiedTime() {
+            if (lastModifiedTime == null) {
+                try {
+                    lastModifiedTime = fileObject.getContent().getLastModifiedTime();
+                } catch (FileSystemException e) {
+                    log.warn("Unable to read the lastmodified timestamp of the file.", e);
+                    lastModifiedTime = -1L;
+                }
             }
-            return lDiff.intValue();
+            return lastModifiedTime;
         }
     }
 
-    class FileNameDesComparator implements Comparator<FileObject> {
-        @Override
-        public int compare(FileObject o1, FileObject o2) {
-            return o2.getName().compareTo(o1.getName());
+    /**
+     * Comparator classed used to sort the files according to user input
+     * */
+    private static class ScannedFileComparator implements Comparator<ScannedFile> {
+
+        private final String sortParam;
+        private final boolean ascending;
+
+        ScannedFileComparator(String sortParam, boolean ascending) {
+            this.sortParam = sortParam;
+            this.ascending = ascending;
         }
-    }
 
-    class FileLastmodifiedtimestampDesComparator implements Comparator<FileObject> {
         @Override
-        public int compare(FileObject o1, FileObject o2) {
-            Long lDiff = 0l;
-            try {
-                lDiff = o2.getContent().getLastModifiedTime()
-                        - o1.getContent().getLastModifiedTime();
-            } catch (FileSystemException e) {
-                log.warn("Unable to compare lastmodified timestamp of the two files.", e);
+        public int compare(ScannedFile o1, ScannedFile o2) {
+            int result;
+            if (VFSConstants.FILE_SORT_VALUE_SIZE.equals(sortParam)) {
+                result = Long.compare(o1.getSize(), o2.getSize());
+            } else if (VFSConstants.FILE_SORT_VALUE_LASTMODIFIEDTIMESTAMP.equals(sortParam)) {
+                result = Long.compare(o1.getLastModifiedTime(), o2.getLastModifiedTime());
+            } else {
+                result = o1.fileObject.getName().compareTo(o2.fileObject.getName());
             }
-            return lDiff.intValue();
+            return ascending ? result : -result;
         }
     }
 
-    class FileSizeDesComparator implements Comparator<FileObject> {
-        @Override
-        public int compare(FileObject o1, FileObject o2) {
-            Long lDiff = 0l;
-            try {
-                lDiff = o2.getContent().getSize() - o1.getContent().getSize();
-            } catch (FileSystemException e) {
-                log.warn("Unable to compare size of the two files.", e);
+    /**
+     * Counters of a directory scan, updated by the file processing workers
+     */
+    private static class ScanResult {
+
+        private final AtomicInteger processCount = new AtomicInteger();
+        private final AtomicInteger successCount = new AtomicInteger();
+        private final AtomicInteger failCount = new AtomicInteger();
+
+        /**
+         * @return false if the processing limit of the cycle is already reached
+         */
+        boolean startProcessing(Integer processingLimit) {
+            while (true) {
+                int current = processCount.get();
+                if (processingLimit != null && current >= processingLimit) {
+                    return false;
+                }
+                if (processCount.compareAndSet(current, current + 1)) {
+                    return true;
+                }
             }
-            return lDiff.intValue();
         }
     }
 
@@ -944,6 +1237,12 @@ public class FilePollingConsumer {
     }
 
     void destroy() {
+        if (fileProcessingPool != null) {
+            fileProcessingPool.shutdown();
+        }
+        if (injectHandler != null) {
+            injectHandler.destroy();
+        }
         fsManager.close();
     }
 }
@@ -0,0 +1,162 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.protocol.file;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ *
+ * Keeps track of the records of a file which are mediated, so a file which
+ * was interrupted is resumed after the last record of the uninterrupted
+ * sequence of mediated records. Records may complete out of order when they
+ * are mediated in parallel. The checkpoint is bound to the size and the last
+ * modified time of the file, and a changed file starts from the beginning.
+ * Without a local store the checkpoint is kept in memory by the inject
+ * handler for as long as the file is being resumed.
+ *
+ */
+public class FileRecordCheckpoint {
+
+    private static final Log log = LogFactory.getLog(FileRecordCheckpoint.class);
+
+    private static final String RECORDS = "records";
+    private static final String FILE_SIZE = "file.size";
+    private static final String FILE_LAST_MODIFIED = "file.lastModified";
+
+    private final File store;
+    private final long fileSize;
+    private final long fileLastModified;
+    private final int interval;
+
+    private long completedRecords;
+    private long savedRecords;
+    private final TreeSet<Long> completedOutOfOrder = new TreeSet<>();
+
+    /**
+     * @param store local file of the checkpoint, or null to only track the records in memory
+     * @param interval number of completed records between two writes of the checkpoint
+     */
+    public FileRecordCheckpoint(File store, long fileSize, long fileLastModified, int interval) {
+        this.store = store;
+        this.fileSize = fileSize;
+        this.fileLastModified = fileLastModified;
+        this.interval = Math.max(1, interval);
+        load();
+    }
+
+    /**
+     * @return true if the checkpoint was taken for the file of the given size and last modified time
+     */
+    public boolean isFor(long fileSize, long fileLastModified) {
+        return this.fileSize == fileSize && this.fileLastModified == fileLastModified;
+    }
+
+    /**
+     * @return number of leading records of the file which are already mediated
+     */
+    public synchronized long getCompletedRecords() {
+        return completedRecords;
+    }
+
+    /**
+     * Mark the record with the given number, starting from 1, as mediated
+     */
+    public synchronized void complete(long recordNumber) {
+        if (recordNumber <= completedRecords) {
+            return;
+        }
+        completedOutOfOrder.add(recordNumber);
+        while (!completedOutOfOrder.isEmpty() && completedOutOfOrder.first() == completedRecords + 1) {
+            completedOutOfOrder.pollFirst();
+            completedRecords++;
+        }
+        if (completedRecords - savedRecords >= interval) {
+            save();
+        }
+    }
+
+    /**
+     * Write the checkpoint if it has advanced since it was last written
+     */
+    public synchronized void save() {
+        if (store == null || completedRecords == savedRecords) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(RECORDS, String.valueOf(completedRecords));
+        checkpoint.setProperty(FILE_SIZE, String.valueOf(fileSize));
+        checkpoint.setProperty(FILE_LAST_MODIFIED, String.valueOf(fileLastModified));
+        File tempStore = new File(store.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempStore);
+            checkpoint.store(out, null);
+            out.close();
+            out = null;
+            Files.move(tempStore.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            savedRecords = completedRecords;
+        } catch (IOException e) {
+            log.warn("Unable to write the record checkpoint " + store, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Remove the checkpoint once the file does not need to be resumed anymore
+     */
+    public synchronized void delete() {
+        if (store != null && store.exists() && !store.delete()) {
+            log.warn("Unable to delete the record checkpoint " + store);
+        }
+    }
+
+    private void load() {
+        if (store == null || !store.exists()) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(store);
+            checkpoint.load(in);
+            if (String.valueOf(fileSize).equals(checkpoint.getProperty(FILE_SIZE))
+                    && String.valueOf(fileLastModified).equals(checkpoint.getProperty(FILE_LAST_MODIFIED))) {
+                completedRecords = Long.parseLong(checkpoint.getProperty(RECORDS));
+                savedRecords = completedRecords;
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Unable to read the record checkpoint " + store + ", the file is read from the beginning", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
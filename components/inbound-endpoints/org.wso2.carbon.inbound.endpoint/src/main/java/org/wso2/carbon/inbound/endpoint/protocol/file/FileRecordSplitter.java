@@ -0,0 +1,325 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.protocol.file;
+
+import org.apache.axiom.om.util.StAXUtils;
+import org.apache.synapse.SynapseException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ *
+ * Splits the content of a file into records while reading it, so only the
+ * record at hand is held in memory. Records are split on lines, on a
+ * delimiter or on the elements found at an XML element path.
+ *
+ */
+public abstract class FileRecordSplitter implements Closeable {
+
+    public static final String SPLIT_MODE_LINE = "line";
+    public static final String SPLIT_MODE_DELIMITER = "delimiter";
+    public static final String SPLIT_MODE_XML = "xml";
+
+    /**
+     * Create the splitter of the given mode
+     *
+     * @param mode one of line, delimiter or xml
+     * @param in content of the file, closed together with the splitter
+     * @param charset encoding of the content and of the returned text records
+     * @param delimiter record delimiter for the delimiter mode
+     * @param elementPath slash separated path of the record elements for the xml mode. A relative path
+     *            matches at any depth
+     */
+    public static FileRecordSplitter create(String mode, InputStream in, Charset charset, String delimiter,
+            String elementPath) {
+        if (SPLIT_MODE_LINE.equalsIgnoreCase(mode)) {
+            return new DelimiterSplitter(in, charset, null);
+        } else if (SPLIT_MODE_DELIMITER.equalsIgnoreCase(mode)) {
+            if (delimiter == null || delimiter.isEmpty()) {
+                throw new SynapseException("A record delimiter is required for the delimiter split mode");
+            }
+            return new DelimiterSplitter(in, charset, delimiter);
+        } else if (SPLIT_MODE_XML.equalsIgnoreCase(mode)) {
+            if (elementPath == null || elementPath.trim().isEmpty()) {
+                throw new SynapseException("A record element path is required for the xml split mode");
+            }
+            return new XMLElementSplitter(in, charset, elementPath);
+        }
+        throw new SynapseException("Unknown record split mode : " + mode);
+    }
+
+    protected final InputStream in;
+
+    protected FileRecordSplitter(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next record, or null once the content is fully read
+     */
+    public abstract byte[] nextRecord() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Splits text on line breaks, or on the given delimiter. Empty records are skipped.
+     */
+    private static class DelimiterSplitter extends FileRecordSplitter {
+
+        private final BufferedReader reader;
+        private final Charset charset;
+        private final String delimiter;
+        private final StringBuilder record = new StringBuilder();
+        private boolean endOfContent;
+
+        DelimiterSplitter(InputStream in, Charset charset, String delimiter) {
+            super(in);
+            this.reader = new BufferedReader(new InputStreamReader(in, charset));
+            this.charset = charset;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public byte[] nextRecord() throws IOException {
+            while (!endOfContent) {
+                String text = delimiter == null ? readLine() : readUntilDelimiter();
+                if (text != null && !text.isEmpty()) {
+                    return text.getBytes(charset);
+                }
+            }
+            return null;
+        }
+
+        private String readLine() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                endOfContent = true;
+            }
+            return line;
+        }
+
+        private String readUntilDelimiter() throws IOException {
+            record.setLength(0);
+            int c;
+            while ((c = reader.read()) != -1) {
+                record.append((char) c);
+                if (endsWithDelimiter()) {
+                    record.setLength(record.length() - delimiter.length());
+                    return record.toString();
+                }
+            }
+            endOfContent = true;
+            return record.toString();
+        }
+
+        private boolean endsWithDelimiter() {
+            int offset = record.length() - delimiter.length();
+            if (offset < 0) {
+                return false;
+            }
+            for (int i = 0; i < delimiter.length(); i++) {
+                if (record.charAt(offset + i) != delimiter.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Pulls the XML content with StAX and serializes every element found at the element path as a record
+     * of its own, re-declaring the namespaces inherited from its ancestors.
+     */
+    private static class XMLElementSplitter extends FileRecordSplitter {
+
+        private final XMLStreamReader reader;
+        private final String charset;
+        private final String[] elementPath;
+        private final boolean absolutePath;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+        /* local names and namespace declarations of the open elements above a record */
+        private final List<String> openElements = new ArrayList<>();
+        private final List<String[]> namespaceBindings = new ArrayList<>();
+        private final List<Integer> namespaceScopes = new ArrayList<>();
+
+        XMLElementSplitter(InputStream in, Charset charset, String elementPath) {
+            super(in);
+            try {
+                this.reader = StAXUtils.createXMLStreamReader(in, charset.name());
+            } catch (XMLStreamException e) {
+                throw new SynapseException("Unable to read the XML content of the file", e);
+            }
+            this.charset = charset.name();
+            String path = elementPath.trim();
+            this.absolutePath = path.startsWith("/");
+            this.elementPath = (absolutePath ? path.substring(1) : path).split("/");
+        }
+
+        @Override
+        public byte[] nextRecord() throws IOException {
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        openElements.add(reader.getLocalName());
+                        if (isRecordElement()) {
+                            openElements.remove(openElements.size() - 1);
+                            return writeRecord();
+                        }
+                        namespaceScopes.add(namespaceBindings.size());
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            namespaceBindings.add(new String[] { nonNull(reader.getNamespacePrefix(i)),
+                                    nonNull(reader.getNamespaceURI(i)) });
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        openElements.remove(openElements.size() - 1);
+                        int scope = namespaceScopes.remove(namespaceScopes.size() - 1);
+                        namespaceBindings.subList(scope, namespaceBindings.size()).clear();
+                    }
+                }
+                return null;
+            } catch (XMLStreamException e) {
+                throw new IOException("Error while reading the XML content of the file", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+                // the underlying stream is closed anyway
+            }
+            super.close();
+        }
+
+        private boolean isRecordElement() {
+            int depth = openElements.size();
+            if (absolutePath ? depth != elementPath.length : depth < elementPath.length) {
+                return false;
+            }
+            for (int i = 1; i <= elementPath.length; i++) {
+                if (!elementPath[elementPath.length - i].equals(openElements.get(depth - i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Copies the element the reader is positioned on, with all its content
+         */
+        private byte[] writeRecord() throws XMLStreamException {
+            record.reset();
+            XMLStreamWriter writer = StAXUtils.createXMLStreamWriter(record, charset);
+            writer.writeStartDocument(charset, "1.0");
+            writeStartElement(writer, true);
+            int depth = 1;
+            while (depth > 0 && reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    writeStartElement(writer, false);
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(),
+                            reader.getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    break;
+                default:
+                    // nothing else can occur within an element
+                }
+            }
+            writer.writeEndDocument();
+            writer.close();
+            return record.toByteArray();
+        }
+
+        private void writeStartElement(XMLStreamWriter writer, boolean recordRoot) throws XMLStreamException {
+            writer.writeStartElement(nonNull(reader.getPrefix()), reader.getLocalName(),
+                    nonNull(reader.getNamespaceURI()));
+            List<String> declaredPrefixes = new ArrayList<>();
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = nonNull(reader.getNamespacePrefix(i));
+                writeNamespace(writer, prefix, nonNull(reader.getNamespaceURI(i)));
+                declaredPrefixes.add(prefix);
+            }
+            if (recordRoot) {
+                // innermost ancestor declarations first, as they hide the outer ones
+                for (int i = namespaceBindings.size() - 1; i >= 0; i--) {
+                    String[] binding = namespaceBindings.get(i);
+                    if (!declaredPrefixes.contains(binding[0])) {
+                        writeNamespace(writer, binding[0], binding[1]);
+                        declaredPrefixes.add(binding[0]);
+                    }
+                }
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                writer.writeAttribute(nonNull(reader.getAttributePrefix(i)),
+                        nonNull(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+                        reader.getAttributeValue(i));
+            }
+        }
+
+        private void writeNamespace(XMLStreamWriter writer, String prefix, String namespaceURI)
+                throws XMLStreamException {
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                return;
+            }
+            if (prefix.isEmpty()) {
+                writer.writeDefaultNamespace(namespaceURI);
+            } else {
+                writer.writeNamespace(prefix, namespaceURI);
+            }
+        }
+
+        private static String nonNull(String value) {
+            return value == null ? "" : value;
+        }
+    }
+}
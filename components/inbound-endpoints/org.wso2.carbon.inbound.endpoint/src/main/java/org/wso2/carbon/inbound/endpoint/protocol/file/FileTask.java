@@ -47,6 +47,12 @@ public class FileTask extends InboundTask {
         fileScanner.execute();
     }
 
+    @Override
+    protected int pollCycle() {
+        logger.debug("File Task executing.");
+        return fileScanner.execute(false);
+    }
+
     @Override
     public Properties getInboundProperties() {
         return fileScanner.getInboundProperties();
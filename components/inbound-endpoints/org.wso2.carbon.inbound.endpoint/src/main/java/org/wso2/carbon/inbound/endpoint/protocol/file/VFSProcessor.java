@@ -98,6 +98,16 @@ public class VFSProcessor extends InboundRequestProcessorImpl implements TaskSta
         // This will not be called for inbound endpoints
     }
 
+    /**
+     * Stop the inbound polling processor, then the threads processing files and records
+     */
+    public void destroy() {
+        super.destroy();
+        if (fileScanner != null) {
+            fileScanner.destroy();
+        }
+    }
+
     /**
      * Remove inbound endpoints.
      *
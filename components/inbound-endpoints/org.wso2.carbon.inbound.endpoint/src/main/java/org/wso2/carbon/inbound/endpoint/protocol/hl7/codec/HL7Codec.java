@@ -24,11 +24,12 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.context.MLLPContext;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLPConstants;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLProtocolException;
-import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7MessageUtils;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7MessageDataSource;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharsetDecoder;
+import java.util.Arrays;
 
 public class HL7Codec {
     private static final Log log = LogFactory.getLog(HL7Codec.class);
@@ -44,72 +45,116 @@ public class HL7Codec {
     public static final int WRITE_TRAILER  = 6;
     public static final int WRITE_COMPLETE = 7;
 
+    private static final int INITIAL_RAW_REQUEST_SIZE = 4 * 1024;
+
     private CharsetDecoder charsetDecoder;
 
     private volatile int state;
+    private volatile int writeState;
 
     private int responseReadPosition = 0;
     private byte[] responseBytes = null;
 
+    private byte[] rawRequest = new byte[INITIAL_RAW_REQUEST_SIZE];
+    private int rawRequestLength = 0;
+
+    private int requestSize;
+    private long decodeTime;
+
     public HL7Codec() {
         this.state = READ_HEADER;
+        this.writeState = WRITE_COMPLETE;
         this.charsetDecoder = MLLPConstants.UTF8_CHARSET.newDecoder();
     }
 
     public HL7Codec(CharsetDecoder charsetDecoder) {
         this.state = READ_HEADER;
+        this.writeState = WRITE_COMPLETE;
         setCharsetDecoder(charsetDecoder);
     }
 
-    public int decode(ByteBuffer dst, MLLPContext context) throws IOException, MLLProtocolException, HL7Exception {
+    /**
+     * Read the requests framed in the buffer. Every complete request is queued on the context, and a request
+     * which is not complete yet is carried on to the next buffer, so a sender may stream several requests
+     * without waiting for their responses.
+     * @return number of requests completed
+     */
+    public int decode(ByteBuffer dst, MLLPContext context) throws IOException, MLLProtocolException {
 
-        if (this.state >= READ_COMPLETE || dst.position() < 0) {
+        if (dst.position() < 0) {
             return -1;
         }
 
-        if (this.state == READ_HEADER) {
-            if(dst.get(0) == MLLPConstants.HL7_HEADER[0]) {
-                dst.position(1);
-                this.state = READ_CONTENT;
-            } else {
-                throw new MLLProtocolException("Could not find header in incoming message.");
-            }
-        }
+        int requests = 0;
+
+        while (dst.hasRemaining()) {
+            long start = System.nanoTime();
 
-        if (this.state == READ_CONTENT) {
+            if (this.state == READ_HEADER) {
+                if (dst.get(dst.position()) == MLLPConstants.HL7_HEADER[0]) {
+                    dst.position(dst.position() + 1);
+                    this.state = READ_CONTENT;
+                    this.rawRequestLength = 0;
+                    this.requestSize = 0;
+                    this.decodeTime = 0;
+                } else {
+                    throw new MLLProtocolException("Could not find header in incoming message.");
+                }
+            }
 
+            int limit = dst.limit();
+            int next = limit;
             int trailerIndex = findTrailer(dst);
 
-            if(trailerIndex > -1) {
-                dst.limit(trailerIndex);
+            if (trailerIndex > -1) {
+                dst.limit(Math.max(dst.position(), trailerIndex));
+                next = trailerIndex + 1 + MLLPConstants.HL7_TRAILER.length;
                 this.state = READ_TRAILER;
             }
 
-            context.getRequestBuffer().append(charsetDecoder.decode(dst).toString());
-        }
-
-        if (this.state == READ_TRAILER) {
-            this.state = READ_COMPLETE;
-            try {
-                if (context.isPreProcess()) {
-                    context.setHl7Message(HL7MessageUtils.parse(context.getRequestBuffer().toString(),
-                            context.getPreProcessParser()));
-                } else {
-                    context.setHl7Message(HL7MessageUtils.parse(context.getRequestBuffer().toString(), context.isValidateMessage()));
+            requestSize += dst.remaining();
+            appendRawRequest(dst);
+            dst.limit(limit);
+            dst.position(next);
+
+            if (this.state == READ_TRAILER) {
+                // the request takes the buffer over, the next request is read into a new one
+                context.addRequest(new HL7MessageDataSource(rawRequest, rawRequestLength,
+                        charsetDecoder.charset(), context.getPreProcessParser(), context.isValidateMessage(),
+                        context.getMetrics()));
+                rawRequest = new byte[Math.max(INITIAL_RAW_REQUEST_SIZE, rawRequestLength)];
+                rawRequestLength = 0;
+                requests++;
+
+                decodeTime += System.nanoTime() - start;
+                if (context.getMetrics() != null) {
+                    context.getMetrics().messageDecoded(requestSize, decodeTime);
                 }
-                context.getRequestBuffer().setLength(0);
-            } catch (HL7Exception e) {
-                log.error("Error while parsing request message: " + context.getRequestBuffer());
-                throw e;
+                this.state = READ_HEADER;
+            } else {
+                decodeTime += System.nanoTime() - start;
             }
         }
 
-        return 0;
+        return requests;
 
     }
 
+    private void appendRawRequest(ByteBuffer src) {
+        int length = src.remaining();
+        if (rawRequestLength + length > rawRequest.length) {
+            rawRequest = Arrays.copyOf(rawRequest, Math.max(rawRequest.length * 2, rawRequestLength + length));
+        }
+        src.get(rawRequest, rawRequestLength, length);
+        rawRequestLength += length;
+    }
+
+    /**
+     * @return index of the byte ending the content of the request, which is left out of it as the
+     * existing readers of the content expect, or -1 if the trailer is not in the buffer
+     */
     private int findTrailer(ByteBuffer dst) {
-        for(int i=0; i<dst.limit(); i++) {
+        for(int i=dst.position(); i<dst.limit() - 1; i++) {
             if(dst.get(i) == MLLPConstants.HL7_TRAILER[0]) {
                 if(dst.get(i+1) == MLLPConstants.HL7_TRAILER[1]) {
                     return i-1;
@@ -122,27 +167,27 @@ public class HL7Codec {
 
     public int encode(ByteBuffer outBuf, MLLPContext context) throws HL7Exception, IOException {
 
-        if (this.state < READ_COMPLETE) {
-            return 0;
-        }
-
-        if (this.state == READ_COMPLETE) {
+        if (this.writeState == WRITE_COMPLETE) {
+            if (!context.isRequestInProgress()) {
+                return 0;
+            }
 
             if ((context.isAutoAck() || context.isApplicationAck()) && !context.isNackMode()) {
-                responseBytes = context.getHl7Message().generateACK().encode().getBytes(charsetDecoder.charset());
+                if (context.getRawMessage() != null && !context.getRawMessage().isParsed()) {
+                    // acknowledge a deferred request without parsing it
+                    responseBytes = context.getRawMessage().createAck().getBytes(charsetDecoder.charset());
+                } else {
+                    responseBytes = context.getHl7Message().generateACK().encode().getBytes(charsetDecoder.charset());
+                }
                 context.setApplicationAck(false);
             } else {
                 responseBytes = context.getHl7Message().encode().getBytes(charsetDecoder.charset());
             }
 
-            this.state = WRITE_HEADER;
+            this.writeState = WRITE_HEADER;
         }
 
-        if (this.state >= WRITE_HEADER) {
-            return fillBuffer(outBuf, responseBytes);
-        }
-
-        return 0;
+        return fillBuffer(outBuf, responseBytes);
     }
 
     private int fillBuffer(ByteBuffer byteBuffer, byte[] responseBytes) {
@@ -154,10 +199,10 @@ public class HL7Codec {
         int count = 0;
         int headerPosition = 0;
 
-        if (this.state == WRITE_HEADER) {
+        if (this.writeState == WRITE_HEADER) {
             byteBuffer.put(MLLPConstants.HL7_HEADER[0]);
             headerPosition = 1;
-            this.state = WRITE_CONTENT;
+            this.writeState = WRITE_CONTENT;
         }
 
         int MAX = byteBuffer.capacity();
@@ -174,7 +219,7 @@ public class HL7Codec {
         responseReadPosition += count;
 
         if (responseReadPosition == responseBytes.length) {
-            this.state = WRITE_TRAILER;
+            this.writeState = WRITE_TRAILER;
             responseReadPosition = 0;
         }
 
@@ -182,16 +227,8 @@ public class HL7Codec {
         return count;
     }
 
-    public boolean isReadComplete() {
-        if (this.state >= READ_COMPLETE) {
-            return true;
-        }
-
-        return false;
-    }
-
     public boolean isWriteTrailer() {
-        if (this.state == WRITE_TRAILER) {
+        if (this.writeState == WRITE_TRAILER) {
             return true;
         }
 
@@ -199,7 +236,7 @@ public class HL7Codec {
     }
 
     public boolean isWriteComplete() {
-        if (this.state == WRITE_COMPLETE) {
+        if (this.writeState == WRITE_COMPLETE) {
             return true;
         }
 
@@ -214,6 +251,17 @@ public class HL7Codec {
         this.state = state;
     }
 
+    /**
+     * @return state of the response being written, WRITE_COMPLETE when no response is being written
+     */
+    public int getWriteState() {
+        return writeState;
+    }
+
+    public void setWriteState(int writeState) {
+        this.writeState = writeState;
+    }
+
     public CharsetDecoder getCharsetDecoder() {
         return charsetDecoder;
     }
@@ -18,8 +18,10 @@ package org.wso2.carbon.inbound.endpoint.protocol.hl7.context;
  * under the License.
  */
 
+import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.parser.Parser;
+import io.netty.util.Timeout;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.nio.reactor.EventMask;
@@ -27,8 +29,12 @@ import org.apache.http.nio.reactor.IOSession;
 import org.apache.synapse.transport.passthru.util.BufferFactory;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.codec.HL7Codec;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLPConstants;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7InboundMetrics;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7MessageDataSource;
 
 import java.nio.charset.CharsetDecoder;
+import java.util.ArrayDeque;
+import java.util.Queue;
 
 public class MLLPContext {
     private static final Log log = LogFactory.getLog(MLLPContext.class);
@@ -37,6 +43,7 @@ public class MLLPContext {
     private StringBuffer requestBuffer;
     private StringBuffer responseBuffer;
     private Message hl7Message;
+    private volatile HL7MessageDataSource rawMessage;
     private volatile HL7Codec codec;
     private long requestTime;
     private int expiry;
@@ -47,12 +54,20 @@ public class MLLPContext {
     private volatile boolean markForClose = false;
     private boolean preProcess = true;
     private boolean applicationAck = false;
+    private boolean deferParsing = false;
+    private int pipelineWindow = 1;
+
+    // requests read ahead while the request in progress waits for its response, in the order they were sent
+    private final Queue<HL7MessageDataSource> pendingRequests = new ArrayDeque<HL7MessageDataSource>();
+    private volatile boolean requestInProgress = false;
+    private volatile Timeout responseTimeout;
 
     private volatile String messageId;
 
 
     private Parser preProcessorParser = null;
     private BufferFactory bufferFactory;
+    private HL7InboundMetrics metrics;
 
     public MLLPContext(IOSession session,
                        CharsetDecoder decoder,
@@ -88,7 +103,18 @@ public class MLLPContext {
         return responseBuffer;
     }
 
+    /**
+     * @return the HL7 message of the context. The request is parsed here when its parsing is deferred, and null is
+     * returned if it can not be parsed
+     */
     public Message getHl7Message() {
+        if (this.hl7Message == null && this.rawMessage != null) {
+            try {
+                this.hl7Message = this.rawMessage.getMessage();
+            } catch (HL7Exception e) {
+                log.error("Error while parsing request message: " + this.rawMessage.getRawMessage(), e);
+            }
+        }
         return this.hl7Message;
     }
 
@@ -96,8 +122,78 @@ public class MLLPContext {
         this.hl7Message = hl7Message;
     }
 
+    public HL7MessageDataSource getRawMessage() {
+        return rawMessage;
+    }
+
+    /**
+     * Set the request whose parsing is deferred, in place of the previous HL7 message
+     */
+    public void setRawMessage(HL7MessageDataSource rawMessage) {
+        this.rawMessage = rawMessage;
+        this.hl7Message = null;
+    }
+
+    /**
+     * Queue a request read from the connection, to be processed once the requests before it are responded
+     */
+    public void addRequest(HL7MessageDataSource request) {
+        pendingRequests.add(request);
+    }
+
+    /**
+     * @return the next request to process, or null if no request is waiting
+     */
+    public HL7MessageDataSource pollRequest() {
+        return pendingRequests.poll();
+    }
+
+    /**
+     * @return number of requests read from the connection and not responded yet
+     */
+    public int getOutstandingRequests() {
+        return pendingRequests.size() + (requestInProgress ? 1 : 0);
+    }
+
+    public boolean isRequestInProgress() {
+        return requestInProgress;
+    }
+
+    public void setRequestInProgress(boolean requestInProgress) {
+        this.requestInProgress = requestInProgress;
+    }
+
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    public void setPipelineWindow(int pipelineWindow) {
+        this.pipelineWindow = Math.max(1, pipelineWindow);
+    }
+
+    /**
+     * @return whether as many requests as the pipeline window allows are waiting for their responses
+     */
+    public boolean isPipelineFull() {
+        return getOutstandingRequests() >= pipelineWindow;
+    }
+
+    public void setResponseTimeout(Timeout responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    public void cancelResponseTimeout() {
+        Timeout timeout = this.responseTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            this.responseTimeout = null;
+        }
+    }
+
     public void requestOutput() {
-        session.clearEvent(EventMask.READ);
+        if (pipelineWindow <= 1) {
+            session.clearEvent(EventMask.READ);
+        }
         session.setEvent(EventMask.WRITE);
     }
 
@@ -106,6 +202,17 @@ public class MLLPContext {
         session.setEvent(EventMask.READ);
     }
 
+    /**
+     * Stop reading requests until the pipeline window has room again
+     */
+    public void suspendInput() {
+        session.clearEvent(EventMask.READ);
+    }
+
+    public void resumeInput() {
+        session.setEvent(EventMask.READ);
+    }
+
     public void setRequestTime(long timeStamp) {
         this.requestTime = timeStamp;
     }
@@ -158,6 +265,22 @@ public class MLLPContext {
         this.nackMode = nackMode;
     }
 
+    public boolean isDeferParsing() {
+        return deferParsing;
+    }
+
+    public void setDeferParsing(boolean deferParsing) {
+        this.deferParsing = deferParsing;
+    }
+
+    public HL7InboundMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(HL7InboundMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public Parser getPreProcessParser() {
         return preProcessorParser;
     }
@@ -192,9 +315,22 @@ public class MLLPContext {
 
     public void reset() {
         // Resets MLLP Context and HL7Codec to default states.
+        finishRequest();
+        this.pendingRequests.clear();
+        this.getCodec().setState(HL7Codec.READ_HEADER);
+    }
+
+    /**
+     * Clears the state of the request in progress once its response is written. Requests read ahead and a
+     * request partially read are kept.
+     */
+    public void finishRequest() {
         this.responseBuffer.setLength(0);
         this.requestBuffer.setLength(0);
-        this.getCodec().setState(HL7Codec.READ_HEADER);
+        this.rawMessage = null;
+        this.requestInProgress = false;
+        cancelResponseTimeout();
+        this.getCodec().setWriteState(HL7Codec.WRITE_COMPLETE);
         this.setNackMode(false);
     }
 }
\ No newline at end of file
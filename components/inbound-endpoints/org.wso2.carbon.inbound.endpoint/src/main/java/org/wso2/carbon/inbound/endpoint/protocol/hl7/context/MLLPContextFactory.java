@@ -7,6 +7,7 @@ import org.apache.synapse.transport.passthru.util.BufferFactory;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.HL7Processor;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLPConstants;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.context.MLLPContext;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7InboundMetrics;
 
 import java.nio.charset.CharsetDecoder;
 
@@ -39,7 +40,14 @@ public class MLLPContextFactory {
         Parser preParser = (Parser) processor.getInboundParameterMap().get(MLLPConstants.HL7_PRE_PROC_PARSER_CLASS);
         BufferFactory bufferFactory = (BufferFactory) processor.getInboundParameterMap().get(MLLPConstants.INBOUND_HL7_BUFFER_FACTORY);
 
-        return new MLLPContext(session, decoder, autoAck, validate, preParser, bufferFactory);
+        MLLPContext context = new MLLPContext(session, decoder, autoAck, validate, preParser, bufferFactory);
+        context.setDeferParsing(Boolean.valueOf(inboundParams.getProperties()
+                .getProperty(MLLPConstants.PARAM_HL7_DEFER_PARSING)));
+        context.setPipelineWindow(Integer.valueOf(inboundParams.getProperties()
+                .getProperty(MLLPConstants.PARAM_HL7_PIPELINE_WINDOW)));
+        context.setMetrics((HL7InboundMetrics) processor.getInboundParameterMap().get(MLLPConstants.HL7_INBOUND_METRICS));
+
+        return context;
     }
 
 }
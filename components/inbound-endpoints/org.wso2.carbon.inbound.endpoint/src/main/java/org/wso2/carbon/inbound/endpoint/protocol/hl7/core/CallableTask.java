@@ -25,7 +25,7 @@ import java.util.concurrent.Callable;
  * specific language governing permissions and limitations
  * under the License.
  */
-public class CallableTask implements Callable<Boolean> {
+public class CallableTask implements Callable<Boolean>, Runnable {
     private static final Log log = LogFactory.getLog(CallableTask.class);
 
     private MessageContext requestMessageContext;
@@ -44,4 +44,13 @@ public class CallableTask implements Callable<Boolean> {
         // inject to synapse here, call synchronously.
         return synapseEnvironment.injectInbound(requestMessageContext, injectingSequence, true);
     }
+
+    @Override
+    public void run() {
+        try {
+            call();
+        } catch (Exception e) {
+            log.error("Error while injecting HL7 message " + requestMessageContext.getMessageID(), e);
+        }
+    }
 }
\ No newline at end of file
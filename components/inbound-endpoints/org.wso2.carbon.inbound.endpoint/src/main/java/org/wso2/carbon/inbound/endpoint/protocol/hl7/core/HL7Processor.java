@@ -1,6 +1,9 @@
 package org.wso2.carbon.inbound.endpoint.protocol.hl7.core;
 
 import ca.uhn.hl7v2.HL7Exception;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
 import org.apache.axis2.AxisFault;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -12,15 +15,16 @@ import org.apache.synapse.inbound.InboundProcessorParams;
 import org.apache.synapse.inbound.InboundResponseSender;
 import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.transport.customlogsetter.CustomLogSetter;
+import org.wso2.carbon.inbound.endpoint.common.KeyedSerialExecutor;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.context.MLLPContext;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.Axis2HL7Constants;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7ExecutorServiceFactory;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7InboundMetrics;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7MessageUtils;
 
 import java.nio.charset.CharsetDecoder;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,7 +47,8 @@ import java.util.concurrent.TimeUnit;
 public class HL7Processor implements InboundResponseSender {
     private static final Log log = LogFactory.getLog(HL7Processor.class);
 
-    private ScheduledExecutorService executorService = HL7ExecutorServiceFactory.getExecutorService();
+    private KeyedSerialExecutor executor = HL7ExecutorServiceFactory.getOrderedExecutor();
+    private Timer timeoutTimer = HL7ExecutorServiceFactory.getTimeoutTimer();
 
     private Map<String, Object> parameters;
     private InboundProcessorParams params;
@@ -53,6 +58,8 @@ public class HL7Processor implements InboundResponseSender {
     private boolean autoAck = true;
     private int timeOut;
 
+    private HL7InboundMetrics metrics;
+
     public HL7Processor(Map<String, Object> parameters) {
         this.parameters = parameters;
 
@@ -66,6 +73,8 @@ public class HL7Processor implements InboundResponseSender {
 
         timeOut = HL7MessageUtils.getInt(MLLPConstants.PARAM_HL7_TIMEOUT, params);
 
+        metrics = (HL7InboundMetrics) parameters.get(MLLPConstants.HL7_INBOUND_METRICS);
+
     }
 
     /**
@@ -78,8 +87,13 @@ public class HL7Processor implements InboundResponseSender {
 
         // Prepare Synapse Context for message injection
         MessageContext synCtx;
+        long buildStart = System.nanoTime();
         try {
-            synCtx = HL7MessageUtils.createSynapseMessageContext(mllpContext.getHl7Message(), params);
+            if (mllpContext.getRawMessage() != null) {
+                synCtx = HL7MessageUtils.createSynapseMessageContext(mllpContext.getRawMessage(), params);
+            } else {
+                synCtx = HL7MessageUtils.createSynapseMessageContext(mllpContext.getHl7Message(), params);
+            }
         } catch (HL7Exception e) {
             handleException(mllpContext, e.getMessage());
             return;
@@ -87,6 +101,9 @@ public class HL7Processor implements InboundResponseSender {
             handleException(mllpContext, e.getMessage());
             return;
         }
+        if (metrics != null) {
+            metrics.messageBuilt(System.nanoTime() - buildStart);
+        }
 
         mllpContext.setMessageId(synCtx.getMessageID());
         synCtx.setProperty("inbound.endpoint.name", params.getName());
@@ -113,13 +130,12 @@ public class HL7Processor implements InboundResponseSender {
         }
         injectSeq.setErrorHandler(onErrorSequence);
 
-        if (!autoAck && timeOut > 0) {
-            executorService.schedule(new TimeoutHandler(mllpContext, synCtx.getMessageID()), timeOut, TimeUnit.MILLISECONDS);
-        }
+        scheduleResponseTimeout(mllpContext, synCtx.getMessageID());
 
         CallableTask task = new CallableTask(synCtx, injectSeq);
 
-        executorService.submit(task);
+        // messages of a connection are mediated in the order they were received
+        executor.execute(mllpContext, task);
 
     }
 
@@ -129,7 +145,10 @@ public class HL7Processor implements InboundResponseSender {
         // Prepare Synapse Context for message injection
         MessageContext synCtx;
         try {
-            if (mllpContext.getRequestBuffer() != null) {
+            if (mllpContext.getRawMessage() != null) {
+                synCtx = HL7MessageUtils.
+                        createErrorMessageContext(mllpContext.getRawMessage().getRawMessage(), ex, params);
+            } else if (mllpContext.getRequestBuffer() != null) {
                 synCtx = HL7MessageUtils.
                         createErrorMessageContext(mllpContext.getRequestBuffer().toString(), ex, params);
             } else {
@@ -168,13 +187,12 @@ public class HL7Processor implements InboundResponseSender {
             injectSeq.init(synCtx.getEnvironment());
         }
 
-        if (!autoAck && timeOut > 0) {
-            executorService.schedule(new TimeoutHandler(mllpContext, synCtx.getMessageID()), timeOut, TimeUnit.MILLISECONDS);
-        }
+        scheduleResponseTimeout(mllpContext, synCtx.getMessageID());
 
         CallableTask task = new CallableTask(synCtx, injectSeq);
 
-        executorService.submit(task);
+        // messages of a connection are mediated in the order they were received
+        executor.execute(mllpContext, task);
     }
 
     /**
@@ -186,7 +204,11 @@ public class HL7Processor implements InboundResponseSender {
         org.apache.axis2.context.MessageContext axis2MsgCtx =
                 ((org.apache.synapse.core.axis2.Axis2MessageContext) synCtx).getAxis2MessageContext();
 
-        axis2MsgCtx.setProperty(Axis2HL7Constants.HL7_MESSAGE_OBJECT, context.getHl7Message());
+        // a deferred request is not parsed for the HL7 Axis2 transport, which only needs the HL7 message of
+        // invalid messages
+        if (context.getRawMessage() == null) {
+            axis2MsgCtx.setProperty(Axis2HL7Constants.HL7_MESSAGE_OBJECT, context.getHl7Message());
+        }
 
         if (params.getProperties().getProperty(MLLPConstants.PARAM_HL7_BUILD_RAW_MESSAGE) != null) {
             axis2MsgCtx.setProperty(Axis2HL7Constants.HL7_BUILD_RAW_MESSAGE, Boolean.valueOf(
@@ -226,6 +248,8 @@ public class HL7Processor implements InboundResponseSender {
             return;
         }
 
+        mllpContext.cancelResponseTimeout();
+
         try {
             if ((((String) messageContext.getProperty(Axis2HL7Constants.HL7_RESULT_MODE)) != null) &&
                     ((String) messageContext.getProperty(Axis2HL7Constants.HL7_RESULT_MODE)).equals(Axis2HL7Constants.HL7_RESULT_MODE_NACK)) {
@@ -257,6 +281,18 @@ public class HL7Processor implements InboundResponseSender {
         return autoAck;
     }
 
+    /**
+     * Respond with a NACK if the response of the request in progress is not sent back within the timeout
+     *
+     * @param messageId id of the message injected for the request
+     */
+    protected void scheduleResponseTimeout(MLLPContext mllpContext, String messageId) {
+        if (!autoAck && timeOut > 0) {
+            mllpContext.setResponseTimeout(timeoutTimer.newTimeout(
+                    new TimeoutHandler(mllpContext, messageId), timeOut, TimeUnit.MILLISECONDS));
+        }
+    }
+
     private void handleException(MLLPContext mllpContext, String msg) {
         if (mllpContext.isAutoAck()) {
             try {
@@ -271,7 +307,7 @@ public class HL7Processor implements InboundResponseSender {
         }
     }
 
-    private class TimeoutHandler implements Runnable {
+    private class TimeoutHandler implements TimerTask {
         private MLLPContext context;
         private String messageId;
 
@@ -280,7 +316,7 @@ public class HL7Processor implements InboundResponseSender {
             this.messageId = messageId;
         }
 
-        public void run() {
+        public void run(Timeout timeout) {
             if (messageId.equals(context.getMessageId())) {
                 try {
                     log.warn("Timed out while waiting for HL7 Response to be generated.");
@@ -59,6 +59,17 @@ public class MLLPConstants {
 
     public final static String PARAM_HL7_PASS_THROUGH_INVALID_MESSAGES = "inbound.hl7.PassThroughInvalidMessages";
 
+    // hand the raw ER7 message to mediation and parse it only when a mediator reads the payload. A message which
+    // is validated and auto acked is still parsed before its ACK, only its conversion to XML is deferred
+    public final static String PARAM_HL7_DEFER_PARSING = "inbound.hl7.DeferMessageParsing";
+
+    public final static String HL7_INBOUND_METRICS = "HL7_INBOUND_METRICS";
+
+    // number of requests a sender may send on a connection before their responses are written
+    public final static String PARAM_HL7_PIPELINE_WINDOW = "inbound.hl7.PipelineWindow";
+
+    public final static int DEFAULT_HL7_PIPELINE_WINDOW = 1;
+
     public final static String HL7_ID_GENERATOR = "hl7_id_generator";
 
     public final static String HL7_INBOUND_MSG_ID = "HL7_INBOUND_MSG_ID";
@@ -89,5 +100,13 @@ public class MLLPConstants {
 
         public final static int WORKER_THREADS_CORE_DEFAULT = 100;
 
+        public final static String TIMER_TICK_DURATION = "timer_tick_duration";
+
+        public final static int TIMER_TICK_DURATION_DEFAULT = 100;
+
+        public final static String TIMER_TICKS_PER_WHEEL = "timer_ticks_per_wheel";
+
+        public final static int TIMER_TICKS_PER_WHEEL_DEFAULT = 512;
+
     }
 }
@@ -18,8 +18,10 @@ package org.wso2.carbon.inbound.endpoint.protocol.hl7.core;
  * under the License.
  */
 import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.nio.reactor.EventMask;
 import org.apache.http.nio.reactor.IOEventDispatch;
 import org.apache.http.nio.reactor.IOSession;
 import org.apache.synapse.transport.passthru.util.BufferFactory;
@@ -27,6 +29,7 @@ import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.codec.HL7Codec;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.context.MLLPContext;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.context.MLLPContextFactory;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7MessageDataSource;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7MessageUtils;
 
 import java.io.IOException;
@@ -81,36 +84,21 @@ public class MLLPSourceHandler implements IOEventDispatch {
                 } catch (MLLProtocolException e) {
                     handleException(session, mllpContext, e);
                     clearInputBuffers(mllpContext);
-                    return;
-                } catch (HL7Exception e) {
-                    handleException(session, mllpContext, e);
-                    if (mllpContext.isAutoAck()) {
-                        mllpContext.setNackMode(true);
-                        mllpContext.setHl7Message(HL7MessageUtils.createDefaultNack(e.getMessage()));
-                        mllpContext.requestOutput();
-                    } else {
-                        hl7Processor.processError(mllpContext, e);
-                    }
+                    dispatchRequest(session, mllpContext);
                     return;
                 } catch (IOException e) {
                     shutdownConnection(session, mllpContext, e);
                     return;
                 }
-            }
-
-            if (mllpContext.getCodec().isReadComplete())  {
-                if (mllpContext.isAutoAck()) {
-                    mllpContext.requestOutput();
-                    bufferFactory.release(inputBuffer);
-                    inputBuffer = bufferFactory.getBuffer();
-                }
-                try {
-                    hl7Processor.processRequest(mllpContext);
-                } catch (Exception e) {
-                    shutdownConnection(session, mllpContext, e);
+                inputBuffer.clear();
+                if (mllpContext.isPipelineFull()) {
+                    // leave the rest in the socket until responses are written
+                    break;
                 }
             }
 
+            dispatchRequest(session, mllpContext);
+
             if (read < 0) {
                 clearInputBuffers(mllpContext);
                 session.close();
@@ -122,10 +110,70 @@ public class MLLPSourceHandler implements IOEventDispatch {
 
     }
 
+    /**
+     * Start processing the next request read from the connection unless a request is still waiting for its
+     * response, so that the responses are written in the order of the requests. Reading stops while the
+     * pipeline window is full.
+     */
+    private void dispatchRequest(IOSession session, MLLPContext mllpContext) {
+        if (!mllpContext.isRequestInProgress()) {
+            HL7MessageDataSource request = mllpContext.pollRequest();
+            if (request != null) {
+                mllpContext.setRequestInProgress(true);
+                processRequest(session, mllpContext, request);
+            }
+        }
+
+        if (mllpContext.isPipelineFull()) {
+            mllpContext.suspendInput();
+        } else if (!session.isClosed()) {
+            mllpContext.resumeInput();
+        }
+    }
+
+    private void processRequest(IOSession session, MLLPContext mllpContext, HL7MessageDataSource request) {
+        // an auto ACK tells the sender the message is valid, so a validated message is parsed before it is acked
+        if (mllpContext.isDeferParsing() && !(mllpContext.isAutoAck() && mllpContext.isValidateMessage())) {
+            mllpContext.setRawMessage(request);
+        } else {
+            try {
+                Message hl7Message = request.getMessage();
+                if (mllpContext.isDeferParsing()) {
+                    // only the conversion to XML is left to mediation
+                    mllpContext.setRawMessage(request);
+                } else {
+                    mllpContext.setHl7Message(hl7Message);
+                }
+            } catch (HL7Exception e) {
+                log.error("Error while parsing request message: " + request.getRawMessage());
+                mllpContext.getRequestBuffer().append(request.getRawMessage());
+                handleException(session, mllpContext, e);
+                if (mllpContext.isAutoAck()) {
+                    mllpContext.setNackMode(true);
+                    mllpContext.setHl7Message(HL7MessageUtils.createDefaultNack(e.getMessage()));
+                    mllpContext.requestOutput();
+                } else {
+                    hl7Processor.processError(mllpContext, e);
+                }
+                return;
+            }
+        }
+
+        if (mllpContext.isAutoAck()) {
+            mllpContext.requestOutput();
+        }
+        try {
+            hl7Processor.processRequest(mllpContext);
+        } catch (Exception e) {
+            shutdownConnection(session, mllpContext, e);
+        }
+    }
+
     private void clearInputBuffers(MLLPContext context) {
         bufferFactory.release(inputBuffer);
         inputBuffer = bufferFactory.getBuffer();
-        context.reset();
+        // requests read completely before the error are still responded
+        context.getCodec().setState(HL7Codec.READ_HEADER);
     }
 
     @Override
@@ -136,6 +184,12 @@ public class MLLPSourceHandler implements IOEventDispatch {
 
     private void writeOut(IOSession session, MLLPContext mllpContext) {
 
+        if (!mllpContext.isRequestInProgress()) {
+            // the response of a request which is no longer in progress, e.g. after a protocol error
+            session.clearEvent(EventMask.WRITE);
+            return;
+        }
+
         outputBuffer.clear();
         try {
             mllpContext.getCodec().encode(outputBuffer.getByteBuffer(), mllpContext);
@@ -156,7 +210,7 @@ public class MLLPSourceHandler implements IOEventDispatch {
             if (mllpContext.getCodec().isWriteTrailer()) {
                 session.channel().write(hl7TrailerBuf);
                 hl7TrailerBuf.flip();
-                mllpContext.getCodec().setState(HL7Codec.WRITE_COMPLETE);
+                mllpContext.getCodec().setWriteState(HL7Codec.WRITE_COMPLETE);
             }
 //            bufferFactory.release(outputBuffer);
         } catch (IOException e) {
@@ -170,8 +224,9 @@ public class MLLPSourceHandler implements IOEventDispatch {
                 bufferFactory.release(outputBuffer);
                 outputBuffer = bufferFactory.getBuffer();
                 mllpContext.setMessageId("RESPONDED");
-                mllpContext.reset();
-                mllpContext.requestInput();
+                mllpContext.finishRequest();
+                session.clearEvent(EventMask.WRITE);
+                dispatchRequest(session, mllpContext);
             }
         }
 
@@ -17,11 +17,13 @@ import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.HL7Processor;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.InboundHL7IOReactor;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLPConstants;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.Axis2HL7Constants;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7InboundMetrics;
 
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
@@ -46,6 +48,8 @@ public class HL7EndpointManager extends AbstractInboundEndpointManager {
 
     private static HL7EndpointManager instance = new HL7EndpointManager();
 
+    private final Map<Integer, HL7InboundMetrics> listenerMetrics = new ConcurrentHashMap<Integer, HL7InboundMetrics>();
+
     private HL7EndpointManager() {
         super();
     }
@@ -69,10 +73,21 @@ public class HL7EndpointManager extends AbstractInboundEndpointManager {
                 new BufferFactory(8 * 1024, new HeapByteBufferAllocator(), 1024));
         validateParameters(params, parameters);
 
+        HL7InboundMetrics metrics = new HL7InboundMetrics(port);
+        parameters.put(MLLPConstants.HL7_INBOUND_METRICS, metrics);
+
         HL7Processor hl7Processor = new HL7Processor(parameters);
         parameters.put(MLLPConstants.HL7_REQ_PROC, hl7Processor);
 
-        return InboundHL7IOReactor.bind(port, hl7Processor);
+        boolean bound = InboundHL7IOReactor.bind(port, hl7Processor);
+        if (bound) {
+            metrics.register();
+            HL7InboundMetrics previous = listenerMetrics.put(port, metrics);
+            if (previous != null) {
+                previous.unregister();
+            }
+        }
+        return bound;
     }
 
     @Override
@@ -112,6 +127,10 @@ public class HL7EndpointManager extends AbstractInboundEndpointManager {
         } else if (dataStore.isEndpointRegistryEmpty(port)) {
             // if no other endpoint is working on this port. close the listening endpoint
             InboundHL7IOReactor.unbind(port);
+            HL7InboundMetrics metrics = listenerMetrics.remove(port);
+            if (metrics != null) {
+                metrics.unregister();
+            }
         }
     }
 
@@ -132,6 +151,19 @@ public class HL7EndpointManager extends AbstractInboundEndpointManager {
                     String.valueOf(MLLPConstants.DEFAULT_HL7_TIMEOUT));
         }
 
+        try {
+            if (Integer.valueOf(params.getProperties().getProperty(MLLPConstants.PARAM_HL7_PIPELINE_WINDOW)) < 1) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            if (params.getProperties().getProperty(MLLPConstants.PARAM_HL7_PIPELINE_WINDOW) != null) {
+                log.warn("Parameter " + MLLPConstants.PARAM_HL7_PIPELINE_WINDOW + " in HL7 inbound " + params.getName() +
+                        " is not valid. Default value of " + MLLPConstants.DEFAULT_HL7_PIPELINE_WINDOW + " will be used.");
+            }
+            params.getProperties().setProperty(MLLPConstants.PARAM_HL7_PIPELINE_WINDOW,
+                    String.valueOf(MLLPConstants.DEFAULT_HL7_PIPELINE_WINDOW));
+        }
+
         try {
             if (params.getProperties().getProperty(MLLPConstants.PARAM_HL7_PRE_PROC) != null) {
                 final HL7MessagePreprocessor preProcessor = (HL7MessagePreprocessor) Class.forName(params.getProperties()
@@ -179,6 +211,17 @@ public class HL7EndpointManager extends AbstractInboundEndpointManager {
             }
         }
 
+        if (params.getProperties().getProperty(MLLPConstants.PARAM_HL7_DEFER_PARSING) == null) {
+            params.getProperties().setProperty(MLLPConstants.PARAM_HL7_DEFER_PARSING, "false");
+        } else {
+            if (!params.getProperties().getProperty(MLLPConstants.PARAM_HL7_DEFER_PARSING).equalsIgnoreCase("true") &&
+                    !params.getProperties().getProperty(MLLPConstants.PARAM_HL7_DEFER_PARSING).equalsIgnoreCase("false")) {
+                log.warn("Parameter " + MLLPConstants.PARAM_HL7_DEFER_PARSING + " in HL7 inbound " + params.getName() +
+                        " is not valid. Default value of false will be used.");
+                params.getProperties().setProperty(MLLPConstants.PARAM_HL7_DEFER_PARSING, "false");
+            }
+        }
+
         if (params.getProperties().getProperty(MLLPConstants.PARAM_HL7_PASS_THROUGH_INVALID_MESSAGES) == null) {
             params.getProperties().setProperty(MLLPConstants.PARAM_HL7_PASS_THROUGH_INVALID_MESSAGES, "false");
         } else {
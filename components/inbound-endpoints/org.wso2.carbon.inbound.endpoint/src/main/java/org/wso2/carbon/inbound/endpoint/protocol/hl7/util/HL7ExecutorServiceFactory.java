@@ -1,10 +1,15 @@
 package org.wso2.carbon.inbound.endpoint.protocol.hl7.util;
 
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.wso2.carbon.inbound.endpoint.common.KeyedSerialExecutor;
 import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLPConstants;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -26,15 +31,41 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class HL7ExecutorServiceFactory {
 
-    private static ScheduledExecutorService executorService = Executors.newScheduledThreadPool(
+    private static ExecutorService executorService = Executors.newFixedThreadPool(
             HL7Configuration.getInstance().getIntProperty(
                     MLLPConstants.TCPConstants.WORKER_THREADS_CORE,
                     MLLPConstants.TCPConstants.WORKER_THREADS_CORE_DEFAULT), HL7WorkerThreadFactory.getInstance());
 
-    public static ScheduledExecutorService getExecutorService() {
+    private static KeyedSerialExecutor orderedExecutor = new KeyedSerialExecutor(executorService);
+
+    // response timeouts neither take worker threads nor pile up in the queue of a scheduled executor
+    private static Timer timeoutTimer = new HashedWheelTimer(
+            new DefaultThreadFactory("HL7-inbound-timeout-timer", true),
+            HL7Configuration.getInstance().getIntProperty(
+                    MLLPConstants.TCPConstants.TIMER_TICK_DURATION,
+                    MLLPConstants.TCPConstants.TIMER_TICK_DURATION_DEFAULT), TimeUnit.MILLISECONDS,
+            HL7Configuration.getInstance().getIntProperty(
+                    MLLPConstants.TCPConstants.TIMER_TICKS_PER_WHEEL,
+                    MLLPConstants.TCPConstants.TIMER_TICKS_PER_WHEEL_DEFAULT));
+
+    public static ExecutorService getExecutorService() {
         return executorService;
     }
 
+    /**
+     * @return executor running the messages of a connection in order, on the worker pool
+     */
+    public static KeyedSerialExecutor getOrderedExecutor() {
+        return orderedExecutor;
+    }
+
+    /**
+     * @return timer of the response timeouts
+     */
+    public static Timer getTimeoutTimer() {
+        return timeoutTimer;
+    }
+
     private static class HL7WorkerThreadFactory implements ThreadFactory {
         final ThreadGroup group;
         final AtomicInteger threadNumber = new AtomicInteger(1);
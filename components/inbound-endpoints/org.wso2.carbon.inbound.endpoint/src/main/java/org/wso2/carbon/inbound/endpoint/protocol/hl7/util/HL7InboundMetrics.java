@@ -0,0 +1,121 @@
+package org.wso2.carbon.inbound.endpoint.protocol.hl7.util;
+
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HL7InboundMetrics implements HL7InboundMetricsMBean {
+
+    private static final String MBEAN_CATEGORY = "HL7Inbound";
+
+    private final int port;
+
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong builtMessages = new AtomicLong();
+    private final AtomicLong buildNanos = new AtomicLong();
+    private final AtomicLong parsedMessages = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+
+    public HL7InboundMetrics(int port) {
+        this.port = port;
+    }
+
+    public void messageDecoded(long size, long nanos) {
+        messages.incrementAndGet();
+        bytes.addAndGet(size);
+        decodeNanos.addAndGet(nanos);
+    }
+
+    public void messageBuilt(long nanos) {
+        builtMessages.incrementAndGet();
+        buildNanos.addAndGet(nanos);
+    }
+
+    public void messageParsed(long nanos) {
+        parsedMessages.incrementAndGet();
+        parseNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public long getMessageCount() {
+        return messages.get();
+    }
+
+    @Override
+    public long getByteCount() {
+        return bytes.get();
+    }
+
+    @Override
+    public long getAverageMessageSize() {
+        return average(bytes.get(), messages.get());
+    }
+
+    @Override
+    public long getParsedMessageCount() {
+        return parsedMessages.get();
+    }
+
+    @Override
+    public long getAverageDecodeTime() {
+        return TimeUnit.NANOSECONDS.toMicros(average(decodeNanos.get(), messages.get()));
+    }
+
+    @Override
+    public long getAverageBuildTime() {
+        return TimeUnit.NANOSECONDS.toMicros(average(buildNanos.get(), builtMessages.get()));
+    }
+
+    @Override
+    public long getAverageParseTime() {
+        return TimeUnit.NANOSECONDS.toMicros(average(parseNanos.get(), parsedMessages.get()));
+    }
+
+    @Override
+    public void reset() {
+        messages.set(0);
+        bytes.set(0);
+        decodeNanos.set(0);
+        builtMessages.set(0);
+        buildNanos.set(0);
+        parsedMessages.set(0);
+        parseNanos.set(0);
+    }
+
+    public void register() {
+        MBeanRegistrar.getInstance().registerMBean(this, MBEAN_CATEGORY, getMBeanId());
+    }
+
+    public void unregister() {
+        MBeanRegistrar.getInstance().unRegisterMBean(MBEAN_CATEGORY, getMBeanId());
+    }
+
+    private String getMBeanId() {
+        return String.valueOf(port);
+    }
+
+    private static long average(long total, long count) {
+        return count == 0 ? 0 : total / count;
+    }
+}
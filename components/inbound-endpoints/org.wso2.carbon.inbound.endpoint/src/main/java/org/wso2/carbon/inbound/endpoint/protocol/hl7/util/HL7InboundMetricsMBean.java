@@ -0,0 +1,67 @@
+package org.wso2.carbon.inbound.endpoint.protocol.hl7.util;
+
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Per message byte and time figures of an HL7 inbound listener, exposed through JMX.
+ */
+public interface HL7InboundMetricsMBean {
+
+    /**
+     * @return number of messages read from the connections of the listener
+     */
+    long getMessageCount();
+
+    /**
+     * @return number of bytes of the messages read, without the MLLP framing
+     */
+    long getByteCount();
+
+    /**
+     * @return average size of a message in bytes
+     */
+    long getAverageMessageSize();
+
+    /**
+     * @return number of messages parsed into a HAPI message. Messages whose parsing is deferred and never
+     *         needed by mediation are not counted
+     */
+    long getParsedMessageCount();
+
+    /**
+     * @return average time in microseconds spent reading the bytes of a message from the connection buffers
+     */
+    long getAverageDecodeTime();
+
+    /**
+     * @return average time in microseconds spent building the message context of a message
+     */
+    long getAverageBuildTime();
+
+    /**
+     * @return average time in microseconds spent parsing a message. A deferred message is parsed and
+     *         converted to XML when mediation first reads it
+     */
+    long getAverageParseTime();
+
+    /**
+     * Start counting from zero again
+     */
+    void reset();
+}
@@ -0,0 +1,194 @@
+package org.wso2.carbon.inbound.endpoint.protocol.hl7.util;
+
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.Parser;
+import org.apache.axiom.om.OMDataSource;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Holds the raw ER7 bytes of a request read from an MLLP connection, and provides the HL7 message element
+ * of the payload only when mediation reads it. The message is then parsed and converted to XML the same way
+ * it is when parsing is not deferred, so flows which only route or acknowledge the message never parse it.
+ */
+public class HL7MessageDataSource implements OMDataSource {
+    private static final Log log = LogFactory.getLog(HL7MessageDataSource.class);
+
+    private final byte[] er7;
+    private final int length;
+    private final Charset charset;
+    private final Parser preProcessParser;
+    private final boolean validateMessage;
+    private final HL7InboundMetrics metrics;
+
+    private volatile boolean buildRawMessage;
+
+    private Message message;
+    private OMElement messageElement;
+    private Boolean validationPassed;
+
+    /**
+     * @param er7 buffer holding the message, owned by the data source from now on
+     * @param length number of bytes of the message in the buffer
+     * @param preProcessParser parser of the message pre processor, or null to use the HAPI pipe parser
+     * @param metrics metrics of the listener the message was read from, or null
+     */
+    public HL7MessageDataSource(byte[] er7, int length, Charset charset, Parser preProcessParser,
+                                boolean validateMessage, HL7InboundMetrics metrics) {
+        this.er7 = er7;
+        this.length = length;
+        this.charset = charset;
+        this.preProcessParser = preProcessParser;
+        this.validateMessage = validateMessage;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Build an element holding the raw message instead of failing when the message can not be converted to XML
+     */
+    public void setBuildRawMessage(boolean buildRawMessage) {
+        this.buildRawMessage = buildRawMessage;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public String getRawMessage() {
+        return new String(er7, 0, length, charset);
+    }
+
+    public synchronized boolean isParsed() {
+        return message != null;
+    }
+
+    /**
+     * @return whether the message could be converted to XML, or null if mediation has not read it yet
+     */
+    public synchronized Boolean getValidationPassed() {
+        return validationPassed;
+    }
+
+    public synchronized Message getMessage() throws HL7Exception {
+        if (message == null) {
+            long start = System.nanoTime();
+            if (preProcessParser != null) {
+                message = HL7MessageUtils.parse(getRawMessage(), preProcessParser);
+            } else {
+                message = HL7MessageUtils.parse(getRawMessage(), validateMessage);
+            }
+            if (metrics != null) {
+                metrics.messageParsed(System.nanoTime() - start);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Create the auto-generated ACK of the message from its MSH segment, parsing the whole message only if the
+     * segment can not be read on its own, or if the message is validated, as an ACK must not accept an invalid one
+     */
+    public String createAck() throws HL7Exception {
+        String header = validateMessage ? null : getHeaderSegment();
+        String ack = header == null ? null : HL7MessageUtils.createAck(header);
+        if (ack == null) {
+            try {
+                ack = getMessage().generateACK().encode();
+            } catch (IOException e) {
+                throw new HL7Exception(e);
+            }
+        }
+        return ack;
+    }
+
+    /**
+     * The header is decoded by itself only when the message starts with MSH in a single byte encoding of
+     * ASCII, so the segment separator can be found in the bytes.
+     */
+    private String getHeaderSegment() {
+        if (length < 4 || er7[0] != 'M' || er7[1] != 'S' || er7[2] != 'H') {
+            return null;
+        }
+        for (int i = 3; i < length; i++) {
+            if (er7[i] == '\r' || er7[i] == '\n') {
+                return new String(er7, 0, i, charset);
+            }
+        }
+        return new String(er7, 0, length, charset);
+    }
+
+    private synchronized OMElement getMessageElement() throws XMLStreamException {
+        if (messageElement == null) {
+            try {
+                Message hl7Message = getMessage();
+                try {
+                    messageElement = HL7MessageUtils.generateHL7MessageElement(HL7MessageUtils.toXML(hl7Message));
+                    validationPassed = Boolean.TRUE;
+                } catch (HL7Exception e) {
+                    validationPassed = Boolean.FALSE;
+                    if (!buildRawMessage) {
+                        throw e;
+                    }
+                    messageElement = HL7MessageUtils.generateHL7RawMessaegElement(hl7Message.encode());
+                }
+            } catch (HL7Exception e) {
+                if (!buildRawMessage) {
+                    log.error("Could not convert deferred HL7 message into XML.", e);
+                    throw new XMLStreamException("Could not convert HL7 message into XML", e);
+                }
+                validationPassed = Boolean.FALSE;
+                messageElement = HL7MessageUtils.generateHL7RawMessaegElement(getRawMessage());
+            }
+        }
+        return messageElement;
+    }
+
+    @Override
+    public void serialize(OutputStream outputStream, OMOutputFormat omOutputFormat) throws XMLStreamException {
+        getMessageElement().serialize(outputStream, omOutputFormat);
+    }
+
+    @Override
+    public void serialize(Writer writer, OMOutputFormat omOutputFormat) throws XMLStreamException {
+        getMessageElement().serialize(writer, omOutputFormat);
+    }
+
+    @Override
+    public void serialize(XMLStreamWriter xmlStreamWriter) throws XMLStreamException {
+        getMessageElement().serialize(xmlStreamWriter);
+    }
+
+    @Override
+    public XMLStreamReader getReader() throws XMLStreamException {
+        return getMessageElement().getXMLStreamReader();
+    }
+}
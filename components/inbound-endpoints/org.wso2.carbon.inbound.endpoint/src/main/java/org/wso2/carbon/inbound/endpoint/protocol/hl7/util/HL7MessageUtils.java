@@ -57,7 +57,10 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
 
 public class HL7MessageUtils {
     private static final Log log = LogFactory.getLog(HL7MessageUtils.class);
@@ -67,6 +70,8 @@ public class HL7MessageUtils {
 
     private static ConfigurationContext context;
 
+    private static final String HL7_TIMESTAMP_FORMAT = "yyyyMMddHHmmss.SSSZ";
+
     static {
         noValidationContext.setValidationContext(new NoValidation());
         validationContext.setValidationContext(new DefaultValidation());
@@ -121,6 +126,26 @@ public class HL7MessageUtils {
         return synCtx;
     }
 
+    /**
+     * Create the message context of a message whose parsing is deferred. The payload is a message element
+     * which parses the message when mediation first reads it.
+     */
+    public static MessageContext createSynapseMessageContext(HL7MessageDataSource message,
+                                                             InboundProcessorParams params) throws AxisFault {
+
+        MessageContext synCtx = createSynapseMessageContext(params.getProperties()
+                .getProperty(MLLPConstants.HL7_INBOUND_TENANT_DOMAIN));
+
+        message.setBuildRawMessage(Boolean.valueOf(
+                params.getProperties().getProperty(MLLPConstants.PARAM_HL7_BUILD_RAW_MESSAGE)));
+
+        SOAPEnvelope envelope = fac.getDefaultEnvelope();
+        envelope.getBody().addChild(fac.createOMElement(message, Axis2HL7Constants.HL7_MESSAGE_ELEMENT_NAME, ns));
+        synCtx.setEnvelope(envelope);
+
+        return synCtx;
+    }
+
     public static MessageContext createErrorMessageContext(String rawMessage, Exception errorMsg,
                                                            InboundProcessorParams params) throws AxisFault, HL7Exception {
         MessageContext synCtx = createSynapseMessageContext(params.getProperties()
@@ -267,6 +292,57 @@ public class HL7MessageUtils {
         return messageEl;
     }
 
+    public static String toXML(Message message) throws HL7Exception {
+        return xmlParser.encode(message);
+    }
+
+    /**
+     * Create the ER7 encoded accept acknowledgement of a message from its MSH segment alone, with the same
+     * header fields the ACK generated by HAPI has.
+     * @param header MSH segment of the message
+     * @return the acknowledgement, or null if the segment does not have the fields it needs
+     * @throws HL7Exception if a message control id could not be generated
+     */
+    public static String createAck(String header) throws HL7Exception {
+        if (header.length() < 8 || !header.startsWith("MSH")) {
+            return null;
+        }
+        String fieldSeparator = String.valueOf(header.charAt(3));
+        // fields[i] is MSH-(i + 1), as the field separator itself is MSH-1
+        String[] fields = header.split(Pattern.quote(fieldSeparator), -1);
+        if (fields.length < 12 || fields[1].isEmpty()) {
+            return null;
+        }
+        String componentSeparator = String.valueOf(fields[1].charAt(0));
+        String[] messageType = fields[8].split(Pattern.quote(componentSeparator), -1);
+
+        String controlId;
+        try {
+            controlId = validationContext.getParserConfiguration().getIdGenerator().getID();
+        } catch (IOException e) {
+            throw new HL7Exception(e);
+        }
+
+        StringBuilder ack = new StringBuilder(header.length() + 32);
+        ack.append("MSH").append(fieldSeparator).append(fields[1])
+                .append(fieldSeparator).append(fields[4]).append(fieldSeparator).append(fields[5])
+                .append(fieldSeparator).append(fields[2]).append(fieldSeparator).append(fields[3])
+                .append(fieldSeparator).append(new SimpleDateFormat(HL7_TIMESTAMP_FORMAT).format(new Date()))
+                .append(fieldSeparator)
+                .append(fieldSeparator).append("ACK");
+        if (messageType.length > 1 && !messageType[1].isEmpty()) {
+            ack.append(componentSeparator).append(messageType[1]);
+        }
+        ack.append(fieldSeparator).append(controlId)
+                .append(fieldSeparator).append(fields[10])
+                .append(fieldSeparator).append(fields[11])
+                .append('\r')
+                .append("MSA").append(fieldSeparator).append(AcknowledgmentCode.AA.name())
+                .append(fieldSeparator).append(fields[9])
+                .append('\r');
+        return ack.toString();
+    }
+
     public static Message createNack(Message hl7Msg, String errorMsg) throws HL7Exception {
         if (errorMsg == null) {
             errorMsg = "";
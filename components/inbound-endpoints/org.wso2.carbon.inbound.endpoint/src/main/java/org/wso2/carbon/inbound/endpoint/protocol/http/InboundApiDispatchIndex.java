@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.protocol.http;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.AbstractSynapseObserver;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.rest.API;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix trie over the contexts of the APIs deployed in a synapse configuration, used by the HTTP inbound
+ * endpoints of a port to tell whether any API can take a request before running the API dispatch, which asks
+ * every deployed API in turn. The trie is built when the endpoint is deployed, and rebuilt and swapped whenever
+ * an API is deployed, updated or undeployed, so a lookup costs the number of segments of the request path
+ * whatever the number of APIs.
+ */
+public class InboundApiDispatchIndex extends AbstractSynapseObserver {
+
+    private static final String TEMPLATE_SEGMENT_START = "{";
+    private static final String PATH_SEPARATOR = "/";
+
+    private final SynapseConfiguration synapseConfiguration;
+    private volatile Node root;
+    private volatile boolean closed = false;
+
+    public InboundApiDispatchIndex(SynapseConfiguration synapseConfiguration) {
+        this.synapseConfiguration = synapseConfiguration;
+        rebuild();
+        // the configuration notifies its observers while holding its own lock when an API is changed
+        synchronized (synapseConfiguration) {
+            synapseConfiguration.registerObserver(this);
+        }
+    }
+
+    /**
+     * @param uri request URI, with or without the query
+     * @return false only if the context of no API deployed in the configuration of the message is a prefix of
+     *         the request path, so the API dispatch can be skipped
+     */
+    public boolean mayDispatchToAPI(MessageContext synCtx, String uri) {
+        Node currentRoot = root;
+        if (currentRoot == null || synCtx.getConfiguration() != synapseConfiguration) {
+            // the index is closed, or the configuration was replaced without redeploying the endpoint, let the
+            // API dispatch decide
+            return true;
+        }
+        if (uri == null || !uri.startsWith(PATH_SEPARATOR)) {
+            // not a plain request path, such as an absolute URI
+            return true;
+        }
+        return matches(currentRoot, getPathSegments(uri), 0);
+    }
+
+    /**
+     * @return whether the index follows the APIs of the given configuration
+     */
+    public boolean isFor(SynapseConfiguration configuration) {
+        return !closed && synapseConfiguration == configuration;
+    }
+
+    /**
+     * Stop following the API changes of the configuration
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            root = null;
+        }
+        // the configuration has no way to unregister an observer, so the list is changed under the lock the
+        // configuration holds while notifying its observers. The lock of the index is not held meanwhile, as a
+        // notification takes it to rebuild the trie.
+        synchronized (synapseConfiguration) {
+            synapseConfiguration.getObservers().remove(this);
+        }
+    }
+
+    @Override
+    public void apiAdded(API api) {
+        rebuild();
+    }
+
+    @Override
+    public void apiRemoved(API api) {
+        rebuild();
+    }
+
+    @Override
+    public void apiUpdated(API api) {
+        rebuild();
+    }
+
+    private synchronized void rebuild() {
+        if (closed) {
+            return;
+        }
+        Node newRoot = new Node();
+        // copy the APIs, the configuration may be changed while the trie is built
+        for (API api : new ArrayList<API>(synapseConfiguration.getAPIs())) {
+            Node node = newRoot;
+            for (String segment : getPathSegments(api.getContext())) {
+                node = node.child(segment);
+            }
+            node.apiContext = true;
+        }
+        root = newRoot;
+    }
+
+    /**
+     * An API takes the request if its context ends on a segment boundary of the path, which is the case when a
+     * node holding a context is passed while walking the path.
+     */
+    private static boolean matches(Node node, List<String> segments, int index) {
+        if (node.apiContext) {
+            return true;
+        }
+        if (index == segments.size()) {
+            return false;
+        }
+        Node child = node.children.get(segments.get(index));
+        if (child != null && matches(child, segments, index + 1)) {
+            return true;
+        }
+        return node.templateChild != null && matches(node.templateChild, segments, index + 1);
+    }
+
+    private static List<String> getPathSegments(String uri) {
+        List<String> segments = new ArrayList<String>();
+        if (uri == null) {
+            return segments;
+        }
+        int end = uri.length();
+        int queryStart = uri.indexOf('?');
+        if (queryStart >= 0) {
+            end = queryStart;
+        }
+        int fragmentStart = uri.indexOf('#');
+        if (fragmentStart >= 0 && fragmentStart < end) {
+            end = fragmentStart;
+        }
+        int start = 0;
+        while (start < end) {
+            int slash = uri.indexOf('/', start);
+            if (slash < 0 || slash > end) {
+                slash = end;
+            }
+            if (slash > start) {
+                segments.add(uri.substring(start, slash));
+            }
+            start = slash + 1;
+        }
+        return segments;
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        // a context segment which is a template, such as {version}, matches any segment of the path
+        private Node templateChild;
+        private boolean apiContext;
+
+        private Node child(String segment) {
+            if (segment.startsWith(TEMPLATE_SEGMENT_START)) {
+                if (templateChild == null) {
+                    templateChild = new Node();
+                }
+                return templateChild;
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+}
@@ -149,8 +149,16 @@ public class InboundHttpServerWorker extends ServerWorker {
 
                     boolean processedByAPI = false;
 
-                    // Trying to dispatch to an API
-                    processedByAPI = restHandler.process(synCtx);
+                    // Trying to dispatch to an API, unless no API context is a prefix of the request path
+                    InboundApiDispatchIndex apiDispatchIndex =
+                            HTTPEndpointManager.getInstance().getApiDispatchIndex(tenantDomain, port);
+                    if (apiDispatchIndex != null && !apiDispatchIndex.mayDispatchToAPI(synCtx, request.getUri())) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("No API context matches the requested URI, skipping dispatch to APIs.");
+                        }
+                    } else {
+                        processedByAPI = restHandler.process(synCtx);
+                    }
                     if (log.isDebugEnabled()) {
                         log.debug("Dispatch to API state : enabled, Message is "
                                   + (!processedByAPI ? "NOT" : "") + "processed by an API");
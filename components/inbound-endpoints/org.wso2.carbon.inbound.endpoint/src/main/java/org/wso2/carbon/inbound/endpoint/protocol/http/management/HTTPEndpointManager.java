@@ -19,6 +19,7 @@ package org.wso2.carbon.inbound.endpoint.protocol.http.management;
 
 import org.apache.log4j.Logger;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.inbound.InboundProcessorParams;
 import org.apache.synapse.transport.passthru.SourceHandler;
 import org.apache.synapse.transport.passthru.api.PassThroughInboundEndpointHandler;
@@ -27,6 +28,7 @@ import org.apache.synapse.transport.passthru.core.ssl.SSLConfiguration;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.inbound.endpoint.common.AbstractInboundEndpointManager;
 import org.wso2.carbon.inbound.endpoint.persistence.InboundEndpointInfoDTO;
+import org.wso2.carbon.inbound.endpoint.protocol.http.InboundApiDispatchIndex;
 import org.wso2.carbon.inbound.endpoint.protocol.http.InboundHttpConfiguration;
 import org.wso2.carbon.inbound.endpoint.protocol.http.InboundHttpConstants;
 import org.wso2.carbon.inbound.endpoint.protocol.http.InboundHttpSourceHandler;
@@ -57,6 +59,9 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
     private ConcurrentHashMap<String, ConcurrentHashMap<Integer, Pattern>> dispatchPatternMap =
             new ConcurrentHashMap<String, ConcurrentHashMap<Integer, Pattern>>();
 
+    private ConcurrentHashMap<String, ConcurrentHashMap<Integer, InboundApiDispatchIndex>> apiDispatchIndexMap =
+            new ConcurrentHashMap<String, ConcurrentHashMap<Integer, InboundApiDispatchIndex>>();
+
     private HTTPEndpointManager() {
         super();
     }
@@ -79,7 +84,7 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
         String epName = dataStore.getListeningEndpointName(port, tenantDomain);
         if (epName != null) {
             if (epName.equalsIgnoreCase(name)) {
-                applyConfiguration(config, tenantDomain, port);
+                applyConfiguration(config, tenantDomain, port, params);
                 log.info(epName + " Endpoint is already started in port : " + port);
             } else {
                 String msg = "Another endpoint named : " + epName + " is currently using this port: " + port;
@@ -91,7 +96,7 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
             boolean start = startListener(port, name, params);
 
             if (start) {
-                applyConfiguration(config, tenantDomain, port);
+                applyConfiguration(config, tenantDomain, port, params);
             } else {
                 dataStore.unregisterListeningEndpoint(port, tenantDomain);
                 return false;
@@ -116,7 +121,7 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
 
         if (PassThroughInboundEndpointHandler.isEndpointRunning(port)) {
             if(epName != null && epName.equalsIgnoreCase(name) ){
-                applyConfiguration(config, tenantDomain, port);
+                applyConfiguration(config, tenantDomain, port, params);
                 log.info(epName + " Endpoint is already started in port : " + port);
             }else{
                 String msg = "Cannot Start Endpoint "+ name+ " Already occupied port " + port + " by another Endpoint ";
@@ -132,7 +137,7 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
             }
             boolean start = startSSLListener(port, name, sslConfiguration, params);
             if (start) {
-                applyConfiguration(config, tenantDomain, port);
+                applyConfiguration(config, tenantDomain, port, params);
             } else {
                 dataStore.unregisterListeningEndpoint(port, tenantDomain);
                 return false;
@@ -147,8 +152,10 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
      * @param config
      * @param tenantDomain
      * @param port
+     * @param params
      */
-    private void applyConfiguration(InboundHttpConfiguration config, String tenantDomain, int port) {
+    private void applyConfiguration(InboundHttpConfiguration config, String tenantDomain, int port,
+                                    InboundProcessorParams params) {
         if (config.getCoresize() != null && config.getMaxSize() != null && config.getKeepAlive() != null
                 && config.getQueueLength() != null) {
             WorkerPoolConfiguration workerPoolConfiguration = new WorkerPoolConfiguration(
@@ -164,6 +171,14 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
         if (config.getDispatchPattern() != null) {
             Pattern pattern = compilePattern(config.getDispatchPattern());
             addDispatchPattern(tenantDomain, port, pattern);
+            if (params.getSynapseEnvironment() != null) {
+                SynapseConfiguration synapseConfiguration = params.getSynapseEnvironment().getSynapseConfiguration();
+                InboundApiDispatchIndex index = getApiDispatchIndex(tenantDomain, port);
+                // a redeployed endpoint keeps following the same configuration with the index it already has
+                if (index == null || !index.isFor(synapseConfiguration)) {
+                    addApiDispatchIndex(tenantDomain, port, new InboundApiDispatchIndex(synapseConfiguration));
+                }
+            }
         }
     }
 
@@ -252,6 +267,7 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
         dataStore.unregisterListeningEndpoint(port, tenantDomain);
         removeWorkerPoolConfiguration(tenantDomain, port);
         removeDispatchPattern(tenantDomain, port);
+        removeApiDispatchIndex(tenantDomain, port);
 
         if (!PassThroughInboundEndpointHandler.isEndpointRunning(port)) {
             log.info("Listener Endpoint is not started");
@@ -399,6 +415,57 @@ public class HTTPEndpointManager extends AbstractInboundEndpointManager {
         return  null;
     }
 
+    /**
+     * Adds the API context index of a port, closing the index it replaces.
+     * @param tenantDomain
+     * @param port
+     * @param index
+     */
+    public void addApiDispatchIndex(String tenantDomain, int port, InboundApiDispatchIndex index) {
+        ConcurrentHashMap<Integer, InboundApiDispatchIndex> indexMap = apiDispatchIndexMap.get(tenantDomain);
+        if (indexMap == null) {
+            ConcurrentHashMap<Integer, InboundApiDispatchIndex> newMap =
+                    new ConcurrentHashMap<Integer, InboundApiDispatchIndex>();
+            indexMap = apiDispatchIndexMap.putIfAbsent(tenantDomain, newMap);
+            if (indexMap == null) {
+                indexMap = newMap;
+            }
+        }
+        InboundApiDispatchIndex previous = indexMap.put(port, index);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Removes and closes the API context index of a port.
+     * @param tenantDomain
+     * @param port
+     */
+    public void removeApiDispatchIndex(String tenantDomain, int port) {
+        ConcurrentHashMap<Integer, InboundApiDispatchIndex> indexMap = apiDispatchIndexMap.get(tenantDomain);
+        if (indexMap != null) {
+            InboundApiDispatchIndex index = indexMap.remove(port);
+            if (index != null) {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Method to get the API context index for tenant and port.
+     * @param tenantDomain
+     * @param port
+     * @return index, or null if the requests of the port are not dispatched to APIs
+     */
+    public InboundApiDispatchIndex getApiDispatchIndex(String tenantDomain, int port) {
+        ConcurrentHashMap<Integer, InboundApiDispatchIndex> indexMap = apiDispatchIndexMap.get(tenantDomain);
+        if (indexMap != null) {
+            return indexMap.get(port);
+        }
+        return null;
+    }
+
     protected Pattern compilePattern(String dispatchPattern) {
         try {
             return Pattern.compile(dispatchPattern, Pattern.COMMENTS | Pattern.DOTALL);
@@ -42,6 +42,13 @@ public class JMSConstants {
     public static final String JMS_CLIENT_CONNECTION_RESET_AFTER_POLLING_SUSPENSION
             = "transport.jms.ResetConnectionOnPollingSuspension";
 
+    // Maximum number of messages received and committed or acknowledged together. 1 disables batching.
+    public static final String JMS_BATCH_SIZE = "transport.jms.BatchSize";
+    // Maximum time in milliseconds to wait for a batch to fill up before it is mediated.
+    public static final String JMS_BATCH_TIMEOUT = "transport.jms.BatchTimeout";
+    // Default time in milliseconds to wait for a batch to fill up.
+    public static final long DEFAULT_JMS_BATCH_TIMEOUT = 1000;
+
     public static final String TOPIC_PREFIX = "topic.";
     public static final String QUEUE_PREFIX = "queue.";
 
@@ -22,7 +22,9 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.SynapseException;
 import org.wso2.carbon.inbound.endpoint.protocol.jms.factory.CachedJMSConnectionFactory;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 import javax.jms.Connection;
 import javax.jms.Destination;
@@ -47,6 +49,7 @@ public class JMSPollingConsumer {
     private JMSInjectHandler injectHandler;
     private long scanInterval;
     private Long lastRanTime;
+    private int polledMessageCount;
     private String strUserName;
     private String strPassword;
     private Integer iReceiveTimeout;
@@ -74,6 +77,10 @@ public class JMSPollingConsumer {
     // This will create a new subscription
     private boolean resetConnectionAfterPollingSuspension = false;
 
+    // batching of the messages received in a poll cycle
+    private int batchSize = 1; // by default every message is committed or acknowledged on its own
+    private long batchTimeout = JMSConstants.DEFAULT_JMS_BATCH_TIMEOUT;
+
     public JMSPollingConsumer( Properties jmsProperties, long scanInterval, String name) {
         this.jmsConnectionFactory = new CachedJMSConnectionFactory(jmsProperties);
         strUserName = jmsProperties.getProperty(JMSConstants.PARAM_JMS_USERNAME);
@@ -150,6 +157,32 @@ public class JMSPollingConsumer {
                 this.reconnectDuration = null;
             }
         }
+
+        String strBatchSize = jmsProperties.getProperty(JMSConstants.JMS_BATCH_SIZE);
+        if (strBatchSize != null) {
+            try {
+                this.batchSize = Integer.parseInt(strBatchSize.trim());
+            } catch (NumberFormatException e) {
+                throw new SynapseException("Invalid numeric value for " + JMSConstants.JMS_BATCH_SIZE
+                        + ". Inbound Endpoint " + name + " deployment failed.");
+            }
+            if (batchSize < 1) {
+                throw new SynapseException(JMSConstants.JMS_BATCH_SIZE + " should be greater than 0. Inbound Endpoint "
+                        + name + " deployment failed.");
+            }
+        }
+        if (batchSize > 1) {
+            String strBatchTimeout = jmsProperties.getProperty(JMSConstants.JMS_BATCH_TIMEOUT);
+            if (strBatchTimeout != null) {
+                try {
+                    this.batchTimeout = Long.parseLong(strBatchTimeout.trim());
+                } catch (NumberFormatException e) {
+                    logger.warn("Invalid value for " + JMSConstants.JMS_BATCH_TIMEOUT + " : " + strBatchTimeout
+                            + ". Default value of " + JMSConstants.DEFAULT_JMS_BATCH_TIMEOUT
+                            + " milliseconds will be accounted.");
+                }
+            }
+        }
         this.replyDestinationName = jmsProperties.getProperty(JMSConstants.PARAM_REPLY_DESTINATION);
         this.scanInterval = scanInterval;
         this.lastRanTime = null;
@@ -172,6 +205,18 @@ public class JMSPollingConsumer {
      * interval. Timestamp based check is done to avoid that.
      */
     public void execute() {
+        execute(true);
+    }
+
+    /**
+     * Run a poll cycle.
+     *
+     * @param checkInterval skip the cycle if the scan interval has not passed since the last cycle. The inbound
+     *                      runner schedules the cycles itself and does not check it
+     * @return number of messages the cycle mediated and committed or acknowledged
+     */
+    public int execute(boolean checkInterval) {
+        polledMessageCount = 0;
         try {
             logger.debug("Executing : JMS Inbound EP : ");
             // Check if the cycles are running in correct interval and start
@@ -179,7 +224,7 @@ public class JMSPollingConsumer {
             if (pollingSuspensionLimit == 0) {
                 logger.info("Polling is suspended permanently since \""
                         + JMSConstants.JMS_CLIENT_POLLING_RETRIES_BEFORE_SUSPENSION + "\" is Zero.");
-                return;
+                return 0;
             }
 
             long currentTime = (new Date()).getTime();
@@ -195,11 +240,11 @@ public class JMSPollingConsumer {
                                 "Polling is suspended. Polling will be re-activated in " + (pollingSuspensionPeriod - (
                                         currentTime - lastRanTime)) + " milliseconds.");
                     }
-                    return;
+                    return 0;
                 }
             }
 
-            if (lastRanTime == null || ((lastRanTime + (scanInterval)) <= currentTime)) {
+            if (!checkInterval || lastRanTime == null || ((lastRanTime + (scanInterval)) <= currentTime)) {
                 lastRanTime = currentTime;
                 poll();
             } else if (logger.isDebugEnabled()) {
@@ -211,6 +256,7 @@ public class JMSPollingConsumer {
         } catch (Exception e) {
             logger.error("Error while retrieving or injecting JMS message. " + e.getMessage(), e);
         }
+        return polledMessageCount;
     }
 
     /**
@@ -280,6 +326,10 @@ public class JMSPollingConsumer {
                 logger.debug("Inbound JMS Endpoint. No JMS message received.");
                 return null;
             }
+            if (injectHandler != null && batchSize > 1) {
+                pollBatches(msg);
+                return null;
+            }
             while (msg != null) {
                 if (JMSUtils.inferJMSMessageType(msg) == null) {
                     logger.error("Invalid JMS Message type.");
@@ -295,6 +345,9 @@ public class JMSPollingConsumer {
                     }
                     injectHandler.setConnection(connection);
                     commitOrAck = injectHandler.invoke(msg, name);
+                    if (commitOrAck) {
+                        polledMessageCount++;
+                    }
 
                     // if client acknowledgement is selected, and processing
                     // requested ACK
@@ -349,24 +402,8 @@ public class JMSPollingConsumer {
                         }
                     }
 
-                    if (pollingSuspensionEnabled) {
-                        if (!commitOrAck) {
-                            currentNegativeCommitOrAckCount++;
-                            if (currentNegativeCommitOrAckCount >= pollingSuspensionLimit) {
-                                pollingSuspended = true;
-                                currentNegativeCommitOrAckCount = 0;
-                                logger.info(
-                                        "Suspending polling as the pollingSuspensionLimit of " + pollingSuspensionLimit
-                                                + " reached. Polling will be re-started after "
-                                                + pollingSuspensionPeriod + " milliseconds");
-                                if (resetConnectionAfterPollingSuspension) {
-                                    resetConnection();
-                                }
-                                break;
-                            }
-                        } else {
-                            currentNegativeCommitOrAckCount = 0;
-                        }
+                    if (suspendPollingIfRequired(commitOrAck)) {
+                        break;
                     }
 
                 } else {
@@ -413,6 +450,165 @@ public class JMSPollingConsumer {
         return null;
     }
 
+    /**
+     * Keeps track of the failed commits or acknowledgements and suspends polling once the configured limit
+     * is reached.
+     *
+     * @param commitOrAck whether the last message or batch was committed or acknowledged
+     * @return true if polling got suspended
+     */
+    private boolean suspendPollingIfRequired(boolean commitOrAck) {
+        if (!pollingSuspensionEnabled) {
+            return false;
+        }
+        if (commitOrAck) {
+            currentNegativeCommitOrAckCount = 0;
+            return false;
+        }
+        currentNegativeCommitOrAckCount++;
+        if (currentNegativeCommitOrAckCount < pollingSuspensionLimit) {
+            return false;
+        }
+        pollingSuspended = true;
+        currentNegativeCommitOrAckCount = 0;
+        logger.info("Suspending polling as the pollingSuspensionLimit of " + pollingSuspensionLimit
+                + " reached. Polling will be re-started after " + pollingSuspensionPeriod + " milliseconds");
+        if (resetConnectionAfterPollingSuspension) {
+            resetConnection();
+        }
+        return true;
+    }
+
+    /**
+     * Receives the messages in batches of up to batchSize messages, or whatever arrived within the batch
+     * timeout, mediates each batch and commits or acknowledges it once. If any message of a batch fails, the
+     * whole batch is rolled back and redelivered by the broker. A message of an invalid type ends the batch: the
+     * valid messages received before it are mediated and completed together with it, so it is discarded, or
+     * redelivered to be discarded alone if the batch is rolled back.
+     *
+     * @param firstMessage first message of the cycle, which is already received
+     */
+    private void pollBatches(Message firstMessage) throws JMSException {
+        if (replyDestination != null) {
+            injectHandler.setReplyDestination(replyDestination);
+        }
+        injectHandler.setConnection(connection);
+        List<Message> batch = new ArrayList<>(batchSize);
+        Message msg = firstMessage;
+        while (msg != null) {
+            batch.clear();
+            Message invalidMessage = null;
+            long batchDeadline = System.currentTimeMillis() + batchTimeout;
+            while (msg != null) {
+                if (JMSUtils.inferJMSMessageType(msg) == null) {
+                    invalidMessage = msg;
+                    break;
+                }
+                batch.add(msg);
+                long remainingTime = batchDeadline - System.currentTimeMillis();
+                if (batch.size() >= batchSize || remainingTime <= 0) {
+                    break;
+                }
+                msg = messageConsumer.receive(remainingTime);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Received a batch of " + batch.size() + " JMS messages for " + name);
+            }
+            int mediatedCount = mediateBatch(batch);
+            boolean commitOrAck = mediatedCount == batch.size();
+            if (commitOrAck || !isRedeliveredOnFailure()) {
+                // a rolled back batch is mediated again once redelivered
+                polledMessageCount += mediatedCount;
+            }
+            if (invalidMessage != null) {
+                logger.error("Invalid JMS Message type of message : " + invalidMessage.getJMSMessageID()
+                        + ". Discarding it.");
+                batch.add(invalidMessage);
+            }
+            completeBatch(batch, commitOrAck);
+            if (suspendPollingIfRequired(commitOrAck) || messageConsumer == null) {
+                return;
+            }
+            msg = receiveMessage(messageConsumer);
+        }
+    }
+
+    /**
+     * Mediates the messages of a batch in order on the polling thread, since the messages of a JMS session must
+     * not be used by several threads. When the batch is redelivered on failure, mediation stops at the first
+     * failed message, otherwise the rest of the batch is still mediated as it is already acknowledged.
+     *
+     * @return number of messages of the batch mediated successfully
+     */
+    private int mediateBatch(List<Message> batch) {
+        boolean redeliveredOnFailure = isRedeliveredOnFailure();
+        int mediatedCount = 0;
+        for (Message message : batch) {
+            boolean successful;
+            try {
+                successful = injectHandler.invoke(message, name);
+            } catch (SynapseException e) {
+                logger.error("Error while mediating JMS message of a batch for " + name, e);
+                successful = false;
+            }
+            if (successful) {
+                mediatedCount++;
+            } else if (redeliveredOnFailure) {
+                break;
+            }
+        }
+        return mediatedCount;
+    }
+
+    /**
+     * @return true if the messages of a failed batch are redelivered, as for transacted and client acknowledged
+     * sessions
+     */
+    private boolean isRedeliveredOnFailure() {
+        return jmsConnectionFactory.isTransactedSession()
+                || jmsConnectionFactory.getSessionAckMode() == Session.CLIENT_ACKNOWLEDGE;
+    }
+
+    /**
+     * Commits or acknowledges all the messages of a batch at once, or rolls back the session, or recreates it in
+     * case of client acknowledgement, so the broker redelivers them. Auto and dups-ok acknowledged sessions already acknowledged the messages on receipt.
+     */
+    private void completeBatch(List<Message> batch, boolean commitOrAck) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Message lastMessage = batch.get(batch.size() - 1);
+        try {
+            if (jmsConnectionFactory.isTransactedSession() && session.getTransacted()) {
+                if (commitOrAck) {
+                    session.commit();
+                } else {
+                    session.rollback();
+                }
+            } else if (jmsConnectionFactory.getSessionAckMode() == Session.CLIENT_ACKNOWLEDGE) {
+                if (commitOrAck) {
+                    // acknowledges every message consumed by the session so far
+                    lastMessage.acknowledge();
+                } else {
+                    // as for single messages, a new session and consumer get the batch redelivered
+                    jmsConnectionFactory.closeConsumer(messageConsumer);
+                    jmsConnectionFactory.closeSession(session);
+                    session = jmsConnectionFactory.getSession(connection);
+                    messageConsumer = jmsConnectionFactory.getMessageConsumer(session, destination);
+                }
+            } else {
+                return;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Batch of " + batch.size() + " messages ending with : " + lastMessage.getJMSMessageID()
+                        + (commitOrAck ? " committed" : " rolled back"));
+            }
+        } catch (JMSException e) {
+            logger.error("Error " + (commitOrAck ? "committing" : "rolling back") + " batch of " + batch.size()
+                    + " messages for " + name, e);
+        }
+    }
+
     /**
      * Release the JMS connection, session and consumer to the pool or forcefully close the resource.
      *
@@ -69,10 +69,14 @@ public class JMSProcessor extends InboundRequestProcessorImpl implements TaskSta
         this.concurrentConsumers = 1;
         String concurrentConsumers = jmsProperties.getProperty(PollingConstants.INBOUND_CONCURRENT_CONSUMERS);
         if (concurrentConsumers != null) {
-            if (Integer.parseInt(concurrentConsumers) == 0) {
+            try {
+                this.concurrentConsumers = Integer.parseInt(concurrentConsumers.trim());
+            } catch (NumberFormatException nfe) {
+                throw new SynapseException("Invalid numeric value for concurrent consumers.", nfe);
+            }
+            if (this.concurrentConsumers < 1) {
                 throw new SynapseException("Number of Concurrent Consumers should be Greater than 0");
             }
-            this.concurrentConsumers = Integer.parseInt(concurrentConsumers);
         }
         this.injectingSeq = params.getInjectingSeq();
         this.onErrorSeq = params.getOnErrorSeq();
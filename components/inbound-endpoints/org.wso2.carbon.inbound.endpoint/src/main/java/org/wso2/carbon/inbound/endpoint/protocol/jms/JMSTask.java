@@ -47,6 +47,12 @@ public class JMSTask extends InboundTask implements LocalTaskActionListener {
         jmsPollingConsumer.execute();
     }
 
+    @Override
+    protected int pollCycle() {
+        logger.debug("Executing JMS Task Execution.");
+        return jmsPollingConsumer.execute(false);
+    }
+
     @Override
     public Properties getInboundProperties() {
         return jmsPollingConsumer.getInboundProperites();
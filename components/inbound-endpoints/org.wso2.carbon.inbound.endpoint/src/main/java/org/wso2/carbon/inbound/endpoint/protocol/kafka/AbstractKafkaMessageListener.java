@@ -36,12 +36,12 @@ public abstract class AbstractKafkaMessageListener {
             .getLog(KAFKAMessageListener.class.getName());
 
     /**
-     * the consumer types are high level and simple,high level is used for kafka high level configuration
-     * and simple is used for kafka low level configuration
+     * the consumer types are high level, simple and poll,high level is used for kafka high level configuration,
+     * simple is used for kafka low level configuration and poll is used for the KafkaConsumer poll API
      */
     public static enum CONSUMER_TYPE {
 
-        HIGHLEVEL("highlevel"), SIMPLE("simple");
+        HIGHLEVEL("highlevel"), SIMPLE("simple"), POLL("poll");
         String name;
 
         private CONSUMER_TYPE(String name) {
@@ -71,8 +71,10 @@ public abstract class AbstractKafkaMessageListener {
 
     /**
      * Poll the messages from the zookeeper and injected to the sequence
+     *
+     * @return number of messages injected, or handed over to be injected, in this call
      */
-    public abstract void injectMessageToESB(String name);
+    public abstract int injectMessageToESB(String name);
 
     /**
      * Check ConsumerIterator whether It has next value
@@ -88,7 +90,10 @@ public abstract class AbstractKafkaMessageListener {
 
     /**
      * Consume from multiple topics
+     *
+     * @return number of messages injected in this call
      */
-    public void consumeMultipleTopics(String sequenceName) {
+    public int consumeMultipleTopics(String sequenceName) {
+        return 0;
     }
 }
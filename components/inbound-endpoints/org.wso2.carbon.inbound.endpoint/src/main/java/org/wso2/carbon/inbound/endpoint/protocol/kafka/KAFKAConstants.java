@@ -56,6 +56,29 @@ public class KAFKAConstants {
 
     public static final String CONSUMER_TIMEOUT = "consumer.timeout.ms";
 
+    public static final String ENABLE_AUTO_COMMIT = "enable.auto.commit";
+
+    public static final String POLL_TIMEOUT = "poll.timeout.ms";
+
+    public static final String MAX_PENDING_RECORDS = "max.pending.records";
+
+    public static final long DEFAULT_POLL_TIMEOUT = 100;
+
+    public static final long DEFAULT_MAX_PENDING_RECORDS = 1000;
+
+    public static final String FAILED_MESSAGE_RETRY_DELAY = "failed.message.retry.delay.ms";
+
+    public static final String FAILED_MESSAGE_MAX_RETRY_DELAY = "failed.message.max.retry.delay.ms";
+
+    public static final String FAILED_MESSAGE_MAX_RETRIES = "failed.message.max.retries";
+
+    public static final long DEFAULT_FAILED_MESSAGE_RETRY_DELAY = 1000;
+
+    public static final long DEFAULT_FAILED_MESSAGE_MAX_RETRY_DELAY = 60000;
+
+    /* a failed message is retried until it is injected unless a maximum is configured */
+    public static final long DEFAULT_FAILED_MESSAGE_MAX_RETRIES = -1;
+
     public static final int SO_TIMEOUT = 100000;
 
     public static final int BUFFER_SIZE = 64 * 1024;
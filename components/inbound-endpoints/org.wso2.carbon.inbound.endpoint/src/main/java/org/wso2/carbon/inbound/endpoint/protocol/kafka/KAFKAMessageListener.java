@@ -147,12 +147,14 @@ public class KAFKAMessageListener extends AbstractKafkaMessageListener {
     }
 
     @Override
-    public void injectMessageToESB(String name) {
+    public int injectMessageToESB(String name) {
         if (consumerIte.size() == 1) {
             injectMessageToESB(name, consumerIte.get(0));
+            return 1;
         } else {
             log.debug("There are multiple topics to consume from not a single topic");
         }
+        return 0;
     }
 
     public void injectMessageToESB(String sequenceName,ConsumerIterator<byte[], byte[]> consumerIterator){
@@ -198,11 +200,14 @@ public class KAFKAMessageListener extends AbstractKafkaMessageListener {
     }
 
     @Override
-    public void consumeMultipleTopics(String name) {
+    public int consumeMultipleTopics(String name) {
+        int injected = 0;
         for (ConsumerIterator<byte[], byte[]> consumerIterator : consumerIte) {
             if (hasNext(consumerIterator)) {
                 injectMessageToESB(name, consumerIterator);
+                injected++;
             }
         }
+        return injected;
     }
 }
@@ -38,6 +38,7 @@ public class KAFKAPollingConsumer {
     protected AbstractKafkaMessageListener messageListener;
     private long scanInterval;
     private Long lastRanTime;
+    private int polledMessageCount;
     private String name;
 
     /**
@@ -97,21 +98,41 @@ public class KAFKAPollingConsumer {
                                         .getName())) {
                     messageListener = new SimpleKafkaMessageListener(
                             kafkaProperties, injectHandler);
+                    //Start a listener on the KafkaConsumer poll API
+                } else if (kafkaProperties
+                        .getProperty(KAFKAConstants.CONSUMER_TYPE)
+                        .equalsIgnoreCase(
+                                AbstractKafkaMessageListener.CONSUMER_TYPE.POLL
+                                        .getName())) {
+                    messageListener = new KafkaPollMessageListener(threadCount, topics,
+                            kafkaProperties, injectHandler);
                 }
             } catch (Exception e) {
-                log.error("The consumer type should be high level or simple." + e.getMessage(), e);
-                throw new SynapseException("The consumer type should be high level or simple", e);
+                log.error("The consumer type should be high level, simple or poll." + e.getMessage(), e);
+                throw new SynapseException("The consumer type should be high level, simple or poll", e);
             }
         }
     }
 
     public void execute() {
+        execute(true);
+    }
+
+    /**
+     * Run a poll cycle.
+     *
+     * @param checkInterval skip the cycle if the scan interval has not passed since the last cycle. The inbound
+     *                      runner schedules the cycles itself and does not check it
+     * @return number of messages the listener injected or handed over to its workers in the cycle
+     */
+    public int execute(boolean checkInterval) {
+        polledMessageCount = 0;
         try {
             log.debug("Executing : KAFKA Inbound EP : ");
             // Check if the cycles are running in correct interval and start
             // scan
             long currentTime = (new Date()).getTime();
-            if (lastRanTime == null || ((lastRanTime + (scanInterval)) <= currentTime)) {
+            if (!checkInterval || lastRanTime == null || ((lastRanTime + (scanInterval)) <= currentTime)) {
                 lastRanTime = currentTime;
                 poll();
             } else if (log.isDebugEnabled()) {
@@ -123,6 +144,7 @@ public class KAFKAPollingConsumer {
         } catch (Exception e) {
             log.error("Error while retrieving or injecting KAFKA message." + e.getMessage(), e);
         }
+        return polledMessageCount;
     }
 
     /**
@@ -153,13 +175,13 @@ public class KAFKAPollingConsumer {
         try {
             if (messageListener.hasMultipleTopicsToConsume()) {
                 if (injectHandler != null) {
-                    messageListener.consumeMultipleTopics(name);
+                    polledMessageCount = messageListener.consumeMultipleTopics(name);
                 } else {
                     return null;
                 }
             } else {
                 if (injectHandler != null && messageListener.hasNext()) {
-                    messageListener.injectMessageToESB(name);
+                    polledMessageCount = messageListener.injectMessageToESB(name);
                 } else {
                     return null;
                 }
@@ -91,7 +91,11 @@ public class KAFKAProcessor extends InboundRequestProcessorImpl implements TaskS
             log.error(e.getMessage(), e);
             return;
         }
-        pollingConsumer.registerHandler(new KAFKAInjectHandler(injectingSeq, onErrorSeq, sequential, synapseEnvironment, kafkaProperties.getProperty(KAFKAConstants.CONTENT_TYPE)));
+        // the poll consumer commits an offset once its sequence has completed, so it always mediates in the
+        // worker thread which received the message
+        boolean injectSequentially = sequential || AbstractKafkaMessageListener.CONSUMER_TYPE.POLL.getName()
+                .equalsIgnoreCase(kafkaProperties.getProperty(KAFKAConstants.CONSUMER_TYPE));
+        pollingConsumer.registerHandler(new KAFKAInjectHandler(injectingSeq, onErrorSeq, injectSequentially, synapseEnvironment, kafkaProperties.getProperty(KAFKAConstants.CONTENT_TYPE)));
         try {
             pollingConsumer.startsMessageListener();
         } catch (Exception e) {
@@ -129,6 +133,9 @@ public class KAFKAProcessor extends InboundRequestProcessorImpl implements TaskS
                 pollingConsumer.messageListener.consumerConnector.shutdown();
                 log.info("Shutdown the kafka consumer connector");
             }
+            if (pollingConsumer != null && pollingConsumer.messageListener != null) {
+                pollingConsumer.messageListener.destroy();
+            }
         } catch (Exception e) {
             log.error("Error while shutdown the consumer connector" + e.getMessage(), e);
         }
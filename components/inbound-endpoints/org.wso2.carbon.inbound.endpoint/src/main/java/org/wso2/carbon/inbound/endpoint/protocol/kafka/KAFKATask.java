@@ -48,6 +48,12 @@ public class KAFKATask extends InboundTask {
         kafkaPollingConsumer.execute();
     }
 
+    @Override
+    protected int pollCycle() {
+        logger.debug("Executing.");
+        return kafkaPollingConsumer.execute(false);
+    }
+
     @Override
     public Properties getInboundProperties() {
         return kafkaPollingConsumer.getInboundProperties();
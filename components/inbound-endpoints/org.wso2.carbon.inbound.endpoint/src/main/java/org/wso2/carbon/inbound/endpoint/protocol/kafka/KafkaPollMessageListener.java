@@ -0,0 +1,472 @@
+/*
+ *  Copyright (c) 2005-2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.protocol.kafka;
+
+import org.apache.kafka.clients.consumer.CommitFailedException;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.synapse.SynapseException;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Kafka listener built on the {@link KafkaConsumer#poll(long)} API. Each polled batch is split by partition and
+ * the records of a partition are mediated in order by a worker pool of thread.count threads, while different
+ * partitions are mediated in parallel. Offsets are committed by the polling thread only for records whose sequence
+ * has completed, so delivery is at-least-once, and partitions with too many records waiting for mediation are
+ * paused until their backlog drains. When a record of a partition can not be injected, the partition stops at that
+ * record, is rewound to it and stays paused for a retry delay which doubles with each failure of the record. Once
+ * the configured maximum of retries is exceeded, the record is skipped with an error log.
+ */
+public class KafkaPollMessageListener extends AbstractKafkaMessageListener {
+
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private Consumer<byte[], byte[]> consumer;
+    private ExecutorService workerPool;
+    private String tenantDomain;
+    private long pollTimeout;
+    private int maxPendingRecords;
+    private long retryDelay;
+    private long maxRetryDelay;
+    private long maxRetries;
+    private volatile boolean closed;
+
+    /* KafkaConsumer is not thread safe, polling, committing and closing are serialized on this lock */
+    private final Lock consumerLock = new ReentrantLock();
+
+    /* Workers of the currently assigned partitions, only accessed while holding the consumer lock */
+    private final Map<TopicPartition, PartitionWorker> partitionWorkers = new HashMap<TopicPartition, PartitionWorker>();
+
+    public KafkaPollMessageListener(int threadCount, List<String> topics, Properties kafkaProperties,
+                                    InjectHandler injectHandler) throws Exception {
+        this.threadCount = threadCount;
+        this.topics = topics;
+        this.kafkaProperties = kafkaProperties;
+        this.injectHandler = injectHandler;
+        this.pollTimeout = getLongProperty(KAFKAConstants.POLL_TIMEOUT, KAFKAConstants.DEFAULT_POLL_TIMEOUT);
+        this.maxPendingRecords = (int) getLongProperty(KAFKAConstants.MAX_PENDING_RECORDS,
+                KAFKAConstants.DEFAULT_MAX_PENDING_RECORDS);
+        this.retryDelay = getLongProperty(KAFKAConstants.FAILED_MESSAGE_RETRY_DELAY,
+                KAFKAConstants.DEFAULT_FAILED_MESSAGE_RETRY_DELAY);
+        this.maxRetryDelay = Math.max(retryDelay, getLongProperty(KAFKAConstants.FAILED_MESSAGE_MAX_RETRY_DELAY,
+                KAFKAConstants.DEFAULT_FAILED_MESSAGE_MAX_RETRY_DELAY));
+        this.maxRetries = getLongProperty(KAFKAConstants.FAILED_MESSAGE_MAX_RETRIES,
+                KAFKAConstants.DEFAULT_FAILED_MESSAGE_MAX_RETRIES);
+    }
+
+    /**
+     * Create the kafka consumer and the worker pool, offsets are always committed explicitly by this listener
+     */
+    @Override
+    public boolean createKafkaConsumerConnector() throws Exception {
+        if (closed) {
+            return false;
+        }
+        if (consumer == null) {
+            log.info("Creating Kafka poll consumer...");
+            Properties consumerProperties = new Properties();
+            consumerProperties.putAll(kafkaProperties);
+            consumerProperties.put(KAFKAConstants.ENABLE_AUTO_COMMIT, "false");
+            try {
+                consumer = createConsumer(consumerProperties);
+            } catch (Exception e) {
+                log.error("Error in creating Kafka poll consumer." + e.getMessage(), e);
+                throw new SynapseException("Error in creating Kafka poll consumer", e);
+            }
+            tenantDomain = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+            workerPool = Executors.newFixedThreadPool(threadCount, new KafkaWorkerThreadFactory());
+            log.info("Kafka poll consumer is created");
+            start();
+        }
+        return true;
+    }
+
+    /**
+     * @param consumerProperties the properties of the consumer, with auto commit disabled
+     * @return the consumer to poll the records with
+     */
+    protected Consumer<byte[], byte[]> createConsumer(Properties consumerProperties) {
+        return new KafkaConsumer<byte[], byte[]>(consumerProperties, new ByteArrayDeserializer(),
+                new ByteArrayDeserializer());
+    }
+
+    /**
+     * Subscribe to the configured topics or to the topics matching the topic filter
+     */
+    @Override
+    public void start() throws Exception {
+        ConsumerRebalanceListener rebalanceListener = new PartitionRebalanceListener();
+        if (topics != null && topics.size() > 0) {
+            consumer.subscribe(topics, rebalanceListener);
+        } else if (kafkaProperties.getProperty(KAFKAConstants.TOPIC_FILTER) != null) {
+            consumer.subscribe(Pattern.compile(kafkaProperties.getProperty(KAFKAConstants.TOPIC_FILTER)),
+                    rebalanceListener);
+        } else {
+            log.error("Topics or a topic filter should be specified for the Kafka poll consumer");
+            throw new SynapseException("Topics or a topic filter should be specified for the Kafka poll consumer");
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return consumer != null && !closed;
+    }
+
+    /**
+     * Commit the offsets mediated since the last cycle, rewind the partitions which failed to a record, pause or
+     * resume partitions according to their backlog and hand the next polled batch over to the partition workers
+     *
+     * @return number of records handed over to the partition workers
+     */
+    @Override
+    public int injectMessageToESB(String name) {
+        if (!consumerLock.tryLock()) {
+            // the listener is being destroyed
+            return 0;
+        }
+        try {
+            if (closed) {
+                return 0;
+            }
+            commitProcessedOffsets();
+            rewindFailedPartitions();
+            applyBackpressure();
+            ConsumerRecords<byte[], byte[]> records = consumer.poll(pollTimeout);
+            for (TopicPartition partition : records.partitions()) {
+                PartitionWorker worker = partitionWorkers.get(partition);
+                if (worker == null) {
+                    worker = new PartitionWorker(partition, name);
+                    partitionWorkers.put(partition, worker);
+                }
+                worker.submit(records.records(partition));
+            }
+            return records.count();
+        } catch (WakeupException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Kafka poll consumer is woken up for shutdown.");
+            }
+            return 0;
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the workers, commit what has been mediated and close the consumer
+     */
+    @Override
+    public void destroy() {
+        closed = true;
+        if (consumer != null) {
+            consumer.wakeup();
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            try {
+                workerPool.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        consumerLock.lock();
+        try {
+            if (consumer != null) {
+                try {
+                    try {
+                        commitProcessedOffsets();
+                    } catch (WakeupException e) {
+                        // the wakeup was not consumed by a poll, it only interrupts the first blocking call
+                        commitProcessedOffsets();
+                    }
+                } catch (Exception e) {
+                    log.warn("Unable to commit the mediated offsets while closing the Kafka poll consumer", e);
+                }
+                consumer.close();
+                consumer = null;
+                log.info("Closed the Kafka poll consumer");
+            }
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    private void commitProcessedOffsets() {
+        commitProcessedOffsets(partitionWorkers.values());
+    }
+
+    private void commitProcessedOffsets(Collection<PartitionWorker> workers) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (PartitionWorker worker : workers) {
+            long processedOffset = worker.processedOffset;
+            if (processedOffset > worker.committedOffset) {
+                offsets.put(worker.partition, new OffsetAndMetadata(processedOffset));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(offsets);
+            for (PartitionWorker worker : workers) {
+                OffsetAndMetadata offset = offsets.get(worker.partition);
+                if (offset != null) {
+                    worker.committedOffset = offset.offset();
+                }
+            }
+        } catch (CommitFailedException e) {
+            // the group has been rebalanced, the records will be delivered again to the new owner
+            log.warn("Unable to commit Kafka offsets " + offsets + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Seek the partitions whose worker stopped at a failed record back to that record, dropping the records polled
+     * after it, so that they are delivered again from the failed record on once the retry delay of the partition has
+     * passed. A record which failed more than the maximum retries is skipped instead.
+     */
+    private void rewindFailedPartitions() {
+        for (PartitionWorker worker : partitionWorkers.values()) {
+            long failedOffset = worker.failedOffset;
+            if (failedOffset < 0) {
+                continue;
+            }
+            while (worker.records.poll() != null) {
+                worker.pendingRecords.decrementAndGet();
+            }
+            if (failedOffset == worker.retryOffset) {
+                worker.retries++;
+            } else {
+                worker.retryOffset = failedOffset;
+                worker.retries = 0;
+            }
+            if (maxRetries > 0 && worker.retries >= maxRetries) {
+                log.error("Kafka message of " + worker.partition + " at offset " + failedOffset + " is not injected "
+                        + "after " + maxRetries + " retries, skipping the message");
+                worker.processedOffset = failedOffset + 1;
+                worker.retryOffset = -1;
+                worker.retryTime = 0;
+                consumer.seek(worker.partition, failedOffset + 1);
+            } else {
+                long delay = retryDelay;
+                for (long i = 0; i < worker.retries && delay < maxRetryDelay; i++) {
+                    delay *= 2;
+                }
+                delay = Math.min(delay, maxRetryDelay);
+                if (worker.retries == 0) {
+                    log.warn("Kafka message of " + worker.partition + " at offset " + failedOffset
+                            + " is not injected, it will be polled again after " + delay + " ms");
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Kafka message of " + worker.partition + " at offset " + failedOffset
+                            + " is not injected after " + worker.retries + " retries, it will be polled again after "
+                            + delay + " ms");
+                }
+                worker.retryTime = System.currentTimeMillis() + delay;
+                consumer.seek(worker.partition, failedOffset);
+            }
+            worker.failedOffset = -1;
+        }
+    }
+
+    /**
+     * Pause the partitions whose backlog reached the limit or which wait for the retry of a failed record, and resume
+     * the ones drained to half of the limit
+     */
+    private void applyBackpressure() {
+        Set<TopicPartition> pausedPartitions = consumer.paused();
+        List<TopicPartition> pause = new ArrayList<TopicPartition>();
+        List<TopicPartition> resume = new ArrayList<TopicPartition>();
+        long now = System.currentTimeMillis();
+        for (PartitionWorker worker : partitionWorkers.values()) {
+            int pendingRecords = worker.pendingRecords.get();
+            boolean paused = pausedPartitions.contains(worker.partition);
+            boolean waitingForRetry = worker.retryTime > now;
+            if (!paused && (waitingForRetry || pendingRecords >= maxPendingRecords)) {
+                pause.add(worker.partition);
+            } else if (paused && !waitingForRetry && pendingRecords <= maxPendingRecords / 2) {
+                resume.add(worker.partition);
+            }
+        }
+        if (!pause.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Pausing Kafka partitions " + pause + " until their pending messages are mediated");
+            }
+            consumer.pause(pause);
+        }
+        if (!resume.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Resuming Kafka partitions " + resume);
+            }
+            consumer.resume(resume);
+        }
+    }
+
+    private long getLongProperty(String name, long defaultValue) {
+        String value = kafkaProperties.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long longValue = Long.parseLong(value);
+            return longValue > 0 ? longValue : defaultValue;
+        } catch (NumberFormatException nfe) {
+            log.error("Invalid numeric value for " + name + "." + nfe.getMessage(), nfe);
+            throw new SynapseException("Invalid numeric value for " + name, nfe);
+        }
+    }
+
+    /**
+     * Commits what has been mediated from the revoked partitions and stops mediating their remaining records, which
+     * will be delivered to the new owner of the partition
+     */
+    private class PartitionRebalanceListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            List<PartitionWorker> revokedWorkers = new ArrayList<PartitionWorker>();
+            for (TopicPartition partition : partitions) {
+                PartitionWorker worker = partitionWorkers.remove(partition);
+                if (worker != null) {
+                    worker.revoked = true;
+                    revokedWorkers.add(worker);
+                }
+            }
+            commitProcessedOffsets(revokedWorkers);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            if (log.isDebugEnabled()) {
+                log.debug("Kafka partitions assigned : " + partitions);
+            }
+        }
+    }
+
+    /**
+     * Mediates the records of one partition in order. The worker occupies a pool thread only while it has records
+     * to mediate, and stops at a record which can not be injected until the polling thread rewinds the partition.
+     */
+    private class PartitionWorker implements Runnable {
+
+        private final TopicPartition partition;
+        private final String inboundName;
+        private final Queue<ConsumerRecord<byte[], byte[]>> records =
+                new ConcurrentLinkedQueue<ConsumerRecord<byte[], byte[]>>();
+        private final AtomicInteger pendingRecords = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long processedOffset = -1;
+        private volatile long failedOffset = -1;
+        private volatile boolean revoked;
+        private long committedOffset = -1;
+        /* failed record being retried, its retries so far and the time until which the partition is paused */
+        private long retryOffset = -1;
+        private long retries;
+        private long retryTime;
+
+        private PartitionWorker(TopicPartition partition, String inboundName) {
+            this.partition = partition;
+            this.inboundName = inboundName;
+        }
+
+        private void submit(List<ConsumerRecord<byte[], byte[]>> batch) {
+            records.addAll(batch);
+            pendingRecords.addAndGet(batch.size());
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workerPool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                PrivilegedCarbonContext.startTenantFlow();
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
+                ConsumerRecord<byte[], byte[]> record;
+                while (!revoked && !closed && failedOffset < 0 && (record = records.poll()) != null) {
+                    boolean injected = false;
+                    try {
+                        injected = injectHandler.invoke(record.value(), inboundName);
+                    } catch (Exception e) {
+                        log.error("Error while injecting Kafka message of " + partition + " at offset "
+                                + record.offset() + "." + e.getMessage(), e);
+                    }
+                    if (injected) {
+                        processedOffset = record.offset() + 1;
+                    } else {
+                        // the polling thread logs the failure when it rewinds the partition
+                        failedOffset = record.offset();
+                    }
+                    pendingRecords.decrementAndGet();
+                }
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+                scheduled.set(false);
+            }
+            if (!records.isEmpty() && !revoked && !closed && failedOffset < 0) {
+                schedule();
+            }
+        }
+    }
+
+    private static class KafkaWorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolNumber = new AtomicInteger(1);
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix = "kafka-inbound-worker-" + poolNumber.getAndIncrement() + "-";
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(false);
+            return t;
+        }
+    }
+}
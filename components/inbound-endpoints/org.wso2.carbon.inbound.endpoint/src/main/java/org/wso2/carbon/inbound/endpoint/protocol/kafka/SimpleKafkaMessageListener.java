@@ -135,9 +135,10 @@ public class SimpleKafkaMessageListener extends AbstractKafkaMessageListener {
     }
 
     @Override
-    public void injectMessageToESB(String name) {
+    public int injectMessageToESB(String name) {
 
         log.debug("Fetch the messages until maximum message is zero");
+        int injected = 0;
         if (maxReads > 0) {
             if (consumer == null) {
                 consumer = new SimpleConsumer(leadBroker, port,
@@ -188,6 +189,7 @@ public class SimpleKafkaMessageListener extends AbstractKafkaMessageListener {
                             log.debug("Start : Add to injectHandler to invoke");
                         }
                         injectHandler.invoke(bytes, name);
+                        injected++;
                         if (log.isDebugEnabled()) {
                             log.debug("End : Add the injectHandler to invoke");
                         }
@@ -214,6 +216,7 @@ public class SimpleKafkaMessageListener extends AbstractKafkaMessageListener {
                     consumer.close();
             }
         }
+        return injected;
     }
 
     @Override
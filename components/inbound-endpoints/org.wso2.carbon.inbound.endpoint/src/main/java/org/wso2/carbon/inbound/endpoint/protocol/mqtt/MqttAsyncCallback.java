@@ -24,14 +24,20 @@ import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.inbound.endpoint.common.OneTimeTriggerAbstractCallback;
 
 /**
- * MQTT Asynchronous call back handler
+ * MQTT Asynchronous call back handler. The callback is bound to a connection, and delivers the messages to the
+ * inbound endpoints subscribed through that connection. Unless a worker pool is configured, messages are
+ * mediated on the receive thread of the client.
  */
 public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements MqttCallback {
 
@@ -41,23 +47,28 @@ public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements
 
     private MqttListener asycClient;
 
-    private MqttInjectHandler injectHandler;
     private MqttConnectionFactory confac;
     private MqttAsyncClient mqttAsyncClient;
     private Properties mqttProperties;
     private MqttConnectOptions connectOptions;
     private MqttConnectionConsumer connectionConsumer;
     private MqttConnectionListener connectionListener;
+    private MqttMessageDispatcher dispatcher;
+    private int tenantId;
+    //subscriptions of the inbound endpoints using the connection, by inbound endpoint name
+    private ConcurrentHashMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
 
-    public MqttAsyncCallback(MqttAsyncClient mqttAsyncClient, MqttInjectHandler injectHandler,
-                             MqttConnectionFactory confac, MqttConnectOptions connectOptions,
-                             Properties mqttProperties) {
-        this.injectHandler = injectHandler;
+    public MqttAsyncCallback(MqttAsyncClient mqttAsyncClient, MqttConnectionFactory confac,
+                             MqttConnectOptions connectOptions, Properties mqttProperties, int tenantId) {
         this.mqttAsyncClient = mqttAsyncClient;
         this.confac = confac;
         this.connectOptions = connectOptions;
         this.mqttProperties = mqttProperties;
-
+        this.tenantId = tenantId;
+        if (confac.getWorkerPoolSize() > 0) {
+            this.dispatcher = new MqttMessageDispatcher(mqttAsyncClient.getClientId(),
+                    confac.getWorkerPoolSize(), confac.getWorkerQueueSize());
+        }
     }
 
     /**
@@ -87,11 +98,7 @@ public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements
                 }
 
                 if (mqttAsyncClient.isConnected()) {
-                    int qosLevel = Integer.parseInt(mqttProperties
-                            .getProperty(MqttConstants.MQTT_QOS));
-                    if (confac.getTopic() != null) {
-                        mqttAsyncClient.subscribe(confac.getTopic(), qosLevel);
-                    }
+                    subscribe();
                     log.info("MQTT inbound endpoint " + name + " re-connected to the broker");
                 }
             } catch (MqttException ex) {
@@ -101,6 +108,15 @@ public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements
         }
     }
 
+    /**
+     * Subscribe to the topics of all the inbound endpoints using the connection
+     */
+    public void subscribe() throws MqttException {
+        for (Subscription subscription : subscriptions.values()) {
+            mqttAsyncClient.subscribe(subscription.topic, subscription.qos);
+        }
+    }
+
     public void messageArrived(String topic, MqttMessage mqttMessage) throws MqttException {
         if (log.isDebugEnabled()) {
             log.debug("Received Message: Topic:" + topic + "  Message: " + mqttMessage);
@@ -115,25 +131,143 @@ public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements
             super.startInboundTenantLoading(inboundIdentifier);
             //un-register tenant loading flag for inbound identifier
             clientManager.unRegisterInboundTenantLoadingFlag(inboundIdentifier);
+        }
+        for (Subscription subscription : getReceivers(topic)) {
+            if (dispatcher == null) {
+                inject(subscription, topic, mqttMessage);
+            } else {
+                dispatch(subscription, topic, mqttMessage);
+            }
+        }
+    }
 
+    /**
+     * Hand the message over to the workers. The client acknowledges a QoS 1 or 2 message once this callback
+     * returns, so a message is only acknowledged after it has a place in the queue of the workers, and is lost
+     * if the server crashes before it is mediated. Such messages of a topic are mediated in the order they arrived.
+     */
+    private void dispatch(final Subscription subscription, final String topic, final MqttMessage mqttMessage)
+            throws MqttException {
+        String orderingKey = mqttMessage.getQos() > 0 ? subscription.name + ":" + topic : null;
+        try {
+            boolean dispatched = dispatcher.dispatch(orderingKey, new Runnable() {
+                @Override
+                public void run() {
+                    inject(subscription, topic, mqttMessage);
+                }
+            });
+            if (!dispatched) {
+                // leave the message unacknowledged, so the broker delivers it again
+                throw new MqttException(MqttException.REASON_CODE_CLIENT_CLOSED);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MqttException(e);
+        }
+    }
+
+    private void inject(Subscription subscription, String topic, MqttMessage mqttMessage) {
+        if (super.isInboundRunnerMode()) {
             try {
                 PrivilegedCarbonContext.startTenantFlow();
                 PrivilegedCarbonContext privilegedCarbonContext =
                         PrivilegedCarbonContext.getThreadLocalCarbonContext();
                 privilegedCarbonContext.setTenantDomain(super.tenantDomain, true);
-                injectHandler.invoke(mqttMessage, name, topic);
+                subscription.injectHandler.invoke(mqttMessage, subscription.name, topic);
             } finally {
                 PrivilegedCarbonContext.endTenantFlow();
             }
         } else {
-            injectHandler.invoke(mqttMessage, name, topic);
+            subscription.injectHandler.invoke(mqttMessage, subscription.name, topic);
+        }
+    }
+
+    /**
+     * The broker only sends the topics of the subscriptions, so the topic filters are matched only when the
+     * connection is shared by multiple inbound endpoints
+     */
+    private Collection<Subscription> getReceivers(String topic) {
+        if (subscriptions.size() <= 1) {
+            return subscriptions.values();
+        }
+        List<Subscription> receivers = new ArrayList<>();
+        for (Subscription subscription : subscriptions.values()) {
+            if (isMatched(subscription.topic, topic)) {
+                receivers.add(subscription);
+            }
+        }
+        if (receivers.isEmpty() && log.isDebugEnabled()) {
+            log.debug("No inbound endpoint subscribed to the topic " + topic + " of the received message.");
+        }
+        return receivers;
+    }
+
+    /**
+     * Match a topic name against a topic filter with the single level (+) and multi level (#) wildcards
+     */
+    public static boolean isMatched(String topicFilter, String topicName) {
+        if (topicName.startsWith("$") && (topicFilter.startsWith("+") || topicFilter.startsWith("#"))) {
+            // topics starting with $ are not matched by filters starting with a wildcard
+            return false;
+        }
+        String[] filterLevels = topicFilter.split("/", -1);
+        String[] topicLevels = topicName.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if ("#".equals(filterLevels[i])) {
+                return true;
+            }
+            if (i >= topicLevels.length
+                    || (!"+".equals(filterLevels[i]) && !filterLevels[i].equals(topicLevels[i]))) {
+                return false;
+            }
         }
+        return filterLevels.length == topicLevels.length;
     }
 
     @Override
     public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
     }
 
+    /**
+     * Deliver the messages of the topic filter to the inbound endpoint, replacing the inject handler of an
+     * inbound endpoint already subscribed
+     *
+     * @return whether the inbound endpoint was not subscribed through the connection before
+     */
+    public boolean addSubscription(String name, String topic, int qos, MqttInjectHandler injectHandler) {
+        return subscriptions.put(name, new Subscription(name, topic, qos, injectHandler)) == null;
+    }
+
+    /**
+     * Stop delivering messages to the inbound endpoint
+     *
+     * @return whether other inbound endpoints still use the connection
+     */
+    public boolean removeSubscription(String name) {
+        subscriptions.remove(name);
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * @return whether an inbound endpoint still subscribes to the topic filter through the connection
+     */
+    public boolean isSubscribed(String topic) {
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.topic.equals(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isSharedConnection() {
+        return confac.isSharedConnection();
+    }
+
+    public int getTenantId() {
+        return tenantId;
+    }
+
     public void setMqttConnectionConsumer(MqttConnectionConsumer connectionConsumer) {
         this.connectionConsumer = connectionConsumer;
     }
@@ -146,10 +280,6 @@ public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements
         return this.connectOptions;
     }
 
-    public void updateInjectHandler(MqttInjectHandler injectHandler) {
-        this.injectHandler = injectHandler;
-    }
-
     public void shutdown() {
         super.shutdown();
         if (connectionListener != null) {
@@ -157,6 +287,15 @@ public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements
         }
     }
 
+    /**
+     * Wait for the messages handed over to the workers to be mediated
+     */
+    public void shutdownDispatcher() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
     /**
      * Set the inbound endpoint name
      * @param name
@@ -172,4 +311,22 @@ public class MqttAsyncCallback extends OneTimeTriggerAbstractCallback implements
     public String getName () {
         return this.name;
     }
+
+    /**
+     * Topic filter of an inbound endpoint using the connection
+     */
+    private static class Subscription {
+
+        private final String name;
+        private final String topic;
+        private final int qos;
+        private final MqttInjectHandler injectHandler;
+
+        private Subscription(String name, String topic, int qos, MqttInjectHandler injectHandler) {
+            this.name = name;
+            this.topic = topic;
+            this.qos = qos;
+            this.injectHandler = injectHandler;
+        }
+    }
 }
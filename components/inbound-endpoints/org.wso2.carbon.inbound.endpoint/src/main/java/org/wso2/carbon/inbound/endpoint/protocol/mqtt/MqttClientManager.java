@@ -72,10 +72,17 @@ public class MqttClientManager {
         return mqttClientMap.containsKey(identifier);
     }
 
-    public MqttAsyncClient getMqttClient(String identifier) {
+    /**
+     * @param sharedConnection whether the inbound endpoint asking for the client shares its connection
+     */
+    public MqttAsyncClient getMqttClient(String identifier, boolean sharedConnection) {
         if (tenantLoadingFlagMap.containsKey(identifier)) {
             //this is manually tenant loading case should return the client
             return mqttClientMap.get(identifier);
+        } else if (sharedConnection && mqttCallbackMap.containsKey(identifier)
+                && mqttCallbackMap.get(identifier).isSharedConnection()) {
+            //the inbound endpoint subscribes through the connection of another inbound endpoint
+            return mqttClientMap.get(identifier);
         } else {
             MqttAsyncCallback callback = mqttCallbackMap.get(identifier);
             //this is the case where recreation of same bounded inbound endpoint for server host
@@ -125,6 +132,10 @@ public class MqttClientManager {
         inboundNameToIdentifierMap.put(name, identifier);
     }
 
+    public void unregisterInboundEndpoint(String name) {
+        inboundNameToIdentifierMap.remove(name);
+    }
+
     public String getInboundEndpointIdentifier(String name) {
         return inboundNameToIdentifierMap.get(name);
     }
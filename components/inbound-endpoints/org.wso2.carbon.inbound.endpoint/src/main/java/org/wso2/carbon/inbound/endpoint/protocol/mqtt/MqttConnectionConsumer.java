@@ -25,6 +25,7 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 
 import java.util.Properties;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Connection consumer for MQTT listener which delegates connection attempts and subscription
@@ -37,6 +38,8 @@ public class MqttConnectionConsumer {
     private MqttConnectionFactory confac;
     private Properties mqttProperties;
     private MqttConnectionListener connectionListener;
+    private MqttAsyncCallback mqttAsyncCallback;
+    private final AtomicBoolean connecting = new AtomicBoolean(false);
     private String name;
 
     public MqttConnectionConsumer(MqttConnectOptions connectOptions, MqttAsyncClient mqttAsyncClient,
@@ -48,6 +51,10 @@ public class MqttConnectionConsumer {
         this.mqttProperties = mqttProperties;
     }
 
+    /**
+     * Connect and subscribe to the topics of the inbound endpoints using the connection. When inbound endpoints
+     * share the connection, only one of them connects at a time.
+     */
     public void execute() {
         if (mqttAsyncClient != null) {
             if (mqttAsyncClient.isConnected()) {
@@ -56,6 +63,10 @@ public class MqttConnectionConsumer {
                 //as we maintain connection when the tenant is manually loaded ( no connection
                 //disconnect and reconnect )
                 return;
+            } else if (!connecting.compareAndSet(false, true)) {
+                //another inbound endpoint sharing the connection is connecting, and subscribes to the
+                //topics of all of them once connected
+                return;
             } else {
                 try {
                     connectionListener = new MqttConnectionListener(this);
@@ -67,16 +78,18 @@ public class MqttConnectionConsumer {
                     }
 
                     if (mqttAsyncClient.isConnected()) {
-                        int qosLevel = Integer.parseInt(mqttProperties
-                                .getProperty(MqttConstants.MQTT_QOS));
-                        if (confac.getTopic() != null) {
-                            mqttAsyncClient.subscribe(confac.getTopic(), qosLevel);
+                        if (mqttAsyncCallback != null) {
+                            mqttAsyncCallback.subscribe();
+                        } else if (confac.getTopic() != null) {
+                            mqttAsyncClient.subscribe(confac.getTopic(), confac.getQos());
                         }
                         log.info("MQTT inbound endpoint " + this.name + " connected to the broker");
                     }
                 } catch (MqttException ex) {
                     log.error("Error while trying to subscribe to the remote ", ex);
                     connectionListener.onFailure();
+                } finally {
+                    connecting.set(false);
                 }
             }
         }
@@ -88,6 +101,10 @@ public class MqttConnectionConsumer {
         }
     }
 
+    public void setMqttAsyncCallback(MqttAsyncCallback mqttAsyncCallback) {
+        this.mqttAsyncCallback = mqttAsyncCallback;
+    }
+
     public MqttConnectOptions getConnectOptions() {
         return connectOptions;
     }
@@ -180,6 +180,31 @@ public class MqttConnectionFactory {
                         + MqttConstants.MQTT_RECONNECTION_INTERVAL);
             }
 
+            if (passedInParameter.getProperty(MqttConstants.MQTT_WORKER_POOL_SIZE) != null) {
+                validateSizeField(MqttConstants.MQTT_WORKER_POOL_SIZE,
+                        passedInParameter.getProperty(MqttConstants.MQTT_WORKER_POOL_SIZE));
+                parameters.put(MqttConstants.MQTT_WORKER_POOL_SIZE,
+                        passedInParameter.getProperty(MqttConstants.MQTT_WORKER_POOL_SIZE));
+            }
+
+            if (passedInParameter.getProperty(MqttConstants.MQTT_WORKER_QUEUE_SIZE) != null) {
+                validateSizeField(MqttConstants.MQTT_WORKER_QUEUE_SIZE,
+                        passedInParameter.getProperty(MqttConstants.MQTT_WORKER_QUEUE_SIZE));
+                parameters.put(MqttConstants.MQTT_WORKER_QUEUE_SIZE,
+                        passedInParameter.getProperty(MqttConstants.MQTT_WORKER_QUEUE_SIZE));
+            }
+
+            if (passedInParameter.getProperty(MqttConstants.MQTT_CONNECTION_SHARED) != null) {
+                if (Boolean.parseBoolean(passedInParameter.getProperty(MqttConstants.MQTT_CONNECTION_SHARED))
+                        && passedInParameter.getProperty(MqttConstants.MQTT_CLIENT_ID) == null) {
+                    String msg = "MQTT inbound listener Client ID is required to share the connection";
+                    log.error(msg);
+                    throw new SynapseException(msg);
+                }
+                parameters.put(MqttConstants.MQTT_CONNECTION_SHARED,
+                        passedInParameter.getProperty(MqttConstants.MQTT_CONNECTION_SHARED));
+            }
+
         } catch (Exception ex) {
             log.error("MQTT connection factory : " + factoryName + " failed to initialize " +
                     "the MQTT Inbound configuration properties", ex);
@@ -226,6 +251,38 @@ public class MqttConnectionFactory {
         }
     }
 
+    public int getQos() {
+        return Integer.parseInt(parameters.get(MqttConstants.MQTT_QOS));
+    }
+
+    /**
+     * @return number of workers mediating the messages of the connection, or 0 to mediate them on the receive
+     *         thread of the client
+     */
+    public int getWorkerPoolSize() {
+        if (parameters.get(MqttConstants.MQTT_WORKER_POOL_SIZE) != null) {
+            return Integer.parseInt(parameters.get(MqttConstants.MQTT_WORKER_POOL_SIZE));
+        } else {
+            return 0;
+        }
+    }
+
+    public int getWorkerQueueSize() {
+        if (parameters.get(MqttConstants.MQTT_WORKER_QUEUE_SIZE) != null) {
+            return Integer.parseInt(parameters.get(MqttConstants.MQTT_WORKER_QUEUE_SIZE));
+        } else {
+            return MqttConstants.DEFAULT_WORKER_QUEUE_SIZE;
+        }
+    }
+
+    /**
+     * @return whether inbound endpoints with the same client ID, server host and server port subscribe through
+     *         a single connection
+     */
+    public boolean isSharedConnection() {
+        return Boolean.parseBoolean(parameters.get(MqttConstants.MQTT_CONNECTION_SHARED));
+    }
+
     private MqttAsyncClient createMqttAsyncClient(String name) {
 
         MqttClientManager clientManager = MqttClientManager.getInstance();
@@ -257,7 +314,9 @@ public class MqttConnectionFactory {
             if (clientManager.hasClientDataStore(inboundIdentifier)) {
                 dataStore = clientManager.getMqttClientDataStore(inboundIdentifier);
             }
-            return clientManager.getMqttClient(inboundIdentifier);
+            MqttAsyncClient mqttClient = clientManager.getMqttClient(inboundIdentifier, isSharedConnection());
+            clientManager.registerInboundEndpoint(name, inboundIdentifier);
+            return mqttClient;
         }
 
         String sslEnable = parameters.get(MqttConstants.MQTT_SSL_ENABLE);
@@ -332,6 +391,20 @@ public class MqttConnectionFactory {
         }
     }
 
+    protected void validateSizeField(String parameter, String size) {
+        try {
+            if (Integer.parseInt(size) < 0) {
+                String msg = "MQTT inbound listener " + parameter + " should not be negative";
+                log.error(msg);
+                throw new SynapseException(msg);
+            }
+        } catch (NumberFormatException ex) {
+            String msg = "MQTT inbound listener " + parameter + " should be an integer";
+            log.error(msg);
+            throw new SynapseException(msg);
+        }
+    }
+
     public void shutdown(boolean isClientConnected) {
         //need to clear the resources if and only if client holds the lock for the resource
         //that is client has made a successful connection to the server
@@ -35,6 +35,15 @@ public class MqttConstants {
     public static final String MQTT_CLIENT_ID = "mqtt.client.id";
     public static final String MQTT_RECONNECTION_INTERVAL = "mqtt.reconnection.interval";
 
+    //worker pool and connection sharing parameters
+    //with a worker pool, QoS 1 and 2 messages are acknowledged once they are queued for the workers, so the
+    //messages still waiting in the queue are lost if the server crashes. The pool is off (0) by default, which
+    //acknowledges a message only after it is mediated on the receive thread of the client.
+    public static final String MQTT_WORKER_POOL_SIZE = "mqtt.worker.pool.size";
+    public static final String MQTT_WORKER_QUEUE_SIZE = "mqtt.worker.queue.size";
+    public static final String MQTT_CONNECTION_SHARED = "mqtt.connection.shared";
+    public static final int DEFAULT_WORKER_QUEUE_SIZE = 1000;
+
     //SSL related parameters
     public static final String MQTT_SSL_ENABLE = "mqtt.ssl.enable";
     public static final String MQTT_SSL_KEYSTORE_LOCATION = "mqtt.ssl.keystore.location";
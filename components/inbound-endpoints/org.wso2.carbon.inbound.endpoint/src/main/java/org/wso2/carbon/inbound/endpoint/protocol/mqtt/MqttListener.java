@@ -18,6 +18,7 @@ package org.wso2.carbon.inbound.endpoint.protocol.mqtt;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.SynapseException;
 import org.apache.synapse.inbound.InboundProcessorParams;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
@@ -126,30 +127,44 @@ public class MqttListener extends InboundOneTimeTriggerRequestProcessor {
         //we should ignore the case of manually loading of tenant
         //we maintain a flag for cases where we load the tenant manually
         if (!clientManager.isInboundTenantLoadingFlagSet(inboundIdentifier)) {
-            //release the thread from suspension
-            //this will release thread suspended thread for completion
-            connectionConsumer.shutdown();
-            mqttAsyncCallback.shutdown();
-            confac.shutdown(mqttAsyncClient.isConnected());
-            try {
-                if (mqttAsyncClient.isConnected()) {
-                    mqttAsyncClient.unsubscribe(confac.getTopic());
-                    mqttAsyncClient.disconnect();
+            PrivilegedCarbonContext carbonContext =
+                    PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            int tenantId = carbonContext.getTenantId();
+            String nameIdentifier = clientManager
+                    .buildNameIdentifier(name, String.valueOf(tenantId));
+            if (mqttAsyncCallback.removeSubscription(name)) {
+                //other inbound endpoints still subscribe through the connection, so keep it open
+                try {
+                    if (mqttAsyncClient.isConnected() && !mqttAsyncCallback.isSubscribed(confac.getTopic())) {
+                        mqttAsyncClient.unsubscribe(confac.getTopic());
+                    }
+                } catch (MqttException e) {
+                    log.error("Error while unsubscribing from the topic " + confac.getTopic(), e);
                 }
-                mqttAsyncClient.close();
-
-                PrivilegedCarbonContext carbonContext =
-                        PrivilegedCarbonContext.getThreadLocalCarbonContext();
-                int tenantId = carbonContext.getTenantId();
-                String nameIdentifier = clientManager
-                        .buildNameIdentifier(name, String.valueOf(tenantId));
-                //here we unregister it because this is not a case of tenant loading
-                MqttClientManager.getInstance()
-                        .unregisterMqttClient(inboundIdentifier, nameIdentifier);
-
-                log.info("Disconnected from the remote MQTT server.");
-            } catch (MqttException e) {
-                log.error("Error while disconnecting from the remote server.");
+                clientManager.unregisterInboundEndpoint(nameIdentifier);
+            } else {
+                //release the thread from suspension
+                //this will release thread suspended thread for completion
+                connectionConsumer.shutdown();
+                mqttAsyncCallback.shutdown();
+                confac.shutdown(mqttAsyncClient.isConnected());
+                try {
+                    if (mqttAsyncClient.isConnected()) {
+                        mqttAsyncClient.unsubscribe(confac.getTopic());
+                        mqttAsyncClient.disconnect();
+                    }
+                    mqttAsyncClient.close();
+
+                    //here we unregister it because this is not a case of tenant loading
+                    MqttClientManager.getInstance()
+                            .unregisterMqttClient(inboundIdentifier, nameIdentifier);
+
+                    log.info("Disconnected from the remote MQTT server.");
+                } catch (MqttException e) {
+                    log.error("Error while disconnecting from the remote server.");
+                }
+                //mediate the messages taken before the disconnection
+                mqttAsyncCallback.shutdownDispatcher();
             }
         }
         super.destroy();
@@ -170,6 +185,7 @@ public class MqttListener extends InboundOneTimeTriggerRequestProcessor {
         String inboundIdentifier = clientManager.buildIdentifier(mqttAsyncClient.getClientId(),
                 confac.getServerHost(), confac.getServerPort());
 
+        int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
         if (!clientManager.hasMqttCallback(inboundIdentifier)) {
             //registering callback for the first time
             connectOptions = new MqttConnectOptions();
@@ -181,11 +197,13 @@ public class MqttListener extends InboundOneTimeTriggerRequestProcessor {
             if (socketFactory != null) {
                 connectOptions.setSocketFactory(socketFactory);
             }
-            mqttAsyncCallback = new MqttAsyncCallback(mqttAsyncClient, injectHandler,
-                    confac, connectOptions, mqttProperties);
+            mqttAsyncCallback = new MqttAsyncCallback(mqttAsyncClient, confac, connectOptions,
+                    mqttProperties, tenantId);
             mqttAsyncCallback.setName(params.getName());
+            mqttAsyncCallback.addSubscription(name, confac.getTopic(), confac.getQos(), injectHandler);
             connectionConsumer = new MqttConnectionConsumer(connectOptions, mqttAsyncClient,
                     confac, mqttProperties, name);
+            connectionConsumer.setMqttAsyncCallback(mqttAsyncCallback);
             mqttAsyncCallback.setMqttConnectionConsumer(connectionConsumer);
             mqttAsyncClient.setCallback(mqttAsyncCallback);
             //here we register the callback handler
@@ -193,19 +211,30 @@ public class MqttListener extends InboundOneTimeTriggerRequestProcessor {
         } else {
             //has previously registered callback we just update the reference
             //in other words has previous un-destroyed callback
-            //this is a manually tenant loading case
+            //this is a manually tenant loading case, or an inbound endpoint sharing the connection
             //should clear the previously set tenant loading flags for the inbound identifier
             clientManager.unRegisterInboundTenantLoadingFlag(inboundIdentifier);
 
             mqttAsyncCallback = clientManager.getMqttCallback(inboundIdentifier);
-            
-            mqttAsyncCallback.setName(params.getName());
+            if (mqttAsyncCallback.getTenantId() != tenantId) {
+                String msg = "MQTT inbound endpoint " + name + " can not share the connection of another tenant.";
+                log.error(msg);
+                throw new SynapseException(msg);
+            }
+
             connectOptions = mqttAsyncCallback.getMqttConnectionOptions();
             connectionConsumer = mqttAsyncCallback.getMqttConnectionConsumer();
 
             //but we need to update injectHandler due to recreation of synapse environment
-            mqttAsyncCallback.updateInjectHandler(injectHandler);
-
+            boolean newSubscription = mqttAsyncCallback.addSubscription(name, confac.getTopic(),
+                    confac.getQos(), injectHandler);
+            if (newSubscription && mqttAsyncClient.isConnected()) {
+                try {
+                    mqttAsyncClient.subscribe(confac.getTopic(), confac.getQos());
+                } catch (MqttException e) {
+                    log.error("Error while subscribing to the topic " + confac.getTopic(), e);
+                }
+            }
         }
     }
 
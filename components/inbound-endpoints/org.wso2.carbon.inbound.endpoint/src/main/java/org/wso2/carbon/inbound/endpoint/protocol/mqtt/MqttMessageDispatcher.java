@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.inbound.endpoint.protocol.mqtt;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.inbound.endpoint.common.KeyedSerialExecutor;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the messages of an MQTT connection over to a bounded pool of workers, so a slow sequence does not hold
+ * the receive thread of the client. Messages of the same ordering key are mediated one after the other in the
+ * order they arrived, while other messages are mediated in parallel. When the number of messages waiting for
+ * mediation reaches the queue size, the receive thread is held until a worker frees a place, which stops the
+ * client from reading further messages from the broker.
+ */
+public class MqttMessageDispatcher {
+
+    private static final Log log = LogFactory.getLog(MqttMessageDispatcher.class);
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+    private static final long PERMIT_WAIT_TIMEOUT = 1000;
+
+    private final String name;
+    private final ExecutorService workerPool;
+    private final int queueSize;
+    private final Semaphore inFlightMessages;
+    private final KeyedSerialExecutor orderedExecutor;
+    private volatile boolean closed = false;
+
+    /**
+     * @param name      name of the connection, used in the logs
+     * @param poolSize  number of workers mediating the messages
+     * @param queueSize number of messages which may wait for or be in mediation at once
+     */
+    public MqttMessageDispatcher(String name, int poolSize, int queueSize) {
+        this.name = name;
+        this.workerPool = Executors.newFixedThreadPool(poolSize, new MqttWorkerThreadFactory());
+        this.queueSize = Math.max(queueSize, poolSize);
+        this.inFlightMessages = new Semaphore(this.queueSize);
+        this.orderedExecutor = new KeyedSerialExecutor(workerPool) {
+            @Override
+            protected void rejected(Object key, Collection<Runnable> dropped, RejectedExecutionException e) {
+                log.warn("MQTT connection " + MqttMessageDispatcher.this.name + " dropped " + dropped.size()
+                        + " messages of " + key + " while stopping.");
+                inFlightMessages.release(dropped.size());
+            }
+        };
+    }
+
+    /**
+     * Hand a message over to the workers, waiting while the queue is full.
+     *
+     * @param orderingKey key of the messages to mediate in order, or null if the message may be mediated in
+     *                    parallel with any other
+     * @return false if the dispatcher is shut down and the message was not taken
+     */
+    public boolean dispatch(String orderingKey, Runnable mediation) throws InterruptedException {
+        if (!acquire()) {
+            return false;
+        }
+        Runnable task = new InFlightTask(mediation);
+        if (orderingKey == null) {
+            try {
+                workerPool.execute(task);
+            } catch (RejectedExecutionException e) {
+                inFlightMessages.release();
+                return false;
+            }
+            return true;
+        }
+        orderedExecutor.execute(orderingKey, task);
+        return true;
+    }
+
+    private boolean acquire() throws InterruptedException {
+        if (!inFlightMessages.tryAcquire()) {
+            if (log.isDebugEnabled()) {
+                log.debug("MQTT connection " + name + " holds the client until a worker is free.");
+            }
+            while (!inFlightMessages.tryAcquire(PERMIT_WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    return false;
+                }
+            }
+        }
+        if (closed) {
+            inFlightMessages.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop taking messages and wait for the messages already taken to be mediated
+     */
+    public void shutdown() {
+        closed = true;
+        try {
+            // the messages of an ordering key are handed to the workers one at a time, so the workers are only
+            // stopped once every message taken has been mediated
+            if (!inFlightMessages.tryAcquire(queueSize, SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.warn("MQTT connection " + name + " stopped before mediating all the received messages.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workerPool.shutdown();
+    }
+
+    /**
+     * Frees the place of the message in the queue once it is mediated
+     */
+    private class InFlightTask implements Runnable {
+
+        private final Runnable mediation;
+
+        private InFlightTask(Runnable mediation) {
+            this.mediation = mediation;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mediation.run();
+            } catch (Throwable t) {
+                log.error("Error while mediating MQTT message of connection " + name, t);
+            } finally {
+                inFlightMessages.release();
+            }
+        }
+    }
+
+    private static class MqttWorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolNumber = new AtomicInteger(1);
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix = "mqtt-inbound-worker-" + poolNumber.getAndIncrement() + "-";
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(false);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.inbound.endpoint.protocol.rabbitmq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.apache.axiom.om.OMException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Push based consumer of one channel. Deliveries of a channel are dispatched one after the other, so once a
+ * message is mediated every message with a lower delivery tag has been mediated as well. Successful messages are
+ * therefore acknowledged cumulatively with multiple=true, once the ack batch is full or the batch interval has
+ * passed, instead of one basicAck and transaction commit per message. A failed message flushes the pending
+ * acknowledgements and is rejected back to the queue. A message whose mediation raised an error is held
+ * unacknowledged for the retry delay and then rejected from the retry scheduler, so that the dispatch thread moves on
+ * to the next delivery straight away. While a message is held, mediated messages are acknowledged one by one, since a
+ * cumulative acknowledgement would cover the held message as well.
+ */
+public class RabbitMQChannelConsumer extends DefaultConsumer {
+
+    private static final Log log = LogFactory.getLog(RabbitMQChannelConsumer.class);
+
+    private final String inboundName;
+    private final RabbitMQInjectHandler injectHandler;
+    private final String defaultContentType;
+    private final boolean autoAck;
+    private final int ackBatchSize;
+    private final long ackBatchInterval;
+    private final ScheduledExecutorService retryScheduler;
+    private final long retryDelay;
+
+    /* tracking of mediated but not yet acknowledged deliveries, guarded by this consumer */
+    private long lastMediatedTag;
+    private int pendingAcks;
+    private long firstPendingAckTime;
+    private final List<Long> pendingAckTags = new ArrayList<>();
+    private final Set<Long> heldTags = new HashSet<>();
+
+    private volatile boolean active = true;
+
+    /**
+     * @param retryScheduler scheduler of the rejection of messages whose mediation raised an error, or null to reject
+     *                       them right away
+     * @param retryDelay     number of milliseconds such a message is held before it is rejected back to the queue
+     */
+    public RabbitMQChannelConsumer(Channel channel, String inboundName, RabbitMQInjectHandler injectHandler,
+                                   String defaultContentType, boolean autoAck, int ackBatchSize,
+                                   long ackBatchInterval, ScheduledExecutorService retryScheduler, long retryDelay) {
+        super(channel);
+        this.inboundName = inboundName;
+        this.injectHandler = injectHandler;
+        this.defaultContentType = defaultContentType;
+        this.autoAck = autoAck;
+        this.ackBatchSize = ackBatchSize;
+        this.ackBatchInterval = ackBatchInterval;
+        this.retryScheduler = retryScheduler;
+        this.retryDelay = retryDelay;
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+        RabbitMQMessage message = RabbitMQUtils.createMessage(properties, envelope.getDeliveryTag(), body,
+                defaultContentType);
+        boolean successful = false;
+        boolean mediationError = false;
+        try {
+            successful = injectHandler.invoke(message, inboundName);
+        } catch (OMException e) {
+            mediationError = true;
+            log.error("Invalid Message Format while consuming the message", e);
+        } catch (Exception e) {         //we need to handle any exception upon injecting to mediation
+            mediationError = true;
+            log.error("Error while mediating message", e);
+        }
+
+        if (!autoAck) {
+            if (successful) {
+                acknowledge(envelope.getDeliveryTag());
+            } else if (mediationError) {
+                /*
+                 * Upon a mediation error, re-try after a delay. Delivering the message to another consumer
+                 * straight away would only fail again
+                 */
+                rejectLater(envelope.getDeliveryTag());
+            } else {
+                reject(envelope.getDeliveryTag());
+            }
+        }
+    }
+
+    private synchronized void acknowledge(long deliveryTag) {
+        lastMediatedTag = deliveryTag;
+        pendingAckTags.add(deliveryTag);
+        if (pendingAcks++ == 0) {
+            firstPendingAckTime = System.currentTimeMillis();
+        }
+        if (pendingAcks >= ackBatchSize) {
+            flushAcks();
+        }
+    }
+
+    private synchronized void reject(long deliveryTag) {
+        flushAcks();
+        try {
+            getChannel().basicNack(deliveryTag, false, true);
+        } catch (IOException e) {
+            log.error("Error while rejecting message of inbound " + inboundName, e);
+        } catch (ShutdownSignalException e) {
+            log.error("Channel closed while rejecting message of inbound " + inboundName, e);
+        }
+    }
+
+    /**
+     * Hold the message unacknowledged and reject it back to the queue once the retry delay has passed
+     */
+    private synchronized void rejectLater(final long deliveryTag) {
+        if (retryScheduler == null || retryDelay <= 0) {
+            reject(deliveryTag);
+            return;
+        }
+        flushAcks();
+        heldTags.add(deliveryTag);
+        try {
+            retryScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    releaseHeld(deliveryTag);
+                }
+            }, retryDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the listener is shutting down
+            releaseHeld(deliveryTag);
+        }
+    }
+
+    private synchronized void releaseHeld(long deliveryTag) {
+        // the tag is gone if the channel was shut down meanwhile, the broker redelivers the message by itself
+        if (heldTags.remove(deliveryTag) && getChannel().isOpen()) {
+            reject(deliveryTag);
+        }
+    }
+
+    /**
+     * Acknowledge all the mediated messages which have not been acknowledged yet
+     */
+    public synchronized void flushAcks() {
+        if (pendingAcks == 0) {
+            return;
+        }
+        try {
+            if (heldTags.isEmpty()) {
+                getChannel().basicAck(lastMediatedTag, true);
+            } else {
+                for (Long deliveryTag : pendingAckTags) {
+                    getChannel().basicAck(deliveryTag, false);
+                }
+            }
+        } catch (IOException e) {
+            // unacknowledged messages are redelivered by the broker once the channel is closed
+            log.error("Error while acknowledging messages of inbound " + inboundName, e);
+        } catch (ShutdownSignalException e) {
+            log.error("Channel closed while acknowledging messages of inbound " + inboundName, e);
+        } finally {
+            pendingAcks = 0;
+            pendingAckTags.clear();
+        }
+    }
+
+    /**
+     * Acknowledge the pending messages if the oldest of them has been waiting longer than the batch interval
+     */
+    public synchronized void flushExpiredAcks() {
+        if (pendingAcks > 0 && System.currentTimeMillis() - firstPendingAckTime >= ackBatchInterval) {
+            flushAcks();
+        }
+    }
+
+    @Override
+    public void handleCancel(String consumerTag) throws IOException {
+        log.warn("Consumer " + consumerTag + " of inbound " + inboundName + " was cancelled by the broker");
+        active = false;
+    }
+
+    @Override
+    public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        synchronized (this) {
+            // delivery tags are scoped to the channel, the broker redelivers whatever was not acknowledged
+            pendingAcks = 0;
+            pendingAckTags.clear();
+            heldTags.clear();
+        }
+        active = false;
+    }
+
+    /**
+     * @return false once the consumer has been cancelled or its channel has been shut down
+     */
+    public boolean isActive() {
+        return active;
+    }
+}
@@ -18,7 +18,6 @@
 
 package org.wso2.carbon.inbound.endpoint.protocol.rabbitmq;
 
-import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConsumerCancelledException;
@@ -32,8 +31,14 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.util.Hashtable;
-import java.util.Map;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RabbitMQConnectionConsumer {
     private static final Log log = LogFactory.getLog(RabbitMQConnectionConsumer.class);
@@ -58,6 +63,15 @@ public class RabbitMQConnectionConsumer {
     private RabbitMQInjectHandler injectHandler;
     private String consumerTagString;
 
+    /* number of push based channel consumers, zero to consume with a single polling consumer */
+    private int consumerCount;
+    private int ackBatchSize = RabbitMQConstants.DEFAULT_ACK_BATCH_SIZE;
+    private long ackBatchInterval = RabbitMQConstants.DEFAULT_ACK_BATCH_INTERVAL;
+    private long messageRetryDelay = RabbitMQConstants.DEFAULT_MESSAGE_RETRY_DELAY;
+    private ExecutorService consumerExecutor;
+    private ScheduledExecutorService retryScheduler;
+    private final List<RabbitMQChannelConsumer> channelConsumers = new CopyOnWriteArrayList<>();
+
     private volatile boolean connected = false;
     private volatile boolean idle = false;
 
@@ -68,17 +82,32 @@ public class RabbitMQConnectionConsumer {
         for (final String propertyName : rabbitMQProperties.stringPropertyNames()) {
             this.rabbitMQProps.put(propertyName, rabbitMQProperties.getProperty(propertyName));
         }
+        this.consumerCount = getIntProperty(RabbitMQConstants.CONSUMER_COUNT, 0);
+        this.ackBatchSize = getIntProperty(RabbitMQConstants.ACK_BATCH_SIZE, RabbitMQConstants.DEFAULT_ACK_BATCH_SIZE);
+        this.ackBatchInterval = getIntProperty(RabbitMQConstants.ACK_BATCH_INTERVAL,
+                RabbitMQConstants.DEFAULT_ACK_BATCH_INTERVAL);
+        this.messageRetryDelay = getIntProperty(RabbitMQConstants.MESSAGE_RETRY_DELAY,
+                RabbitMQConstants.DEFAULT_MESSAGE_RETRY_DELAY);
     }
 
     public void execute() {
 
         try {
             workerState = STATE_STARTED;
+            if (isConcurrent()) {
+                consumerExecutor = Executors.newFixedThreadPool(consumerCount, new ConsumerThreadFactory(inboundName));
+                retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                        new ConsumerThreadFactory(inboundName + "-retry"));
+            }
             initConsumer();
 
             while (workerState == STATE_STARTED) {
                 try {
-                    startConsumer();
+                    if (isConcurrent()) {
+                        superviseChannelConsumers();
+                    } else {
+                        startConsumer();
+                    }
                 } catch (ShutdownSignalException sse) {
                     if (!sse.isInitiatedByApplication()) {
                         log.error("RabbitMQ Listener of the inbound " + inboundName +
@@ -97,6 +126,14 @@ public class RabbitMQConnectionConsumer {
             handleException("Error initializing consumer for inbound " + inboundName, e);
         } finally {
             closeConnection();
+            if (consumerExecutor != null) {
+                consumerExecutor.shutdown();
+                consumerExecutor = null;
+            }
+            if (retryScheduler != null) {
+                retryScheduler.shutdownNow();
+                retryScheduler = null;
+            }
             workerState = STATE_STOPPED;
         }
     }
@@ -272,6 +309,11 @@ public class RabbitMQConnectionConsumer {
             log.debug("Bind queue '" + queueName + "' to exchange '" + exchangeName + "' with route key '" + routeKey + "'");
         }
 
+        if (isConcurrent()) {
+            startChannelConsumers();
+            return;
+        }
+
         if (!channel.isOpen()) {
             channel = connection.createChannel();
             log.debug("Channel is not open. Creating a new channel for inbound " + inboundName);
@@ -300,6 +342,109 @@ public class RabbitMQConnectionConsumer {
         }
     }
 
+    /**
+     * Start the push based consumers, each on its own channel. The prefetch count of every channel is the
+     * configured QoS value or, if it is not set, twice the ack batch size so that a channel never waits for
+     * deliveries while its acknowledgements are batched.
+     *
+     * @throws IOException on error
+     */
+    private void startChannelConsumers() throws IOException {
+        stopChannelConsumers();
+        int prefetchCount = ackBatchSize * 2;
+        String qos = rabbitMQProperties.getProperty(RabbitMQConstants.CONSUMER_QOS);
+        if (qos != null && !qos.isEmpty()) {
+            try {
+                prefetchCount = Integer.parseInt(qos);
+            } catch (NumberFormatException e) {
+                log.warn("Unable to parse given QoS value, " + qos + " as an integer. Therefore using the " +
+                        "prefetch count " + prefetchCount);
+            }
+        }
+        // a full ack batch must fit in the prefetch window, or the broker stops delivering before it is acked
+        int batchSize = prefetchCount > 0 ? Math.min(ackBatchSize, prefetchCount) : ackBatchSize;
+        String contentType = rabbitMQProperties.getProperty(RabbitMQConstants.CONTENT_TYPE);
+        consumerTagString = rabbitMQProperties.getProperty(RabbitMQConstants.CONSUMER_TAG);
+
+        for (int i = 0; i < consumerCount; i++) {
+            Channel consumerChannel = connection.createChannel();
+            if (prefetchCount > 0) {
+                consumerChannel.basicQos(prefetchCount);
+            }
+            RabbitMQChannelConsumer channelConsumer = new RabbitMQChannelConsumer(consumerChannel, inboundName,
+                    injectHandler, contentType, autoAck, batchSize, ackBatchInterval, retryScheduler,
+                    messageRetryDelay);
+            String consumerTag = consumerTagString != null ? consumerTagString + "-" + i : "";
+            consumerTag = consumerChannel.basicConsume(queueName, autoAck, consumerTag, channelConsumer);
+            channelConsumers.add(channelConsumer);
+            log.debug("Start consuming queue '" + queueName + "' with consumer tag '" + consumerTag + "' for inbound " + inboundName);
+        }
+        log.info("Started " + consumerCount + " RabbitMQ consumers for inbound " + inboundName);
+    }
+
+    /**
+     * Flush the acknowledgements of the push based consumers whose batch interval has passed and restart the
+     * consumers if their channels were closed, until the listener is shut down
+     *
+     * @throws IOException if the connection is lost
+     */
+    private void superviseChannelConsumers() throws IOException {
+        while (isActive()) {
+            for (RabbitMQChannelConsumer channelConsumer : channelConsumers) {
+                channelConsumer.flushExpiredAcks();
+            }
+            if (!connection.isOpen()) {
+                throw new IOException("Connection of inbound " + inboundName + " is closed");
+            }
+            for (RabbitMQChannelConsumer channelConsumer : channelConsumers) {
+                if (!channelConsumer.isActive()) {
+                    log.info("Restarting the RabbitMQ consumers of inbound " + inboundName);
+                    startChannelConsumers();
+                    break;
+                }
+            }
+            try {
+                Thread.sleep(ackBatchInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void stopChannelConsumers() {
+        for (RabbitMQChannelConsumer channelConsumer : channelConsumers) {
+            channelConsumer.flushAcks();
+            Channel consumerChannel = channelConsumer.getChannel();
+            if (consumerChannel.isOpen()) {
+                try {
+                    consumerChannel.close();
+                } catch (Exception e) {
+                    log.debug("Error while closing the channel of a consumer for inbound " + inboundName, e);
+                }
+            }
+        }
+        channelConsumers.clear();
+    }
+
+    private boolean isConcurrent() {
+        return consumerCount > 0;
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        String value = rabbitMQProperties.getProperty(name);
+        if (StringUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Unable to parse given " + name + " value, " + value + " as an integer. Therefore using " +
+                    defaultValue);
+            return defaultValue;
+        }
+    }
+
     /**
      * Returns the delivery from the consumer
      *
@@ -309,7 +454,7 @@ public class RabbitMQConnectionConsumer {
      */
     private RabbitMQMessage getConsumerDelivery(QueueingConsumer consumer)
             throws InterruptedException, ShutdownSignalException {
-        RabbitMQMessage message = new RabbitMQMessage();
+        RabbitMQMessage message;
         QueueingConsumer.Delivery delivery = null;
         try {
             log.debug("Waiting for next delivery from queue for inbound " + inboundName);
@@ -323,29 +468,8 @@ public class RabbitMQConnectionConsumer {
         }
 
         if (delivery != null) {
-            AMQP.BasicProperties properties = delivery.getProperties();
-            Map<String, Object> headers = properties.getHeaders();
-            message.setBody(delivery.getBody());
-            message.setDeliveryTag(delivery.getEnvelope().getDeliveryTag());
-            message.setReplyTo(properties.getReplyTo());
-            message.setMessageId(properties.getMessageId());
-
-            // Content type is as set in delivered message. If not, from inbound parameters.
-            String contentType = properties.getContentType();
-            if (contentType == null) {
-                contentType = rabbitMQProperties.getProperty(RabbitMQConstants.CONTENT_TYPE);
-            }
-            message.setContentType(contentType);
-
-            message.setContentEncoding(properties.getContentEncoding());
-            message.setCorrelationId(properties.getCorrelationId());
-            if (headers != null) {
-                message.setHeaders(headers);
-                if (headers.get(RabbitMQConstants.SOAP_ACTION) != null) {
-                    message.setSoapAction(headers.get(
-                            RabbitMQConstants.SOAP_ACTION).toString());
-                }
-            }
+            message = RabbitMQUtils.createMessage(delivery.getProperties(), delivery.getEnvelope().getDeliveryTag(),
+                    delivery.getBody(), rabbitMQProperties.getProperty(RabbitMQConstants.CONTENT_TYPE));
         } else {
             log.debug("Queue delivery item is null for inbound " + inboundName);
             return null;
@@ -369,7 +493,7 @@ public class RabbitMQConnectionConsumer {
     private Connection createConnection() throws IOException {
         Connection connection = null;
         try {
-            connection = rabbitMQConnectionFactory.createConnection();
+            connection = rabbitMQConnectionFactory.createConnection(consumerExecutor);
             log.info("RabbitMQ connection created for inbound " + inboundName);
         } catch (Exception e) {
             handleException("Error while creating RabbitMQ connection for inbound " + inboundName, e);
@@ -405,6 +529,9 @@ public class RabbitMQConnectionConsumer {
 
     protected void requestShutdown() {
         workerState = STATE_SHUTTING_DOWN;
+        for (RabbitMQChannelConsumer channelConsumer : channelConsumers) {
+            channelConsumer.flushAcks();
+        }
         closeConnection();
     }
 
@@ -413,4 +540,17 @@ public class RabbitMQConnectionConsumer {
         throw new RabbitMQException(msg, e);
     }
 
+    private static class ConsumerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix;
+
+        ConsumerThreadFactory(String inboundName) {
+            namePrefix = "rabbitmq-inbound-" + inboundName + "-consumer-";
+        }
+
+        public Thread newThread(Runnable r) {
+            return new Thread(r, namePrefix + threadNumber.getAndIncrement());
+        }
+    }
+
 }
\ No newline at end of file
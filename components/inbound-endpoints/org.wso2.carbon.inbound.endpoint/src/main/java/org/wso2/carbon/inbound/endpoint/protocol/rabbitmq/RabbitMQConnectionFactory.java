@@ -34,6 +34,7 @@ import java.security.KeyStore;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Encapsulate a RabbitMQ AMQP Connection factory definition within an inbound configuration
@@ -275,9 +276,19 @@ public class RabbitMQConnectionFactory {
      * @return a connection to the server
      */
     public Connection createConnection() throws IOException {
+        return createConnection(null);
+    }
+
+    /**
+     * Create a rabbit mq connection which dispatches consumer callbacks on the given executor
+     *
+     * @param consumerExecutor executor for consumer callbacks, the client default is used if null
+     * @return a connection to the server
+     */
+    public Connection createConnection(ExecutorService consumerExecutor) throws IOException {
         Connection connection = null;
         try {
-            connection = RabbitMQUtils.createConnection(connectionFactory, addresses);
+            connection = RabbitMQUtils.createConnection(connectionFactory, addresses, consumerExecutor);
             log.info("[" + name + "] Successfully connected to RabbitMQ Broker");
         } catch (IOException e) {
             log.error("[" + name + "] Error creating connection to RabbitMQ Broker. Reattempting to connect.", e);
@@ -288,7 +299,7 @@ public class RabbitMQConnectionFactory {
                         " in " + retryInterval + " ms");
                 try {
                     Thread.sleep(retryInterval);
-                    connection = RabbitMQUtils.createConnection(connectionFactory, addresses);
+                    connection = RabbitMQUtils.createConnection(connectionFactory, addresses, consumerExecutor);
                     log.info("[" + name + "] Successfully connected to RabbitMQ Broker");
                 } catch (InterruptedException e1) {
                     log.error("[" + name + "] Error while trying to reconnect to RabbitMQ Broker", e1);
@@ -79,6 +79,10 @@ public class RabbitMQConstants {
 
     public static final String CONSUMER_QOS = "rabbitmq.channel.consumer.qos";
     public static final String CONSUMER_TAG = "rabbitmq.consumer.tag";
+    public static final String CONSUMER_COUNT = "rabbitmq.concurrent.consumer.count";
+    public static final String ACK_BATCH_SIZE = "rabbitmq.ack.batch.size";
+    public static final String ACK_BATCH_INTERVAL = "rabbitmq.ack.batch.interval";
+    public static final String MESSAGE_RETRY_DELAY = "rabbitmq.message.retry.delay";
 
     public static final String DEFAULT_CONTENT_TYPE = "text/plain";
     public static final int DEFAULT_RETRY_INTERVAL = 30000;
@@ -86,6 +90,9 @@ public class RabbitMQConstants {
     public static final int DEFAULT_THREAD_COUNT = 20;
     public static final int DEFAULT_DELIVERY_MODE = 2; //Default is persistent
     public static final int DEFAULT_REPLY_TO_TIMEOUT = 30000;
+    public static final int DEFAULT_ACK_BATCH_SIZE = 50;
+    public static final int DEFAULT_ACK_BATCH_INTERVAL = 100;
+    public static final int DEFAULT_MESSAGE_RETRY_DELAY = 2000;
 }
 
 
@@ -18,6 +18,7 @@
 
 package org.wso2.carbon.inbound.endpoint.protocol.rabbitmq;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Address;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
@@ -28,6 +29,8 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeoutException;
 
 public class RabbitMQUtils {
@@ -35,15 +38,65 @@ public class RabbitMQUtils {
     private static final Log log = LogFactory.getLog(RabbitMQUtils.class);
 
     public static Connection createConnection(ConnectionFactory factory, Address[] addresses) throws IOException {
+        return createConnection(factory, addresses, null);
+    }
+
+    /**
+     * Create a connection whose consumer callbacks are dispatched on the given executor, or on the default consumer
+     * work pool of the client if the executor is null
+     */
+    public static Connection createConnection(ConnectionFactory factory, Address[] addresses,
+                                              ExecutorService consumerExecutor) throws IOException {
         Connection connection = null;
         try {
-            connection = factory.newConnection(addresses);
+            if (consumerExecutor != null) {
+                connection = factory.newConnection(consumerExecutor, addresses);
+            } else {
+                connection = factory.newConnection(addresses);
+            }
         } catch (TimeoutException e) {
             log.error("Error while creating new connection", e);
         }
         return connection;
     }
 
+    /**
+     * Create the inbound message from a delivery
+     *
+     * @param properties         properties of the delivered message
+     * @param deliveryTag        delivery tag of the message in its channel
+     * @param body               message payload
+     * @param defaultContentType content type to use when the message does not specify one
+     * @return the inbound message
+     */
+    public static RabbitMQMessage createMessage(AMQP.BasicProperties properties, long deliveryTag, byte[] body,
+                                                String defaultContentType) {
+        RabbitMQMessage message = new RabbitMQMessage();
+        Map<String, Object> headers = properties.getHeaders();
+        message.setBody(body);
+        message.setDeliveryTag(deliveryTag);
+        message.setReplyTo(properties.getReplyTo());
+        message.setMessageId(properties.getMessageId());
+
+        // Content type is as set in delivered message. If not, from inbound parameters.
+        String contentType = properties.getContentType();
+        if (contentType == null) {
+            contentType = defaultContentType;
+        }
+        message.setContentType(contentType);
+
+        message.setContentEncoding(properties.getContentEncoding());
+        message.setCorrelationId(properties.getCorrelationId());
+        if (headers != null) {
+            message.setHeaders(headers);
+            if (headers.get(RabbitMQConstants.SOAP_ACTION) != null) {
+                message.setSoapAction(headers.get(
+                        RabbitMQConstants.SOAP_ACTION).toString());
+            }
+        }
+        return message;
+    }
+
     public static String getProperty(MessageContext mc, String key) {
         return (String) mc.getProperty(key);
     }
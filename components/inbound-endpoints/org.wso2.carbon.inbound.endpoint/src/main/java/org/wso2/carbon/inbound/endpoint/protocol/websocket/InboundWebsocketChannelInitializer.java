@@ -42,6 +42,8 @@ public class InboundWebsocketChannelInitializer extends ChannelInitializer<Socke
     private boolean dispatchToCustomSequence;
     private ArrayList<AbstractSubprotocolHandler> subprotocolHandlers;
     private int portOffset;
+    private String slowConsumerPolicy;
+    private InboundWebsocketMetrics metrics;
 
     public InboundWebsocketChannelInitializer() {
     }
@@ -70,6 +72,14 @@ public class InboundWebsocketChannelInitializer extends ChannelInitializer<Socke
         this.outflowErrorSequence = outflowErrorSequence;
     }
 
+    public void setSlowConsumerPolicy(String slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public void setMetrics(InboundWebsocketMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void setSubprotocolHandlers(ArrayList<AbstractSubprotocolHandler> subprotocolHandlers) {
         this.subprotocolHandlers = subprotocolHandlers;
     }
@@ -90,6 +100,8 @@ public class InboundWebsocketChannelInitializer extends ChannelInitializer<Socke
         sourceHandler.setClientBroadcastLevel(clientBroadcastLevel);
         sourceHandler.setDispatchToCustomSequence(dispatchToCustomSequence);
         sourceHandler.setPortOffset(portOffset);
+        sourceHandler.setSlowConsumerPolicy(slowConsumerPolicy);
+        sourceHandler.setMetrics(metrics);
         if (outflowDispatchSequence != null)
             sourceHandler.setOutflowDispatchSequence(outflowDispatchSequence);
         if (outflowErrorSequence != null)
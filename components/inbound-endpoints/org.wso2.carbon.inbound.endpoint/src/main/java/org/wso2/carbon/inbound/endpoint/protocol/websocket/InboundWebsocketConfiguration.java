@@ -30,6 +30,9 @@ public class InboundWebsocketConfiguration {
     private String pipelineHandler;
     private String dispatchToCustomSequence;
     private final boolean usePortOffset;
+    private int writeBufferHighWaterMark;
+    private int writeBufferLowWaterMark;
+    private String slowConsumerPolicy;
 
     private InboundWebsocketConfiguration(InboundWebsocketConfigurationBuilder builder) {
         this.port = builder.port;
@@ -44,6 +47,9 @@ public class InboundWebsocketConfiguration {
         this.pipelineHandler = builder.pipelineHandler;
         this.dispatchToCustomSequence = builder.dispatchToCustomSequence;
         this.usePortOffset = builder.usePortOffset;
+        this.writeBufferHighWaterMark = builder.writeBufferHighWaterMark;
+        this.writeBufferLowWaterMark = builder.writeBufferLowWaterMark;
+        this.slowConsumerPolicy = builder.slowConsumerPolicy;
     }
 
     public int getPort() {
@@ -94,6 +100,18 @@ public class InboundWebsocketConfiguration {
         return usePortOffset;
     }
 
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public String getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
     public static class InboundWebsocketConfigurationBuilder {
         private final int port;
         private final String name;
@@ -107,6 +125,9 @@ public class InboundWebsocketConfiguration {
         private String pipelineHandler;
         private String dispatchToCustomSequence;
         private boolean usePortOffset = false;
+        private int writeBufferHighWaterMark;
+        private int writeBufferLowWaterMark;
+        private String slowConsumerPolicy = InboundWebsocketConstants.SLOW_CONSUMER_POLICY_BUFFER;
 
         public InboundWebsocketConfigurationBuilder(int port, String name) {
             this.port = port;
@@ -166,6 +187,21 @@ public class InboundWebsocketConfiguration {
             this.usePortOffset = usePortOffset;
             return this;
         }
+
+        public InboundWebsocketConfigurationBuilder writeBufferHighWaterMark(int writeBufferHighWaterMark) {
+            this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+            return this;
+        }
+
+        public InboundWebsocketConfigurationBuilder writeBufferLowWaterMark(int writeBufferLowWaterMark) {
+            this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+            return this;
+        }
+
+        public InboundWebsocketConfigurationBuilder slowConsumerPolicy(String slowConsumerPolicy) {
+            this.slowConsumerPolicy = slowConsumerPolicy;
+            return this;
+        }
     }
 
 }
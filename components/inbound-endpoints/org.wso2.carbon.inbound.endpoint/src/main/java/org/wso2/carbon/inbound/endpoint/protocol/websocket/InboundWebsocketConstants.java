@@ -50,6 +50,13 @@ public class InboundWebsocketConstants {
     public static final String WEBSOCKET_CLIENT_SIDE_BROADCAST_LEVEL = "ws.client.side.broadcast.level";
     public static final String WEBSOCKET_USE_PORT_OFFSET = "ws.use.port.offset";
 
+    public static final String WEBSOCKET_WRITE_BUFFER_HIGH_WATER_MARK = "ws.write.buffer.high.water.mark";
+    public static final String WEBSOCKET_WRITE_BUFFER_LOW_WATER_MARK = "ws.write.buffer.low.water.mark";
+    public static final String WEBSOCKET_SLOW_CONSUMER_POLICY = "ws.slow.consumer.policy";
+    public static final String SLOW_CONSUMER_POLICY_BUFFER = "buffer";
+    public static final String SLOW_CONSUMER_POLICY_DROP = "drop";
+    public static final String SLOW_CONSUMER_POLICY_CLOSE = "close";
+
     public static final String WEBSOCKET_OUTFLOW_DISPATCH_SEQUENCE = "ws.outflow.dispatch.sequence";
     public static final String WEBSOCKET_OUTFLOW_DISPATCH_FAULT_SEQUENCE = "ws.outflow.dispatch.fault.sequence";
 
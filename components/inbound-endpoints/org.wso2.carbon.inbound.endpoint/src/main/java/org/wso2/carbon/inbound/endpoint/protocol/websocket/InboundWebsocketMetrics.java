@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.inbound.endpoint.protocol.websocket;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InboundWebsocketMetrics implements InboundWebsocketMetricsMBean {
+
+    private static final String MBEAN_CATEGORY = "WebsocketInbound";
+
+    private final int port;
+
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+
+    public InboundWebsocketMetrics(int port) {
+        this.port = port;
+    }
+
+    public void frameReceived(long size) {
+        receivedFrames.incrementAndGet();
+        receivedBytes.addAndGet(size);
+    }
+
+    public void frameSent(long size) {
+        sentFrames.incrementAndGet();
+        sentBytes.addAndGet(size);
+    }
+
+    @Override
+    public long getReceivedFrameCount() {
+        return receivedFrames.get();
+    }
+
+    @Override
+    public long getReceivedByteCount() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public long getSentFrameCount() {
+        return sentFrames.get();
+    }
+
+    @Override
+    public long getSentByteCount() {
+        return sentBytes.get();
+    }
+
+    @Override
+    public void reset() {
+        receivedFrames.set(0);
+        receivedBytes.set(0);
+        sentFrames.set(0);
+        sentBytes.set(0);
+    }
+
+    public void register() {
+        MBeanRegistrar.getInstance().registerMBean(this, MBEAN_CATEGORY, getMBeanId());
+    }
+
+    public void unregister() {
+        MBeanRegistrar.getInstance().unRegisterMBean(MBEAN_CATEGORY, getMBeanId());
+    }
+
+    private String getMBeanId() {
+        return String.valueOf(port);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.inbound.endpoint.protocol.websocket;
+
+/**
+ * Frame and byte throughput of a websocket inbound listener, exposed through JMX.
+ */
+public interface InboundWebsocketMetricsMBean {
+
+    /**
+     * @return number of data frames read from the clients of the listener
+     */
+    long getReceivedFrameCount();
+
+    /**
+     * @return number of payload bytes of the data frames read
+     */
+    long getReceivedByteCount();
+
+    /**
+     * @return number of frames sent back by mediation. A frame broadcast to a subscriber path is counted once
+     */
+    long getSentFrameCount();
+
+    /**
+     * @return number of payload bytes of the frames sent back by mediation
+     */
+    long getSentByteCount();
+
+    /**
+     * Start counting from zero again
+     */
+    void reset();
+}
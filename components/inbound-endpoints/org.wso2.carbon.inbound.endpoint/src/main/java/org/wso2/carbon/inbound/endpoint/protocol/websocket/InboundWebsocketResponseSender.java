@@ -16,12 +16,16 @@
 
 package org.wso2.carbon.inbound.endpoint.protocol.websocket;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.util.CharsetUtil;
 import org.apache.axiom.om.OMOutputFormat;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.transport.MessageFormatter;
@@ -100,15 +104,17 @@ public class InboundWebsocketResponseSender implements InboundResponseSender {
                                 InboundWebsocketConstants.BINARY)) {
                             org.apache.axis2.context.MessageContext msgCtx =
                                     ((Axis2MessageContext) msgContext).getAxis2MessageContext();
-                            MessageFormatter messageFormatter = BaseUtils.getMessageFormatter(msgCtx);
-                            OMOutputFormat format = BaseUtils.getOMOutputFormat(msgCtx);
-                            byte[] message = messageFormatter.getBytes(msgCtx, format);
-                            frame = new BinaryWebSocketFrame(Unpooled.copiedBuffer(message));
                             InboundWebsocketChannelContext ctx = sourceHandler.getChannelHandlerContext();
+                            frame = new BinaryWebSocketFrame(messageContextToBuffer(msgCtx,
+                                    BaseUtils.getMessageFormatter(msgCtx), PooledByteBufAllocator.DEFAULT));
                             int clientBroadcastLevel = sourceHandler.getClientBroadcastLevel();
                             String subscriberPath = sourceHandler.getSubscriberPath();
                             WebsocketSubscriberPathManager pathManager = WebsocketSubscriberPathManager.getInstance();
-                            handleSendBack(frame, ctx, clientBroadcastLevel, subscriberPath, pathManager);
+                            try {
+                                handleSendBack(frame, ctx, clientBroadcastLevel, subscriberPath, pathManager);
+                            } finally {
+                                frame.release();
+                            }
                             return;
                         }
                     } catch (XMLStreamException ex) {
@@ -137,13 +143,17 @@ public class InboundWebsocketResponseSender implements InboundResponseSender {
                                     .getProperty(InboundWebsocketConstants.BACKEND_MESSAGE_TYPE);
                             ((Axis2MessageContext) msgContext).getAxis2MessageContext().setProperty(
                                     InboundWebsocketConstants.MESSAGE_TYPE, backendMessageType);
-                            frame = new TextWebSocketFrame(messageContextToText(((Axis2MessageContext)
-                                    msgContext).getAxis2MessageContext()));
                             InboundWebsocketChannelContext ctx = sourceHandler.getChannelHandlerContext();
+                            frame = messageContextToTextFrame(((Axis2MessageContext) msgContext)
+                                    .getAxis2MessageContext(), PooledByteBufAllocator.DEFAULT);
                             int clientBroadcastLevel = sourceHandler.getClientBroadcastLevel();
                             String subscriberPath = sourceHandler.getSubscriberPath();
                             WebsocketSubscriberPathManager pathManager = WebsocketSubscriberPathManager.getInstance();
-                            handleSendBack(frame, ctx, clientBroadcastLevel, subscriberPath, pathManager);
+                            try {
+                                handleSendBack(frame, ctx, clientBroadcastLevel, subscriberPath, pathManager);
+                            } finally {
+                                frame.release();
+                            }
                             return;
                         }
                     } catch (XMLStreamException ex) {
@@ -177,13 +187,17 @@ public class InboundWebsocketResponseSender implements InboundResponseSender {
                         return;
                     }
                     RelayUtils.buildMessage(((Axis2MessageContext) msgContext).getAxis2MessageContext(), false);
-                    TextWebSocketFrame frame = new TextWebSocketFrame(messageContextToText(((Axis2MessageContext) msgContext)
-                            .getAxis2MessageContext()));
                     InboundWebsocketChannelContext ctx = sourceHandler.getChannelHandlerContext();
+                    TextWebSocketFrame frame = messageContextToTextFrame(((Axis2MessageContext) msgContext)
+                            .getAxis2MessageContext(), PooledByteBufAllocator.DEFAULT);
                     int clientBroadcastLevel = sourceHandler.getClientBroadcastLevel();
                     String subscriberPath = sourceHandler.getSubscriberPath();
                     WebsocketSubscriberPathManager pathManager = WebsocketSubscriberPathManager.getInstance();
-                    handleSendBack(frame, ctx, clientBroadcastLevel, subscriberPath, pathManager);
+                    try {
+                        handleSendBack(frame, ctx, clientBroadcastLevel, subscriberPath, pathManager);
+                    } finally {
+                        frame.release();
+                    }
                 } catch (IOException ex) {
                     log.error("Failed for format message to specified output format", ex);
                 } catch (XMLStreamException e) {
@@ -198,18 +212,24 @@ public class InboundWebsocketResponseSender implements InboundResponseSender {
                                   int clientBroadcastLevel,
                                   String subscriberPath,
                                   WebsocketSubscriberPathManager pathManager) {
+        InboundWebsocketMetrics metrics = sourceHandler.getMetrics();
+        if (metrics != null) {
+            metrics.frameSent(frame.content().readableBytes());
+        }
         if (clientBroadcastLevel == 0) {
             ctx.writeToChannel(frame);
         } else if (clientBroadcastLevel == 1) {
             String endpointName =
                     WebsocketEndpointManager.getInstance().getEndpointName(sourceHandler.getPort(),
                             sourceHandler.getTenantDomain());
-            pathManager.broadcastOnSubscriberPath(frame, endpointName, subscriberPath);
+            pathManager.broadcastOnSubscriberPath(frame, endpointName, subscriberPath,
+                    sourceHandler.getSlowConsumerPolicy());
         } else if (clientBroadcastLevel == 2) {
             String endpointName =
                     WebsocketEndpointManager.getInstance().getEndpointName(sourceHandler.getPort(),
                             sourceHandler.getTenantDomain());
-            pathManager.exclusiveBroadcastOnSubscriberPath(frame, endpointName, subscriberPath, ctx);
+            pathManager.exclusiveBroadcastOnSubscriberPath(frame, endpointName, subscriberPath, ctx,
+                    sourceHandler.getSlowConsumerPolicy());
         }
     }
 
@@ -225,4 +245,42 @@ public class InboundWebsocketResponseSender implements InboundResponseSender {
         return sw.toString();
     }
 
+    /**
+     * Serialize the message into a text frame. The payload of a text frame is UTF-8, so a message formatted in
+     * UTF-8 is written straight into a buffer of the allocator, and any other encoding goes through text.
+     */
+    protected TextWebSocketFrame messageContextToTextFrame(org.apache.axis2.context.MessageContext msgCtx,
+                                                           ByteBufAllocator allocator) throws IOException {
+        OMOutputFormat format = BaseUtils.getOMOutputFormat(msgCtx);
+        String charSetEncoding = format.getCharSetEncoding();
+        if (charSetEncoding == null || CharsetUtil.UTF_8.name().equalsIgnoreCase(charSetEncoding)) {
+            return new TextWebSocketFrame(messageContextToBuffer(msgCtx,
+                    MessageProcessorSelector.getMessageFormatter(msgCtx), allocator));
+        }
+        return new TextWebSocketFrame(messageContextToText(msgCtx));
+    }
+
+    /**
+     * Serialize the message into a buffer of the given allocator. The caller owns the returned buffer and
+     * releases it once the frame is written.
+     */
+    protected ByteBuf messageContextToBuffer(org.apache.axis2.context.MessageContext msgCtx,
+                                             MessageFormatter messageFormatter,
+                                             ByteBufAllocator allocator) throws IOException {
+        OMOutputFormat format = BaseUtils.getOMOutputFormat(msgCtx);
+        ByteBuf buffer = allocator.buffer();
+        boolean written = false;
+        try {
+            OutputStream out = new ByteBufOutputStream(buffer);
+            messageFormatter.writeTo(msgCtx, format, out, true);
+            out.close();
+            written = true;
+        } finally {
+            if (!written) {
+                buffer.release();
+            }
+        }
+        return buffer;
+    }
+
 }
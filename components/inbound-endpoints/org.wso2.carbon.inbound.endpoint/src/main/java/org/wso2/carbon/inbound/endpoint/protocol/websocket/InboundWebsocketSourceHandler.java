@@ -65,7 +65,6 @@ import org.wso2.carbon.inbound.endpoint.protocol.websocket.management.WebsocketS
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
@@ -98,6 +97,8 @@ public class InboundWebsocketSourceHandler extends ChannelInboundHandlerAdapter
     private ArrayList<AbstractSubprotocolHandler> subprotocolHandlers;
     private String defaultContentType;
     private int portOffset;
+    private String slowConsumerPolicy;
+    private InboundWebsocketMetrics metrics;
 
     static {
         contentTypes.add("application/xml");
@@ -135,6 +136,9 @@ public class InboundWebsocketSourceHandler extends ChannelInboundHandlerAdapter
         if (msg instanceof FullHttpRequest) {
             handleHandshake(ctx, (FullHttpRequest) msg);
         } else if (msg instanceof WebSocketFrame) {
+            if (metrics != null && (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame)) {
+                metrics.frameReceived(((WebSocketFrame) msg).content().readableBytes());
+            }
             handleWebSocketFrame(ctx, (WebSocketFrame) msg);
         }
     }
@@ -146,7 +150,7 @@ public class InboundWebsocketSourceHandler extends ChannelInboundHandlerAdapter
             handleException("Endpoint not found for port : " + port + "" + " tenant domain : " + tenantDomain);
         }
         WebsocketSubscriberPathManager.getInstance()
-                .addChannelContext(endpointName, subscriberPath.getPath(), wrappedContext);
+                .removeChannelContext(endpointName, subscriberPath.getPath(), wrappedContext);
         MessageContext synCtx = getSynapseMessageContext(tenantDomain);
         InboundEndpoint endpoint = synCtx.getConfiguration().getInboundEndpoint(endpointName);
         synCtx.setProperty(InboundWebsocketConstants.CONNECTION_TERMINATE, new Boolean(true));
@@ -313,8 +317,8 @@ public class InboundWebsocketSourceHandler extends ChannelInboundHandlerAdapter
                         } else {
                             synCtx.setProperty(InboundWebsocketConstants.WEBSOCKET_TEXT_FRAME_PRESENT, false);
                         }
-                        InputStream in = new AutoCloseInputStream(new ByteArrayInputStream(
-                                ((TextWebSocketFrame) frame).duplicate().text().getBytes()));
+                        // the builder reads the UTF-8 payload straight from the frame buffer
+                        InputStream in = new AutoCloseInputStream(new ByteBufInputStream(frame.content().duplicate()));
                         OMElement documentElement = builder.processDocument(in, contentType, axis2MsgCtx);
                         synCtx.setEnvelope(TransportUtils.createSOAPEnvelope(documentElement));
                     }
@@ -325,7 +329,6 @@ public class InboundWebsocketSourceHandler extends ChannelInboundHandlerAdapter
                                 InboundWebsocketConstants.SYNAPSE_SUBPROTOCOL_PREFIX)) {
                     CustomLogSetter.getInstance().setLogAppender(endpoint.getArtifactContainerName());
 
-                    String message = ((TextWebSocketFrame) frame).text();
                     String contentType = SubprotocolBuilderUtil
                             .syanapeSubprotocolToContentType(SubprotocolBuilderUtil
                                     .extractSynapseSubprotocol(handshaker.selectedSubprotocol()));
@@ -358,7 +361,7 @@ public class InboundWebsocketSourceHandler extends ChannelInboundHandlerAdapter
                     }
 
                     OMElement documentElement = null;
-                    InputStream in = new AutoCloseInputStream(new ByteArrayInputStream(message.getBytes()));
+                    InputStream in = new AutoCloseInputStream(new ByteBufInputStream(frame.content().duplicate()));
                     documentElement = builder.processDocument(in, contentType, axis2MsgCtx);
                     synCtx.setEnvelope(TransportUtils.createSOAPEnvelope(documentElement));
                     injectToSequence(synCtx, endpoint);
@@ -454,6 +457,22 @@ public class InboundWebsocketSourceHandler extends ChannelInboundHandlerAdapter
         this.clientBroadcastLevel = clientBroadcastLevel;
     }
 
+    public InboundWebsocketMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(InboundWebsocketMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public String getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(String slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
     protected void handleException(String msg) {
         log.error(msg);
         throw new SynapseException(msg);
@@ -17,6 +17,7 @@
 package org.wso2.carbon.inbound.endpoint.protocol.websocket.management;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import org.apache.axis2.AxisFault;
@@ -29,6 +30,7 @@ import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketSourc
 import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketConstants;
 import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketConfiguration;
 import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketEventExecutor;
+import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketMetrics;
 import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketChannelInitializer;
 import org.wso2.carbon.inbound.endpoint.protocol.websocket.SubprotocolBuilderUtil;
 import org.wso2.carbon.inbound.endpoint.protocol.websocket.ssl.InboundWebsocketSSLConfiguration;
@@ -43,6 +45,7 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class WebsocketEndpointManager extends AbstractInboundEndpointManager {
 
@@ -50,6 +53,9 @@ public class WebsocketEndpointManager extends AbstractInboundEndpointManager {
 
     private InboundWebsocketSourceHandler sourceHandler;
 
+    private final Map<Integer, InboundWebsocketMetrics> listenerMetrics =
+            new ConcurrentHashMap<Integer, InboundWebsocketMetrics>();
+
     private static final Logger log = Logger.getLogger(WebsocketEndpointManager.class);
 
     protected WebsocketEndpointManager() {
@@ -141,6 +147,9 @@ public class WebsocketEndpointManager extends AbstractInboundEndpointManager {
         handler.setPipelineHandler(PipelineHandlerBuilderUtil.stringToPipelineHandlers(config.getPipelineHandler()));
         handler.setDispatchToCustomSequence(config.getDispatchToCustomSequence());
         handler.setPortOffset(PersistenceUtils.getPortOffset(params.getProperties()));
+        handler.setSlowConsumerPolicy(config.getSlowConsumerPolicy());
+        handler.setMetrics(createMetrics(port));
+        setWriteBufferWaterMarks(bootstrap, config);
         bootstrap.childHandler(handler);
         try {
             bootstrap.bind(new InetSocketAddress(port)).sync();
@@ -176,6 +185,9 @@ public class WebsocketEndpointManager extends AbstractInboundEndpointManager {
         handler.setPipelineHandler(PipelineHandlerBuilderUtil.stringToPipelineHandlers(config.getPipelineHandler()));
         handler.setDispatchToCustomSequence(config.getDispatchToCustomSequence());
         handler.setPortOffset(PersistenceUtils.getPortOffset(params.getProperties()));
+        handler.setSlowConsumerPolicy(config.getSlowConsumerPolicy());
+        handler.setMetrics(createMetrics(port));
+        setWriteBufferWaterMarks(bootstrap, config);
         bootstrap.childHandler(handler);
         try {
             bootstrap.bind(new InetSocketAddress(port)).sync();
@@ -231,6 +243,10 @@ public class WebsocketEndpointManager extends AbstractInboundEndpointManager {
             return;
         } else if (dataStore.isEndpointRegistryEmpty(port)) {
             WebsocketEventExecutorManager.getInstance().shutdownExecutor(port);
+            InboundWebsocketMetrics metrics = listenerMetrics.remove(port);
+            if (metrics != null) {
+                metrics.unregister();
+            }
         }
 
     }
@@ -257,9 +273,80 @@ public class WebsocketEndpointManager extends AbstractInboundEndpointManager {
                         InboundWebsocketConstants.CUSTOM_SEQUENCE))
                 .usePortOffset(Boolean.valueOf(params.getProperties().getProperty(
                         InboundWebsocketConstants.WEBSOCKET_USE_PORT_OFFSET)))
+                .writeBufferHighWaterMark(validateWaterMarkParam(params.getProperties().getProperty(
+                        InboundWebsocketConstants.WEBSOCKET_WRITE_BUFFER_HIGH_WATER_MARK)))
+                .writeBufferLowWaterMark(validateWaterMarkParam(params.getProperties().getProperty(
+                        InboundWebsocketConstants.WEBSOCKET_WRITE_BUFFER_LOW_WATER_MARK)))
+                .slowConsumerPolicy(validateSlowConsumerPolicyParam(params.getProperties().getProperty(
+                        InboundWebsocketConstants.WEBSOCKET_SLOW_CONSUMER_POLICY)))
                 .build();
     }
 
+    private InboundWebsocketMetrics createMetrics(int port) {
+        InboundWebsocketMetrics metrics = new InboundWebsocketMetrics(port);
+        InboundWebsocketMetrics previous = listenerMetrics.put(port, metrics);
+        if (previous != null) {
+            previous.unregister();
+        }
+        metrics.register();
+        return metrics;
+    }
+
+    /**
+     * Apply the write buffer water marks of the configuration to the accepted channels. A channel stops being
+     * writable once its pending writes go above the high water mark, which is when the slow consumer policy
+     * applies to it on a broadcast.
+     */
+    private void setWriteBufferWaterMarks(ServerBootstrap bootstrap, InboundWebsocketConfiguration config) {
+        int high = config.getWriteBufferHighWaterMark();
+        int low = config.getWriteBufferLowWaterMark();
+        if (high > 0 && low > high) {
+            log.warn("Websocket write buffer low water mark " + low + " is above the high water mark " + high
+                    + ". Using " + high + " for both");
+            low = high;
+        }
+        if (high > 0) {
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, high);
+        }
+        if (low > 0) {
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, low);
+        }
+    }
+
+    protected int validateWaterMarkParam(String waterMarkParam) {
+        int waterMark = 0;
+        try {
+            if (waterMarkParam != null && !"".equals(waterMarkParam.trim())) {
+                waterMark = Integer.parseInt(waterMarkParam.trim());
+                if (waterMark <= 0) {
+                    String msg = "Validation failed. Write buffer water mark should be a positive number of bytes.";
+                    log.error(msg);
+                    throw new SynapseException(msg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            String msg = "Validation failed. Write buffer water mark should be a number of bytes";
+            log.error(msg);
+            throw new SynapseException(msg, e);
+        }
+        return waterMark;
+    }
+
+    protected String validateSlowConsumerPolicyParam(String slowConsumerPolicyParam) {
+        if (slowConsumerPolicyParam == null || "".equals(slowConsumerPolicyParam.trim())) {
+            return InboundWebsocketConstants.SLOW_CONSUMER_POLICY_BUFFER;
+        }
+        String policy = slowConsumerPolicyParam.trim().toLowerCase();
+        if (!InboundWebsocketConstants.SLOW_CONSUMER_POLICY_BUFFER.equals(policy)
+                && !InboundWebsocketConstants.SLOW_CONSUMER_POLICY_DROP.equals(policy)
+                && !InboundWebsocketConstants.SLOW_CONSUMER_POLICY_CLOSE.equals(policy)) {
+            String msg = "Validation failed. Unknown slow consumer policy " + slowConsumerPolicyParam;
+            log.error(msg);
+            throw new SynapseException(msg);
+        }
+        return policy;
+    }
+
     protected int validateBroadcastLevelParam(String broadcastLevelParam) {
         int broadcastLevel = 0;
         try {
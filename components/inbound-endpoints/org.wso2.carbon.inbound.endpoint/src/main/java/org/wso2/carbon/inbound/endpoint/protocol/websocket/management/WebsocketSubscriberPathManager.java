@@ -16,22 +16,43 @@
 
 package org.wso2.carbon.inbound.endpoint.protocol.websocket.management;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelMatcher;
+import io.netty.channel.group.ChannelMatchers;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.apache.log4j.Logger;
 import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketChannelContext;
+import org.wso2.carbon.inbound.endpoint.protocol.websocket.InboundWebsocketConstants;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Keeps the channels subscribed to each path of an inbound endpoint. Subscribers are added and removed from the
+ * Netty IO threads while mediation threads broadcast, so the subscribers of a path are held in concurrent
+ * collections and a broadcast never blocks a subscription. A broadcast is written through a {@link ChannelGroup},
+ * which hands the same frame content to the event loop of every channel instead of writing one channel after the
+ * other.
+ */
 public class WebsocketSubscriberPathManager {
 
+    private static final Logger log = Logger.getLogger(WebsocketSubscriberPathManager.class);
+
     private static WebsocketSubscriberPathManager instance = null;
 
-    private ConcurrentHashMap<String, ConcurrentHashMap<String, List<InboundWebsocketChannelContext>>>
-            inboundSubscriberPathMap = new ConcurrentHashMap<String, ConcurrentHashMap<String, List<InboundWebsocketChannelContext>>>();
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, SubscriberGroup>>
+            inboundSubscriberPathMap = new ConcurrentHashMap<String, ConcurrentHashMap<String, SubscriberGroup>>();
 
 
-    public static WebsocketSubscriberPathManager getInstance() {
+    public static synchronized WebsocketSubscriberPathManager getInstance() {
         if (instance == null) {
             instance = new WebsocketSubscriberPathManager();
         }
@@ -42,62 +63,75 @@ public class WebsocketSubscriberPathManager {
     public void addChannelContext(String inboundName,
                                   String subscriberPath,
                                   InboundWebsocketChannelContext ctx) {
-        ConcurrentHashMap<String, List<InboundWebsocketChannelContext>> subscriberPathMap =
-                inboundSubscriberPathMap.get(inboundName);
-        if (subscriberPathMap == null) {
-            subscriberPathMap = new ConcurrentHashMap<String, List<InboundWebsocketChannelContext>>();
-            ArrayList<InboundWebsocketChannelContext> listContext = new ArrayList<InboundWebsocketChannelContext>();
-            listContext.add(ctx);
-            subscriberPathMap.put(subscriberPath, listContext);
-            inboundSubscriberPathMap.put(inboundName, subscriberPathMap);
-        } else {
-            List<InboundWebsocketChannelContext> listContext = subscriberPathMap.get(subscriberPath);
-            if (listContext == null) {
-                listContext = new ArrayList<InboundWebsocketChannelContext>();
-                listContext.add(ctx);
-                subscriberPathMap.put(subscriberPath, listContext);
-            } else {
-                listContext.add(ctx);
+        while (true) {
+            ConcurrentHashMap<String, SubscriberGroup> subscriberPathMap = inboundSubscriberPathMap.get(inboundName);
+            if (subscriberPathMap == null) {
+                ConcurrentHashMap<String, SubscriberGroup> newMap = new ConcurrentHashMap<String, SubscriberGroup>();
+                subscriberPathMap = inboundSubscriberPathMap.putIfAbsent(inboundName, newMap);
+                if (subscriberPathMap == null) {
+                    subscriberPathMap = newMap;
+                }
+            }
+            SubscriberGroup group = subscriberPathMap.get(subscriberPath);
+            if (group == null) {
+                SubscriberGroup newGroup = new SubscriberGroup(inboundName, subscriberPath);
+                group = subscriberPathMap.putIfAbsent(subscriberPath, newGroup);
+                if (group == null) {
+                    group = newGroup;
+                }
+            }
+            if (group.add(ctx)) {
+                return;
             }
+            // the group was emptied and removed in the meantime
         }
     }
 
     public void removeChannelContext(String inboundName,
                                      String subscriberPath,
                                      InboundWebsocketChannelContext ctx) {
-        ConcurrentHashMap<String, List<InboundWebsocketChannelContext>> subscriberPathMap =
-                inboundSubscriberPathMap.get(inboundName);
-        List<InboundWebsocketChannelContext> listContext = subscriberPathMap.get(subscriberPath);
-        for (Object context : listContext.toArray()) {
-            if (((InboundWebsocketChannelContext) context).getChannelIdentifier()
-                    .equals(ctx.getChannelIdentifier())) {
-                listContext.remove(context);
-                break;
-            }
+        ConcurrentHashMap<String, SubscriberGroup> subscriberPathMap = inboundSubscriberPathMap.get(inboundName);
+        if (subscriberPathMap == null) {
+            return;
         }
-        if (listContext.isEmpty()) {
-            listContext.clear();
-            subscriberPathMap.remove(subscriberPath);
+        SubscriberGroup group = subscriberPathMap.get(subscriberPath);
+        if (group == null) {
+            return;
         }
-        if (subscriberPathMap.isEmpty()) {
-            subscriberPathMap.clear();
-            inboundSubscriberPathMap.remove(inboundName);
+        if (group.remove(ctx)) {
+            subscriberPathMap.remove(subscriberPath, group);
+            if (subscriberPathMap.isEmpty()) {
+                inboundSubscriberPathMap.remove(inboundName, subscriberPathMap);
+            }
         }
     }
 
     public List<InboundWebsocketChannelContext> getSubscriberPathChannelContextList(String inboundName,
                                                                                     String subscriberPath) {
-        return inboundSubscriberPathMap.get(inboundName).get(subscriberPath);
+        SubscriberGroup group = getSubscriberGroup(inboundName, subscriberPath);
+        if (group == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<InboundWebsocketChannelContext>(group.contexts.values());
     }
 
     public void broadcastOnSubscriberPath(WebSocketFrame frame,
                                           String inboundName,
                                           String subscriberPath) {
-        List<InboundWebsocketChannelContext> contextList =
-                getSubscriberPathChannelContextList(inboundName, subscriberPath);
-        for (InboundWebsocketChannelContext context : contextList) {
-            WebSocketFrame duplicatedFrame = frame.duplicate();
-            context.writeToChannel(duplicatedFrame);
+        broadcastOnSubscriberPath(frame, inboundName, subscriberPath,
+                InboundWebsocketConstants.SLOW_CONSUMER_POLICY_BUFFER);
+    }
+
+    /**
+     * @param slowConsumerPolicy what to do with the subscribers whose write buffer is above the high water mark
+     */
+    public void broadcastOnSubscriberPath(WebSocketFrame frame,
+                                          String inboundName,
+                                          String subscriberPath,
+                                          String slowConsumerPolicy) {
+        SubscriberGroup group = getSubscriberGroup(inboundName, subscriberPath);
+        if (group != null) {
+            group.broadcast(frame, ChannelMatchers.all(), slowConsumerPolicy);
         }
     }
 
@@ -105,14 +139,110 @@ public class WebsocketSubscriberPathManager {
                                                    String inboundName,
                                                    String subscriberPath,
                                                    InboundWebsocketChannelContext ctx) {
-        List<InboundWebsocketChannelContext> contextList =
-                getSubscriberPathChannelContextList(inboundName, subscriberPath);
-        for (InboundWebsocketChannelContext context : contextList) {
-            if (!context.getChannelIdentifier().equals(ctx.getChannelIdentifier())) {
-                WebSocketFrame duplicatedFrame = frame.duplicate();
-                context.writeToChannel(duplicatedFrame);
+        exclusiveBroadcastOnSubscriberPath(frame, inboundName, subscriberPath, ctx,
+                InboundWebsocketConstants.SLOW_CONSUMER_POLICY_BUFFER);
+    }
+
+    public void exclusiveBroadcastOnSubscriberPath(WebSocketFrame frame,
+                                                   String inboundName,
+                                                   String subscriberPath,
+                                                   InboundWebsocketChannelContext ctx,
+                                                   String slowConsumerPolicy) {
+        SubscriberGroup group = getSubscriberGroup(inboundName, subscriberPath);
+        if (group != null) {
+            group.broadcast(frame, ChannelMatchers.isNot(ctx.getChannelHandlerContext().channel()),
+                    slowConsumerPolicy);
+        }
+    }
+
+    private SubscriberGroup getSubscriberGroup(String inboundName, String subscriberPath) {
+        ConcurrentHashMap<String, SubscriberGroup> subscriberPathMap = inboundSubscriberPathMap.get(inboundName);
+        if (subscriberPathMap == null) {
+            return null;
+        }
+        return subscriberPathMap.get(subscriberPath);
+    }
+
+    /**
+     * Subscribers of a path. The group takes no subscriber after its last subscriber is removed, since it is then
+     * removed from the registry as well.
+     */
+    private class SubscriberGroup {
+
+        private final String inboundName;
+        private final String subscriberPath;
+        private final ConcurrentMap<String, InboundWebsocketChannelContext> contexts =
+                new ConcurrentHashMap<String, InboundWebsocketChannelContext>();
+        private final ChannelGroup channels;
+        private boolean retired = false;
+
+        SubscriberGroup(String inboundName, String subscriberPath) {
+            this.inboundName = inboundName;
+            this.subscriberPath = subscriberPath;
+            this.channels = new DefaultChannelGroup(inboundName + subscriberPath, GlobalEventExecutor.INSTANCE);
+        }
+
+        synchronized boolean add(final InboundWebsocketChannelContext ctx) {
+            if (retired) {
+                return false;
+            }
+            if (contexts.putIfAbsent(ctx.getChannelIdentifier(), ctx) == null) {
+                channels.add(ctx.getChannelHandlerContext().channel());
+                // subscribers which disconnect without a close frame leave the path as well
+                ctx.getChannelHandlerContext().channel().closeFuture().addListener(new ChannelFutureListener() {
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        removeChannelContext(inboundName, subscriberPath, ctx);
+                    }
+                });
+            }
+            return true;
+        }
+
+        /**
+         * @return whether the group became empty and must leave the registry
+         */
+        synchronized boolean remove(InboundWebsocketChannelContext ctx) {
+            if (contexts.remove(ctx.getChannelIdentifier()) != null) {
+                channels.remove(ctx.getChannelHandlerContext().channel());
+            }
+            if (contexts.isEmpty() && !retired) {
+                retired = true;
+                return true;
+            }
+            return false;
+        }
+
+        void broadcast(WebSocketFrame frame, ChannelMatcher matcher, String slowConsumerPolicy) {
+            if (InboundWebsocketConstants.SLOW_CONSUMER_POLICY_BUFFER.equals(slowConsumerPolicy)) {
+                // the group releases the frame once written, the caller keeps its own reference
+                channels.writeAndFlush(frame.retain(), matcher);
+                return;
+            }
+            channels.writeAndFlush(frame.retain(), ChannelMatchers.compose(matcher, WRITABLE));
+            if (InboundWebsocketConstants.SLOW_CONSUMER_POLICY_CLOSE.equals(slowConsumerPolicy)) {
+                for (Channel channel : channels) {
+                    if (!channel.isWritable() && matcher.matches(channel)) {
+                        log.warn("Closing the slow websocket subscriber " + channel + " on path " + subscriberPath
+                                + " of inbound endpoint " + inboundName);
+                        channel.close();
+                    }
+                }
+            } else if (log.isDebugEnabled()) {
+                for (Channel channel : channels) {
+                    if (!channel.isWritable() && matcher.matches(channel)) {
+                        log.debug("Dropped a frame for the slow websocket subscriber " + channel + " on path "
+                                + subscriberPath + " of inbound endpoint " + inboundName);
+                    }
+                }
             }
         }
     }
 
+    private static final ChannelMatcher WRITABLE = new ChannelMatcher() {
+        @Override
+        public boolean matches(Channel channel) {
+            return channel.isWritable();
+        }
+    };
+
 }
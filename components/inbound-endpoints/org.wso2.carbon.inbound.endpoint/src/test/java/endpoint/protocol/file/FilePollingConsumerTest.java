@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package endpoint.protocol.file;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.synapse.commons.vfs.VFSConstants;
+import org.junit.Test;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.inbound.endpoint.protocol.file.FileConstants;
+import org.wso2.carbon.inbound.endpoint.protocol.file.FileInjectHandler;
+import org.wso2.carbon.inbound.endpoint.protocol.file.FilePollingConsumer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FilePollingConsumerTest extends TestCase {
+
+    private static final String INBOUND_EP_NAME = "testFilePoll";
+    private static final long SEEN_LAST_MODIFIED = 1500000000000L;
+
+    private File directory;
+    private File seenFileStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        PrivilegedCarbonContext.getThreadLocalCarbonContext()
+                .setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+        PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+        directory = File.createTempFile("inbound", "");
+        directory.delete();
+        directory.mkdir();
+        seenFileStore = File.createTempFile("inbound", ".seen");
+        seenFileStore.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        seenFileStore.delete();
+    }
+
+    /**
+     * Test that a file handled before a restart is skipped as long as it is not modified, and that the names of the
+     * handled files which are gone from the directory are dropped from the seen file store
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSeenFilesSkippedAfterRestart() throws Exception {
+        File seen = createFile("seen.txt");
+        seen.setLastModified(SEEN_LAST_MODIFIED);
+        createFile("new.txt");
+        Properties entries = new Properties();
+        entries.setProperty("seen.txt", String.valueOf(seen.lastModified()));
+        entries.setProperty("gone.txt", String.valueOf(SEEN_LAST_MODIFIED));
+        storeSeenFiles(entries);
+
+        Properties properties = createProperties();
+        properties.setProperty(FileConstants.SEEN_FILE_STORE, seenFileStore.getAbsolutePath());
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(0);
+        Assert.assertEquals(1, createConsumer(properties, injectHandler).execute(false));
+        Assert.assertEquals("Seen file is handled again", Collections.singletonList("new.txt"),
+                injectHandler.injected);
+        Assert.assertTrue(seen.exists());
+
+        entries = loadSeenFiles();
+        Assert.assertEquals("Seen file is dropped from the store", String.valueOf(seen.lastModified()),
+                entries.getProperty("seen.txt"));
+        Assert.assertNull("File gone from the directory is kept in the store", entries.getProperty("gone.txt"));
+
+        // the rewritten store is picked up after a restart
+        injectHandler = new RecordingInjectHandler(0);
+        Assert.assertEquals(0, createConsumer(properties, injectHandler).execute(false));
+        Assert.assertTrue("Seen file is handled after a restart", injectHandler.injected.isEmpty());
+
+        // a modified file with the same name is a new file
+        seen.setLastModified(SEEN_LAST_MODIFIED + 60000);
+        injectHandler = new RecordingInjectHandler(0);
+        Assert.assertEquals(1, createConsumer(properties, injectHandler).execute(false));
+        Assert.assertEquals(Collections.singletonList("seen.txt"), injectHandler.injected);
+    }
+
+    /**
+     * Test that only the files matching the file name pattern are processed, and that the others are left in place
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFileNamePattern() throws Exception {
+        createFile("a.xml");
+        File skipped = createFile("b.txt");
+        createFile("c.xml");
+
+        Properties properties = createProperties();
+        properties.setProperty(VFSConstants.TRANSPORT_FILE_FILE_NAME_PATTERN, ".*\\.xml");
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(0);
+        Assert.assertEquals(2, createConsumer(properties, injectHandler).execute(false));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a.xml", "c.xml")),
+                new HashSet<String>(injectHandler.injected));
+        Assert.assertTrue("Non-matching file is not left in place", skipped.exists());
+        Assert.assertEquals(Collections.singletonList("b.txt"), Arrays.asList(directory.list()));
+    }
+
+    /**
+     * Test that the files of a directory are processed in parallel, with no more files in process at a time than the
+     * configured count
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParallelFileProcessingBound() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            createFile("file-" + i + ".txt");
+        }
+
+        Properties properties = createProperties();
+        properties.setProperty(FileConstants.PARALLEL_FILE_PROCESSING_COUNT, "3");
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(50);
+        Assert.assertEquals("Cycle returns before all the files are processed", 12,
+                createConsumer(properties, injectHandler).execute(false));
+        Assert.assertEquals(12, injectHandler.injected.size());
+        Assert.assertEquals("Processed files are not deleted", 0, directory.list().length);
+        Assert.assertTrue("More files are processed at a time than the parallel count: "
+                + injectHandler.maxInProcess.get(), injectHandler.maxInProcess.get() <= 3);
+        Assert.assertTrue("Files are not processed in parallel", injectHandler.maxInProcess.get() > 1);
+    }
+
+    private Properties createProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(VFSConstants.TRANSPORT_FILE_FILE_URI, "file://" + directory.getAbsolutePath());
+        return properties;
+    }
+
+    private FilePollingConsumer createConsumer(Properties properties, FileInjectHandler injectHandler) {
+        FilePollingConsumer consumer = new FilePollingConsumer(properties, INBOUND_EP_NAME, null, 0);
+        consumer.registerHandler(injectHandler);
+        return consumer;
+    }
+
+    private File createFile(String name) throws IOException {
+        File file = new File(directory, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(name.getBytes());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private void storeSeenFiles(Properties entries) throws IOException {
+        OutputStream out = new FileOutputStream(seenFileStore);
+        try {
+            entries.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private Properties loadSeenFiles() throws IOException {
+        Properties entries = new Properties();
+        InputStream in = new FileInputStream(seenFileStore);
+        try {
+            entries.load(in);
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Records the names of the injected files and the most files injected at a time, taking the given time for each
+     */
+    private static class RecordingInjectHandler extends FileInjectHandler {
+
+        private final List<String> injected = new CopyOnWriteArrayList<String>();
+        private final AtomicInteger inProcess = new AtomicInteger();
+        private final AtomicInteger maxInProcess = new AtomicInteger();
+        private final long processingTime;
+
+        private RecordingInjectHandler(long processingTime) {
+            super(null, null, true, null, new Properties());
+            this.processingTime = processingTime;
+        }
+
+        @Override
+        public boolean invoke(Object object, String name, Map<String, Object> transportHeaders) {
+            int current = inProcess.incrementAndGet();
+            try {
+                int max = maxInProcess.get();
+                while (current > max && !maxInProcess.compareAndSet(max, current)) {
+                    max = maxInProcess.get();
+                }
+                Thread.sleep(processingTime);
+                injected.add(((FileObject) object).getName().getBaseName());
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                inProcess.decrementAndGet();
+            }
+        }
+    }
+}
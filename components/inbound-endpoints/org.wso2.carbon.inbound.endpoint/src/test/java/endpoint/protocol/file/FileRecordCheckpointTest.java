@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package endpoint.protocol.file;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.wso2.carbon.inbound.endpoint.protocol.file.FileRecordCheckpoint;
+
+import java.io.File;
+
+public class FileRecordCheckpointTest extends TestCase {
+
+    private static final long FILE_SIZE = 1024;
+    private static final long FILE_LAST_MODIFIED = 1500000000000L;
+
+    /**
+     * Test that a checkpoint advances only over the uninterrupted sequence of completed records
+     */
+    @Test
+    public void testOutOfOrderCompletion() {
+        FileRecordCheckpoint checkpoint = new FileRecordCheckpoint(null, FILE_SIZE, FILE_LAST_MODIFIED, 1);
+        checkpoint.complete(2);
+        checkpoint.complete(3);
+        Assert.assertEquals("Checkpoint advances past a record in mediation", 0, checkpoint.getCompletedRecords());
+        checkpoint.complete(1);
+        Assert.assertEquals(3, checkpoint.getCompletedRecords());
+        checkpoint.complete(2);
+        Assert.assertEquals(3, checkpoint.getCompletedRecords());
+    }
+
+    /**
+     * Test that a file is resumed from a written checkpoint, and read from the beginning once it changed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResumeFromStore() throws Exception {
+        File store = File.createTempFile("records", ".checkpoint");
+        try {
+            FileRecordCheckpoint checkpoint = new FileRecordCheckpoint(store, FILE_SIZE, FILE_LAST_MODIFIED, 10);
+            for (long record = 1; record <= 4; record++) {
+                checkpoint.complete(record);
+            }
+            checkpoint.save();
+
+            Assert.assertEquals("File is not resumed after the saved records", 4,
+                    new FileRecordCheckpoint(store, FILE_SIZE, FILE_LAST_MODIFIED, 10).getCompletedRecords());
+            Assert.assertEquals("Changed file is resumed", 0,
+                    new FileRecordCheckpoint(store, FILE_SIZE + 1, FILE_LAST_MODIFIED, 10).getCompletedRecords());
+
+            checkpoint.delete();
+            Assert.assertFalse("Checkpoint is not deleted", store.exists());
+            Assert.assertEquals(0,
+                    new FileRecordCheckpoint(store, FILE_SIZE, FILE_LAST_MODIFIED, 10).getCompletedRecords());
+        } finally {
+            store.delete();
+        }
+    }
+
+    /**
+     * Test that a checkpoint kept in memory is only reused for the same version of the file
+     */
+    @Test
+    public void testMemoryCheckpoint() {
+        FileRecordCheckpoint checkpoint = new FileRecordCheckpoint(null, FILE_SIZE, FILE_LAST_MODIFIED, 1);
+        checkpoint.complete(1);
+        checkpoint.save();
+        Assert.assertEquals(1, checkpoint.getCompletedRecords());
+        Assert.assertTrue(checkpoint.isFor(FILE_SIZE, FILE_LAST_MODIFIED));
+        Assert.assertFalse(checkpoint.isFor(FILE_SIZE, FILE_LAST_MODIFIED + 1));
+        Assert.assertFalse(checkpoint.isFor(FILE_SIZE - 1, FILE_LAST_MODIFIED));
+    }
+}
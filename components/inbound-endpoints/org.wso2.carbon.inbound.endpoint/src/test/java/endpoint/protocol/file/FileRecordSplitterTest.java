@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package endpoint.protocol.file;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.wso2.carbon.inbound.endpoint.protocol.file.FileRecordSplitter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FileRecordSplitterTest extends TestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Test splitting the content on line breaks, skipping empty lines
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLineSplit() throws Exception {
+        List<String> records = split(FileRecordSplitter.SPLIT_MODE_LINE, "first\r\nsecond\n\nthird", null, null);
+        Assert.assertEquals(Arrays.asList("first", "second", "third"), records);
+    }
+
+    /**
+     * Test splitting the content on a delimiter of several characters
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDelimiterSplit() throws Exception {
+        List<String> records = split(FileRecordSplitter.SPLIT_MODE_DELIMITER, "a;b;;b;;;c;;", ";;", null);
+        Assert.assertEquals(Arrays.asList("a;b", "b", ";c"), records);
+    }
+
+    /**
+     * Test splitting the elements at a relative path into records which re-declare the namespaces of their
+     * ancestors
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testXMLSplit() throws Exception {
+        String content = "<?xml version='1.0' encoding='UTF-8'?>"
+                + "<o:orders xmlns:o=\"http://orders\"><o:batch>"
+                + "<o:order id=\"1\"><o:item>book</o:item></o:order>"
+                + "<o:order id=\"2\"/>"
+                + "</o:batch><o:order id=\"3\"/></o:orders>";
+        List<String> records = split(FileRecordSplitter.SPLIT_MODE_XML, content, null, "batch/order");
+        Assert.assertEquals("Elements out of the path are split", 2, records.size());
+        Assert.assertTrue(records.get(0).contains("<o:order xmlns:o=\"http://orders\" id=\"1\">"));
+        Assert.assertTrue(records.get(0).contains("<o:item>book</o:item></o:order>"));
+        Assert.assertTrue(records.get(1).contains("id=\"2\""));
+    }
+
+    /**
+     * Test that the xml split mode requires an element path
+     */
+    @Test
+    public void testXMLSplitWithoutElementPath() {
+        try {
+            split(FileRecordSplitter.SPLIT_MODE_XML, "<a/>", null, " ");
+            Assert.fail("Splitter is created without an element path");
+        } catch (Exception expected) {
+            // expected
+        }
+    }
+
+    private List<String> split(String mode, String content, String delimiter, String elementPath)
+            throws IOException {
+        List<String> records = new ArrayList<>();
+        FileRecordSplitter splitter = FileRecordSplitter.create(mode, new ByteArrayInputStream(content.getBytes(UTF_8)),
+                UTF_8, delimiter, elementPath);
+        try {
+            byte[] record;
+            while ((record = splitter.nextRecord()) != null) {
+                records.add(new String(record, UTF_8));
+            }
+        } finally {
+            splitter.close();
+        }
+        return records;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package endpoint.protocol.http;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.rest.API;
+import org.junit.Test;
+import org.wso2.carbon.inbound.endpoint.protocol.http.InboundApiDispatchIndex;
+
+public class InboundApiDispatchIndexTest extends TestCase {
+
+    /**
+     * Test that a request is dispatched to the APIs only when an API context is a prefix of its path, ending on a
+     * segment boundary
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testContextPrefixMatching() throws Exception {
+        SynapseConfiguration synapseConfiguration = new SynapseConfiguration();
+        synapseConfiguration.addAPI("orders", new API("orders", "/orders"));
+        synapseConfiguration.addAPI("stock", new API("stock", "/shop/{version}/stock"));
+        InboundApiDispatchIndex index = new InboundApiDispatchIndex(synapseConfiguration);
+        MessageContext synCtx = createMessageContext(synapseConfiguration);
+
+        Assert.assertTrue(index.mayDispatchToAPI(synCtx, "/orders"));
+        Assert.assertTrue(index.mayDispatchToAPI(synCtx, "/orders/"));
+        Assert.assertTrue(index.mayDispatchToAPI(synCtx, "/orders/1234?expand=true"));
+        Assert.assertTrue(index.mayDispatchToAPI(synCtx, "/orders#items"));
+        Assert.assertFalse("Context matched in the middle of a segment", index.mayDispatchToAPI(synCtx, "/ordersX"));
+        Assert.assertFalse(index.mayDispatchToAPI(synCtx, "/customers/orders"));
+        Assert.assertFalse(index.mayDispatchToAPI(synCtx, "/"));
+
+        Assert.assertTrue("Template segment is not matched", index.mayDispatchToAPI(synCtx, "/shop/v1/stock"));
+        Assert.assertTrue(index.mayDispatchToAPI(synCtx, "/shop/v2/stock/items"));
+        Assert.assertFalse(index.mayDispatchToAPI(synCtx, "/shop/v1"));
+        Assert.assertFalse(index.mayDispatchToAPI(synCtx, "/shop/v1/prices"));
+
+        Assert.assertTrue("Absolute URI is not left to the API dispatch",
+                index.mayDispatchToAPI(synCtx, "http://localhost:8280/customers"));
+        Assert.assertTrue("Message of another configuration is not left to the API dispatch",
+                index.mayDispatchToAPI(createMessageContext(new SynapseConfiguration()), "/customers"));
+    }
+
+    /**
+     * Test that the index follows the APIs deployed and undeployed, and leaves the configuration once closed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testApiChanges() throws Exception {
+        SynapseConfiguration synapseConfiguration = new SynapseConfiguration();
+        InboundApiDispatchIndex index = new InboundApiDispatchIndex(synapseConfiguration);
+        MessageContext synCtx = createMessageContext(synapseConfiguration);
+        Assert.assertFalse(index.mayDispatchToAPI(synCtx, "/customers/1"));
+
+        synapseConfiguration.addAPI("customers", new API("customers", "/customers"));
+        Assert.assertTrue("Deployed API is not indexed", index.mayDispatchToAPI(synCtx, "/customers/1"));
+
+        synapseConfiguration.removeAPI("customers");
+        Assert.assertFalse("Undeployed API is still indexed", index.mayDispatchToAPI(synCtx, "/customers/1"));
+
+        Assert.assertTrue(index.isFor(synapseConfiguration));
+        Assert.assertTrue(synapseConfiguration.getObservers().contains(index));
+        index.close();
+        Assert.assertFalse(index.isFor(synapseConfiguration));
+        Assert.assertFalse("Closed index still observes the configuration",
+                synapseConfiguration.getObservers().contains(index));
+        Assert.assertTrue("Closed index does not leave the request to the API dispatch",
+                index.mayDispatchToAPI(synCtx, "/customers/1"));
+    }
+
+    private MessageContext createMessageContext(SynapseConfiguration synapseConfiguration) throws Exception {
+        return new Axis2MessageContext(new org.apache.axis2.context.MessageContext(), synapseConfiguration, null);
+    }
+}
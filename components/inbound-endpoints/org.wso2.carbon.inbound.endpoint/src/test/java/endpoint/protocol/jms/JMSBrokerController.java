@@ -151,6 +151,27 @@ public class JMSBrokerController {
         }
     }
 
+    /**
+     * Send a message without a body, whose type is not a text, bytes, object, stream or map message
+     */
+    public Message pushEmptyMessage() {
+        if(this.producer == null) {
+            log.error("The producer is null");
+            Assert.fail();
+            return null;
+        } else {
+            Message message = null;
+            try {
+                message = this.session.createMessage();
+                this.producer.send(message);
+            } catch (JMSException e) {
+                log.error("Error while sending message", e);
+                Assert.fail();
+            }
+            return message;
+        }
+    }
+
     public BytesMessage createBytesMessage(byte[] payload) {
         BytesMessage bm = null;
         try {
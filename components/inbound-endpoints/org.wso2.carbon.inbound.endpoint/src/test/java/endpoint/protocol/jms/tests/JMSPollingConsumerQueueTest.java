@@ -24,20 +24,32 @@ import junit.framework.Assert;
 import junit.framework.TestCase;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.synapse.SynapseException;
 import org.junit.Test;
 import org.wso2.carbon.inbound.endpoint.common.InboundTask;
 import org.wso2.carbon.inbound.endpoint.protocol.jms.JMSConstants;
+import org.wso2.carbon.inbound.endpoint.protocol.jms.JMSInjectHandler;
 import org.wso2.carbon.inbound.endpoint.protocol.jms.JMSPollingConsumer;
 import org.wso2.carbon.inbound.endpoint.protocol.jms.JMSTask;
 
+import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 public class JMSPollingConsumerQueueTest extends TestCase {
 
     private static final String PROVIDER_URL = "tcp://127.0.0.1:61616";
     private static final String INBOUND_EP_NAME = "testPolling";
     private static final long INTERVAL = 1000;
+    // default delay of ActiveMQ before redelivering rolled back messages
+    private static final long REDELIVERY_DELAY = 1000;
     private static final String SEND_MSG = "<?xml version='1.0' encoding='UTF-8'?>" +
             "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"" +
             " xmlns:ser=\"http://services.samples\" xmlns:xsd=\"http://services.samples/xsd\">" +
@@ -159,4 +171,148 @@ public class JMSPollingConsumerQueueTest extends TestCase {
         }
     }
 
+    /**
+     * Test that the valid messages of a batch received before a message of an invalid type are mediated and
+     * committed, and that the invalid message is discarded alone
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBatchWithInvalidMessage() throws Exception {
+        String queueName = "testBatchQueueInvalid";
+        Properties jmsProperties = getBatchProperties(queueName, "SESSION_TRANSACTED");
+        JMSBrokerController brokerController = new JMSBrokerController(PROVIDER_URL, jmsProperties);
+        JMSPollingConsumer jmsPollingConsumer = new JMSPollingConsumer(jmsProperties, INTERVAL, INBOUND_EP_NAME);
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(Collections.<String>emptySet());
+        jmsPollingConsumer.registerHandler(injectHandler);
+        try {
+            brokerController.startProcess();
+            brokerController.connect(queueName, true);
+            brokerController.pushMessage("0");
+            brokerController.pushMessage("1");
+            brokerController.pushEmptyMessage();
+            brokerController.pushMessage("3");
+            brokerController.pushMessage("4");
+            pollUntilMediated(jmsPollingConsumer, injectHandler, 4);
+            Assert.assertEquals("Valid messages of the batch are not mediated once",
+                    Arrays.asList("0", "1", "3", "4"), injectHandler.attempts);
+
+            // nothing is rolled back, so nothing is redelivered
+            Thread.sleep(2 * REDELIVERY_DELAY);
+            jmsPollingConsumer.poll();
+            Assert.assertEquals("Committed messages are redelivered", 4, injectHandler.attempts.size());
+        } finally {
+            jmsPollingConsumer.destroy();
+            brokerController.disconnect();
+            brokerController.stopProcess();
+        }
+    }
+
+    /**
+     * Test that a batch of a transacted session is rolled back and redelivered when one of its messages fails
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBatchRolledBackOnMediationFailure() throws Exception {
+        String queueName = "testBatchQueueRollback";
+        Properties jmsProperties = getBatchProperties(queueName, "SESSION_TRANSACTED");
+        JMSBrokerController brokerController = new JMSBrokerController(PROVIDER_URL, jmsProperties);
+        JMSPollingConsumer jmsPollingConsumer = new JMSPollingConsumer(jmsProperties, INTERVAL, INBOUND_EP_NAME);
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(Collections.singleton("1"));
+        jmsPollingConsumer.registerHandler(injectHandler);
+        try {
+            brokerController.startProcess();
+            brokerController.connect(queueName, true);
+            brokerController.pushMessage("0");
+            brokerController.pushMessage("1");
+            brokerController.pushMessage("2");
+            pollUntilMediated(jmsPollingConsumer, injectHandler, 3);
+            Assert.assertEquals("Batch is not redelivered from its first message",
+                    Arrays.asList("0", "1", "0", "1", "2"), injectHandler.attempts);
+        } finally {
+            jmsPollingConsumer.destroy();
+            brokerController.disconnect();
+            brokerController.stopProcess();
+        }
+    }
+
+    /**
+     * Test that the messages of an auto acknowledged batch are all mediated even if one of them fails, since the
+     * batch is not redelivered
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAutoAcknowledgedBatchWithMediationFailure() throws Exception {
+        String queueName = "testBatchQueueAutoAck";
+        Properties jmsProperties = getBatchProperties(queueName, "AUTO_ACKNOWLEDGE");
+        JMSBrokerController brokerController = new JMSBrokerController(PROVIDER_URL, jmsProperties);
+        JMSPollingConsumer jmsPollingConsumer = new JMSPollingConsumer(jmsProperties, INTERVAL, INBOUND_EP_NAME);
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(Collections.singleton("0"));
+        jmsPollingConsumer.registerHandler(injectHandler);
+        try {
+            brokerController.startProcess();
+            brokerController.connect(queueName, true);
+            brokerController.pushMessage("0");
+            brokerController.pushMessage("1");
+            brokerController.pushMessage("2");
+            pollUntilMediated(jmsPollingConsumer, injectHandler, 2);
+            Assert.assertEquals("Messages after the failed one are not mediated",
+                    Arrays.asList("0", "1", "2"), injectHandler.attempts);
+        } finally {
+            jmsPollingConsumer.destroy();
+            brokerController.disconnect();
+            brokerController.stopProcess();
+        }
+    }
+
+    private Properties getBatchProperties(String queueName, String sessionAck) {
+        Properties jmsProperties = JMSTestsUtils.getJMSPropertiesForDestination(queueName, PROVIDER_URL, true);
+        jmsProperties.put(JMSConstants.SESSION_ACK, sessionAck);
+        jmsProperties.put(JMSConstants.JMS_BATCH_SIZE, "5");
+        jmsProperties.put(JMSConstants.JMS_BATCH_TIMEOUT, "200");
+        return jmsProperties;
+    }
+
+    private void pollUntilMediated(JMSPollingConsumer jmsPollingConsumer, RecordingInjectHandler injectHandler,
+                                   int count) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10 * REDELIVERY_DELAY;
+        while (injectHandler.mediated.size() < count && System.currentTimeMillis() < timeout) {
+            jmsPollingConsumer.poll();
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("Messages are not mediated", count, injectHandler.mediated.size());
+    }
+
+    /**
+     * Records the text of the messages handed to mediation, and fails the first attempt to mediate the given ones
+     */
+    private static class RecordingInjectHandler extends JMSInjectHandler {
+
+        private final List<String> attempts = new ArrayList<>();
+        private final List<String> mediated = new ArrayList<>();
+        private final Set<String> failing;
+
+        private RecordingInjectHandler(Set<String> failing) {
+            super(null, null, true, null, new Properties());
+            this.failing = new HashSet<>(failing);
+        }
+
+        @Override
+        public boolean invoke(Object object, String name) throws SynapseException {
+            String text;
+            try {
+                text = ((TextMessage) object).getText();
+            } catch (JMSException e) {
+                throw new SynapseException("Error while reading the JMS message", e);
+            }
+            attempts.add(text);
+            if (failing.remove(text)) {
+                return false;
+            }
+            mediated.add(text);
+            return true;
+        }
+    }
 }
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package endpoint.protocol.kafka;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.inbound.endpoint.protocol.kafka.InjectHandler;
+import org.wso2.carbon.inbound.endpoint.protocol.kafka.KAFKAConstants;
+import org.wso2.carbon.inbound.endpoint.protocol.kafka.KafkaPollMessageListener;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class KafkaPollMessageListenerTest extends TestCase {
+
+    private static final String TOPIC = "testTopic";
+    private static final String INBOUND_EP_NAME = "testKafkaPoll";
+    private static final long TIMEOUT = 10000;
+
+    private final TopicPartition partition = new TopicPartition(TOPIC, 0);
+
+    /**
+     * Test that the offset of a partition is committed only up to the record which failed to be injected, and that
+     * the partition is rewound to that record and paused until the retry delay has passed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOffsetNotAdvancedOnInjectionFailure() throws Exception {
+        final MockConsumer<byte[], byte[]> consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST);
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(2);
+        KafkaPollMessageListener listener = createListener(consumer, injectHandler, null);
+        try {
+            Assert.assertTrue(listener.createKafkaConsumerConnector());
+            consumer.rebalance(Collections.singletonList(partition));
+            consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+            for (long offset = 0; offset < 5; offset++) {
+                consumer.addRecord(createRecord(offset));
+            }
+            Assert.assertEquals("Poll yield is not the number of records handed to the workers", 5,
+                    listener.injectMessageToESB(INBOUND_EP_NAME));
+            waitForInjections(injectHandler, 3);
+
+            // the next cycles commit the mediated records and rewind the partition to the failed record
+            long timeout = System.currentTimeMillis() + TIMEOUT;
+            while (consumer.position(partition) != 2 && System.currentTimeMillis() < timeout) {
+                listener.injectMessageToESB(INBOUND_EP_NAME);
+            }
+            Assert.assertEquals("Partition is not rewound to the failed record", 2, consumer.position(partition));
+            Assert.assertEquals("Offset is advanced past the failed record", 2,
+                    consumer.committed(partition).offset());
+            Assert.assertEquals("Records after the failed record are injected", 2, injectHandler.injected.size());
+            Assert.assertTrue("Partition is not paused for the retry delay",
+                    consumer.paused().contains(partition));
+
+            // the failed record succeeds once it is delivered again
+            injectHandler.failingOffset = -1;
+            waitForRetry(listener, consumer);
+            for (long offset = 2; offset < 5; offset++) {
+                consumer.addRecord(createRecord(offset));
+            }
+            pollForInjections(listener, injectHandler, 6);
+            timeout = System.currentTimeMillis() + TIMEOUT;
+            while ((consumer.committed(partition) == null || consumer.committed(partition).offset() != 5)
+                    && System.currentTimeMillis() < timeout) {
+                listener.injectMessageToESB(INBOUND_EP_NAME);
+            }
+            Assert.assertEquals("Offset of the mediated records is not committed", 5,
+                    consumer.committed(partition).offset());
+        } finally {
+            listener.destroy();
+        }
+    }
+
+    /**
+     * Test that a record which is not injected after the maximum retries is skipped and its offset committed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailedRecordSkippedAfterMaxRetries() throws Exception {
+        final MockConsumer<byte[], byte[]> consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST);
+        RecordingInjectHandler injectHandler = new RecordingInjectHandler(1);
+        KafkaPollMessageListener listener = createListener(consumer, injectHandler, "1");
+        try {
+            Assert.assertTrue(listener.createKafkaConsumerConnector());
+            consumer.rebalance(Collections.singletonList(partition));
+            consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+            for (long offset = 0; offset < 3; offset++) {
+                consumer.addRecord(createRecord(offset));
+            }
+            pollForInjections(listener, injectHandler, 2);
+            waitForRetry(listener, consumer);
+            Assert.assertEquals("Partition is not rewound to the failed record", 1, consumer.position(partition));
+
+            // the retry fails as well, so the record is skipped
+            for (long offset = 1; offset < 3; offset++) {
+                consumer.addRecord(createRecord(offset));
+            }
+            pollForInjections(listener, injectHandler, 3);
+            long timeout = System.currentTimeMillis() + TIMEOUT;
+            while (consumer.position(partition) != 2 && System.currentTimeMillis() < timeout) {
+                listener.injectMessageToESB(INBOUND_EP_NAME);
+            }
+            Assert.assertEquals("Partition is not moved past the skipped record", 2, consumer.position(partition));
+            Assert.assertTrue("Partition is paused after the record is skipped", consumer.paused().isEmpty());
+
+            consumer.addRecord(createRecord(2));
+            pollForInjections(listener, injectHandler, 4);
+            timeout = System.currentTimeMillis() + TIMEOUT;
+            while ((consumer.committed(partition) == null || consumer.committed(partition).offset() != 3)
+                    && System.currentTimeMillis() < timeout) {
+                listener.injectMessageToESB(INBOUND_EP_NAME);
+            }
+            Assert.assertEquals("Offset of the skipped record is not committed", 3,
+                    consumer.committed(partition).offset());
+            Assert.assertEquals(Arrays.asList("0", "1", "1", "2"), injectHandler.attempts);
+            Assert.assertEquals(Arrays.asList("0", "2"), injectHandler.injected);
+        } finally {
+            listener.destroy();
+        }
+    }
+
+    private KafkaPollMessageListener createListener(final MockConsumer<byte[], byte[]> consumer,
+                                                    InjectHandler injectHandler, String maxRetries)
+            throws Exception {
+        PrivilegedCarbonContext.getThreadLocalCarbonContext()
+                .setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+        PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+        Properties properties = new Properties();
+        properties.put(KAFKAConstants.POLL_TIMEOUT, "10");
+        properties.put(KAFKAConstants.FAILED_MESSAGE_RETRY_DELAY, "20");
+        if (maxRetries != null) {
+            properties.put(KAFKAConstants.FAILED_MESSAGE_MAX_RETRIES, maxRetries);
+        }
+        return new KafkaPollMessageListener(1, Collections.singletonList(TOPIC), properties, injectHandler) {
+            @Override
+            protected Consumer<byte[], byte[]> createConsumer(Properties consumerProperties) {
+                return consumer;
+            }
+        };
+    }
+
+    private ConsumerRecord<byte[], byte[]> createRecord(long offset) {
+        return new ConsumerRecord<byte[], byte[]>(TOPIC, 0, offset, null, String.valueOf(offset).getBytes());
+    }
+
+    /**
+     * Poll until the records submitted to the consumer are delivered to the inject handler
+     */
+    private void pollForInjections(KafkaPollMessageListener listener, RecordingInjectHandler injectHandler, int count)
+            throws InterruptedException {
+        listener.injectMessageToESB(INBOUND_EP_NAME);
+        waitForInjections(injectHandler, count);
+    }
+
+    /**
+     * Poll until the partition paused for the retry of a failed record is resumed, the mock consumer drops the records
+     * of paused partitions
+     */
+    private void waitForRetry(KafkaPollMessageListener listener, MockConsumer<byte[], byte[]> consumer)
+            throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (consumer.paused().isEmpty() && System.currentTimeMillis() < timeout) {
+            listener.injectMessageToESB(INBOUND_EP_NAME);
+        }
+        while (!consumer.paused().isEmpty() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+            listener.injectMessageToESB(INBOUND_EP_NAME);
+        }
+        Assert.assertTrue("Partition is not resumed after the retry delay", consumer.paused().isEmpty());
+    }
+
+    private void waitForInjections(RecordingInjectHandler injectHandler, int count) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (injectHandler.attempts.size() < count && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Records are not delivered to the inject handler", count, injectHandler.attempts.size());
+    }
+
+    /**
+     * Records the injected messages and fails to inject the message of the given offset
+     */
+    private static class RecordingInjectHandler implements InjectHandler {
+
+        private final List<String> attempts = new CopyOnWriteArrayList<String>();
+        private final List<String> injected = new CopyOnWriteArrayList<String>();
+        private volatile long failingOffset;
+
+        private RecordingInjectHandler(long failingOffset) {
+            this.failingOffset = failingOffset;
+        }
+
+        @Override
+        public boolean invoke(Object object, String name) {
+            String offset = new String((byte[]) object);
+            attempts.add(offset);
+            if (Long.parseLong(offset) == failingOffset) {
+                throw new IllegalStateException("Unable to inject the message of offset " + offset);
+            }
+            injected.add(offset);
+            return true;
+        }
+    }
+}
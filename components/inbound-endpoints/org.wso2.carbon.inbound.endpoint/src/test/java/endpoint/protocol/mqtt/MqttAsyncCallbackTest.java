@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package endpoint.protocol.mqtt;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Test;
+import org.wso2.carbon.inbound.endpoint.protocol.mqtt.MqttAsyncCallback;
+import org.wso2.carbon.inbound.endpoint.protocol.mqtt.MqttConnectionFactory;
+import org.wso2.carbon.inbound.endpoint.protocol.mqtt.MqttConstants;
+import org.wso2.carbon.inbound.endpoint.protocol.mqtt.MqttInjectHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class MqttAsyncCallbackTest extends TestCase {
+
+    private static final String CLIENT_ID = "testClient";
+
+    /**
+     * Test the matching of topic names against topic filters with wildcards
+     */
+    @Test
+    public void testTopicMatching() {
+        Assert.assertTrue(MqttAsyncCallback.isMatched("sensors/temp", "sensors/temp"));
+        Assert.assertFalse(MqttAsyncCallback.isMatched("sensors/temp", "sensors/humidity"));
+        Assert.assertFalse(MqttAsyncCallback.isMatched("sensors/temp", "sensors/temp/1"));
+
+        Assert.assertTrue(MqttAsyncCallback.isMatched("sensors/+/temp", "sensors/room1/temp"));
+        Assert.assertTrue(MqttAsyncCallback.isMatched("sensors/+/temp", "sensors//temp"));
+        Assert.assertFalse(MqttAsyncCallback.isMatched("sensors/+/temp", "sensors/room1/floor1/temp"));
+        Assert.assertFalse(MqttAsyncCallback.isMatched("sensors/+", "sensors"));
+
+        Assert.assertTrue(MqttAsyncCallback.isMatched("sensors/#", "sensors"));
+        Assert.assertTrue(MqttAsyncCallback.isMatched("sensors/#", "sensors/room1/temp"));
+        Assert.assertFalse(MqttAsyncCallback.isMatched("sensors/#", "alerts/room1"));
+        Assert.assertTrue(MqttAsyncCallback.isMatched("#", "sensors/room1/temp"));
+
+        Assert.assertFalse("Filter starting with a wildcard matched a $ topic",
+                MqttAsyncCallback.isMatched("#", "$SYS/broker/load"));
+        Assert.assertFalse("Filter starting with a wildcard matched a $ topic",
+                MqttAsyncCallback.isMatched("+/broker/load", "$SYS/broker/load"));
+        Assert.assertTrue(MqttAsyncCallback.isMatched("$SYS/#", "$SYS/broker/load"));
+    }
+
+    /**
+     * Test that a message received through a shared connection is delivered only to the inbound endpoints whose
+     * topic filter matches its topic
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSharedConnectionRouting() throws Exception {
+        MqttAsyncCallback callback = createCallback(0);
+        RecordingInjectHandler rooms = new RecordingInjectHandler();
+        RecordingInjectHandler sensors = new RecordingInjectHandler();
+        RecordingInjectHandler alerts = new RecordingInjectHandler();
+        Assert.assertTrue(callback.addSubscription("rooms", "sensors/+/temp", 1, rooms));
+        Assert.assertTrue(callback.addSubscription("sensors", "sensors/#", 1, sensors));
+        Assert.assertTrue(callback.addSubscription("alerts", "alerts", 1, alerts));
+
+        callback.messageArrived("sensors/room1/temp", createMessage("1", 1));
+        callback.messageArrived("sensors/room1/humidity", createMessage("2", 1));
+        callback.messageArrived("alerts", createMessage("3", 1));
+        callback.messageArrived("other", createMessage("4", 1));
+
+        Assert.assertEquals(listOf("rooms:sensors/room1/temp:1"), rooms.received);
+        Assert.assertEquals(listOf("sensors:sensors/room1/temp:1", "sensors:sensors/room1/humidity:2"),
+                sensors.received);
+        Assert.assertEquals(listOf("alerts:alerts:3"), alerts.received);
+
+        // the broker only sends the topics of the subscriptions, so the last endpoint left receives every message
+        Assert.assertTrue("Connection is not used by other inbound endpoints", callback.removeSubscription("rooms"));
+        Assert.assertTrue(callback.removeSubscription("sensors"));
+        Assert.assertFalse("Connection is still used after the last inbound endpoint left",
+                callback.removeSubscription("alerts"));
+        Assert.assertTrue(callback.addSubscription("alerts", "alerts", 1, alerts));
+        callback.messageArrived("alerts/room1", createMessage("5", 1));
+        Assert.assertEquals(listOf("alerts:alerts:3", "alerts:alerts/room1:5"), alerts.received);
+    }
+
+    /**
+     * Test that the QoS 1 messages of a topic handed over to the workers are mediated in the order they arrived
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWorkerPoolOrdering() throws Exception {
+        MqttAsyncCallback callback = createCallback(4);
+        RecordingInjectHandler sensors = new RecordingInjectHandler();
+        callback.addSubscription("sensors", "sensors/#", 1, sensors);
+        callback.addSubscription("alerts", "alerts", 1, new RecordingInjectHandler());
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            callback.messageArrived("sensors/temp", createMessage(String.valueOf(i), 1));
+            expected.add("sensors:sensors/temp:" + i);
+        }
+        // waits for the messages taken by the workers to be mediated
+        callback.shutdownDispatcher();
+        Assert.assertEquals("Messages of a topic are mediated out of order", expected, sensors.received);
+    }
+
+    private MqttAsyncCallback createCallback(int workerPoolSize) throws Exception {
+        Properties properties = new Properties();
+        properties.put(MqttConstants.MQTT_SERVER_HOST_NAME, "localhost");
+        properties.put(MqttConstants.MQTT_SERVER_PORT, "1883");
+        properties.put(MqttConstants.MQTT_TOPIC_NAME, "sensors/#");
+        properties.put(MqttConstants.MQTT_CLIENT_ID, CLIENT_ID);
+        properties.put(MqttConstants.MQTT_CONNECTION_SHARED, "true");
+        if (workerPoolSize > 0) {
+            properties.put(MqttConstants.MQTT_WORKER_POOL_SIZE, String.valueOf(workerPoolSize));
+        }
+        MqttConnectionFactory confac = new MqttConnectionFactory(properties);
+        MqttAsyncClient client = new MqttAsyncClient("tcp://localhost:1883", CLIENT_ID, new MemoryPersistence());
+        return new MqttAsyncCallback(client, confac, new MqttConnectOptions(), properties, -1234);
+    }
+
+    private MqttMessage createMessage(String payload, int qos) {
+        MqttMessage message = new MqttMessage(payload.getBytes());
+        message.setQos(qos);
+        return message;
+    }
+
+    private List<String> listOf(String... values) {
+        List<String> list = new ArrayList<String>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * Records the messages delivered to an inbound endpoint instead of injecting them
+     */
+    private static class RecordingInjectHandler extends MqttInjectHandler {
+
+        private final List<String> received = new CopyOnWriteArrayList<String>();
+
+        private RecordingInjectHandler() {
+            super(null, null, false, null, null);
+        }
+
+        @Override
+        public boolean invoke(MqttMessage mqttMessage, String name, String topicName) {
+            received.add(name + ":" + topicName + ":" + new String(mqttMessage.getPayload()));
+            return true;
+        }
+    }
+}
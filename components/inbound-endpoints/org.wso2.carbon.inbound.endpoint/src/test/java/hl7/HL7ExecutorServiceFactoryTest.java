@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package hl7;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.wso2.carbon.inbound.endpoint.common.KeyedSerialExecutor;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.util.HL7ExecutorServiceFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HL7ExecutorServiceFactoryTest extends TestCase {
+
+    private static final int CONNECTIONS = 8;
+    private static final int MESSAGES_PER_CONNECTION = 200;
+
+    /**
+     * Test that the messages of a connection are processed one at a time in the order they were submitted, while
+     * the connections share the worker pool
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOrderPerConnection() throws Exception {
+        KeyedSerialExecutor executor = HL7ExecutorServiceFactory.getOrderedExecutor();
+        final CountDownLatch done = new CountDownLatch(CONNECTIONS * MESSAGES_PER_CONNECTION);
+        final AtomicInteger overlaps = new AtomicInteger();
+        final List<List<Integer>> processed = new ArrayList<>();
+        final List<AtomicBoolean> inProcess = new ArrayList<>();
+        for (int connection = 0; connection < CONNECTIONS; connection++) {
+            processed.add(new ArrayList<Integer>());
+            inProcess.add(new AtomicBoolean());
+        }
+
+        for (int message = 0; message < MESSAGES_PER_CONNECTION; message++) {
+            for (int connection = 0; connection < CONNECTIONS; connection++) {
+                final int currentConnection = connection;
+                final int currentMessage = message;
+                executor.execute("connection-" + connection, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!inProcess.get(currentConnection).compareAndSet(false, true)) {
+                            overlaps.incrementAndGet();
+                        }
+                        processed.get(currentConnection).add(currentMessage);
+                        inProcess.get(currentConnection).set(false);
+                        done.countDown();
+                    }
+                });
+            }
+        }
+
+        Assert.assertTrue("Messages are not processed", done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("Messages of a connection are processed concurrently", 0, overlaps.get());
+        for (int connection = 0; connection < CONNECTIONS; connection++) {
+            List<Integer> messages = processed.get(connection);
+            Assert.assertEquals(MESSAGES_PER_CONNECTION, messages.size());
+            for (int message = 0; message < MESSAGES_PER_CONNECTION; message++) {
+                Assert.assertEquals("Messages of a connection are processed out of order", message,
+                        (int) messages.get(message));
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package hl7;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.apache.http.nio.reactor.EventMask;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.synapse.inbound.InboundProcessorParams;
+import org.apache.synapse.transport.passthru.util.BufferFactory;
+import org.junit.Test;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.context.MLLPContext;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.HL7Processor;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLPConstants;
+import org.wso2.carbon.inbound.endpoint.protocol.hl7.core.MLLPSourceHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class MLLPSourceHandlerTest extends TestCase {
+
+    private static final String MESSAGE = "MSH|^~\\&|||||20150403091225||ADT^A01|%s|T|2.2";
+    private static final int RESPONSE_TIMEOUT = 200;
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * Test that the connection stops reading once the pipeline window is full, that a request whose response times
+     * out is answered with a NACK, and that the next pipelined request is then processed and reading resumed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTimeoutOfPipelinedRequest() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor(2);
+        TestSession session = new TestSession();
+        for (int i = 1; i <= 3; i++) {
+            session.channel.frames.add(createFrame(String.valueOf(i)));
+        }
+        MLLPSourceHandler handler = new MLLPSourceHandler(processor);
+        handler.connected(session.proxy);
+        MLLPContext mllpContext = (MLLPContext) session.attributes.get(MLLPConstants.MLLP_CONTEXT);
+
+        handler.inputReady(session.proxy);
+        Assert.assertEquals("Requests beyond the first are processed before it is responded", 1,
+                processor.requests.size());
+        Assert.assertEquals(2, mllpContext.getOutstandingRequests());
+        Assert.assertTrue("Pipeline window is not full", mllpContext.isPipelineFull());
+        Assert.assertFalse("Reading is not suspended while the pipeline window is full", session.isSet(EventMask.READ));
+        Assert.assertEquals("Request beyond the pipeline window is read", 1, session.channel.frames.size());
+
+        // no response is sent back, so the request times out
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (!session.isSet(EventMask.WRITE) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue("Timed out request is not responded", session.isSet(EventMask.WRITE));
+        Assert.assertEquals("TIMEOUT", mllpContext.getMessageId());
+
+        handler.outputReady(session.proxy);
+        String response = session.channel.written();
+        Assert.assertTrue("Response is not framed: " + response,
+                response.startsWith(String.valueOf(MllpTestConstants.START_BYTE))
+                        && response.endsWith(String.valueOf(new char[]{MllpTestConstants.END_BYTE1,
+                        MllpTestConstants.END_BYTE2})));
+        Assert.assertTrue("Timed out request is not negatively acknowledged: " + response,
+                response.contains("MSA|AE|1"));
+
+        // the next request is taken up once the NACK is written, which leaves room in the pipeline window
+        Assert.assertEquals("Pipelined request is not processed after the NACK", 2, processor.requests.size());
+        Assert.assertTrue(processor.requests.get(1).contains("|2|T|2.2"));
+        Assert.assertEquals(1, mllpContext.getOutstandingRequests());
+        Assert.assertTrue("Reading is not resumed once the pipeline window has room", session.isSet(EventMask.READ));
+
+        handler.inputReady(session.proxy);
+        Assert.assertTrue("Request beyond the pipeline window is not read", session.channel.frames.isEmpty());
+        Assert.assertEquals("Request is processed before the one in progress is responded", 2,
+                processor.requests.size());
+        Assert.assertFalse(session.isSet(EventMask.READ));
+
+        // a connection idle for the socket timeout is closed, even with requests in progress
+        handler.timeout(session.proxy);
+        Assert.assertTrue("Timed out connection is not closed", session.closed);
+    }
+
+    /**
+     * Test that a connection with a pipeline window of one stops reading while the request waits for its response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStopAndWait() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor(1);
+        TestSession session = new TestSession();
+        session.channel.frames.add(createFrame("1"));
+        session.channel.frames.add(createFrame("2"));
+        MLLPSourceHandler handler = new MLLPSourceHandler(processor);
+        handler.connected(session.proxy);
+
+        handler.inputReady(session.proxy);
+        Assert.assertEquals(1, processor.requests.size());
+        Assert.assertFalse(session.isSet(EventMask.READ));
+        Assert.assertEquals("Request is read while the previous one waits for its response", 1,
+                session.channel.frames.size());
+    }
+
+    private static byte[] createFrame(String controlId) {
+        return (MllpTestConstants.START_BYTE + String.format(MESSAGE, controlId) + "\r" + MllpTestConstants.END_BYTE1
+                + MllpTestConstants.END_BYTE2).getBytes(MLLPConstants.UTF8_CHARSET);
+    }
+
+    /**
+     * Records the requests dispatched to mediation and only arms their response timeout, so that no response is
+     * sent back for them
+     */
+    private static class RecordingProcessor extends HL7Processor {
+
+        private final List<String> requests = new CopyOnWriteArrayList<String>();
+
+        private RecordingProcessor(int pipelineWindow) {
+            super(createParameters(pipelineWindow));
+        }
+
+        @Override
+        public void processRequest(MLLPContext mllpContext) {
+            String messageId = "request-" + requests.size();
+            requests.add(mllpContext.getRawMessage().getRawMessage());
+            mllpContext.setRequestTime(System.currentTimeMillis());
+            mllpContext.setMessageId(messageId);
+            scheduleResponseTimeout(mllpContext, messageId);
+        }
+
+        private static Map<String, Object> createParameters(int pipelineWindow) {
+            Properties properties = new Properties();
+            properties.setProperty(MLLPConstants.PARAM_HL7_AUTO_ACK, "false");
+            properties.setProperty(MLLPConstants.PARAM_HL7_TIMEOUT, String.valueOf(RESPONSE_TIMEOUT));
+            properties.setProperty(MLLPConstants.PARAM_HL7_VALIDATE, "false");
+            properties.setProperty(MLLPConstants.PARAM_HL7_DEFER_PARSING, "true");
+            properties.setProperty(MLLPConstants.PARAM_HL7_PIPELINE_WINDOW, String.valueOf(pipelineWindow));
+            InboundProcessorParams params = new InboundProcessorParams();
+            params.setName("hl7-test");
+            params.setProperties(properties);
+
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put(MLLPConstants.INBOUND_PARAMS, params);
+            parameters.put(MLLPConstants.HL7_CHARSET_DECODER, MLLPConstants.UTF8_CHARSET.newDecoder());
+            parameters.put(MLLPConstants.INBOUND_HL7_BUFFER_FACTORY,
+                    new BufferFactory(8 * 1024, new HeapByteBufferAllocator(), 16));
+            return parameters;
+        }
+    }
+
+    /**
+     * IO session of a connection which sends one frame per read, and keeps what is written to it
+     */
+    private static class TestSession implements InvocationHandler {
+
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+        private final TestChannel channel = new TestChannel();
+        private final IOSession proxy = (IOSession) Proxy.newProxyInstance(TestSession.class.getClassLoader(),
+                new Class[]{IOSession.class}, this);
+        private volatile int eventMask = EventMask.READ;
+        private volatile boolean closed = false;
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("channel".equals(name)) {
+                return channel;
+            } else if ("getAttribute".equals(name)) {
+                return attributes.get(args[0]);
+            } else if ("setAttribute".equals(name)) {
+                attributes.put((String) args[0], args[1]);
+            } else if ("setEvent".equals(name)) {
+                eventMask |= (Integer) args[0];
+            } else if ("clearEvent".equals(name)) {
+                eventMask &= ~(Integer) args[0];
+            } else if ("getEventMask".equals(name)) {
+                return eventMask;
+            } else if ("isClosed".equals(name)) {
+                return closed;
+            } else if ("close".equals(name) || "shutdown".equals(name)) {
+                closed = true;
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else {
+                throw new UnsupportedOperationException(name);
+            }
+            return null;
+        }
+
+        private boolean isSet(int event) {
+            return (eventMask & event) == event;
+        }
+    }
+
+    private static class TestChannel implements ByteChannel {
+
+        private final Queue<byte[]> frames = new ConcurrentLinkedQueue<byte[]>();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        @Override
+        public int read(ByteBuffer dst) {
+            byte[] frame = frames.poll();
+            if (frame == null) {
+                return 0;
+            }
+            dst.put(frame);
+            return frame.length;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) {
+            int count = src.remaining();
+            while (src.hasRemaining()) {
+                out.write(src.get());
+            }
+            return count;
+        }
+
+        private synchronized String written() {
+            return new String(out.toByteArray(), MLLPConstants.UTF8_CHARSET);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
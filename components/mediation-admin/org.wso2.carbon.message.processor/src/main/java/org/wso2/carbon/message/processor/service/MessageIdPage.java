@@ -0,0 +1,47 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.message.processor.service;
+
+/**
+ * A page of the ids of the messages waiting for a message processor, with the cursor of the next page
+ */
+public class MessageIdPage {
+
+    private String[] messageIds;
+
+    private String nextCursor;
+
+    public String[] getMessageIds() {
+        return messageIds;
+    }
+
+    public void setMessageIds(String[] messageIds) {
+        this.messageIds = messageIds;
+    }
+
+    /**
+     * @return cursor of the next page, or null if there are no more messages
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.axis2.AxisFault;
 import org.apache.axis2.context.ConfigurationContextFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.config.xml.MessageProcessorFactory;
 import org.apache.synapse.config.xml.MessageProcessorSerializer;
@@ -34,10 +35,14 @@ import org.apache.synapse.message.processor.impl.forwarder.MessageForwardingProc
 import org.apache.synapse.message.processor.impl.forwarder.ScheduledMessageForwardingProcessor;
 import org.apache.synapse.message.processor.impl.sampler.SamplingProcessor;
 import org.apache.synapse.message.processor.impl.sampler.SamplingProcessorView;
+import org.apache.synapse.message.store.MessageStore;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.mediation.initializer.AbstractServiceBusAdmin;
 import org.wso2.carbon.mediation.initializer.ServiceBusConstants;
 import org.wso2.carbon.mediation.initializer.ServiceBusUtils;
 import org.wso2.carbon.mediation.initializer.persistence.MediationPersistenceManager;
+import org.wso2.carbon.mediation.initializer.utils.MessageStoreCursor;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayInputStream;
@@ -45,7 +50,11 @@ import java.io.InputStream;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
 @SuppressWarnings({"UnusedDeclaration"})
@@ -56,6 +65,11 @@ public class MessageProcessorAdminService extends AbstractServiceBusAdmin {
     private static String CONF_LOCATION = "conf.location";
     public final static String DEFAULT_AXIS2_XML;
 
+    // resend jobs of the node by tenant and processor, kept across the sessions of the admin service
+    private static final Map<String, MessageResendJob> resendJobs = new HashMap<String, MessageResendJob>();
+    // time a finished resend job is kept to report its status
+    private static final long FINISHED_RESEND_JOB_RETENTION = TimeUnit.HOURS.toNanos(1);
+
     static {
         String confPath = System.getProperty(CONF_LOCATION);
         if (confPath == null) {
@@ -215,7 +229,8 @@ public class MessageProcessorAdminService extends AbstractServiceBusAdmin {
     }
 
     /**
-     * Get All the Messages Stored in the Message Store associated with the Processor
+     * Get All the Messages Stored in the Message Store associated with the Processor. Every id of the store is
+     * returned at once, use {@link #getMessageIdPage(String, String)} to list a large store.
      *
      * @param processorName ScheduledMessageForwarding Processor Name
      * @return Array of Message ids.
@@ -252,6 +267,62 @@ public class MessageProcessorAdminService extends AbstractServiceBusAdmin {
         return messageIds;
     }
 
+    /**
+     * Get a page of the ids of the messages in the Message Store associated with the Processor. The store is
+     * sized once for the page and only the messages of the page are read.
+     *
+     * @param processorName ScheduledMessageForwarding Processor Name
+     * @param cursor        next cursor of the previous page, or null for the first page
+     * @return page of Message ids and the cursor of the next page
+     * @throws AxisFault
+     */
+    public MessageIdPage getMessageIdPage(String processorName, String cursor) throws AxisFault {
+        SynapseConfiguration configuration = getSynapseConfiguration();
+        MessageIdPage page = new MessageIdPage();
+        try {
+
+            assert configuration != null;
+            if (configuration.getMessageProcessors().containsKey(processorName)) {
+                MessageProcessor processor =
+                        configuration.getMessageProcessors().get(processorName);
+
+                if (processor instanceof ScheduledMessageProcessor) {
+                    MessageForwardingProcessorView view =
+                            ((ScheduledMessageForwardingProcessor) processor).getView();
+                    if (!view.isActive()) {
+                        MessageStore store = configuration.getMessageStore(processor.getMessageStoreName());
+                        MessageStoreCursor position = MessageStoreCursor.parse(cursor);
+
+                        int size = store.size();
+                        int index = position.locate(store, size, MSGS_PER_PAGE);
+                        String lastMessageId = null;
+                        List<String> messageIds = new ArrayList<String>();
+                        while (index < size && messageIds.size() < MSGS_PER_PAGE) {
+                            MessageContext messageContext = store.get(index++);
+                            if (messageContext != null) {
+                                lastMessageId = messageContext.getMessageID();
+                                messageIds.add(lastMessageId);
+                            }
+                        }
+
+                        page.setMessageIds(messageIds.toArray(new String[messageIds.size()]));
+                        if (index < size) {
+                            page.setNextCursor(new MessageStoreCursor(index, lastMessageId).toToken());
+                        }
+                    } else {
+                        log.warn("Can't access Scheduled Message Forwarding Processor - Processor is active");
+                    }
+                }
+
+            }
+        } catch (Exception e) {
+            log.error("Error While accessing MessageProcessor view ");
+            throw new AxisFault(e.getMessage());
+        }
+
+        return page;
+    }
+
     /**
      * Get all the Current Message processor data defined in the configuration
      *
@@ -449,7 +520,8 @@ public class MessageProcessorAdminService extends AbstractServiceBusAdmin {
 
     /**
      * messageID
-     * Resend All messages
+     * Resend All messages. The messages are resent one after the other within the call, use
+     * {@link #startResendAll(String, int, int)} to resend a large store.
      *
      * @param processorName
      * @throws AxisFault
@@ -481,6 +553,117 @@ public class MessageProcessorAdminService extends AbstractServiceBusAdmin {
 
     }
 
+    /**
+     * Start resending all the messages of the Message Store associated with the Processor in the background. The
+     * Processor has to stay inactive while the messages are resent. An unfinished job of the Processor left by a
+     * restart is carried on with the given settings.
+     *
+     * @param processorName ScheduledMessageForwarding Processor Name
+     * @param parallelism   number of messages resent at the same time
+     * @param rate          target number of messages resent per second, or 0 to resend them as fast as possible
+     * @return progress of the job
+     * @throws AxisFault if the Processor is active or a job of the Processor is already running or paused
+     */
+    public MessageResendJobStatus startResendAll(String processorName, int parallelism, int rate)
+            throws AxisFault {
+        if (parallelism < 1 || rate < 0) {
+            handleException(log, "Invalid parallelism " + parallelism + " or rate " + rate
+                    + " to resend the messages of Message Processor " + processorName, null);
+        }
+        synchronized (resendJobs) {
+            String key = getResendJobKey(processorName);
+            MessageResendJob job = getResendJob(key);
+            if (job != null && (job.getState() == MessageResendJob.State.RUNNING
+                    || job.getState() == MessageResendJob.State.PAUSED)) {
+                handleException(log, "Message Processor " + processorName + " is already resending messages", null);
+            }
+            job = createResendJob(processorName, parallelism, rate);
+            resendJobs.put(key, job);
+            job.start();
+            return job.getStatus();
+        }
+    }
+
+    /**
+     * Get the progress of the job resending the messages of the Processor
+     *
+     * @param processorName ScheduledMessageForwarding Processor Name
+     * @return progress of the last job of the Processor, or null if there is none
+     * @throws AxisFault
+     */
+    public MessageResendJobStatus getResendJobStatus(String processorName) throws AxisFault {
+        synchronized (resendJobs) {
+            MessageResendJob job = getResendJob(getResendJobKey(processorName));
+            if (job == null) {
+                // a job left by a restart is reported from its checkpoint
+                job = restoreResendJob(processorName);
+            }
+            return job != null ? job.getStatus() : null;
+        }
+    }
+
+    /**
+     * Pause the job resending the messages of the Processor
+     *
+     * @param processorName ScheduledMessageForwarding Processor Name
+     * @return whether the job was running
+     * @throws AxisFault
+     */
+    public boolean pauseResendJob(String processorName) throws AxisFault {
+        synchronized (resendJobs) {
+            MessageResendJob job = getResendJob(getResendJobKey(processorName));
+            return job != null && job.pause();
+        }
+    }
+
+    /**
+     * Resume the paused job resending the messages of the Processor, or the job left by a restart
+     *
+     * @param processorName ScheduledMessageForwarding Processor Name
+     * @return progress of the job, or null if there is no job to resume
+     * @throws AxisFault
+     */
+    public MessageResendJobStatus resumeResendJob(String processorName) throws AxisFault {
+        synchronized (resendJobs) {
+            String key = getResendJobKey(processorName);
+            MessageResendJob job = getResendJob(key);
+            if (job != null && job.resume()) {
+                return job.getStatus();
+            }
+            if (job == null || job.getState() == MessageResendJob.State.FAILED) {
+                job = restoreResendJob(processorName);
+                if (job != null) {
+                    resendJobs.put(key, job);
+                    job.start();
+                    return job.getStatus();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Cancel the job resending the messages of the Processor. The messages resent so far stay resent.
+     *
+     * @param processorName ScheduledMessageForwarding Processor Name
+     * @return whether there was an unfinished job to cancel
+     * @throws AxisFault
+     */
+    public boolean cancelResendJob(String processorName) throws AxisFault {
+        synchronized (resendJobs) {
+            String key = getResendJobKey(processorName);
+            MessageResendJob job = getResendJob(key);
+            if (job == null) {
+                job = restoreResendJob(processorName);
+                if (job == null) {
+                    return false;
+                }
+                resendJobs.put(key, job);
+            }
+            return job.cancel();
+        }
+    }
+
     /**
      * Get the Number of Messages in the message store associated with the processor
      *
@@ -705,6 +888,68 @@ public class MessageProcessorAdminService extends AbstractServiceBusAdmin {
     }
 
 
+    private String getResendJobKey(String processorName) {
+        return PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId() + ":" + processorName;
+    }
+
+    /**
+     * Get the job of the key, dropping the jobs which finished a while ago. Called holding the lock of the jobs.
+     */
+    private MessageResendJob getResendJob(String key) {
+        Iterator<MessageResendJob> jobs = resendJobs.values().iterator();
+        while (jobs.hasNext()) {
+            if (jobs.next().isStoppedFor(FINISHED_RESEND_JOB_RETENTION)) {
+                jobs.remove();
+            }
+        }
+        return resendJobs.get(key);
+    }
+
+    private MessageResendJob createResendJob(String processorName, int parallelism, int rate) throws AxisFault {
+        SynapseConfiguration configuration = getSynapseConfiguration();
+        assert configuration != null;
+        MessageProcessor processor = configuration.getMessageProcessors().get(processorName);
+        if (!(processor instanceof ScheduledMessageForwardingProcessor)) {
+            handleException(log, "Message Processor " + processorName + " does not exist or does not forward messages",
+                    null);
+        }
+        MessageForwardingProcessorView view = ((ScheduledMessageForwardingProcessor) processor).getView();
+        if (view.isActive()) {
+            handleException(log, "Can't resend the messages of Message Processor " + processorName
+                    + " - Processor is active", null);
+        }
+        MessageStore store = configuration.getMessageStore(processor.getMessageStoreName());
+        try {
+            MessageResendJob job = MessageResendJob.restore(processorName, view, store, getConfigSystemRegistry(),
+                    parallelism, rate);
+            if (job != null) {
+                return job;
+            }
+        } catch (RegistryException e) {
+            handleException(log, "Could not read the resend job checkpoint of Message Processor " + processorName, e);
+        }
+        return new MessageResendJob(processorName, view, store, getConfigSystemRegistry(), parallelism, rate);
+    }
+
+    /**
+     * @return the job of the Processor in its checkpoint, or null if there is no unfinished job
+     */
+    private MessageResendJob restoreResendJob(String processorName) throws AxisFault {
+        SynapseConfiguration configuration = getSynapseConfiguration();
+        assert configuration != null;
+        MessageProcessor processor = configuration.getMessageProcessors().get(processorName);
+        if (!(processor instanceof ScheduledMessageForwardingProcessor)) {
+            return null;
+        }
+        try {
+            return MessageResendJob.restore(processorName, ((ScheduledMessageForwardingProcessor) processor).getView(),
+                    configuration.getMessageStore(processor.getMessageStoreName()), getConfigSystemRegistry(), 0, -1);
+        } catch (RegistryException e) {
+            handleException(log, "Could not read the resend job checkpoint of Message Processor " + processorName, e);
+        }
+        return null;
+    }
+
     private MessageProcessor getMessageProcessorImpl(String name) {
         SynapseConfiguration configuration = getSynapseConfiguration();
         assert configuration != null;
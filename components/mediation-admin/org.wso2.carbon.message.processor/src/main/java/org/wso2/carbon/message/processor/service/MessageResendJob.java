@@ -0,0 +1,607 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.message.processor.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.message.processor.impl.forwarder.MessageForwardingProcessorView;
+import org.apache.synapse.message.store.MessageStore;
+import org.wso2.carbon.registry.core.Registry;
+import org.wso2.carbon.registry.core.Resource;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resends the messages waiting for a message processor in the background. Messages are taken from the head of the
+ * store in batches and resent through the view of the processor by a pool of workers, which take turns on a shared
+ * schedule so that no more than the target rate of messages is sent per second. Resending a message removes it from
+ * the store, so a message which failed stays at the head and is skipped until the job is resumed. Each batch is read
+ * from where the previous one ended, less the messages resent meanwhile, instead of from the head. When no message
+ * of a batch could be resent the job pauses instead of running through the store against a backend which is down,
+ * and the messages which failed are tried again once it is resumed. A batch which ends the scan of the store does
+ * not pause the job, which completes and reports the messages left in the store as unresent.
+ * <p/>
+ * The counters, the settings and the failed messages of the job are written to the registry every few seconds and
+ * whenever the job stops, so that a job cut short by a restart can be resumed where it was.
+ */
+class MessageResendJob implements Runnable {
+
+    private static final Log log = LogFactory.getLog(MessageResendJob.class);
+
+    static final String CHECKPOINT_ROOT = "/repository/components/org.wso2.carbon.message.processor/resend/";
+
+    private static final String STATE = "state";
+    private static final String PARALLELISM = "parallelism";
+    private static final String RATE = "rate";
+    private static final String RESENT_COUNT = "resentCount";
+    private static final String FAILED_COUNT = "failedCount";
+    private static final String LAST_ERROR = "lastError";
+    private static final String ENCODING = "UTF-8";
+    private static final String ID_SEPARATOR = "\n";
+
+    private static final int MESSAGES_PER_WORKER = 10;
+    private static final long CHECKPOINT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final int MAX_CHECKPOINT_IDS = 10000;
+
+    enum State {
+        RUNNING, PAUSED, CANCELLED, COMPLETED, FAILED;
+
+        boolean isFinished() {
+            return this == CANCELLED || this == COMPLETED;
+        }
+    }
+
+    private final String processorName;
+    private final MessageForwardingProcessorView view;
+    private final MessageStore store;
+    private final Registry registry;
+    private final int parallelism;
+    private final int rate;
+
+    private final Object lock = new Object();
+    private State state = State.PAUSED;
+    // whether a thread runs the job, which is not the case for a job restored from its checkpoint until started
+    private boolean running = false;
+    private String lastError;
+    private long stoppedAt;
+    private List<String> unresentIds;
+    private long sessionStart;
+    private long sessionResentCount;
+
+    private final AtomicLong resentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    // ids of the failed messages still in the store, only used by the thread running the job
+    private final Set<String> failedIds = new LinkedHashSet<String>();
+    private volatile int failedIdCount;
+    private volatile boolean retryFailed = false;
+    // index of the store the scan carries on from, only failed messages are ahead of it
+    private int scanIndex;
+    private boolean scanEnded;
+    private long lastCheckpoint;
+
+    private final Object permitLock = new Object();
+    private long nextPermit = System.nanoTime();
+
+    /**
+     * @param registry registry to keep the checkpoint of the job in, or null to not keep one
+     * @param rate     target number of messages resent per second, or 0 to not throttle the job
+     */
+    MessageResendJob(String processorName, MessageForwardingProcessorView view, MessageStore store,
+                     Registry registry, int parallelism, int rate) {
+        this.processorName = processorName;
+        this.view = view;
+        this.store = store;
+        this.registry = registry;
+        this.parallelism = parallelism;
+        this.rate = rate;
+    }
+
+    /**
+     * Read the checkpoint of an unfinished job of a processor. The job is paused, and carries on from the
+     * checkpoint with the given settings once resumed.
+     *
+     * @param parallelism number of workers, or 0 to keep the one of the checkpoint
+     * @param rate        target rate, or -1 to keep the one of the checkpoint
+     * @return the job, or null if there is no checkpoint of an unfinished job of the processor
+     */
+    static MessageResendJob restore(String processorName, MessageForwardingProcessorView view, MessageStore store,
+                                    Registry registry, int parallelism, int rate) throws RegistryException {
+        String path = CHECKPOINT_ROOT + processorName;
+        if (registry == null || !registry.resourceExists(path)) {
+            return null;
+        }
+        Resource checkpoint = registry.get(path);
+        if (State.valueOf(checkpoint.getProperty(STATE)).isFinished()) {
+            return null;
+        }
+        MessageResendJob job = new MessageResendJob(processorName, view, store, registry,
+                parallelism > 0 ? parallelism : Integer.parseInt(checkpoint.getProperty(PARALLELISM)),
+                rate >= 0 ? rate : Integer.parseInt(checkpoint.getProperty(RATE)));
+        job.resentCount.set(Long.parseLong(checkpoint.getProperty(RESENT_COUNT)));
+        job.failedCount.set(Long.parseLong(checkpoint.getProperty(FAILED_COUNT)));
+        job.lastError = checkpoint.getProperty(LAST_ERROR);
+        Object content = checkpoint.getContent();
+        if (content instanceof byte[]) {
+            try {
+                for (String id : new String((byte[]) content, ENCODING).split(ID_SEPARATOR)) {
+                    if (id.length() > 0) {
+                        job.failedIds.add(id);
+                    }
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        job.failedIdCount = job.failedIds.size();
+        return job;
+    }
+
+    /**
+     * Start the job on a thread of its own
+     */
+    void start() {
+        synchronized (lock) {
+            running = true;
+            startSession();
+        }
+        Thread thread = new Thread(this, "message-resend-" + processorName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop resending after the messages being resent now. The job keeps its workers and can be resumed.
+     *
+     * @return whether the job was running
+     */
+    boolean pause() {
+        synchronized (lock) {
+            if (state != State.RUNNING) {
+                return false;
+            }
+            state = State.PAUSED;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Resume the paused job, trying the messages which failed so far again
+     *
+     * @return whether the job was paused
+     */
+    boolean resume() {
+        synchronized (lock) {
+            if (state != State.PAUSED) {
+                return false;
+            }
+            retryFailed = true;
+            startSession();
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Stop the job for good after the messages being resent now, and drop its checkpoint
+     *
+     * @return whether the job was not finished yet
+     */
+    boolean cancel() {
+        boolean stopped;
+        synchronized (lock) {
+            if (state.isFinished()) {
+                return false;
+            }
+            state = State.CANCELLED;
+            lock.notifyAll();
+            stopped = !running;
+            if (stopped) {
+                stoppedAt = System.nanoTime();
+            }
+        }
+        if (stopped) {
+            // no thread is left to drop the checkpoint
+            removeCheckpoint();
+        }
+        return true;
+    }
+
+    State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    /**
+     * @return whether the job is over and no thread has run it for the given time
+     */
+    boolean isStoppedFor(long nanos) {
+        synchronized (lock) {
+            return !running && (state.isFinished() || state == State.FAILED) && System.nanoTime() - stoppedAt > nanos;
+        }
+    }
+
+    MessageResendJobStatus getStatus() {
+        MessageResendJobStatus status = new MessageResendJobStatus();
+        status.setProcessorName(processorName);
+        status.setParallelism(parallelism);
+        status.setRate(rate);
+        status.setResentCount(resentCount.get());
+        status.setFailedCount(failedCount.get());
+
+        State currentState;
+        double currentRate = 0;
+        synchronized (lock) {
+            currentState = state;
+            status.setLastError(lastError);
+            if (unresentIds != null) {
+                status.setUnresentMessageIds(unresentIds.toArray(new String[unresentIds.size()]));
+            }
+            long elapsed = System.nanoTime() - sessionStart;
+            if (currentState == State.RUNNING && elapsed > 0) {
+                currentRate = sessionResentCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            }
+        }
+        status.setState(currentState.name());
+        status.setCurrentRate(currentRate);
+
+        if (currentState != State.COMPLETED) {
+            try {
+                // the failed messages are still in the store but will not be sent again
+                long remaining = Math.max(0, store.size() - failedIdCount);
+                status.setRemainingCount(remaining);
+                if (currentRate > 0) {
+                    status.setEstimatedSecondsLeft((long) Math.ceil(remaining / currentRate));
+                }
+            } catch (Exception e) {
+                log.warn("Could not read the size of the message store of processor " + processorName, e);
+            }
+        } else {
+            status.setRemainingCount(0);
+            status.setEstimatedSecondsLeft(0);
+        }
+        return status;
+    }
+
+    public void run() {
+        lastCheckpoint = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ResendThreadFactory(processorName));
+        try {
+            while (awaitRunning()) {
+                if (retryFailed) {
+                    // checked on every batch, the job may be paused and resumed before it got to wait
+                    retryFailed = false;
+                    failedIds.clear();
+                    failedIdCount = 0;
+                    scanIndex = 0;
+                }
+                if (view.isActive()) {
+                    // the view does not resend the messages of an active processor
+                    stop(State.FAILED, "Message processor " + processorName + " was activated");
+                    return;
+                }
+                List<String> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    stop(State.COMPLETED, null);
+                    return;
+                }
+
+                List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(batch.size());
+                for (String messageId : batch) {
+                    tasks.add(new ResendTask(messageId));
+                }
+                List<Future<Boolean>> results = workers.invokeAll(tasks);
+                int resent = 0;
+                int failed = 0;
+                for (int i = 0; i < results.size(); i++) {
+                    Boolean result = results.get(i).get();
+                    if (result == null) {
+                        // skipped as the job was paused or cancelled meanwhile, so it is taken up again later
+                        continue;
+                    }
+                    if (result) {
+                        resent++;
+                    } else {
+                        failed++;
+                        failedIds.add(batch.get(i));
+                    }
+                }
+                failedIdCount = failedIds.size();
+                // the resent messages were ahead of the end of the scan and are gone from the store
+                scanIndex = Math.max(0, scanIndex - resent);
+                synchronized (lock) {
+                    sessionResentCount += resent;
+                }
+
+                if (resent == 0 && failed > 0 && !scanEnded) {
+                    pauseOnFailure("None of the last " + failed + " messages could be resent");
+                } else if (System.nanoTime() - lastCheckpoint > CHECKPOINT_INTERVAL) {
+                    checkpoint();
+                }
+            }
+            if (getState() == State.CANCELLED) {
+                removeCheckpoint();
+                log.info("Cancelled resending the messages of message processor " + processorName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(State.FAILED, "Resending was interrupted");
+        } catch (ExecutionException e) {
+            log.error("Error while resending the messages of message processor " + processorName, e.getCause());
+            stop(State.FAILED, String.valueOf(e.getCause().getMessage()));
+        } catch (RuntimeException e) {
+            log.error("Error while resending the messages of message processor " + processorName, e);
+            stop(State.FAILED, e.getMessage());
+        } finally {
+            workers.shutdownNow();
+            synchronized (lock) {
+                running = false;
+                stoppedAt = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Wait while the job is paused, writing its checkpoint first
+     *
+     * @return whether the job is running, false if it was cancelled
+     */
+    private boolean awaitRunning() throws InterruptedException {
+        boolean checkpointed = false;
+        while (true) {
+            State current = getState();
+            if (current != State.PAUSED) {
+                return current == State.RUNNING;
+            }
+            if (!checkpointed) {
+                checkpoint();
+                checkpointed = true;
+            }
+            synchronized (lock) {
+                while (state == State.PAUSED) {
+                    lock.wait();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the ids of the next messages from where the last batch ended, passing over the failed ones. A failed
+     * message not seen in the store once the scan reaches its end is gone, so it is forgotten.
+     * Sets whether the batch reached the end of the store.
+     */
+    private List<String> nextBatch() {
+        int batchSize = parallelism * MESSAGES_PER_WORKER;
+        List<String> batch = new ArrayList<String>(batchSize);
+        Set<String> seenFailedIds = new HashSet<String>();
+        int size = store.size();
+        int index = Math.min(scanIndex, size);
+        // step back over messages not known to have failed, should more than the resent messages have gone
+        while (index > 0 && !isFailed(store.get(index - 1))) {
+            index--;
+        }
+        int start = index;
+        while (index < size && batch.size() < batchSize) {
+            MessageContext messageContext = store.get(index++);
+            if (messageContext == null) {
+                continue;
+            }
+            String messageId = messageContext.getMessageID();
+            if (failedIds.contains(messageId)) {
+                seenFailedIds.add(messageId);
+            } else {
+                batch.add(messageId);
+            }
+        }
+        scanIndex = index;
+        scanEnded = index >= size;
+        if (scanEnded) {
+            for (int i = 0; i < start; i++) {
+                MessageContext messageContext = store.get(i);
+                if (messageContext != null) {
+                    seenFailedIds.add(messageContext.getMessageID());
+                }
+            }
+            failedIds.retainAll(seenFailedIds);
+            failedIdCount = failedIds.size();
+        }
+        return batch;
+    }
+
+    private boolean isFailed(MessageContext messageContext) {
+        return messageContext != null && failedIds.contains(messageContext.getMessageID());
+    }
+
+    private void startSession() {
+        state = State.RUNNING;
+        sessionStart = System.nanoTime();
+        sessionResentCount = 0;
+    }
+
+    private void pauseOnFailure(String error) {
+        synchronized (lock) {
+            lastError = error;
+            if (state == State.RUNNING) {
+                state = State.PAUSED;
+            }
+        }
+        log.warn(error + " by message processor " + processorName + ". Pausing the resend job.");
+    }
+
+    private void stop(State finalState, String error) {
+        synchronized (lock) {
+            if (state == State.CANCELLED) {
+                finalState = State.CANCELLED;
+            } else {
+                state = finalState;
+                if (error != null) {
+                    lastError = error;
+                }
+                if (finalState == State.COMPLETED) {
+                    unresentIds = new ArrayList<String>(failedIds);
+                }
+            }
+        }
+        if (finalState.isFinished()) {
+            removeCheckpoint();
+        } else {
+            checkpoint();
+        }
+        log.info("Resend job of message processor " + processorName + " " + finalState.name().toLowerCase()
+                + " after resending " + resentCount.get() + " messages, " + failedCount.get() + " failed");
+        if (finalState == State.COMPLETED && !failedIds.isEmpty()) {
+            log.warn(failedIds.size() + " messages of message processor " + processorName
+                    + " could not be resent and are left in the message store");
+        }
+    }
+
+    private void acquirePermit() throws InterruptedException {
+        if (rate <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (permitLock) {
+            long now = System.nanoTime();
+            // a permit not taken while the job was idle is not saved up for a burst
+            long permit = Math.max(now, nextPermit);
+            nextPermit = permit + TimeUnit.SECONDS.toNanos(1) / rate;
+            wait = permit - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void checkpoint() {
+        lastCheckpoint = System.nanoTime();
+        if (registry == null) {
+            return;
+        }
+        try {
+            Resource checkpoint = registry.newResource();
+            synchronized (lock) {
+                checkpoint.setProperty(STATE, state.name());
+                if (lastError != null) {
+                    checkpoint.setProperty(LAST_ERROR, lastError);
+                }
+            }
+            checkpoint.setProperty(PARALLELISM, String.valueOf(parallelism));
+            checkpoint.setProperty(RATE, String.valueOf(rate));
+            checkpoint.setProperty(RESENT_COUNT, String.valueOf(resentCount.get()));
+            checkpoint.setProperty(FAILED_COUNT, String.valueOf(failedCount.get()));
+
+            StringBuilder ids = new StringBuilder();
+            int count = 0;
+            for (String id : failedIds) {
+                if (count++ == MAX_CHECKPOINT_IDS) {
+                    // the rest are tried again after a restart
+                    break;
+                }
+                ids.append(id).append(ID_SEPARATOR);
+            }
+            checkpoint.setContent(ids.toString().getBytes(ENCODING));
+            registry.put(CHECKPOINT_ROOT + processorName, checkpoint);
+        } catch (Exception e) {
+            log.warn("Could not write the checkpoint of the resend job of message processor " + processorName, e);
+        }
+    }
+
+    private void removeCheckpoint() {
+        if (registry == null) {
+            return;
+        }
+        try {
+            String path = CHECKPOINT_ROOT + processorName;
+            if (registry.resourceExists(path)) {
+                registry.delete(path);
+            }
+        } catch (RegistryException e) {
+            log.warn("Could not remove the checkpoint of the resend job of message processor " + processorName, e);
+        }
+    }
+
+    private class ResendTask implements Callable<Boolean> {
+
+        private final String messageId;
+
+        private ResendTask(String messageId) {
+            this.messageId = messageId;
+        }
+
+        /**
+         * @return whether the message was resent, or null if it was skipped
+         */
+        public Boolean call() throws InterruptedException {
+            if (getState() != State.RUNNING) {
+                return null;
+            }
+            acquirePermit();
+            if (getState() != State.RUNNING) {
+                return null;
+            }
+            try {
+                view.resend(messageId);
+                resentCount.incrementAndGet();
+                return Boolean.TRUE;
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                synchronized (lock) {
+                    lastError = e.getMessage();
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Could not resend message " + messageId + " of message processor " + processorName, e);
+                }
+                return Boolean.FALSE;
+            }
+        }
+    }
+
+    private static class ResendThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        ResendThreadFactory(String processorName) {
+            this.namePrefix = "message-resend-" + processorName + "-worker-";
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.message.processor.service;
+
+/**
+ * Progress of a job resending the messages waiting for a message processor
+ */
+public class MessageResendJobStatus {
+
+    private String processorName;
+
+    private String state;
+
+    private int parallelism;
+
+    private int rate;
+
+    private long resentCount;
+
+    private long failedCount;
+
+    private long remainingCount = -1;
+
+    private double currentRate;
+
+    private long estimatedSecondsLeft = -1;
+
+    private String lastError;
+
+    private String[] unresentMessageIds;
+
+    public String getProcessorName() {
+        return processorName;
+    }
+
+    public void setProcessorName(String processorName) {
+        this.processorName = processorName;
+    }
+
+    /**
+     * @return one of RUNNING, PAUSED, CANCELLED, COMPLETED or FAILED
+     */
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return target number of messages resent per second, or 0 if the job is not throttled
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public long getResentCount() {
+        return resentCount;
+    }
+
+    public void setResentCount(long resentCount) {
+        this.resentCount = resentCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public void setFailedCount(long failedCount) {
+        this.failedCount = failedCount;
+    }
+
+    /**
+     * @return number of messages left to resend, or -1 if the store could not be read
+     */
+    public long getRemainingCount() {
+        return remainingCount;
+    }
+
+    public void setRemainingCount(long remainingCount) {
+        this.remainingCount = remainingCount;
+    }
+
+    /**
+     * @return messages resent per second since the job was last started or resumed
+     */
+    public double getCurrentRate() {
+        return currentRate;
+    }
+
+    public void setCurrentRate(double currentRate) {
+        this.currentRate = currentRate;
+    }
+
+    /**
+     * @return estimated time to resend the remaining messages, or -1 if it is not known
+     */
+    public long getEstimatedSecondsLeft() {
+        return estimatedSecondsLeft;
+    }
+
+    public void setEstimatedSecondsLeft(long estimatedSecondsLeft) {
+        this.estimatedSecondsLeft = estimatedSecondsLeft;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    /**
+     * @return ids of the messages which could not be resent and are left in the store, once the job completed
+     */
+    public String[] getUnresentMessageIds() {
+        return unresentMessageIds;
+    }
+
+    public void setUnresentMessageIds(String[] unresentMessageIds) {
+        this.unresentMessageIds = unresentMessageIds;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+*  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.message.processor.service;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.message.processor.impl.forwarder.MessageForwardingProcessorView;
+import org.apache.synapse.message.senders.blocking.BlockingMsgSender;
+import org.apache.synapse.message.store.MessageStore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the resending of the messages of a store by {@link MessageResendJob}, against a view which resends the
+ * messages by removing them from an in-memory store
+ */
+public class MessageResendJobTest extends TestCase {
+
+    private static final long TIMEOUT = 10000;
+
+    private final List<MessageContext> messages = new CopyOnWriteArrayList<MessageContext>();
+    private final Set<String> failingIds = new HashSet<String>();
+    private volatile boolean backendDown = false;
+    private final AtomicInteger storeReads = new AtomicInteger();
+
+    private MessageStore store;
+    private StubView view;
+
+    @Override
+    protected void setUp() throws Exception {
+        store = createStore();
+        view = new StubView(store);
+    }
+
+    public void testResendAll() throws Exception {
+        addMessages(25);
+        MessageResendJob job = new MessageResendJob("processor", view, store, null, 2, 0);
+        job.start();
+
+        assertEquals(MessageResendJob.State.COMPLETED, awaitStop(job));
+        MessageResendJobStatus status = job.getStatus();
+        assertEquals(25, status.getResentCount());
+        assertEquals(0, status.getFailedCount());
+        assertEquals(0, status.getUnresentMessageIds().length);
+        assertTrue(messages.isEmpty());
+    }
+
+    public void testFailedMessagesReported() throws Exception {
+        addMessages(25);
+        failingIds.add("id-3");
+        failingIds.add("id-24");
+        MessageResendJob job = new MessageResendJob("processor", view, store, null, 1, 0);
+        job.start();
+
+        assertEquals(MessageResendJob.State.COMPLETED, awaitStop(job));
+        MessageResendJobStatus status = job.getStatus();
+        assertEquals(23, status.getResentCount());
+        assertEquals(2, status.getFailedCount());
+        assertEquals(Arrays.asList("id-3", "id-24"), Arrays.asList(status.getUnresentMessageIds()));
+        assertEquals(2, messages.size());
+    }
+
+    /**
+     * Each batch carries on from where the previous one ended, instead of reading the failed messages at the head of
+     * the store again
+     */
+    public void testScanResumesAfterFailedMessages() throws Exception {
+        addMessages(100);
+        for (int i = 0; i < 100; i += 2) {
+            failingIds.add("id-" + i);
+        }
+        MessageResendJob job = new MessageResendJob("processor", view, store, null, 1, 0);
+        job.start();
+
+        assertEquals(MessageResendJob.State.COMPLETED, awaitStop(job));
+        MessageResendJobStatus status = job.getStatus();
+        assertEquals(50, status.getResentCount());
+        assertEquals(50, status.getFailedCount());
+        assertEquals(50, status.getUnresentMessageIds().length);
+        assertTrue("Failed messages are read again for every batch: " + storeReads.get() + " reads",
+                storeReads.get() <= 250);
+    }
+
+    /**
+     * The last batch of the scan failing as a whole completes the job, instead of pausing it for good
+     */
+    public void testLastBatchFailed() throws Exception {
+        addMessages(3);
+        backendDown = true;
+        MessageResendJob job = new MessageResendJob("processor", view, store, null, 1, 0);
+        job.start();
+
+        assertEquals("Job is not completed after the last batch failed", MessageResendJob.State.COMPLETED,
+                awaitStop(job));
+        MessageResendJobStatus status = job.getStatus();
+        assertEquals(0, status.getResentCount());
+        assertEquals(3, status.getFailedCount());
+        assertEquals(Arrays.asList("id-0", "id-1", "id-2"), Arrays.asList(status.getUnresentMessageIds()));
+    }
+
+    /**
+     * A batch failing as a whole before the end of the store pauses the job, which resends the failed messages once
+     * resumed
+     */
+    public void testPauseOnFailedBatch() throws Exception {
+        addMessages(25);
+        backendDown = true;
+        MessageResendJob job = new MessageResendJob("processor", view, store, null, 1, 0);
+        job.start();
+
+        assertEquals(MessageResendJob.State.PAUSED, awaitStop(job));
+        assertEquals(10, job.getStatus().getFailedCount());
+        assertNull(job.getStatus().getUnresentMessageIds());
+        assertFalse("Paused job is taken as stopped", job.isStoppedFor(0));
+
+        backendDown = false;
+        assertTrue(job.resume());
+        assertEquals(MessageResendJob.State.COMPLETED, awaitStop(job));
+        assertEquals(25, job.getStatus().getResentCount());
+        assertTrue(messages.isEmpty());
+    }
+
+    public void testActivatedProcessor() throws Exception {
+        addMessages(5);
+        view.active = true;
+        MessageResendJob job = new MessageResendJob("processor", view, store, null, 1, 0);
+        job.start();
+
+        assertEquals(MessageResendJob.State.FAILED, awaitStop(job));
+        assertEquals(5, messages.size());
+    }
+
+    public void testStoppedFor() throws Exception {
+        MessageResendJob job = new MessageResendJob("processor", view, store, null, 1, 0);
+        job.start();
+        assertEquals(MessageResendJob.State.COMPLETED, awaitStop(job));
+        awaitThread(job);
+        Thread.sleep(1);
+        assertTrue(job.isStoppedFor(0));
+        assertFalse("Job is taken as stopped before the retention time", job.isStoppedFor(TIMEOUT * 1000000L));
+
+        MessageResendJob cancelled = new MessageResendJob("processor", view, store, null, 1, 0);
+        assertTrue(cancelled.cancel());
+        Thread.sleep(1);
+        assertTrue(cancelled.isStoppedFor(0));
+    }
+
+    private void addMessages(int count) {
+        for (int i = 0; i < count; i++) {
+            messages.add(createMessage("id-" + i));
+        }
+    }
+
+    private MessageResendJob.State awaitStop(MessageResendJob job) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (job.getState() == MessageResendJob.State.RUNNING && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        return job.getState();
+    }
+
+    private void awaitThread(MessageResendJob job) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (!job.isStoppedFor(-1) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+
+    private MessageContext createMessage(final String messageId) {
+        return (MessageContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{MessageContext.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getMessageID".equals(method.getName())) {
+                            return messageId;
+                        }
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private MessageStore createStore() {
+        return (MessageStore) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{MessageStore.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("get".equals(method.getName()) && args.length == 1 && args[0] instanceof Integer) {
+                            int index = (Integer) args[0];
+                            storeReads.incrementAndGet();
+                            try {
+                                return messages.get(index);
+                            } catch (IndexOutOfBoundsException e) {
+                                return null;
+                            }
+                        }
+                        if ("size".equals(method.getName())) {
+                            return messages.size();
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Resends a message by removing it from the store, unless the backend is down or the message is set to fail
+     */
+    private class StubView extends MessageForwardingProcessorView {
+
+        private volatile boolean active = false;
+
+        private StubView(MessageStore store) throws Exception {
+            super(store, new BlockingMsgSender(), null);
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void resend(String messageId) throws Exception {
+            if (backendDown || failingIds.contains(messageId)) {
+                throw new Exception("Could not send message " + messageId);
+            }
+            for (MessageContext messageContext : messages) {
+                if (messageId.equals(messageContext.getMessageID())) {
+                    messages.remove(messageContext);
+                    return;
+                }
+            }
+            throw new Exception("Message " + messageId + " is not in the store");
+        }
+    }
+}
@@ -26,6 +26,8 @@ public class MessageInfo {
 
     private String messageId;
 
+    private long size = -1;
+
     public String getMessageId() {
         return messageId;
     }
@@ -41,4 +43,15 @@ public class MessageInfo {
     public void setSoapXml(String soapXml) {
         this.soapXml = soapXml;
     }
+
+    /**
+     * @return size of the SOAP envelope of the message in bytes, or -1 if the envelope was not included
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
 }
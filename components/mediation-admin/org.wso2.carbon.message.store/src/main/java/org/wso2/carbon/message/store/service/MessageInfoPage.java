@@ -0,0 +1,47 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.message.store.service;
+
+/**
+ * A page of messages of a message store, with the cursor to read the following page with
+ */
+public class MessageInfoPage {
+
+    private MessageInfo[] messages;
+
+    private String nextCursor;
+
+    public MessageInfo[] getMessages() {
+        return messages;
+    }
+
+    public void setMessages(MessageInfo[] messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * @return cursor of the following page, or null if this page reached the end of the store
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -36,6 +36,7 @@ import org.wso2.carbon.mediation.initializer.AbstractServiceBusAdmin;
 import org.wso2.carbon.mediation.initializer.ServiceBusConstants;
 import org.wso2.carbon.mediation.initializer.ServiceBusUtils;
 import org.wso2.carbon.mediation.initializer.persistence.MediationPersistenceManager;
+import org.wso2.carbon.mediation.initializer.utils.MessageStoreCursor;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
@@ -342,7 +343,7 @@ public class MessageStoreAdminService extends AbstractServiceBusAdmin {
             List<MessageInfo> messageInfoList = new ArrayList<MessageInfo>();
 
             for (MessageContext mc : messageContexts) {
-                MessageInfo info = createMessageInfo(mc);
+                MessageInfo info = createMessageInfo(mc, true);
                 if (info != null) {
                     messageInfoList.add(info);
                 }
@@ -379,11 +380,12 @@ public class MessageStoreAdminService extends AbstractServiceBusAdmin {
 
             int startIndex = (pageNumber * itemsPerPageInt);
             int endIndex = ((pageNumber + 1) * itemsPerPageInt);
+            int size = store.size();
 
             List<MessageInfo> paginatedMsgList = new ArrayList<MessageInfo>();
-            for (int i = startIndex; i < endIndex && i < store.size(); i++) {
+            for (int i = startIndex; i < endIndex && i < size; i++) {
 
-                MessageInfo info = createMessageInfo(store.get(i));
+                MessageInfo info = createMessageInfo(store.get(i), true);
 
                 if (info != null) {
                     paginatedMsgList.add(info);
@@ -400,6 +402,52 @@ public class MessageStoreAdminService extends AbstractServiceBusAdmin {
         return new MessageInfo[0];
     }
 
+    /**
+     * Get the page of messages following the given cursor. The store is sized once for the page, and the page
+     * starts right after the last message of the previous page even if messages were consumed from the store
+     * since that page was read.
+     *
+     * @param name            of the message store
+     * @param cursor          next cursor of the previous page, or null for the first page
+     * @param includeEnvelope whether to return the SOAP envelope and size of each message, or only its id
+     * @return page of message information and the cursor of the following page
+     * @throws AxisFault if the store does not exist or the cursor is invalid
+     */
+    public MessageInfoPage browseMessages(String name, String cursor, boolean includeEnvelope)
+            throws AxisFault {
+        MessageStore store = getMessageStoreImpl(name);
+        if (store == null) {
+            handleException(log, "Message Store " + name + " does not exist", null);
+        }
+
+        MessageStoreCursor position = null;
+        try {
+            position = MessageStoreCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            handleException(log, "Cannot browse Message Store " + name, e);
+        }
+
+        int size = store.size();
+        int index = position.locate(store, size, MSGS_PER_PAGE);
+        String lastMessageId = null;
+        List<MessageInfo> messages = new ArrayList<MessageInfo>();
+        while (index < size && messages.size() < MSGS_PER_PAGE) {
+            MessageContext messageContext = store.get(index++);
+            MessageInfo info = createMessageInfo(messageContext, includeEnvelope);
+            if (info != null) {
+                messages.add(info);
+                lastMessageId = messageContext.getMessageID();
+            }
+        }
+
+        MessageInfoPage page = new MessageInfoPage();
+        page.setMessages(messages.toArray(new MessageInfo[messages.size()]));
+        if (index < size) {
+            page.setNextCursor(new MessageStoreCursor(index, lastMessageId).toToken());
+        }
+        return page;
+    }
+
     /**
      * Get the Content of a given message
      *
@@ -484,7 +532,7 @@ public class MessageStoreAdminService extends AbstractServiceBusAdmin {
         }
     }
 
-    private static MessageInfo createMessageInfo(MessageContext messageContext) {
+    private static MessageInfo createMessageInfo(MessageContext messageContext, boolean includeEnvelope) {
         if (messageContext == null) {
             return null;
         }
@@ -492,10 +540,23 @@ public class MessageStoreAdminService extends AbstractServiceBusAdmin {
         MessageInfo messageInfo = new MessageInfo();
 
         messageInfo.setMessageId(messageContext.getMessageID());
-        messageInfo.setSoapXml(messageContext.getEnvelope().toString());
+        if (includeEnvelope) {
+            String soapXml = messageContext.getEnvelope().toString();
+            messageInfo.setSoapXml(soapXml);
+            messageInfo.setSize(getUTF8Bytes(soapXml).length);
+        }
+        // the size is left unknown otherwise, measuring it would serialize the whole envelope
         return messageInfo;
     }
 
+    private static byte[] getUTF8Bytes(String str) {
+        try {
+            return str.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return str.getBytes();
+        }
+    }
+
 
     private MessageStore getMessageStoreImpl(String name) {
         SynapseConfiguration configuration = getSynapseConfiguration();
@@ -0,0 +1,98 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.mediation.initializer.utils;
+
+import org.apache.axiom.util.base64.Base64Utils;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.message.store.MessageStore;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Position of a page in a message store, handed to the front end as an opaque token. The token holds the index
+ * of the next message and the id of the last message returned, so the next page starts right after that message
+ * even when messages ahead of it were consumed from the store in the meantime. Shared by the message store and
+ * message processor admin services, which page through the stores the same way.
+ */
+public class MessageStoreCursor {
+
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = ":";
+    private static final String ENCODING = "UTF-8";
+
+    private final int index;
+    private final String lastMessageId;
+
+    public MessageStoreCursor(int index, String lastMessageId) {
+        this.index = index;
+        this.lastMessageId = lastMessageId;
+    }
+
+    /**
+     * @param token token of a cursor, or null for the first page
+     * @throws IllegalArgumentException if the token was not issued by this class
+     */
+    public static MessageStoreCursor parse(String token) {
+        if (token == null || token.length() == 0) {
+            return new MessageStoreCursor(0, null);
+        }
+        try {
+            String value = new String(Base64Utils.decode(token), ENCODING);
+            String[] parts = value.split(SEPARATOR, 3);
+            if (parts.length != 3 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException("Invalid message store cursor " + token);
+            }
+            return new MessageStoreCursor(Integer.parseInt(parts[1]), parts[2].length() == 0 ? null : parts[2]);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Invalid message store cursor " + token, e);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid message store cursor " + token, e);
+        }
+    }
+
+    public String toToken() {
+        try {
+            String value = VERSION + SEPARATOR + index + SEPARATOR + (lastMessageId == null ? "" : lastMessageId);
+            return Base64Utils.encode(value.getBytes(ENCODING));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Find the index of the first message of the page. Stores hand out messages from the head, so if the last
+     * message returned moved, it is looked for among the messages before its old place. If it is not found there,
+     * the page starts at the head again, since listing a message twice is better than skipping one.
+     *
+     * @param size   size of the store
+     * @param window number of messages to look through for the last message returned
+     */
+    public int locate(MessageStore store, int size, int window) {
+        int start = Math.min(index, size);
+        if (lastMessageId == null) {
+            return start;
+        }
+        for (int i = start - 1; i >= 0 && i >= start - window; i--) {
+            MessageContext messageContext = store.get(i);
+            if (messageContext != null && lastMessageId.equals(messageContext.getMessageID())) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.wso2.carbon.mediation.initializer.utils;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.message.store.MessageStore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test the tokens of {@link MessageStoreCursor} and the paging through a store whose head is consumed
+ */
+public class MessageStoreCursorTest extends TestCase {
+
+    public void testTokenRoundTrip() {
+        MessageStoreCursor cursor = MessageStoreCursor.parse(new MessageStoreCursor(20, "urn:uuid:20").toToken());
+        assertEquals(new MessageStoreCursor(20, "urn:uuid:20").toToken(), cursor.toToken());
+
+        MessageStoreCursor idWithSeparator = MessageStoreCursor.parse(new MessageStoreCursor(3, "id:with:colons")
+                .toToken());
+        assertEquals(new MessageStoreCursor(3, "id:with:colons").toToken(), idWithSeparator.toToken());
+    }
+
+    public void testFirstPage() {
+        MessageStore store = createStore(5);
+        assertEquals(0, MessageStoreCursor.parse(null).locate(store, 5, 10));
+        assertEquals(0, MessageStoreCursor.parse("").locate(store, 5, 10));
+    }
+
+    public void testInvalidToken() {
+        String[] tokens = {"not a token", "MTp4Omlk", "MjoxOmlk"};
+        for (String token : tokens) {
+            try {
+                MessageStoreCursor.parse(token);
+                fail("Invalid cursor " + token + " is parsed.");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testLocateUnchangedStore() {
+        List<MessageContext> messages = createMessages(10);
+        MessageStore store = createStore(messages);
+        MessageStoreCursor cursor = new MessageStoreCursor(4, "id-3");
+        assertEquals(4, cursor.locate(store, messages.size(), 10));
+    }
+
+    public void testLocateAfterHeadConsumed() {
+        List<MessageContext> messages = createMessages(10);
+        MessageStore store = createStore(messages);
+        MessageStoreCursor cursor = MessageStoreCursor.parse(new MessageStoreCursor(4, "id-3").toToken());
+
+        // a processor consumed the first two messages since the page was returned
+        messages.remove(0);
+        messages.remove(0);
+        assertEquals("Page does not start right after the last message returned", 2,
+                cursor.locate(store, messages.size(), 10));
+    }
+
+    public void testLocateLastMessageConsumed() {
+        List<MessageContext> messages = createMessages(10);
+        MessageStore store = createStore(messages);
+        MessageStoreCursor cursor = new MessageStoreCursor(4, "id-3");
+
+        messages.subList(0, 4).clear();
+        assertEquals("Page does not start at the head once the last message returned is gone", 0,
+                cursor.locate(store, messages.size(), 10));
+    }
+
+    public void testLocateOutsideWindow() {
+        List<MessageContext> messages = createMessages(10);
+        MessageStore store = createStore(messages);
+        MessageStoreCursor cursor = new MessageStoreCursor(8, "id-0");
+        assertEquals(0, cursor.locate(store, messages.size(), 3));
+        assertEquals(1, cursor.locate(store, messages.size(), 8));
+    }
+
+    public void testLocateShrunkStore() {
+        List<MessageContext> messages = createMessages(3);
+        MessageStore store = createStore(messages);
+        assertEquals(3, new MessageStoreCursor(7, null).locate(store, messages.size(), 10));
+        assertEquals(3, new MessageStoreCursor(7, "id-2").locate(store, messages.size(), 10));
+    }
+
+    private List<MessageContext> createMessages(int count) {
+        List<MessageContext> messages = new ArrayList<MessageContext>();
+        for (int i = 0; i < count; i++) {
+            messages.add(createMessage("id-" + i));
+        }
+        return messages;
+    }
+
+    private MessageStore createStore(int count) {
+        return createStore(createMessages(count));
+    }
+
+    private MessageContext createMessage(final String messageId) {
+        return (MessageContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{MessageContext.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getMessageID".equals(method.getName())) {
+                            return messageId;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Store backed by the given list, which the test changes to simulate messages consumed by a processor
+     */
+    private MessageStore createStore(final List<MessageContext> messages) {
+        return (MessageStore) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{MessageStore.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("get".equals(method.getName()) && args.length == 1 && args[0] instanceof Integer) {
+                            int index = (Integer) args[0];
+                            return index < messages.size() ? messages.get(index) : null;
+                        }
+                        if ("size".equals(method.getName())) {
+                            return messages.size();
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -19,8 +19,12 @@ package org.wso2.carbon.mediator.cache;
 import org.apache.axiom.soap.SOAPEnvelope;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -33,7 +37,8 @@ import java.util.regex.Pattern;
  */
 public class CachableResponse implements Serializable {
     /**
-     * This holds the reference to the response for json
+     * This holds the reference to the response for json, or the serialized response envelope when the serialized
+     * response storage is in use
      */
     private byte[] responsePayload = null;
 
@@ -115,12 +120,58 @@ public class CachableResponse implements Serializable {
      */
     private boolean addAgeHeaderEnabled;
 
+    /**
+     * The storage mode used for XML responses.
+     */
+    private String responseStorage = CachingConstants.DEFAULT_RESPONSE_STORAGE;
+
+    /**
+     * The id of the cache mediator whose cache holds this response.
+     */
+    private String cacheId;
+
+    /**
+     * The size of the cached response payload in bytes.
+     */
+    private long responseSize;
+
+    /**
+     * Specifies whether the size of the response needs to be measured to weigh it against the memory limits.
+     */
+    private boolean memoryBounded;
+
+    /**
+     * The time at which the stored response expires, 0 if the response has not been stored yet.
+     */
+    private long expireTimeMillis;
+
+    /**
+     * The number of bytes accounted for this response by the {@link CacheManager}.
+     */
+    private transient long accountedSize;
+
+    /**
+     * The id of the backend fetch in progress for this response, 0 if there is none.
+     */
+    private transient long fetchId;
+
+    /**
+     * The id of the last backend fetch started for this response.
+     */
+    private transient long lastFetchId;
+
+    /**
+     * The requests waiting for the backend fetch in progress.
+     */
+    private transient List<Runnable> parkedRequests;
+
     /**
      * Sets the responsePayload and the headerProperties to null
      */
     public void clean() {
         responsePayload = null;
         headerProperties = null;
+        responseSize = 0;
     }
 
     /**
@@ -393,4 +444,160 @@ public class CachableResponse implements Serializable {
         this.addAgeHeaderEnabled = addAgeHeaderEnabled;
     }
 
+    /**
+     * This method returns the storage mode used for XML responses.
+     *
+     * @return the storage mode used for XML responses.
+     */
+    public String getResponseStorage() {
+        return responseStorage;
+    }
+
+    /**
+     * This method sets the storage mode used for XML responses.
+     *
+     * @param responseStorage the storage mode used for XML responses.
+     */
+    public void setResponseStorage(String responseStorage) {
+        this.responseStorage = responseStorage;
+    }
+
+    /**
+     * @return the id of the cache mediator whose cache holds this response.
+     */
+    public String getCacheId() {
+        return cacheId;
+    }
+
+    /**
+     * @param cacheId the id of the cache mediator whose cache holds this response.
+     */
+    public void setCacheId(String cacheId) {
+        this.cacheId = cacheId;
+    }
+
+    /**
+     * This method returns the size of the cached response payload in bytes.
+     *
+     * @return the size of the cached response payload in bytes.
+     */
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * This method sets the size of the cached response payload in bytes.
+     *
+     * @param responseSize the size of the cached response payload in bytes.
+     */
+    public void setResponseSize(long responseSize) {
+        this.responseSize = responseSize;
+    }
+
+    /**
+     * This method returns whether the size of the response needs to be measured.
+     *
+     * @return whether the size of the response needs to be measured.
+     */
+    public boolean isMemoryBounded() {
+        return memoryBounded;
+    }
+
+    /**
+     * This method sets whether the size of the response needs to be measured.
+     *
+     * @param memoryBounded whether the size of the response needs to be measured.
+     */
+    public void setMemoryBounded(boolean memoryBounded) {
+        this.memoryBounded = memoryBounded;
+    }
+
+    /**
+     * This method returns the time at which the stored response expires.
+     *
+     * @return the time at which the stored response expires, 0 if the response has not been stored yet.
+     */
+    public long getExpireTimeMillis() {
+        return expireTimeMillis;
+    }
+
+    /**
+     * This method sets the time at which the stored response expires.
+     *
+     * @param expireTimeMillis the time at which the stored response expires.
+     */
+    public void setExpireTimeMillis(long expireTimeMillis) {
+        this.expireTimeMillis = expireTimeMillis;
+    }
+
+    /**
+     * @return whether the response has been stored and has expired since.
+     */
+    public boolean isExpired() {
+        return expireTimeMillis > 0 && expireTimeMillis <= System.currentTimeMillis();
+    }
+
+    /**
+     * @param staleWhileRevalidate the time in seconds for which an expired response can be served.
+     * @return whether the response has not been stored, or can still be served.
+     */
+    public boolean isWithinStalePeriod(long staleWhileRevalidate) {
+        return expireTimeMillis == 0 ||
+                expireTimeMillis + TimeUnit.SECONDS.toMillis(staleWhileRevalidate) > System.currentTimeMillis();
+    }
+
+    /**
+     * Starts a backend fetch for this response unless one is already in progress.
+     *
+     * @return the id of the started fetch, 0 if another fetch is in progress.
+     */
+    public synchronized long startFetch() {
+        if (fetchId != 0) {
+            return 0;
+        }
+        fetchId = ++lastFetchId;
+        return fetchId;
+    }
+
+    /**
+     * Parks a request until the backend fetch in progress ends.
+     *
+     * @param parkedRequest the task which resumes the request.
+     * @return false if there is no fetch in progress to wait for.
+     */
+    public synchronized boolean park(Runnable parkedRequest) {
+        if (fetchId == 0) {
+            return false;
+        }
+        if (parkedRequests == null) {
+            parkedRequests = new ArrayList<>();
+        }
+        parkedRequests.add(parkedRequest);
+        return true;
+    }
+
+    /**
+     * Ends the given backend fetch if it is still in progress.
+     *
+     * @param fetchId the id of the fetch to end.
+     * @return the requests parked on the fetch, which are to be resumed by the caller.
+     */
+    public synchronized List<Runnable> endFetch(long fetchId) {
+        if (this.fetchId == 0 || this.fetchId != fetchId) {
+            return Collections.emptyList();
+        }
+        this.fetchId = 0;
+        List<Runnable> requests = parkedRequests == null ? Collections.<Runnable>emptyList() : parkedRequests;
+        parkedRequests = null;
+        return requests;
+    }
+
+    long getAccountedSize() {
+        return accountedSize;
+    }
+
+    void setAccountedSize(long accountedSize) {
+        this.accountedSize = accountedSize;
+    }
+
 }
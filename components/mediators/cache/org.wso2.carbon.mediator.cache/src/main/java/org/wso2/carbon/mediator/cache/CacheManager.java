@@ -17,21 +17,91 @@
 package org.wso2.carbon.mediator.cache;
 
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * There would be two instances of the cache mediator in a single mediation flow. Hence it must be possible for the
  * cache created in one instance to be reused in the next. This CacheManager enables this feature with static methods.
+ * Apart from that the CacheManager keeps track of the number of bytes held by all the caches it manages, so that a
+ * global memory ceiling can be enforced across them.
  */
 public class CacheManager {
 
+    private static final Log log = LogFactory.getLog(CacheManager.class);
+
     /**
      * Maps the id with the relevant LoadingCache
      */
     private Map<String, LoadingCache<String, CachableResponse>> cacheMap = new ConcurrentHashMap<>();
 
+    /**
+     * Maps the id with the statistics of the relevant LoadingCache
+     */
+    private ConcurrentHashMap<String, CacheStatistics> statisticsMap = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the id with the second tier store of the relevant LoadingCache
+     */
+    private Map<String, OffHeapResponseStore> storeMap = new ConcurrentHashMap<>();
+
+    /**
+     * Number of payload bytes held by all the caches of this CacheManager
+     */
+    private final AtomicLong totalCachedBytes = new AtomicLong();
+
+    /**
+     * The maximum number of payload bytes that can be held by all the caches of this CacheManager, -1 if unbounded
+     */
+    private final long maxTotalMemory;
+
+    /**
+     * Runs the timeouts of the requests coalesced by the caches of this CacheManager, created on first use
+     */
+    private volatile ScheduledExecutorService scheduler;
+
+    public CacheManager() {
+        this(getConfiguredMaxTotalMemory());
+    }
+
+    /**
+     * @param maxTotalMemory the maximum number of payload bytes that can be held by all the caches, -1 if unbounded
+     */
+    public CacheManager(long maxTotalMemory) {
+        this.maxTotalMemory = maxTotalMemory;
+    }
+
+    /**
+     * Reads the global memory ceiling from the synapse properties, falling back to the default if it is not a number
+     *
+     * @return the maximum number of payload bytes that can be held by all the caches, -1 if unbounded
+     */
+    private static long getConfiguredMaxTotalMemory() {
+        String value = SynapsePropertiesLoader.getPropertyValue(CachingConstants.MAX_TOTAL_MEMORY_PROPERTY,
+                                                                String.valueOf(CachingConstants.DEFAULT_SIZE));
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid " + CachingConstants.MAX_TOTAL_MEMORY_PROPERTY + " " + value + ". Using "
+                             + CachingConstants.DEFAULT_SIZE + ".");
+            return CachingConstants.DEFAULT_SIZE;
+        }
+    }
+
     /**
      * @param id the id of the mediator
      * @return the relevant cache of the mediator
@@ -56,14 +126,270 @@ public class CacheManager {
      * @param id the id of the cache mediator
      */
     void remove(String id) {
-        cacheMap.remove(id);
+        LoadingCache<String, CachableResponse> cache = cacheMap.remove(id);
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        OffHeapResponseStore store = storeMap.remove(id);
+        if (store != null) {
+            store.close();
+        }
+        statisticsMap.remove(id);
     }
 
     /**
      * Clears the CacheManager
      */
     void clean() {
+        for (LoadingCache<String, CachableResponse> cache : cacheMap.values()) {
+            cache.invalidateAll();
+        }
         cacheMap.clear();
+        for (OffHeapResponseStore store : storeMap.values()) {
+            store.close();
+        }
+        storeMap.clear();
+        statisticsMap.clear();
+    }
+
+    /**
+     * Insert id and the second tier store of the LoadingCache to the CacheManager
+     *
+     * @param id    the id of the cache mediator
+     * @param store the second tier store of the cache related to the id
+     */
+    void putStore(String id, OffHeapResponseStore store) {
+        storeMap.put(id, store);
+    }
+
+    /**
+     * @param id the id of the cache mediator
+     * @return the second tier store of the cache or null if the cache does not have one
+     */
+    OffHeapResponseStore getStore(String id) {
+        return storeMap.get(id);
+    }
+
+    /**
+     * Restores the response of the given request hash from the second tier store of the cache, and accounts it as a
+     * response held by the heap cache.
+     *
+     * @param id          the id of the cache mediator
+     * @param requestHash the hash of the request
+     * @return the restored response or null if the second tier does not hold a response for the request hash
+     */
+    CachableResponse restore(String id, String requestHash) {
+        OffHeapResponseStore store = storeMap.get(id);
+        if (store == null) {
+            return null;
+        }
+        CachableResponse response = store.take(requestHash);
+        if (response != null) {
+            response.setCacheId(id);
+            response.setAccountedSize(response.getResponseSize());
+            totalCachedBytes.addAndGet(response.getResponseSize());
+            getStatistics(id).addCachedBytes(response.getResponseSize());
+        }
+        return response;
+    }
+
+    /**
+     * Returns the statistics of the cache associated with the id, creating them if they do not exist yet.
+     *
+     * @param id the id of the cache mediator
+     * @return the statistics of the cache
+     */
+    CacheStatistics getStatistics(String id) {
+        CacheStatistics statistics = statisticsMap.get(id);
+        if (statistics == null) {
+            statistics = new CacheStatistics();
+            CacheStatistics existing = statisticsMap.putIfAbsent(id, statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * @param id the id of the cache mediator
+     * @return the statistics of the cache or null if the cache does not exist
+     */
+    CacheStatistics lookupStatistics(String id) {
+        return statisticsMap.get(id);
+    }
+
+    /**
+     * @return the ids of the caches managed by this CacheManager
+     */
+    Set<String> getCacheIds() {
+        return cacheMap.keySet();
+    }
+
+    /**
+     * @return number of payload bytes held by all the caches of this CacheManager
+     */
+    long getTotalCachedBytes() {
+        return totalCachedBytes.get();
+    }
+
+    /**
+     * @return the maximum number of payload bytes that can be held by all the caches, -1 if unbounded
+     */
+    long getMaxTotalMemory() {
+        return maxTotalMemory;
+    }
+
+    /**
+     * Creates the weigher to be used by a memory bounded cache, which weighs an entry by its payload size.
+     *
+     * @return the weigher based on the payload size
+     */
+    Weigher<String, CachableResponse> createWeigher() {
+        return new Weigher<String, CachableResponse>() {
+            @Override
+            public int weigh(String requestHash, CachableResponse response) {
+                return (int) Math.min(response.getResponseSize(), Integer.MAX_VALUE);
+            }
+        };
+    }
+
+    /**
+     * Creates the removal listener of the cache associated with the id, which releases the bytes held by the removed
+     * entries and records the evictions.
+     *
+     * @param id the id of the cache mediator
+     * @return the removal listener for the cache
+     */
+    RemovalListener<String, CachableResponse> createRemovalListener(final String id) {
+        final CacheStatistics statistics = getStatistics(id);
+        return new RemovalListener<String, CachableResponse>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, CachableResponse> notification) {
+                CachableResponse response = notification.getValue();
+                if (response == null) {
+                    return;
+                }
+                // a replaced entry has been superseded by a newer response, which is not an eviction
+                if (notification.getCause() == RemovalCause.REPLACED) {
+                    release(statistics, response);
+                    return;
+                }
+                // responses evicted due to the size bounds of the heap cache are moved to the second tier
+                OffHeapResponseStore store = storeMap.get(id);
+                if (store != null && notification.getCause() == RemovalCause.SIZE &&
+                        (response.getResponsePayload() != null || response.getResponseEnvelope() != null)) {
+                    store.put(response);
+                }
+                if (release(statistics, response) > 0 && notification.wasEvicted()) {
+                    statistics.recordEviction();
+                }
+            }
+        };
+    }
+
+    /**
+     * Stores a response which has been populated by the collector in to the cache it was loaded from, replacing the
+     * entry the request was served from. The entry is never changed, since it may still be served to other requests,
+     * and is swapped with the new response atomically. The response is accounted against the global memory ceiling.
+     *
+     * @param current  the cache entry the request was served from
+     * @param response the populated response
+     * @return false if the response could not be stored, either because the global memory ceiling would be exceeded
+     * or the entry is no longer in the cache
+     */
+    boolean store(CachableResponse current, CachableResponse response) {
+        LoadingCache<String, CachableResponse> cache = cacheMap.get(response.getCacheId());
+        if (cache == null) {
+            return false;
+        }
+        CacheStatistics statistics = getStatistics(response.getCacheId());
+        long size = response.getResponseSize();
+        // the bytes of the current entry are released once it is replaced
+        long releasable = current.getAccountedSize();
+        if (!reserve(size, releasable)) {
+            // give the caches a chance to drop the expired entries before rejecting the response
+            for (LoadingCache<String, CachableResponse> managedCache : cacheMap.values()) {
+                managedCache.cleanUp();
+            }
+            if (!reserve(size, releasable)) {
+                return false;
+            }
+        }
+        synchronized (response) {
+            response.setAccountedSize(size);
+        }
+        response.setExpireTimeMillis(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(response.getTimeout()));
+        statistics.addCachedBytes(size);
+        if (!cache.asMap().replace(response.getRequestHash(), current, response)) {
+            // rolls back the reservation
+            release(statistics, response);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the given number of bytes to the bytes held by the caches, unless the global memory ceiling would be
+     * exceeded once the releasable bytes are released. The check and the addition are a single atomic step, so that
+     * concurrent responses can not exceed the ceiling together.
+     *
+     * @param size       the number of bytes to be reserved
+     * @param releasable the number of bytes which are released once the reserved bytes are stored
+     * @return whether the bytes were reserved
+     */
+    private boolean reserve(long size, long releasable) {
+        while (true) {
+            long total = totalCachedBytes.get();
+            if (maxTotalMemory > -1 && size > releasable && total + size - releasable > maxTotalMemory) {
+                return false;
+            }
+            if (totalCachedBytes.compareAndSet(total, total + size)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Schedules a task to run once after the given delay.
+     *
+     * @param task        the task to be run
+     * @param delayMillis the delay in milliseconds
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "mediator-cache-scheduler");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Releases the bytes accounted for the given response.
+     *
+     * @param statistics the statistics of the cache the response belongs to
+     * @param response   the response to be released
+     * @return the number of bytes released
+     */
+    private long release(CacheStatistics statistics, CachableResponse response) {
+        long size;
+        synchronized (response) {
+            size = response.getAccountedSize();
+            response.setAccountedSize(0);
+        }
+        totalCachedBytes.addAndGet(-size);
+        statistics.addCachedBytes(-size);
+        return size;
     }
 
 }
@@ -20,6 +20,8 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMException;
+import org.apache.axiom.om.OMXMLBuilderFactory;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
@@ -32,6 +34,7 @@ import org.apache.synapse.SynapseLog;
 import org.apache.synapse.commons.json.JsonUtil;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.continuation.ContinuationStackManager;
+import org.apache.synapse.continuation.SeqContinuationState;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.Axis2Sender;
@@ -44,10 +47,13 @@ import org.apache.synapse.util.FixedByteArrayOutputStream;
 import org.apache.synapse.util.MessageHelper;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.mediator.cache.digest.DigestGenerator;
+import org.wso2.carbon.mediator.cache.digest.StreamingRequestHashGenerator;
 import org.wso2.carbon.mediator.cache.util.HttpCachingFilter;
 
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.text.ParseException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -77,10 +83,15 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
      */
     private final String jsonContentType = "application/json";
     /**
-     * Cache configuration ID.
+     * Cache configuration ID, which keys the cache, its statistics and its invalidation in the CacheManager.
      */
     private String id;
 
+    /**
+     * Whether the id is configured with the id attribute, rather than derived from the position of the mediator.
+     */
+    private boolean idConfigured;
+
     /**
      * The time duration for which the cache is kept.
      */
@@ -119,6 +130,39 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
      */
     private int inMemoryCacheSize = CachingConstants.DEFAULT_SIZE;
 
+    /**
+     * The maximum number of payload bytes to be kept in memory. If this is -1 then the cache is not bounded by the
+     * size of the cached responses.
+     */
+    private long maxMemory = CachingConstants.DEFAULT_SIZE;
+
+    /**
+     * The number of bytes of the off-heap second tier which holds the responses evicted due to the size bounds of the
+     * cache. If this is -1 then the cache does not have a second tier.
+     */
+    private long offHeapSize = CachingConstants.DEFAULT_SIZE;
+
+    /**
+     * The directory of the memory mapped file of the second tier. If this is null a direct buffer is used instead.
+     */
+    private String offHeapDirectory = null;
+
+    /**
+     * This specifies whether concurrent requests which miss the cache for the same request hash should wait for the
+     * response of the first one instead of going to the backend.
+     */
+    private boolean coalesceRequests = false;
+
+    /**
+     * The maximum time in seconds a request waits for the response of an in-flight request with the same request hash.
+     */
+    private long coalesceTimeout = CachingConstants.DEFAULT_COALESCE_TIMEOUT;
+
+    /**
+     * The time in seconds for which an expired response is served while a single request revalidates it.
+     */
+    private long staleWhileRevalidate = 0;
+
     /**
      * The compiled pattern for the regex of the responseCodes.
      */
@@ -154,6 +198,12 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
      */
     private boolean addAgeHeaderEnabled = CachingConstants.DEFAULT_ADD_AGE_HEADER;
 
+    /**
+     * The storage mode used for XML responses. In the serialized mode responses are kept as bytes which are shared
+     * between cache hits and only built in to an OM tree when the envelope is accessed.
+     */
+    private String responseStorage = CachingConstants.DEFAULT_RESPONSE_STORAGE;
+
     /**
      * Variable to represent NOT_MODIFIED status code.
      */
@@ -237,10 +287,28 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
     private CachableResponse cacheNewResponse(String requestHash) {
         CachableResponse response = new CachableResponse();
         response.setRequestHash(requestHash);
-        response.setTimeout(timeout);
+        response.setCacheId(id);
+        configure(response);
         return response;
     }
 
+    /**
+     * Copies the configuration of this mediator, which the collector needs to store the response, in to the response.
+     *
+     * @param response the response to be configured
+     */
+    private void configure(CachableResponse response) {
+        response.setTimeout(timeout);
+        response.setProtocolType(protocolType);
+        response.setResponseCodePattern(responseCodePattern);
+        response.setHTTPMethodsToCache(hTTPMethodsToCache);
+        response.setMaxMessageSize(maxMessageSize);
+        response.setCacheControlEnabled(cacheControlEnabled);
+        response.setAddAgeHeaderEnabled(addAgeHeaderEnabled);
+        response.setResponseStorage(responseStorage);
+        response.setMemoryBounded(maxMemory > -1 || cacheManager.getMaxTotalMemory() > -1);
+    }
+
     /**
      * Processes a request message through the cache mediator. Generates the request hash and looks up for a hit, if
      * found; then the specified named or anonymous sequence is executed or marks this message as a response and sends
@@ -267,18 +335,22 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
         if (synLog.isTraceOrDebugEnabled()) {
             synLog.traceOrDebug("Generated request hash : " + requestHash);
         }
-        CachableResponse cachedResponse = getMediatorCache().get(requestHash);
-        synCtx.setProperty(CachingConstants.CACHED_OBJECT, cachedResponse);
+        LoadingCache<String, CachableResponse> cache = getMediatorCache();
+        CachableResponse cachedResponse = cache.get(requestHash);
+        if (cachedResponse.isExpired() && !cachedResponse.isWithinStalePeriod(staleWhileRevalidate)) {
+            // a response restored from the second tier is only kept until its original expiry time
+            cache.invalidate(requestHash);
+            cachedResponse = cache.get(requestHash);
+        }
+        synCtx.setProperty(CachingConstants.CACHED_ENTRY, cachedResponse);
+        // The cache entry may be served to other requests, hence the response of this request is collected in to a
+        // new object which replaces the entry once it is stored.
+        CachableResponse collectedResponse = cacheNewResponse(requestHash);
         //This is used to store the http method of the request.
-        String httpMethod = (String) msgCtx.getProperty(Constants.Configuration.HTTP_METHOD);
-        cachedResponse.setHttpMethod(httpMethod);
-        cachedResponse.setProtocolType(protocolType);
-        cachedResponse.setResponseCodePattern(responseCodePattern);
-        cachedResponse.setHTTPMethodsToCache(hTTPMethodsToCache);
-        cachedResponse.setMaxMessageSize(maxMessageSize);
-        cachedResponse.setCacheControlEnabled(cacheControlEnabled);
-        cachedResponse.setAddAgeHeaderEnabled(addAgeHeaderEnabled);
-        if (cachedResponse.getResponsePayload() != null || cachedResponse.getResponseEnvelope() != null) {
+        collectedResponse.setHttpMethod((String) msgCtx.getProperty(Constants.Configuration.HTTP_METHOD));
+        synCtx.setProperty(CachingConstants.CACHED_OBJECT, collectedResponse);
+        CacheStatistics statistics = cacheManager.getStatistics(id);
+        if (hasResponse(cachedResponse)) {
             // get the response from the cache and attach to the context and change the
             // direction of the message
             if (synLog.isTraceOrDebugEnabled()) {
@@ -288,16 +360,166 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
             if (CachingConstants.HTTP_PROTOCOL_TYPE.equals(getProtocolType())
                     && cachedResponse.isCacheControlEnabled() &&
                     HttpCachingFilter.isValidCacheEntry(cachedResponse, synCtx)) {
+                statistics.recordMiss();
+                return true;
+            }
+            //Serve a stale response while a single request revalidates it.
+            if (cachedResponse.isExpired() && startFetch(synCtx, cachedResponse)) {
+                if (synLog.isTraceOrDebugEnabled()) {
+                    synLog.traceOrDebug("Revalidating the stale response for message ID : " + synCtx.getMessageID());
+                }
+                statistics.recordMiss();
                 return true;
             }
+            statistics.recordHit();
             // mark as a response and replace envelope from cache
             synCtx.setResponse(true);
             replaceEnvelopeWithCachedResponse(synCtx, synLog, msgCtx, cachedResponse);
             return false;
         }
+        if (coalesceRequests && canResume(synCtx)) {
+            if (startFetch(synCtx, cachedResponse)) {
+                statistics.recordMiss();
+                return true;
+            }
+            ContinuationStackManager.updateSeqContinuationState(synCtx, getMediatorPosition());
+            if (cachedResponse.park(createParkedRequest(synCtx, synLog, cachedResponse))) {
+                if (synLog.isTraceOrDebugEnabled()) {
+                    synLog.traceOrDebug("Message ID : " + synCtx.getMessageID() + " is waiting for the response " +
+                                                "of an in-flight request with the same request hash");
+                }
+                return false;
+            }
+            // the in-flight request has completed in the meantime
+            CachableResponse completedResponse = cache.getIfPresent(requestHash);
+            if (completedResponse != null && hasResponse(completedResponse)) {
+                statistics.recordHit();
+                synCtx.setResponse(true);
+                replaceEnvelopeWithCachedResponse(synCtx, synLog, msgCtx, completedResponse);
+                return false;
+            }
+        }
+        statistics.recordMiss();
+        return true;
+    }
+
+    /**
+     * @param cachedResponse a cache entry
+     * @return whether the entry holds a response which can be served
+     */
+    private static boolean hasResponse(CachableResponse cachedResponse) {
+        return cachedResponse.getResponsePayload() != null || cachedResponse.getResponseEnvelope() != null;
+    }
+
+    /**
+     * Makes the given request the single request which fetches the response for its request hash from the backend.
+     * The fetch is released when the collector processes the response, or after the coalesce timeout if the response
+     * never reaches the collector.
+     *
+     * @param synCtx         the request message
+     * @param cachedResponse the cached response of the request hash
+     * @return false if another request is already fetching the response
+     */
+    private boolean startFetch(MessageContext synCtx, final CachableResponse cachedResponse) {
+        final long fetchId = cachedResponse.startFetch();
+        if (fetchId == 0) {
+            return false;
+        }
+        synCtx.setProperty(CachingConstants.FETCH_ID, fetchId);
+        cacheManager.schedule(new Runnable() {
+            @Override
+            public void run() {
+                resumeParkedRequests(cachedResponse.endFetch(fetchId));
+            }
+        }, TimeUnit.SECONDS.toMillis(coalesceTimeout));
         return true;
     }
 
+    /**
+     * Checks whether a parked request can be resumed from this mediator, which requires the continuation state of the
+     * sequence this mediator belongs to.
+     *
+     * @param synCtx the request message
+     * @return whether the mediation of the request can be resumed after it is parked
+     */
+    private boolean canResume(MessageContext synCtx) {
+        return synCtx.isContinuationEnabled() &&
+                ContinuationStackManager.peakContinuationStateStack(synCtx) instanceof SeqContinuationState;
+    }
+
+    /**
+     * Creates the task which resumes a parked request, once the request it waits for has completed.
+     *
+     * @param synCtx         the parked request
+     * @param synLog         the Synapse log to use
+     * @param cachedResponse the cached response the request waits for
+     * @return the task to resume the parked request
+     */
+    private Runnable createParkedRequest(final MessageContext synCtx, final SynapseLog synLog,
+                                         final CachableResponse cachedResponse) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synCtx.getEnvironment().getExecutorService().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        resumeParkedRequest(synCtx, synLog, cachedResponse);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Serves a parked request from the cache. If the request it waited for did not cache a response, the mediation of
+     * the parked request is continued after this mediator so that it is sent to the backend.
+     *
+     * @param synCtx      the parked request
+     * @param synLog      the Synapse log to use
+     * @param cachedEntry the cache entry the request waited on
+     */
+    private void resumeParkedRequest(MessageContext synCtx, SynapseLog synLog, CachableResponse cachedEntry) {
+        CacheStatistics statistics = cacheManager.getStatistics(id);
+        try {
+            // the response stored by the fetch replaces the entry the request waited on
+            CachableResponse cachedResponse = getMediatorCache().getIfPresent(cachedEntry.getRequestHash());
+            if (cachedResponse != null && hasResponse(cachedResponse) && !cachedResponse.isExpired()) {
+                statistics.recordHit();
+                synCtx.setResponse(true);
+                replaceEnvelopeWithCachedResponse(synCtx, synLog,
+                                                  ((Axis2MessageContext) synCtx).getAxis2MessageContext(),
+                                                  cachedResponse);
+                return;
+            }
+            statistics.recordMiss();
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("No response was cached for message ID : " + synCtx.getMessageID() +
+                                            ", continuing the mediation");
+            }
+            SeqContinuationState continuationState =
+                    (SeqContinuationState) ContinuationStackManager.peakContinuationStateStack(synCtx);
+            SequenceMediator sequence = ContinuationStackManager.retrieveSequence(synCtx, continuationState);
+            if (sequence == null) {
+                handleException("Unable to find the sequence to continue the mediation of message ID : " +
+                                        synCtx.getMessageID(), synCtx);
+            }
+            sequence.mediate(synCtx, continuationState);
+        } catch (SynapseException e) {
+            synLog.error("Error while resuming the message ID : " + synCtx.getMessageID() + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resumes the requests which waited for a fetch to complete.
+     *
+     * @param parkedRequests the tasks to resume the parked requests
+     */
+    private static void resumeParkedRequests(List<Runnable> parkedRequests) {
+        for (Runnable parkedRequest : parkedRequests) {
+            parkedRequest.run();
+        }
+    }
+
     /**
      * This method returns the existing cached response.
      * @param synCtx Message context.
@@ -318,12 +540,18 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
                 }
                 msgCtx.getEnvelope().getBody().addChild(response);
 
-            } else {
+            } else if (cachedResponse.getResponseEnvelope() != null) {
                 msgCtx.setEnvelope(MessageHelper.cloneSOAPEnvelope(cachedResponse.getResponseEnvelope()));
+            } else {
+                msgCtx.setEnvelope(buildEnvelope(cachedResponse.getResponsePayload()));
             }
         } catch (AxisFault e) {
             handleException("Error creating response OM from cache : " + id, synCtx);
+        } catch (OMException e) {
+            handleException("Error reading the serialized response from cache : " + id, e, synCtx);
         }
+        // the request may not have been built, make sure the cached response is sent instead of the request payload
+        msgCtx.setProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED, Boolean.TRUE);
         if (CachingConstants.HTTP_PROTOCOL_TYPE.equals(getProtocolType())) {
             if (cachedResponse.getStatusCode() != null) {
                 msgCtx.setProperty(NhttpConstants.HTTP_SC,
@@ -390,13 +618,33 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
      * @param synCtx the current message (response)
      * @param cfgCtx the abstract context in which the cache will be kept
      */
-    @SuppressWarnings("unchecked")
     private void processResponseMessage(MessageContext synCtx, ConfigurationContext cfgCtx, SynapseLog synLog) {
+        try {
+            cacheResponseMessage(synCtx, synLog);
+        } finally {
+            CachableResponse cachedEntry = (CachableResponse) synCtx.getProperty(CachingConstants.CACHED_ENTRY);
+            Object fetchId = synCtx.getProperty(CachingConstants.FETCH_ID);
+            if (cachedEntry != null && fetchId instanceof Long) {
+                synCtx.setProperty(CachingConstants.FETCH_ID, null);
+                resumeParkedRequests(cachedEntry.endFetch((Long) fetchId));
+            }
+        }
+    }
+
+    /**
+     * Updates the cache with the response message for the corresponding request hash.
+     *
+     * @param synLog the Synapse log to use
+     * @param synCtx the current message (response)
+     */
+    @SuppressWarnings("unchecked")
+    private void cacheResponseMessage(MessageContext synCtx, SynapseLog synLog) {
         if (!collector) {
             handleException("Response messages cannot be handled in a non collector cache", synCtx);
         }
         org.apache.axis2.context.MessageContext msgCtx = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
         CachableResponse response = (CachableResponse) synCtx.getProperty(CachingConstants.CACHED_OBJECT);
+        CachableResponse cachedEntry = (CachableResponse) synCtx.getProperty(CachingConstants.CACHED_ENTRY);
 
         if (response != null) {
             boolean toCache = true;
@@ -406,7 +654,6 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
                 //Honor no-store header if cacheControlEnabled.
                 // If "no-store" header presents in the response, returned response can not be cached.
                 if (response.isCacheControlEnabled() && HttpCachingFilter.isNoStore(msgCtx)) {
-                    response.clean();
                     return;
                 }
                 //Need to check the data type of HTTP_SC to avoid classcast exceptions.
@@ -419,7 +666,14 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
                 if (statusCode != null) {
                     //If status code is SC_NOT_MODIFIED then return the cached response.
                     if (statusCode.equals(SC_NOT_MODIFIED)) {
-                        replaceEnvelopeWithCachedResponse(synCtx, synLog, msgCtx, response);
+                        if (cachedEntry != null && hasResponse(cachedEntry)) {
+                            if (cachedEntry.isExpired()) {
+                                // the stale entry is still valid, store it again as a new response
+                                copyResponse(cachedEntry, response);
+                                cacheManager.store(cachedEntry, response);
+                            }
+                            replaceEnvelopeWithCachedResponse(synCtx, synLog, msgCtx, cachedEntry);
+                        }
                         return;
                     }
                     // Now create matcher object.
@@ -459,29 +713,36 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
                         return;
                     }
                     response.setResponsePayload(responsePayload);
+                    response.setResponseSize(responsePayload.length);
                     response.setResponseEnvelope(null);
                     response.setJson(true);
+                } else if (CachingConstants.SERIALIZED_STORAGE.equals(response.getResponseStorage())) {
+                    byte[] responsePayload = serializeEnvelope(synCtx, response.getMaxMessageSize());
+                    if (responsePayload == null) {
+                        synLog.traceOrDebug(
+                                "Message size exceeds the upper bound for caching, request will not be cached");
+                        return;
+                    }
+                    response.setResponsePayload(responsePayload);
+                    response.setResponseSize(responsePayload.length);
+                    response.setResponseEnvelope(null);
+                    response.setJson(false);
                 } else {
-                    SOAPEnvelope clonedEnvelope = MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope());
-                    if (response.getMaxMessageSize() > -1) {
-                        FixedByteArrayOutputStream fbaos = new FixedByteArrayOutputStream(
-                                response.getMaxMessageSize());
-                        try {
-                            clonedEnvelope.serialize(fbaos);
-                        } catch (XMLStreamException e) {
-                            handleException("Error in checking the message size", e, synCtx);
-                        } catch (SynapseException syne) {
+                    SOAPEnvelope clonedEnvelope;
+                    if (response.getMaxMessageSize() > -1 || response.isMemoryBounded()) {
+                        // the response has to be serialized to be weighed, build the cached copy from those bytes
+                        // instead of cloning the envelope as well
+                        byte[] responsePayload = serializeEnvelope(synCtx, response.getMaxMessageSize());
+                        if (responsePayload == null) {
                             synLog.traceOrDebug(
                                     "Message size exceeds the upper bound for caching, request will not be cached");
                             return;
-                        } finally {
-                            try {
-                                fbaos.close();
-                            } catch (IOException e) {
-                                handleException("Error occurred while closing the FixedByteArrayOutputStream ", e,
-                                        synCtx);
-                            }
                         }
+                        clonedEnvelope = buildEnvelope(responsePayload);
+                        clonedEnvelope.build();
+                        response.setResponseSize(responsePayload.length);
+                    } else {
+                        clonedEnvelope = MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope());
                     }
 
                     response.setResponsePayload(null);
@@ -524,8 +785,13 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
                 response.setHeaderProperties(headerProperties);
                 msgCtx.setProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS, headerProperties);
 
-            } else {
-                response.clean();
+                if (cachedEntry == null || !cacheManager.store(cachedEntry, response)) {
+                    if (synLog.isTraceOrDebugEnabled()) {
+                        synLog.traceOrDebug("Memory limit of the cache reached or the cache entry expired, the " +
+                                "response for request hash : " + response.getRequestHash() + " will not be cached");
+                    }
+                }
+
             }
         } else {
             synLog.auditWarn("A response message without a valid mapping to the " +
@@ -535,37 +801,121 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
     }
 
     /**
-     * Creates default cache to keep mediator cache.
+     * Copies the response held by a cache entry in to a new response, which is stored in place of the entry.
+     *
+     * @param cachedEntry the cache entry
+     * @param response    the new response
+     */
+    private static void copyResponse(CachableResponse cachedEntry, CachableResponse response) {
+        response.setResponsePayload(cachedEntry.getResponsePayload());
+        response.setResponseEnvelope(cachedEntry.getResponseEnvelope());
+        response.setJson(cachedEntry.isJson());
+        response.setResponseSize(cachedEntry.getResponseSize());
+        response.setStatusCode(cachedEntry.getStatusCode());
+        response.setStatusReason((String) cachedEntry.getStatusReason());
+        response.setHeaderProperties(cachedEntry.getHeaderProperties());
+        response.setResponseFetchedTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Serializes the current envelope of the message in to a byte array. The envelope is serialized without being
+     * consumed since it is still needed to send the response back to the client.
+     *
+     * @param synCtx         the current message (response)
+     * @param maxMessageSize the maximum size of the messages to be cached in bytes, -1 if unbounded
+     * @return the serialized envelope or null if the envelope exceeds the maximum message size
+     */
+    private byte[] serializeEnvelope(MessageContext synCtx, int maxMessageSize) {
+        ByteArrayOutputStream outputStream;
+        if (maxMessageSize > -1) {
+            outputStream = new FixedByteArrayOutputStream(maxMessageSize);
+        } else {
+            outputStream = new ByteArrayOutputStream();
+        }
+        try {
+            synCtx.getEnvelope().serialize(outputStream);
+        } catch (XMLStreamException e) {
+            handleException("Error in serializing the response to be cached", e, synCtx);
+        } catch (SynapseException syne) {
+            return null;
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Creates a deferred SOAPEnvelope over a serialized response. The bytes are not copied and the OM tree is only
+     * built as far as it is navigated, hence a response which is just sent back is streamed from the stored bytes.
+     *
+     * @param responsePayload the serialized response envelope
+     * @return the SOAPEnvelope backed by the given bytes
+     */
+    private SOAPEnvelope buildEnvelope(byte[] responsePayload) {
+        return (SOAPEnvelope) OMXMLBuilderFactory.createSOAPModelBuilder(
+                new ByteArrayInputStream(responsePayload), "UTF-8").getDocumentElement();
+    }
+
+    /**
+     * Creates default cache to keep mediator cache. The cache and its second tier are created once per id, even when
+     * the first requests reach the mediator concurrently.
      *
      * @return global cache
      */
     public LoadingCache<String, CachableResponse> getMediatorCache() {
         LoadingCache<String, CachableResponse> cache = cacheManager.get(id);
         if (cache == null) {
-            if (inMemoryCacheSize > -1) {
-                cache = CacheBuilder.newBuilder().expireAfterWrite(timeout,
-                        TimeUnit.SECONDS).maximumSize(inMemoryCacheSize)
-                        .build(new CacheLoader<String, CachableResponse>() {
-                            @Override
-                            public CachableResponse load(String requestHash) throws Exception {
-                                return cacheNewResponse(requestHash);
-                            }
-                        });
-            } else {
-                cache = CacheBuilder.newBuilder().expireAfterWrite(timeout,
-                        TimeUnit.SECONDS).build(
-                        new CacheLoader<String, CachableResponse>() {
-                            @Override
-                            public CachableResponse load(String requestHash) throws Exception {
-                                return cacheNewResponse(requestHash);
-                            }
-                        });
+            synchronized (cacheManager) {
+                cache = cacheManager.get(id);
+                if (cache == null) {
+                    cache = createMediatorCache();
+                    cacheManager.put(id, cache);
+                }
             }
-            cacheManager.put(id, cache);
         }
         return cache;
     }
 
+    /**
+     * Creates the cache of this mediator together with its second tier, if it has one.
+     *
+     * @return the new cache
+     */
+    private LoadingCache<String, CachableResponse> createMediatorCache() {
+        // stale responses are kept until the end of the stale period to be served while they are revalidated
+        CacheBuilder<String, CachableResponse> cacheBuilder = CacheBuilder.newBuilder().expireAfterWrite(
+                timeout + staleWhileRevalidate, TimeUnit.SECONDS).removalListener(
+                cacheManager.createRemovalListener(id));
+        if (maxMemory > -1) {
+            // entries are weighed by their payload size when the collector stores the response
+            cacheBuilder = cacheBuilder.maximumWeight(maxMemory).weigher(cacheManager.createWeigher());
+        } else if (inMemoryCacheSize > -1) {
+            cacheBuilder = cacheBuilder.maximumSize(inMemoryCacheSize);
+        }
+        if (offHeapSize > -1) {
+            cacheManager.putStore(id, new OffHeapResponseStore(offHeapSize, offHeapDirectory, id));
+        }
+        return cacheBuilder.build(new CacheLoader<String, CachableResponse>() {
+            @Override
+            public CachableResponse load(String requestHash) throws Exception {
+                CachableResponse response = cacheManager.restore(id, requestHash);
+                if (response != null) {
+                    configure(response);
+                    return response;
+                }
+                return cacheNewResponse(requestHash);
+            }
+        });
+    }
+
+    /**
+     * A request hashed from its raw payload does not need to be built before the cache look up.
+     *
+     * @return whether the message needs to be built before it is mediated
+     */
+    @Override
+    public boolean isContentAware() {
+        return collector || !(digestGenerator instanceof StreamingRequestHashGenerator);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -753,6 +1103,155 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
         this.inMemoryCacheSize = inMemoryCacheSize;
     }
 
+    /**
+     * This method gives the maximum number of payload bytes to be kept in memory.
+     *
+     * @return maximum number of payload bytes to be kept in memory.
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * This method sets the maximum number of payload bytes to be kept in memory.
+     *
+     * @param maxMemory maximum number of payload bytes to be kept in memory.
+     */
+    public void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * This method gives the id the cache, its statistics and its invalidation are keyed by.
+     *
+     * @return id of the cache.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * This method sets the id of the cache configured with the id attribute.
+     *
+     * @param id id of the cache.
+     */
+    public void setId(String id) {
+        this.id = id;
+        this.idConfigured = true;
+    }
+
+    /**
+     * Sets an id derived from the artifact and the position of the mediator, which is not serialized.
+     *
+     * @param id id of the cache.
+     */
+    void setDerivedId(String id) {
+        this.id = id;
+        this.idConfigured = false;
+    }
+
+    /**
+     * @return whether the id of the cache is configured with the id attribute.
+     */
+    boolean isIdConfigured() {
+        return idConfigured;
+    }
+
+    /**
+     * This method gives the number of bytes of the off-heap second tier of the cache.
+     *
+     * @return number of bytes of the off-heap second tier, -1 if the cache does not have a second tier.
+     */
+    public long getOffHeapSize() {
+        return offHeapSize;
+    }
+
+    /**
+     * This method sets the number of bytes of the off-heap second tier of the cache.
+     *
+     * @param offHeapSize number of bytes of the off-heap second tier, -1 if the cache does not have a second tier.
+     *                    A single buffer holds the second tier, hence it can not exceed Integer.MAX_VALUE bytes.
+     */
+    public void setOffHeapSize(long offHeapSize) {
+        if (offHeapSize < -1 || offHeapSize > Integer.MAX_VALUE) {
+            throw new CachingException("The offHeapSize of the cache must be between 0 and " + Integer.MAX_VALUE
+                                               + ", or -1 for no second tier : " + offHeapSize);
+        }
+        this.offHeapSize = offHeapSize;
+    }
+
+    /**
+     * This method gives the directory of the memory mapped file of the second tier.
+     *
+     * @return directory of the memory mapped file, null if a direct buffer is used.
+     */
+    public String getOffHeapDirectory() {
+        return offHeapDirectory;
+    }
+
+    /**
+     * This method sets the directory of the memory mapped file of the second tier.
+     *
+     * @param offHeapDirectory directory of the memory mapped file, null to use a direct buffer.
+     */
+    public void setOffHeapDirectory(String offHeapDirectory) {
+        this.offHeapDirectory = offHeapDirectory;
+    }
+
+    /**
+     * This method returns whether concurrent requests with the same request hash are coalesced.
+     *
+     * @return whether concurrent requests with the same request hash are coalesced.
+     */
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    /**
+     * This method sets whether concurrent requests with the same request hash are coalesced.
+     *
+     * @param coalesceRequests whether concurrent requests with the same request hash are coalesced.
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    /**
+     * This method gives the maximum time a request waits for an in-flight request with the same request hash.
+     *
+     * @return maximum waiting time in seconds.
+     */
+    public long getCoalesceTimeout() {
+        return coalesceTimeout;
+    }
+
+    /**
+     * This method sets the maximum time a request waits for an in-flight request with the same request hash.
+     *
+     * @param coalesceTimeout maximum waiting time in seconds.
+     */
+    public void setCoalesceTimeout(long coalesceTimeout) {
+        this.coalesceTimeout = coalesceTimeout;
+    }
+
+    /**
+     * This method gives the time for which an expired response is served while it is revalidated.
+     *
+     * @return the stale period in seconds.
+     */
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * This method sets the time for which an expired response is served while it is revalidated.
+     *
+     * @param staleWhileRevalidate the stale period in seconds.
+     */
+    public void setStaleWhileRevalidate(long staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
     /**
      * This method gives the HTTP method that needs to be cached.
      *
@@ -858,4 +1357,22 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle,
         this.addAgeHeaderEnabled = addAgeHeaderEnabled;
     }
 
+    /**
+     * This method returns the storage mode used for XML responses.
+     *
+     * @return the storage mode used for XML responses.
+     */
+    public String getResponseStorage() {
+        return responseStorage;
+    }
+
+    /**
+     * This method sets the storage mode used for XML responses.
+     *
+     * @param responseStorage the storage mode used for XML responses.
+     */
+    public void setResponseStorage(String responseStorage) {
+        this.responseStorage = responseStorage;
+    }
+
 }
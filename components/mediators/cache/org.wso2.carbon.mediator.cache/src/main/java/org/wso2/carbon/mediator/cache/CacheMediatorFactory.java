@@ -27,6 +27,7 @@ import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.wso2.carbon.mediator.cache.digest.DigestGenerator;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import javax.xml.namespace.QName;
@@ -51,6 +52,22 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
      */
     private static final QName ATT_MAX_MSG_SIZE = new QName(CachingConstants.MAX_MESSAGE_SIZE_STRING);
 
+    /**
+     * QName of the request coalescing flag.
+     */
+    private static final QName ATT_COALESCE_REQUESTS = new QName(CachingConstants.COALESCE_REQUESTS_STRING);
+
+    /**
+     * QName of the maximum time a coalesced request waits.
+     */
+    private static final QName ATT_COALESCE_TIMEOUT = new QName(CachingConstants.COALESCE_TIMEOUT_STRING);
+
+    /**
+     * QName of the time an expired response is served while it is revalidated.
+     */
+    private static final QName ATT_STALE_WHILE_REVALIDATE =
+            new QName(CachingConstants.STALE_WHILE_REVALIDATE_STRING);
+
     /**
      * QName of the onCacheHit mediator sequence reference.
      */
@@ -111,6 +128,36 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
      */
     private static final QName ATT_SIZE = new QName(CachingConstants.MAX_SIZE_STRING);
 
+    /**
+     * QName of the response storage mode.
+     */
+    private static final QName ATT_STORAGE = new QName(CachingConstants.STORAGE_STRING);
+
+    /**
+     * QName of the maximum memory of the cache.
+     */
+    private static final QName ATT_MAX_MEMORY = new QName(CachingConstants.MAX_MEMORY_STRING);
+
+    /**
+     * QName of the id of the cache.
+     */
+    private static final QName ATT_ID = new QName(CachingConstants.ID_STRING);
+
+    /**
+     * QName of the name of the artifact the cache is defined in.
+     */
+    private static final QName ATT_ARTIFACT_NAME = new QName("name");
+
+    /**
+     * QName of the size of the off-heap second tier.
+     */
+    private static final QName ATT_OFF_HEAP_SIZE = new QName(CachingConstants.OFF_HEAP_SIZE_STRING);
+
+    /**
+     * QName of the directory of the memory mapped file of the second tier.
+     */
+    private static final QName ATT_OFF_HEAP_DIRECTORY = new QName(CachingConstants.OFF_HEAP_DIRECTORY_STRING);
+
     /**
      * QName of the enableCacheControl.
      */
@@ -136,6 +183,16 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
 
         CacheMediator cache = new CacheMediator(cacheManager);
 
+        OMAttribute idAttr = elem.getAttribute(ATT_ID);
+        if (idAttr != null && idAttr.getAttributeValue() != null) {
+            cache.setId(idAttr.getAttributeValue().trim());
+        } else {
+            String derivedId = deriveId(elem);
+            if (derivedId != null) {
+                cache.setDerivedId(derivedId);
+            }
+        }
+
         OMAttribute collectorAttr = elem.getAttribute(ATT_COLLECTOR);
         if (collectorAttr != null && collectorAttr.getAttributeValue() != null) {
             if ("true".equals(collectorAttr.getAttributeValue())) {
@@ -157,6 +214,22 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
                     cache.setMaxMessageSize(-1);
                 }
 
+                OMAttribute coalesceRequestsAttr = elem.getAttribute(ATT_COALESCE_REQUESTS);
+                if (coalesceRequestsAttr != null && coalesceRequestsAttr.getAttributeValue() != null) {
+                    cache.setCoalesceRequests(Boolean.parseBoolean(coalesceRequestsAttr.getAttributeValue().trim()));
+                }
+
+                OMAttribute coalesceTimeoutAttr = elem.getAttribute(ATT_COALESCE_TIMEOUT);
+                if (coalesceTimeoutAttr != null && coalesceTimeoutAttr.getAttributeValue() != null) {
+                    cache.setCoalesceTimeout(Long.parseLong(coalesceTimeoutAttr.getAttributeValue().trim()));
+                }
+
+                OMAttribute staleWhileRevalidateAttr = elem.getAttribute(ATT_STALE_WHILE_REVALIDATE);
+                if (staleWhileRevalidateAttr != null && staleWhileRevalidateAttr.getAttributeValue() != null) {
+                    cache.setStaleWhileRevalidate(
+                            Long.parseLong(staleWhileRevalidateAttr.getAttributeValue().trim()));
+                }
+
                 String className = null;
                 OMElement protocolElem = elem.getFirstChildWithName(PROTOCOL_Q);
                 Map<String, Object> props = new HashMap<>();
@@ -300,6 +373,41 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
                     } else {
                         cache.setInMemoryCacheSize(-1);
                     }
+                    OMAttribute maxMemoryAttr = implElem.getAttribute(ATT_MAX_MEMORY);
+                    if (maxMemoryAttr != null && maxMemoryAttr.getAttributeValue() != null) {
+                        if (cache.getInMemoryCacheSize() > -1) {
+                            handleException("The maxSize and maxMemory of the cache cannot be specified together");
+                        }
+                        cache.setMaxMemory(Long.parseLong(maxMemoryAttr.getAttributeValue().trim()));
+                    } else {
+                        cache.setMaxMemory(-1);
+                    }
+                    OMAttribute offHeapSizeAttr = implElem.getAttribute(ATT_OFF_HEAP_SIZE);
+                    if (offHeapSizeAttr != null && offHeapSizeAttr.getAttributeValue() != null) {
+                        long offHeapSize = Long.parseLong(offHeapSizeAttr.getAttributeValue().trim());
+                        if (offHeapSize < -1 || offHeapSize > Integer.MAX_VALUE) {
+                            handleException("The offHeapSize of the cache must be between 0 and " + Integer.MAX_VALUE
+                                                    + ", or -1 for no second tier");
+                        }
+                        cache.setOffHeapSize(offHeapSize);
+                        OMAttribute offHeapDirectoryAttr = implElem.getAttribute(ATT_OFF_HEAP_DIRECTORY);
+                        if (offHeapDirectoryAttr != null && offHeapDirectoryAttr.getAttributeValue() != null) {
+                            cache.setOffHeapDirectory(offHeapDirectoryAttr.getAttributeValue().trim());
+                        }
+                    } else {
+                        cache.setOffHeapSize(-1);
+                    }
+                    OMAttribute storageAttr = implElem.getAttribute(ATT_STORAGE);
+                    if (storageAttr != null && storageAttr.getAttributeValue() != null) {
+                        String storage = storageAttr.getAttributeValue().trim();
+                        if (!(CachingConstants.ENVELOPE_STORAGE.equals(storage) ||
+                                CachingConstants.SERIALIZED_STORAGE.equals(storage))) {
+                            handleException("Unexpected response storage type: " + storage);
+                        }
+                        cache.setResponseStorage(storage);
+                    } else {
+                        cache.setResponseStorage(CachingConstants.DEFAULT_RESPONSE_STORAGE);
+                    }
                 }
             } else {
                 handleException("The value for collector has to be either true or false");
@@ -316,4 +424,33 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
     public QName getTagQName() {
         return CachingConstants.CACHE_Q;
     }
+
+    /**
+     * Derives the id of the cache from the nearest named artifact it is defined in and the path of the mediator in
+     * it, e.g. proxy:StockQuoteProxy/target[0]/inSequence[0]/cache[2], so that its statistics and invalidation keep
+     * the same key across restarts.
+     *
+     * @param elem the cache mediator configuration
+     * @return the derived id, or null if the mediator is not defined in a named artifact
+     */
+    private static String deriveId(OMElement elem) {
+        StringBuilder path = new StringBuilder();
+        OMElement element = elem;
+        while (element.getParent() instanceof OMElement) {
+            OMElement parent = (OMElement) element.getParent();
+            int position = 0;
+            Iterator<?> siblings = parent.getChildElements();
+            while (siblings.hasNext() && siblings.next() != element) {
+                position++;
+            }
+            path.insert(0, "/" + element.getLocalName() + "[" + position + "]");
+            String name = parent.getAttributeValue(ATT_ARTIFACT_NAME);
+            if (name != null) {
+                return parent.getLocalName() + ":" + name + path;
+            }
+            element = parent;
+        }
+        return null;
+    }
+
 }
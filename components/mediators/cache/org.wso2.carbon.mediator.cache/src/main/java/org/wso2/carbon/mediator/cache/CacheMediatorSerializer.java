@@ -45,6 +45,9 @@ public class CacheMediatorSerializer extends AbstractMediatorSerializer {
         OMElement cacheElem = fac.createOMElement(CachingConstants.CACHE_LOCAL_NAME, synNS);
         saveTracingState(cacheElem, mediator);
 
+        if (cacheMediator.isIdConfigured()) {
+            cacheElem.addAttribute(fac.createOMAttribute(CachingConstants.ID_STRING, nullNS, cacheMediator.getId()));
+        }
         if (cacheMediator.isCollector()) {
             cacheElem.addAttribute(fac.createOMAttribute(CachingConstants.COLLECTOR_STRING, nullNS, "true"));
         } else {
@@ -62,6 +65,22 @@ public class CacheMediatorSerializer extends AbstractMediatorSerializer {
                                               Integer.toString(cacheMediator.getMaxMessageSize())));
             }
 
+            if (cacheMediator.isCoalesceRequests()) {
+                cacheElem.addAttribute(
+                        fac.createOMAttribute(CachingConstants.COALESCE_REQUESTS_STRING, nullNS, "true"));
+                if (cacheMediator.getCoalesceTimeout() != CachingConstants.DEFAULT_COALESCE_TIMEOUT) {
+                    cacheElem.addAttribute(
+                            fac.createOMAttribute(CachingConstants.COALESCE_TIMEOUT_STRING, nullNS,
+                                                  Long.toString(cacheMediator.getCoalesceTimeout())));
+                }
+            }
+
+            if (cacheMediator.getStaleWhileRevalidate() > 0) {
+                cacheElem.addAttribute(
+                        fac.createOMAttribute(CachingConstants.STALE_WHILE_REVALIDATE_STRING, nullNS,
+                                              Long.toString(cacheMediator.getStaleWhileRevalidate())));
+            }
+
             OMElement onCacheHit;
             if (cacheMediator.getOnCacheHitRef() != null) {
                 onCacheHit = fac.createOMElement(CachingConstants.ON_CACHE_HIT_STRING, synNS);
@@ -135,10 +154,32 @@ public class CacheMediatorSerializer extends AbstractMediatorSerializer {
 
             cacheElem.addChild(protocolElem);
 
-            if (cacheMediator.getInMemoryCacheSize() > -1) {
+            boolean serializedStorage =
+                    !CachingConstants.DEFAULT_RESPONSE_STORAGE.equals(cacheMediator.getResponseStorage());
+            if (cacheMediator.getInMemoryCacheSize() > -1 || cacheMediator.getMaxMemory() > -1 ||
+                    cacheMediator.getOffHeapSize() > -1 || serializedStorage) {
                 OMElement implElem = fac.createOMElement(CachingConstants.IMPLEMENTATION_STRING, synNS);
-                implElem.addAttribute(fac.createOMAttribute(CachingConstants.MAX_SIZE_STRING, nullNS,
-                                                            Integer.toString(cacheMediator.getInMemoryCacheSize())));
+                if (cacheMediator.getInMemoryCacheSize() > -1) {
+                    implElem.addAttribute(fac.createOMAttribute(CachingConstants.MAX_SIZE_STRING, nullNS,
+                                                                Integer.toString(
+                                                                        cacheMediator.getInMemoryCacheSize())));
+                }
+                if (cacheMediator.getMaxMemory() > -1) {
+                    implElem.addAttribute(fac.createOMAttribute(CachingConstants.MAX_MEMORY_STRING, nullNS,
+                                                                Long.toString(cacheMediator.getMaxMemory())));
+                }
+                if (cacheMediator.getOffHeapSize() > -1) {
+                    implElem.addAttribute(fac.createOMAttribute(CachingConstants.OFF_HEAP_SIZE_STRING, nullNS,
+                                                                Long.toString(cacheMediator.getOffHeapSize())));
+                    if (cacheMediator.getOffHeapDirectory() != null) {
+                        implElem.addAttribute(fac.createOMAttribute(CachingConstants.OFF_HEAP_DIRECTORY_STRING,
+                                                                    nullNS, cacheMediator.getOffHeapDirectory()));
+                    }
+                }
+                if (serializedStorage) {
+                    implElem.addAttribute(fac.createOMAttribute(CachingConstants.STORAGE_STRING, nullNS,
+                                                                cacheMediator.getResponseStorage()));
+                }
                 cacheElem.addChild(implElem);
             }
         }
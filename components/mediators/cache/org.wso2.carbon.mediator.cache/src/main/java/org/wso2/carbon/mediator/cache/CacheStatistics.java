@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.mediator.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the hit, miss and eviction counts together with the number of bytes held by a single mediator cache.
+ */
+public class CacheStatistics {
+
+    /**
+     * Number of requests which were served from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Number of requests which were not served from the cache.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Number of cached responses which were evicted due to expiry or the size limits.
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Number of payload bytes currently held in the cache.
+     */
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictionCount.incrementAndGet();
+    }
+
+    void addCachedBytes(long bytes) {
+        cachedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @return number of requests which were served from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of requests which were not served from the cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of cached responses which were evicted due to expiry or the size limits.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return number of payload bytes currently held in the cache.
+     */
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+}
@@ -72,6 +72,11 @@ public class CachingConstants {
      */
     public static final String CACHED_OBJECT = "CachableResponse";
 
+    /**
+     * String key to store the cache entry a request was looked up against in the message context.
+     */
+    public static final String CACHED_ENTRY = "CachedEntry";
+
     /**
      * The the header that would be used to return the hashed value to invalidate this value.
      */
@@ -92,12 +97,43 @@ public class CachingConstants {
      */
     public static final boolean DEFAULT_ADD_AGE_HEADER = false;
 
+    /**
+     * The synapse property which specifies the maximum number of payload bytes held by all the mediator caches.
+     */
+    public static final String MAX_TOTAL_MEMORY_PROPERTY = "synapse.mediator.cache.max.memory";
+
+    /**
+     * Response storage mode which keeps XML responses as cloned {@link org.apache.axiom.soap.SOAPEnvelope} trees.
+     */
+    public static final String ENVELOPE_STORAGE = "envelope";
+
+    /**
+     * Response storage mode which keeps XML responses as serialized bytes and builds them lazily on a cache hit.
+     */
+    public static final String SERIALIZED_STORAGE = "serialized";
+
+    /**
+     * The default response storage mode.
+     */
+    public static final String DEFAULT_RESPONSE_STORAGE = ENVELOPE_STORAGE;
+
+    /**
+     * String key to store the id of the backend fetch a request owns in the message context.
+     */
+    public static final String FETCH_ID = "CacheFetchId";
+
+    /**
+     * The default maximum time in seconds a coalesced request waits for the in-flight request.
+     */
+    public static final long DEFAULT_COALESCE_TIMEOUT = 30;
+
     /**
      * Following names represent the local names used in QNames in MediatorFactory, Serializer and the UI
      * CacheMediator.
      */
     public static final String TIMEOUT_STRING = "timeout";
     public static final String COLLECTOR_STRING = "collector";
+    public static final String ID_STRING = "id";
     public static final String MAX_MESSAGE_SIZE_STRING = "maxMessageSize";
     public static final String ON_CACHE_HIT_STRING = "onCacheHit";
     public static final String SEQUENCE_STRING = "sequence";
@@ -109,6 +145,13 @@ public class CachingConstants {
     public static final String HASH_GENERATOR_STRING = "hashGenerator";
     public static final String IMPLEMENTATION_STRING = "implementation";
     public static final String MAX_SIZE_STRING = "maxSize";
+    public static final String STORAGE_STRING = "storage";
+    public static final String MAX_MEMORY_STRING = "maxMemory";
+    public static final String OFF_HEAP_SIZE_STRING = "offHeapSize";
+    public static final String OFF_HEAP_DIRECTORY_STRING = "offHeapDirectory";
+    public static final String COALESCE_REQUESTS_STRING = "coalesceRequests";
+    public static final String COALESCE_TIMEOUT_STRING = "coalesceTimeout";
+    public static final String STALE_WHILE_REVALIDATE_STRING = "staleWhileRevalidate";
     public static final String ENABLE_CACHE_CONTROL_STRING = "enableCacheControl";
     public static final String INCLUDE_AGE_HEADER_STRING = "includeAgeHeader";
     public static final String IF_NONE_MATCH = "IF-None-Match";
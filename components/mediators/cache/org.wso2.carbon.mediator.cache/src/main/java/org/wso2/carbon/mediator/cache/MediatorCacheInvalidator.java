@@ -78,6 +78,51 @@ public class MediatorCacheInvalidator implements MediatorCacheInvalidatorMBean {
         log.info("Total mediator cache has been invalidated.");
     }
 
+    @Override
+    public String[] getCacheIds() {
+        return cacheManager.getCacheIds().toArray(new String[0]);
+    }
+
+    @Override
+    public long getTotalCachedBytes() {
+        return cacheManager.getTotalCachedBytes();
+    }
+
+    @Override
+    public long getMaxTotalMemory() {
+        return cacheManager.getMaxTotalMemory();
+    }
+
+    @Override
+    public long getHitCount(String cacheId) {
+        CacheStatistics statistics = cacheManager.lookupStatistics(cacheId);
+        return statistics != null ? statistics.getHitCount() : 0;
+    }
+
+    @Override
+    public long getMissCount(String cacheId) {
+        CacheStatistics statistics = cacheManager.lookupStatistics(cacheId);
+        return statistics != null ? statistics.getMissCount() : 0;
+    }
+
+    @Override
+    public long getEvictionCount(String cacheId) {
+        CacheStatistics statistics = cacheManager.lookupStatistics(cacheId);
+        return statistics != null ? statistics.getEvictionCount() : 0;
+    }
+
+    @Override
+    public long getCachedBytes(String cacheId) {
+        CacheStatistics statistics = cacheManager.lookupStatistics(cacheId);
+        return statistics != null ? statistics.getCachedBytes() : 0;
+    }
+
+    @Override
+    public long getOffHeapBytes(String cacheId) {
+        OffHeapResponseStore store = cacheManager.getStore(cacheId);
+        return store != null ? store.getStoredBytes() : 0;
+    }
+
     /**
      * This method gives the tenant domain.
      *
@@ -24,4 +24,49 @@ public interface MediatorCacheInvalidatorMBean {
      * This abstract method should be implemented to invalidate the whole mediator Cache.
      */
     void invalidateTheWholeCache();
+
+    /**
+     * @return the ids of the mediator caches.
+     */
+    String[] getCacheIds();
+
+    /**
+     * @return number of payload bytes held by all the mediator caches.
+     */
+    long getTotalCachedBytes();
+
+    /**
+     * @return the maximum number of payload bytes that can be held by all the mediator caches, -1 if unbounded.
+     */
+    long getMaxTotalMemory();
+
+    /**
+     * @param cacheId the id of the mediator cache.
+     * @return number of requests which were served from the mediator cache.
+     */
+    long getHitCount(String cacheId);
+
+    /**
+     * @param cacheId the id of the mediator cache.
+     * @return number of requests which were not served from the mediator cache.
+     */
+    long getMissCount(String cacheId);
+
+    /**
+     * @param cacheId the id of the mediator cache.
+     * @return number of cached responses which were evicted from the mediator cache.
+     */
+    long getEvictionCount(String cacheId);
+
+    /**
+     * @param cacheId the id of the mediator cache.
+     * @return number of payload bytes held by the mediator cache.
+     */
+    long getCachedBytes(String cacheId);
+
+    /**
+     * @param cacheId the id of the mediator cache.
+     * @return number of bytes held by the off-heap second tier of the mediator cache.
+     */
+    long getOffHeapBytes(String cacheId);
 }
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.mediator.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * The second tier of a mediator cache which holds the responses evicted from the heap cache due to its size bounds.
+ * The responses are kept serialized, together with their headers, in a direct buffer or in a memory mapped file,
+ * hence they do not add to the Java heap apart from a small index entry per response.
+ * <p>
+ * Responses are appended to the buffer. When there is no room left at the end of the buffer the expired responses
+ * and, if needed, the oldest responses are dropped and the remaining responses are compacted to the start of it.
+ * <p>
+ * The buffer is released when the store is closed, after which the store does not hold any responses.
+ */
+public class OffHeapResponseStore {
+
+    /**
+     * Log object to use when logging is required in this class.
+     */
+    private static final Log log = LogFactory.getLog(OffHeapResponseStore.class);
+
+    /**
+     * The buffer which holds the serialized responses, null once the store is closed.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The file backing the buffer, null if the buffer is a direct buffer.
+     */
+    private final File file;
+
+    /**
+     * Maps the request hash with the location of the response in the buffer, in the order of their offsets.
+     */
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+
+    /**
+     * The offset in the buffer at which the next response will be written.
+     */
+    private int writePosition;
+
+    /**
+     * Number of bytes held by the responses in the buffer.
+     */
+    private long storedBytes;
+
+    /**
+     * @param capacity  the number of bytes that can be held by the store, at most Integer.MAX_VALUE
+     * @param directory the directory in which the memory mapped file is created, or null to use a direct buffer
+     * @param name      the name of the store, used as the name of the memory mapped file
+     */
+    public OffHeapResponseStore(long capacity, String directory, String name) {
+        if (capacity < 0 || capacity > Integer.MAX_VALUE) {
+            throw new CachingException("The capacity of the off-heap cache store must be between 0 and "
+                                               + Integer.MAX_VALUE + " : " + capacity);
+        }
+        if (directory != null) {
+            file = new File(directory, name + ".cache");
+            file.deleteOnExit();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                // the mapping remains valid after the channel is closed
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException e) {
+                throw new CachingException("Unable to map the cache file : " + file.getAbsolutePath(), e);
+            }
+        } else {
+            file = null;
+            buffer = ByteBuffer.allocateDirect((int) capacity);
+        }
+    }
+
+    /**
+     * Writes the given response in to the store. Responses which have already expired, or which do not fit in to the
+     * store, are ignored.
+     *
+     * @param response the response to be stored
+     * @return whether the response was stored
+     */
+    public synchronized boolean put(CachableResponse response) {
+        if (buffer == null || response.getExpireTimeMillis() <= System.currentTimeMillis()) {
+            return false;
+        }
+        byte[] data;
+        try {
+            data = encode(response);
+        } catch (IOException | XMLStreamException e) {
+            log.warn("Unable to serialize the response with request hash : " + response.getRequestHash(), e);
+            return false;
+        }
+        remove(response.getRequestHash());
+        if (!reserve(data.length)) {
+            return false;
+        }
+        write(writePosition, data);
+        index.put(response.getRequestHash(), new Entry(writePosition, data.length, response.getExpireTimeMillis()));
+        writePosition += data.length;
+        storedBytes += data.length;
+        return true;
+    }
+
+    /**
+     * Removes the response of the given request hash from the store and returns it.
+     *
+     * @param requestHash the hash of the request
+     * @return the response or null if there is no response which has not expired
+     */
+    public synchronized CachableResponse take(String requestHash) {
+        Entry entry = index.remove(requestHash);
+        if (entry == null) {
+            return null;
+        }
+        storedBytes -= entry.length;
+        if (entry.expireTimeMillis <= System.currentTimeMillis()) {
+            return null;
+        }
+        try {
+            CachableResponse response = decode(read(entry.offset, entry.length));
+            response.setRequestHash(requestHash);
+            response.setExpireTimeMillis(entry.expireTimeMillis);
+            return response;
+        } catch (IOException e) {
+            log.warn("Unable to read the response with request hash : " + requestHash, e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes the response of the given request hash from the store.
+     *
+     * @param requestHash the hash of the request
+     */
+    public synchronized void remove(String requestHash) {
+        Entry entry = index.remove(requestHash);
+        if (entry != null) {
+            storedBytes -= entry.length;
+        }
+    }
+
+    /**
+     * Removes all the responses from the store.
+     */
+    public synchronized void clear() {
+        index.clear();
+        writePosition = 0;
+        storedBytes = 0;
+    }
+
+    /**
+     * Removes all the responses, releases the buffer and deletes the memory mapped file if there is one. The buffer
+     * is unmapped or freed right away where the JVM allows it, otherwise it is released once it is garbage collected.
+     */
+    public synchronized void close() {
+        clear();
+        if (buffer == null) {
+            return;
+        }
+        release(buffer);
+        buffer = null;
+        if (file != null && !file.delete() && log.isDebugEnabled()) {
+            log.debug("Unable to delete the cache file : " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return number of bytes held by the responses in the store
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * @return number of responses in the store
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Makes room for the given number of bytes at the end of the buffer, by dropping the expired responses and then
+     * the oldest responses, and compacting the remaining ones.
+     *
+     * @param length the number of bytes to be written
+     * @return false if the length is larger than the capacity of the store
+     */
+    private boolean reserve(int length) {
+        int capacity = buffer.capacity();
+        if (length > capacity) {
+            return false;
+        }
+        if (capacity - writePosition >= length) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Entry> entries = index.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.expireTimeMillis <= now) {
+                entries.remove();
+                storedBytes -= entry.length;
+            }
+        }
+        entries = index.values().iterator();
+        while (storedBytes + length > capacity && entries.hasNext()) {
+            storedBytes -= entries.next().length;
+            entries.remove();
+        }
+        compact();
+        return true;
+    }
+
+    /**
+     * Moves the responses to the start of the buffer, preserving their order. Since the responses are iterated in the
+     * order of their offsets a response is never moved over one which has not been moved yet.
+     */
+    private void compact() {
+        int position = 0;
+        for (Entry entry : index.values()) {
+            if (entry.offset != position) {
+                write(position, read(entry.offset, entry.length));
+                entry.offset = position;
+            }
+            position += entry.length;
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Runs the cleaner of a direct or mapped buffer, through sun.misc.Unsafe on Java 9 and later and through the
+     * cleaner of the buffer before that. The buffer must not be accessed afterwards.
+     */
+    private static void release(ByteBuffer directBuffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), directBuffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            // Java 8 or earlier
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to release the buffer of the cache store, it is released once garbage collected", e);
+            }
+            return;
+        }
+        try {
+            Method cleanerMethod = directBuffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(directBuffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to release the buffer of the cache store, it is released once garbage collected", e);
+            }
+        }
+    }
+
+    private byte[] read(int offset, int length) {
+        byte[] data = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(data);
+        return data;
+    }
+
+    private void write(int offset, byte[] data) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(data);
+    }
+
+    /**
+     * Serializes the payload and the header properties of the response. Responses kept as SOAPEnvelopes are
+     * serialized, and are restored in the serialized response storage.
+     */
+    private static byte[] encode(CachableResponse response) throws IOException, XMLStreamException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutput = new DataOutputStream(outputStream);
+        dataOutput.writeBoolean(response.isJson());
+        writeNullable(dataOutput, response.getStatusCode());
+        writeNullable(dataOutput, response.getStatusReason() != null ? response.getStatusReason().toString() : null);
+        dataOutput.writeLong(response.getResponseFetchedTime());
+        Map<String, Object> headerProperties = response.getHeaderProperties();
+        if (headerProperties != null) {
+            dataOutput.writeInt(headerProperties.size());
+            for (Map.Entry<String, Object> header : headerProperties.entrySet()) {
+                dataOutput.writeUTF(header.getKey());
+                writeNullable(dataOutput, header.getValue() != null ? header.getValue().toString() : null);
+            }
+        } else {
+            dataOutput.writeInt(-1);
+        }
+        byte[] payload = response.getResponsePayload();
+        if (payload == null && response.getResponseEnvelope() != null) {
+            ByteArrayOutputStream envelopeStream = new ByteArrayOutputStream();
+            response.getResponseEnvelope().serialize(envelopeStream);
+            payload = envelopeStream.toByteArray();
+        }
+        if (payload == null) {
+            payload = new byte[0];
+        }
+        dataOutput.writeInt(payload.length);
+        dataOutput.write(payload);
+        dataOutput.flush();
+        return outputStream.toByteArray();
+    }
+
+    private static CachableResponse decode(byte[] data) throws IOException {
+        DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(data));
+        CachableResponse response = new CachableResponse();
+        response.setJson(dataInput.readBoolean());
+        response.setStatusCode(readNullable(dataInput));
+        response.setStatusReason(readNullable(dataInput));
+        response.setResponseFetchedTime(dataInput.readLong());
+        int headerCount = dataInput.readInt();
+        if (headerCount > -1) {
+            ConcurrentHashMap<String, Object> headerProperties = new ConcurrentHashMap<>();
+            for (int i = 0; i < headerCount; i++) {
+                String name = dataInput.readUTF();
+                String value = readNullable(dataInput);
+                if (value != null) {
+                    headerProperties.put(name, value);
+                }
+            }
+            response.setHeaderProperties(headerProperties);
+        }
+        byte[] payload = new byte[dataInput.readInt()];
+        dataInput.readFully(payload);
+        response.setResponsePayload(payload);
+        response.setResponseSize(payload.length);
+        return response;
+    }
+
+    private static void writeNullable(DataOutputStream dataOutput, String value) throws IOException {
+        dataOutput.writeBoolean(value != null);
+        if (value != null) {
+            dataOutput.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream dataInput) throws IOException {
+        return dataInput.readBoolean() ? dataInput.readUTF() : null;
+    }
+
+    /**
+     * The location and the expiry time of a response in the buffer.
+     */
+    private static final class Entry {
+
+        private int offset;
+        private final int length;
+        private final long expireTimeMillis;
+
+        private Entry(int offset, int length, long expireTimeMillis) {
+            this.offset = offset;
+            this.length = length;
+            this.expireTimeMillis = expireTimeMillis;
+        }
+    }
+}
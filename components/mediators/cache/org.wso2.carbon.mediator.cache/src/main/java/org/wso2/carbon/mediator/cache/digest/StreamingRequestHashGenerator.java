@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.mediator.cache.digest;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.axiom.soap.SOAPBody;
+import org.apache.axis2.Constants;
+import org.apache.axis2.context.MessageContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
+import org.apache.synapse.transport.passthru.Pipe;
+import org.wso2.carbon.mediator.cache.CachingException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * The {@link DigestGenerator} for the HTTP protocol type which hashes the raw request payload instead of the built
+ * message. The payload is read from the pass through pipe, or from the buffered input stream if the message has
+ * already been read, and is hashed together with the HTTP method, the To address and the transport headers using the
+ * 128 bit murmur3 hash. Hence the message does not need to be built to look up the cache.
+ * <p>
+ * The payload read from the pipe is written back to it, so a message which is not built afterwards is still passed
+ * through as it is. The transport headers of the message are never modified.
+ */
+public class StreamingRequestHashGenerator implements DigestGenerator {
+
+    static final long serialVersionUID = 42L;
+
+    /**
+     * Log object to use when logging is required in this class.
+     */
+    private static final Log log = LogFactory.getLog(StreamingRequestHashGenerator.class);
+
+    /**
+     * The hash function used to generate the digest.
+     */
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * This value can be specified for the headersToExcludeInHash property to avoid all the headers when caching.
+     */
+    private static final String EXCLUDE_ALL_VAL = "*";
+
+    /**
+     * Separator written between the parts of the request so that they cannot run in to each other.
+     */
+    private static final int SEPARATOR = 0;
+
+    /**
+     * Size of the buffer used to read the raw payload.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Upper bound of the buffer allocated up front from the Content-Length of a request.
+     */
+    private static final int MAX_INITIAL_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Lower cased names of the headers which are not considered when hashing.
+     */
+    private Set<String> headersToExclude = new HashSet<>();
+
+    /**
+     * Whether all the headers are excluded when hashing.
+     */
+    private boolean excludeAllHeaders = false;
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getDigest(MessageContext msgContext) throws CachingException {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        String method = (String) msgContext.getProperty(Constants.Configuration.HTTP_METHOD);
+        if (method != null) {
+            hasher.putString(method, Charsets.UTF_8);
+        }
+        hasher.putByte((byte) SEPARATOR);
+        if (msgContext.getTo() != null) {
+            hasher.putString(msgContext.getTo().getAddress(), Charsets.UTF_8);
+        }
+        hasher.putByte((byte) SEPARATOR);
+        if (!excludeAllHeaders) {
+            putHeaders(hasher, (Map<String, String>) msgContext.getProperty(MessageContext.TRANSPORT_HEADERS));
+        }
+        hasher.putByte((byte) SEPARATOR);
+        boolean isGet = msgContext.isDoingREST() && (PassThroughConstants.HTTP_GET.equals(method) ||
+                PassThroughConstants.HTTP_DELETE.equals(method) ||
+                PassThroughConstants.HTTP_HEAD.equals(method));
+        //If the HTTP method is GET do not hash the payload. Hash only url and headers.
+        if (!isGet && !Boolean.TRUE.equals(msgContext.getProperty(PassThroughConstants.NO_ENTITY_BODY))) {
+            try {
+                putPayload(hasher, msgContext);
+            } catch (IOException e) {
+                handleException("Error in reading the request payload to generate the digest", e);
+            } catch (XMLStreamException e) {
+                handleException("Error in serializing the request payload to generate the digest", e);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Adds the transport headers, except the excluded ones, to the hash in the order of their names.
+     *
+     * @param hasher           the hasher of the request
+     * @param transportHeaders the transport headers of the request
+     */
+    private void putHeaders(Hasher hasher, Map<String, String> transportHeaders) {
+        if (transportHeaders == null) {
+            return;
+        }
+        SortedMap<String, String> sortedHeaders;
+        if (transportHeaders instanceof SortedMap) {
+            sortedHeaders = (SortedMap<String, String>) transportHeaders;
+        } else {
+            sortedHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            sortedHeaders.putAll(transportHeaders);
+        }
+        for (Map.Entry<String, String> header : sortedHeaders.entrySet()) {
+            String name = header.getKey();
+            if (name.equalsIgnoreCase("Date") || name.equalsIgnoreCase("User-Agent") ||
+                    headersToExclude.contains(name.toLowerCase(Locale.ENGLISH))) {
+                continue;
+            }
+            hasher.putString(name, Charsets.UTF_8);
+            hasher.putByte((byte) SEPARATOR);
+            if (header.getValue() != null) {
+                hasher.putString(header.getValue(), Charsets.UTF_8);
+            }
+            hasher.putByte((byte) SEPARATOR);
+        }
+    }
+
+    /**
+     * Adds the raw request payload to the hash. If the message has been built and its raw payload is no longer
+     * available, the body of the envelope is serialized in to the hash instead.
+     *
+     * @param hasher     the hasher of the request
+     * @param msgContext the request message
+     */
+    private void putPayload(Hasher hasher, MessageContext msgContext) throws IOException, XMLStreamException {
+        boolean messageBuilt = Boolean.TRUE.equals(
+                msgContext.getProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED));
+        BufferedInputStream bufferedInputStream =
+                (BufferedInputStream) msgContext.getProperty(PassThroughConstants.BUFFERED_INPUT_STREAM);
+        Pipe pipe = (Pipe) msgContext.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
+        if (bufferedInputStream != null) {
+            // the payload is already held by the buffered stream, hash it in place and rewind it again
+            bufferedInputStream.reset();
+            putBytes(hasher, bufferedInputStream, null);
+            bufferedInputStream.reset();
+        } else if (pipe != null && !messageBuilt) {
+            PayloadBuffer payload = readPayload(hasher, pipe.getInputStream(), getContentLength(msgContext));
+            // keep the payload available to be built, or passed through if the message is not built
+            msgContext.setProperty(PassThroughConstants.BUFFERED_INPUT_STREAM, payload.toInputStream());
+            payload.writeTo(pipe.resetOutputStream());
+            pipe.setRawSerializationComplete(true);
+        } else {
+            SOAPBody body = msgContext.getEnvelope() != null ? msgContext.getEnvelope().getBody() : null;
+            if (body != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Raw payload is not available, hashing the serialized body of message : " +
+                                      msgContext.getMessageID());
+                }
+                body.serialize(Funnels.asOutputStream(hasher));
+            }
+        }
+    }
+
+    /**
+     * Reads the raw payload of the request in to a buffer, adding it to the hash as it is read.
+     *
+     * @param hasher   the hasher of the request
+     * @param in       the stream of the raw payload
+     * @param sizeHint the expected size of the payload, -1 if it is not known
+     * @return the buffer holding the payload
+     */
+    PayloadBuffer readPayload(Hasher hasher, InputStream in, int sizeHint) throws IOException {
+        PayloadBuffer payload = new PayloadBuffer(
+                sizeHint > 0 ? Math.min(sizeHint, MAX_INITIAL_BUFFER_SIZE) : BUFFER_SIZE);
+        putBytes(hasher, in, payload);
+        return payload;
+    }
+
+    private void putBytes(Hasher hasher, InputStream in, OutputStream copy) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            hasher.putBytes(buffer, 0, length);
+            if (copy != null) {
+                copy.write(buffer, 0, length);
+            }
+        }
+    }
+
+    private int getContentLength(MessageContext msgContext) {
+        Map<String, String> transportHeaders =
+                (Map<String, String>) msgContext.getProperty(MessageContext.TRANSPORT_HEADERS);
+        String contentLength = transportHeaders != null ? transportHeaders.get(HTTP.CONTENT_LEN) : null;
+        if (contentLength != null) {
+            try {
+                return Integer.parseInt(contentLength.trim());
+            } catch (NumberFormatException ignored) {
+                // the buffer is grown as the payload is read
+            }
+        }
+        return -1;
+    }
+
+    private void handleException(String message, Throwable cause) throws CachingException {
+        log.debug(message, cause);
+        throw new CachingException(message, cause);
+    }
+
+    @Override
+    public void init(Map<String, Object> properties) {
+        String[] headers = (String[]) properties.get("headers-to-exclude");
+        headersToExclude = new HashSet<>();
+        excludeAllHeaders = false;
+        if (headers != null) {
+            for (String header : headers) {
+                if (EXCLUDE_ALL_VAL.equals(header)) {
+                    excludeAllHeaders = true;
+                } else if (!header.isEmpty()) {
+                    headersToExclude.add(header.toLowerCase(Locale.ENGLISH));
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffer of a raw payload which is read back and written to the pipe without copying the buffered bytes.
+     */
+    static class PayloadBuffer extends ByteArrayOutputStream {
+
+        PayloadBuffer(int size) {
+            super(size);
+        }
+
+        /**
+         * @return a marked stream over the buffered payload, which can be reset to be read again
+         */
+        BufferedInputStream toInputStream() {
+            BufferedInputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(buf, 0, count));
+            inputStream.mark(count + 1);
+            return inputStream;
+        }
+    }
+}
@@ -17,12 +17,17 @@
 
 package org.wso2.carbon.mediator.cache;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.net.HttpHeaders;
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.util.UUIDGenerator;
 import org.apache.axiom.util.UIDGenerator;
 import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.OperationContext;
 import org.apache.axis2.context.ServiceContext;
@@ -33,19 +38,29 @@ import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.custommonkey.xmlunit.XMLTestCase;
 import org.custommonkey.xmlunit.XMLUnit;
+import org.wso2.carbon.mediator.cache.digest.StreamingRequestHashGenerator;
 import org.wso2.carbon.mediator.cache.util.HttpCachingFilter;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Test the functionality of the {@link CacheMediatorFactory} and the {@link CacheMediatorSerializer}
@@ -72,6 +87,22 @@ public class CacheMediatorTest extends XMLTestCase {
                     "            </protocol>\n" +
                     "            <implementation maxSize=\"20\"/>\n" +
                     "         </cache>";
+    private static final String serializedStorageMediatorXml =
+            "<cache xmlns=\"http://ws.apache.org/ns/synapse\" collector=\"false\" timeout=\"60\" " +
+                    "maxMessageSize=\"1000\">\n" +
+                    "            <protocol type=\"HTTP\">\n" +
+                    "               <methods>GET</methods>\n" +
+                    "            </protocol>\n" +
+                    "            <implementation maxSize=\"20\" storage=\"serialized\"/>\n" +
+                    "         </cache>";
+    private static final String coalescingMediatorXml =
+            "<cache xmlns=\"http://ws.apache.org/ns/synapse\" collector=\"false\" timeout=\"60\" " +
+                    "maxMessageSize=\"1000\" coalesceRequests=\"true\" staleWhileRevalidate=\"30\">\n" +
+                    "            <protocol type=\"HTTP\">\n" +
+                    "               <methods>GET</methods>\n" +
+                    "            </protocol>\n" +
+                    "            <implementation maxSize=\"20\"/>\n" +
+                    "         </cache>";
     public static final String CACHE_CONTROL_HEADER = "no-cache, no-store, max-age=80";
     private ConfigurationContext configContext;
     private SynapseConfiguration synapseConfig;
@@ -119,6 +150,75 @@ public class CacheMediatorTest extends XMLTestCase {
         }
     }
 
+    /**
+     * Test case for the storage attribute of the implementation element.
+     */
+    public void testSerializedStorage() {
+        CacheMediatorFactory factory = new CacheMediatorFactory();
+        CacheMediator mediator = (CacheMediator) factory.createSpecificMediator(
+                SynapseConfigUtils.stringToOM(mediatorXml), new Properties());
+        assertEquals("Incorrect default value for the storage", mediator.getResponseStorage(),
+                CachingConstants.ENVELOPE_STORAGE);
+
+        mediator = (CacheMediator) factory.createSpecificMediator(
+                SynapseConfigUtils.stringToOM(serializedStorageMediatorXml), new Properties());
+        assertEquals("Incorrect value for the storage", mediator.getResponseStorage(),
+                CachingConstants.SERIALIZED_STORAGE);
+
+        OMElement serializedMediatorElement = new CacheMediatorSerializer().serializeSpecificMediator(mediator);
+        assertTrue("storage is not serialized",
+                serializedMediatorElement.toString().contains("storage=\"serialized\""));
+    }
+
+    /**
+     * Test case for the coalesceRequests and staleWhileRevalidate attributes.
+     */
+    public void testCoalescingAttributes() {
+        CacheMediatorFactory factory = new CacheMediatorFactory();
+        CacheMediator mediator = (CacheMediator) factory.createSpecificMediator(
+                SynapseConfigUtils.stringToOM(mediatorXml), new Properties());
+        assertFalse("Incorrect default value for the coalesceRequests", mediator.isCoalesceRequests());
+        assertEquals("Incorrect default value for the staleWhileRevalidate", mediator.getStaleWhileRevalidate(), 0);
+
+        mediator = (CacheMediator) factory.createSpecificMediator(
+                SynapseConfigUtils.stringToOM(coalescingMediatorXml), new Properties());
+        assertTrue("Incorrect value for the coalesceRequests", mediator.isCoalesceRequests());
+        assertEquals("Incorrect value for the coalesceTimeout", mediator.getCoalesceTimeout(),
+                CachingConstants.DEFAULT_COALESCE_TIMEOUT);
+        assertEquals("Incorrect value for the staleWhileRevalidate", mediator.getStaleWhileRevalidate(), 30);
+
+        String serializedMediator = new CacheMediatorSerializer().serializeSpecificMediator(mediator).toString();
+        assertTrue("coalesceRequests is not serialized", serializedMediator.contains("coalesceRequests=\"true\""));
+        assertTrue("staleWhileRevalidate is not serialized",
+                serializedMediator.contains("staleWhileRevalidate=\"30\""));
+    }
+
+    /**
+     * Test case for the id of the cache, configured with the id attribute or derived from the position of the
+     * mediator in its artifact.
+     */
+    public void testCacheId() {
+        CacheMediatorFactory factory = new CacheMediatorFactory();
+        OMElement proxyElement = SynapseConfigUtils.stringToOM(
+                "<proxy xmlns=\"http://ws.apache.org/ns/synapse\" name=\"StockQuoteProxy\"><target><inSequence>" +
+                        "<log/>" + mediatorXml + "</inSequence></target></proxy>");
+        OMElement cacheElement = (OMElement) proxyElement.getFirstElement().getFirstElement().getChildrenWithName(
+                CachingConstants.CACHE_Q).next();
+        CacheMediator mediator = (CacheMediator) factory.createSpecificMediator(cacheElement, new Properties());
+        assertEquals("proxy:StockQuoteProxy/target[0]/inSequence[0]/cache[1]", mediator.getId());
+        assertEquals("Cache id changes across deployments.", mediator.getId(),
+                ((CacheMediator) factory.createSpecificMediator(cacheElement, new Properties())).getId());
+        assertFalse("Derived id is serialized.",
+                new CacheMediatorSerializer().serializeSpecificMediator(mediator).toString().contains(" id="));
+
+        mediator = (CacheMediator) factory.createSpecificMediator(
+                SynapseConfigUtils.stringToOM(mediatorXml.replace("<cache ", "<cache id=\"orders\" ")),
+                new Properties());
+        assertEquals("orders", mediator.getId());
+        assertTrue("Configured id is not serialized.",
+                new CacheMediatorSerializer().serializeSpecificMediator(mediator).toString().contains("id=\"orders\""));
+    }
+
     /**
      * Test case for isValidCacheEntry() with no-store header.
      *
@@ -219,6 +319,297 @@ public class CacheMediatorTest extends XMLTestCase {
         assertEquals(dateFormat.format(cachedResponse.getResponseFetchedTime()), responseOriginatedTime);
     }
 
+    /**
+     * Test case for the global memory ceiling and the byte accounting of the CacheManager.
+     *
+     * @throws Exception on exception while loading the cache entries
+     */
+    public void testCacheManagerMemoryCeiling() throws Exception {
+        final String cacheId = "testCache";
+        CacheManager cacheManager = new CacheManager(100);
+        LoadingCache<String, CachableResponse> cache = createCache(cacheManager, cacheId);
+
+        CachableResponse first = createResponse(cacheId, "first", 60);
+        assertTrue("Response within the memory ceiling is not stored.",
+                cacheManager.store(cache.get("first"), first));
+        assertSame(first, cache.getIfPresent("first"));
+        CachableResponse second = createResponse(cacheId, "second", 60);
+        assertFalse("Response exceeding the memory ceiling is stored.",
+                cacheManager.store(cache.get("second"), second));
+        assertEquals(60, cacheManager.getTotalCachedBytes());
+        assertEquals(60, cacheManager.lookupStatistics(cacheId).getCachedBytes());
+
+        cache.invalidate("first");
+        assertEquals(0, cacheManager.getTotalCachedBytes());
+        assertTrue("Response within the memory ceiling is not stored.",
+                cacheManager.store(cache.get("second"), second));
+        assertEquals(60, cacheManager.getTotalCachedBytes());
+    }
+
+    /**
+     * Test case for a revalidated response replacing a stale cache entry, which is left unchanged since it may still
+     * be served.
+     *
+     * @throws Exception on exception while loading the cache entries
+     */
+    public void testRevalidatedResponseReplacesEntry() throws Exception {
+        final String cacheId = "testCache";
+        CacheManager cacheManager = new CacheManager(100);
+        LoadingCache<String, CachableResponse> cache = createCache(cacheManager, cacheId);
+
+        CachableResponse stale = createResponse(cacheId, "hash", 60);
+        assertTrue(cacheManager.store(cache.get("hash"), stale));
+        stale.setExpireTimeMillis(System.currentTimeMillis() - 1000);
+
+        // the new response only needs to fit once the stale entry is released
+        CachableResponse revalidated = createResponse(cacheId, "hash", 80);
+        assertTrue("Revalidated response is not stored.", cacheManager.store(stale, revalidated));
+        assertSame(revalidated, cache.getIfPresent("hash"));
+        assertFalse(revalidated.isExpired());
+        assertEquals("Replaced entry is changed.", 60, stale.getResponsePayload().length);
+        assertEquals(80, cacheManager.getTotalCachedBytes());
+        assertEquals("Replacing an entry is recorded as an eviction.", 0,
+                cacheManager.lookupStatistics(cacheId).getEvictionCount());
+
+        assertFalse("An entry is replaced twice.",
+                cacheManager.store(stale, createResponse(cacheId, "hash", 10)));
+        assertSame(revalidated, cache.getIfPresent("hash"));
+        assertEquals(80, cacheManager.getTotalCachedBytes());
+    }
+
+    /**
+     * Test case for concurrent responses which together exceed the global memory ceiling.
+     *
+     * @throws Exception on interruption while waiting for the responses
+     */
+    public void testConcurrentMemoryCeiling() throws Exception {
+        final String cacheId = "testCache";
+        final CacheManager cacheManager = new CacheManager(1000);
+        final LoadingCache<String, CachableResponse> cache = createCache(cacheManager, cacheId);
+        final AtomicInteger stored = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final String requestHash = "hash" + i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        if (cacheManager.store(cache.get(requestHash), createResponse(cacheId, requestHash, 100))) {
+                            stored.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // counted as not stored
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals("Responses beyond the memory ceiling are stored.", 10, stored.get());
+        assertEquals(1000, cacheManager.getTotalCachedBytes());
+        assertEquals(1000, cacheManager.lookupStatistics(cacheId).getCachedBytes());
+    }
+
+    private LoadingCache<String, CachableResponse> createCache(CacheManager cacheManager, final String cacheId) {
+        LoadingCache<String, CachableResponse> cache = CacheBuilder.newBuilder()
+                .removalListener(cacheManager.createRemovalListener(cacheId))
+                .build(new CacheLoader<String, CachableResponse>() {
+                    @Override
+                    public CachableResponse load(String requestHash) throws Exception {
+                        CachableResponse response = new CachableResponse();
+                        response.setRequestHash(requestHash);
+                        response.setCacheId(cacheId);
+                        return response;
+                    }
+                });
+        cacheManager.put(cacheId, cache);
+        return cache;
+    }
+
+    private CachableResponse createResponse(String cacheId, String requestHash, int size) {
+        CachableResponse response = new CachableResponse();
+        response.setRequestHash(requestHash);
+        response.setCacheId(cacheId);
+        response.setTimeout(60);
+        response.setJson(true);
+        response.setResponsePayload(new byte[size]);
+        response.setResponseSize(size);
+        return response;
+    }
+
+    /**
+     * Test case for a single backend fetch of a response with the concurrent requests parked on it.
+     */
+    public void testCoalescedFetch() {
+        CachableResponse response = new CachableResponse();
+        final AtomicInteger resumed = new AtomicInteger();
+        Runnable parkedRequest = new Runnable() {
+            @Override
+            public void run() {
+                resumed.incrementAndGet();
+            }
+        };
+        assertFalse("Request is parked without a fetch in progress.", response.park(parkedRequest));
+        long fetchId = response.startFetch();
+        assertTrue(fetchId > 0);
+        assertEquals("A second fetch is started concurrently.", 0, response.startFetch());
+        assertTrue(response.park(parkedRequest));
+        assertTrue(response.park(parkedRequest));
+        assertTrue("A stale fetch id ends the fetch.", response.endFetch(fetchId + 1).isEmpty());
+        for (Runnable request : response.endFetch(fetchId)) {
+            request.run();
+        }
+        assertEquals(2, resumed.get());
+        assertTrue("Parked requests are returned twice.", response.endFetch(fetchId).isEmpty());
+        assertTrue("A fetch cannot be started after the previous one ended.", response.startFetch() > fetchId);
+
+        response.setExpireTimeMillis(System.currentTimeMillis() - 1000);
+        assertTrue(response.isExpired());
+        assertTrue(response.isWithinStalePeriod(30));
+        assertFalse(response.isWithinStalePeriod(0));
+    }
+
+    /**
+     * Test case for storing, restoring and compacting responses in the OffHeapResponseStore.
+     */
+    public void testOffHeapResponseStore() {
+        OffHeapResponseStore store = new OffHeapResponseStore(1200, null, "testStore");
+        long expireTime = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 4; i++) {
+            CachableResponse response = new CachableResponse();
+            response.setRequestHash("hash" + i);
+            response.setJson(true);
+            response.setStatusCode("200");
+            response.setResponsePayload(new byte[300]);
+            ConcurrentHashMap<String, Object> headers = new ConcurrentHashMap<>();
+            headers.put(HttpHeaders.CONTENT_TYPE, "application/json");
+            response.setHeaderProperties(headers);
+            response.setExpireTimeMillis(expireTime);
+            assertTrue("Response is not stored.", store.put(response));
+        }
+        assertEquals("Oldest response is not dropped when compacting.", 3, store.size());
+        assertNull(store.take("hash0"));
+
+        CachableResponse restored = store.take("hash3");
+        assertNotNull(restored);
+        assertTrue(restored.isJson());
+        assertEquals("200", restored.getStatusCode());
+        assertEquals(300, restored.getResponsePayload().length);
+        assertEquals("application/json", restored.getHeaderProperties().get(HttpHeaders.CONTENT_TYPE));
+        assertEquals(expireTime, restored.getExpireTimeMillis());
+        assertEquals(2, store.size());
+        store.close();
+        assertEquals(0, store.size());
+        assertNull("Response is read from a closed store.", store.take("hash2"));
+        CachableResponse response = new CachableResponse();
+        response.setRequestHash("hash4");
+        response.setResponsePayload(new byte[10]);
+        response.setExpireTimeMillis(expireTime);
+        assertFalse("Response is stored in a closed store.", store.put(response));
+        store.close();
+    }
+
+    /**
+     * Test case for rejecting an off-heap second tier which does not fit in to a single buffer.
+     */
+    public void testOffHeapSizeValidation() {
+        try {
+            new OffHeapResponseStore(Integer.MAX_VALUE + 1L, null, "testStore");
+            fail("Store larger than a buffer is created.");
+        } catch (CachingException e) {
+            // expected
+        }
+        CacheMediator mediator = new CacheMediator(new CacheManager(-1));
+        try {
+            mediator.setOffHeapSize(4L * Integer.MAX_VALUE);
+            fail("Off-heap size larger than a buffer is accepted.");
+        } catch (CachingException e) {
+            // expected
+        }
+        mediator.setOffHeapSize(-1);
+        mediator.setOffHeapSize(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Test case for the first requests reaching a mediator concurrently, which must share a single cache and second
+     * tier store.
+     *
+     * @throws Exception on interruption while waiting for the requests
+     */
+    public void testConcurrentMediatorCacheCreation() throws Exception {
+        CacheManager cacheManager = new CacheManager(-1);
+        final CacheMediator mediator = new CacheMediator(cacheManager);
+        mediator.setOffHeapSize(1024);
+        final Set<LoadingCache<String, CachableResponse>> caches =
+                Collections.newSetFromMap(new ConcurrentHashMap<LoadingCache<String, CachableResponse>, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        caches.add(mediator.getMediatorCache());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals("Concurrent requests created separate caches.", 1, caches.size());
+        assertEquals(1, cacheManager.getCacheIds().size());
+        assertNotNull(cacheManager.getStore(cacheManager.getCacheIds().iterator().next()));
+        cacheManager.clean();
+    }
+
+    /**
+     * Test case for the StreamingRequestHashGenerator hashing the buffered raw payload without modifying the
+     * transport headers.
+     */
+    public void testStreamingRequestHashGenerator() {
+        StreamingRequestHashGenerator generator = new StreamingRequestHashGenerator();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("headers-to-exclude", new String[]{"X-Request-Id"});
+        generator.init(properties);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HttpHeaders.CONTENT_TYPE, "application/xml");
+        headers.put("X-Request-Id", "1");
+        String firstDigest = generator.getDigest(createRawRequest(headers, "<order><id>1</id></order>"));
+        assertEquals("Transport headers are modified.", 2, headers.size());
+
+        headers.put("X-Request-Id", "2");
+        assertEquals("Excluded header is considered in the hash.", firstDigest,
+                generator.getDigest(createRawRequest(headers, "<order><id>1</id></order>")));
+        assertFalse("Payload is not considered in the hash.", firstDigest.equals(
+                generator.getDigest(createRawRequest(headers, "<order><id>2</id></order>"))));
+    }
+
+    private org.apache.axis2.context.MessageContext createRawRequest(Map<String, String> headers, String payload) {
+        org.apache.axis2.context.MessageContext msgCtx = new org.apache.axis2.context.MessageContext();
+        msgCtx.setTo(new EndpointReference("http://localhost:8280/orders"));
+        msgCtx.setDoingREST(true);
+        msgCtx.setProperty(Constants.Configuration.HTTP_METHOD, "POST");
+        msgCtx.setProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS, headers);
+        BufferedInputStream payloadStream = new BufferedInputStream(new ByteArrayInputStream(payload.getBytes()));
+        payloadStream.mark(payload.length() + 1);
+        msgCtx.setProperty(PassThroughConstants.BUFFERED_INPUT_STREAM, payloadStream);
+        return msgCtx;
+    }
+
     /**
      * Create Axis2 Message Context.
      *
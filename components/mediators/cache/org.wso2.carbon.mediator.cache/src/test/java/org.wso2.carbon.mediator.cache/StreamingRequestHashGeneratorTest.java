@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mediator.cache.digest;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import junit.framework.TestCase;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.context.MessageContext;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test the reading of the raw request payload by the {@link StreamingRequestHashGenerator}
+ */
+public class StreamingRequestHashGeneratorTest extends TestCase {
+
+    /**
+     * Test case for the payload read from the pass through pipe, which is larger than the read buffer.
+     */
+    public void testPipedPayload() throws IOException {
+        byte[] payload = createPayload(20000);
+        StreamingRequestHashGenerator generator = new StreamingRequestHashGenerator();
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+
+        StreamingRequestHashGenerator.PayloadBuffer buffer =
+                generator.readPayload(hasher, new ByteArrayInputStream(payload), -1);
+
+        assertEquals("Payload is not hashed as read.", Hashing.murmur3_128().hashBytes(payload), hasher.hash());
+        ByteArrayOutputStream pipeOutputStream = new ByteArrayOutputStream();
+        buffer.writeTo(pipeOutputStream);
+        assertTrue("Payload is not written back to the pipe.",
+                Arrays.equals(payload, pipeOutputStream.toByteArray()));
+
+        BufferedInputStream inputStream = buffer.toInputStream();
+        assertTrue("Buffered payload is not readable.", Arrays.equals(payload, readAll(inputStream)));
+        inputStream.reset();
+        assertTrue("Buffered payload can not be read again.", Arrays.equals(payload, readAll(inputStream)));
+    }
+
+    /**
+     * Test case for a Content-Length which does not match the size of the payload read from the pipe.
+     */
+    public void testPipedPayloadWithWrongSizeHint() throws IOException {
+        byte[] payload = createPayload(100);
+        StreamingRequestHashGenerator generator = new StreamingRequestHashGenerator();
+
+        StreamingRequestHashGenerator.PayloadBuffer buffer = generator.readPayload(
+                Hashing.murmur3_128().newHasher(), new ByteArrayInputStream(payload), 10);
+        assertTrue(Arrays.equals(payload, readAll(buffer.toInputStream())));
+
+        buffer = generator.readPayload(Hashing.murmur3_128().newHasher(), new ByteArrayInputStream(payload), 1000);
+        assertTrue(Arrays.equals(payload, readAll(buffer.toInputStream())));
+    }
+
+    /**
+     * Test case for the buffered payload, which is hashed in place and left readable for the message builder.
+     */
+    public void testBufferedPayload() throws IOException {
+        byte[] payload = createPayload(20000);
+        StreamingRequestHashGenerator generator = new StreamingRequestHashGenerator();
+        generator.init(new HashMap<String, Object>());
+
+        MessageContext msgCtx = createRequest(payload);
+        BufferedInputStream inputStream =
+                (BufferedInputStream) msgCtx.getProperty(PassThroughConstants.BUFFERED_INPUT_STREAM);
+        String digest = generator.getDigest(msgCtx);
+
+        assertSame("Buffered payload is copied.", inputStream,
+                msgCtx.getProperty(PassThroughConstants.BUFFERED_INPUT_STREAM));
+        assertTrue("Buffered payload is not rewound.", Arrays.equals(payload, readAll(inputStream)));
+        assertEquals("Digest is not repeatable.", digest, generator.getDigest(createRequest(payload)));
+    }
+
+    private MessageContext createRequest(byte[] payload) {
+        MessageContext msgCtx = new MessageContext();
+        msgCtx.setTo(new EndpointReference("http://localhost:8280/orders"));
+        msgCtx.setDoingREST(true);
+        msgCtx.setProperty(Constants.Configuration.HTTP_METHOD, "POST");
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/xml");
+        msgCtx.setProperty(MessageContext.TRANSPORT_HEADERS, headers);
+        BufferedInputStream payloadStream = new BufferedInputStream(new ByteArrayInputStream(payload));
+        payloadStream.mark(payload.length + 1);
+        msgCtx.setProperty(PassThroughConstants.BUFFERED_INPUT_STREAM, payloadStream);
+        return msgCtx;
+    }
+
+    private byte[] createPayload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+        return payload;
+    }
+
+    private byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+        return outputStream.toByteArray();
+    }
+}
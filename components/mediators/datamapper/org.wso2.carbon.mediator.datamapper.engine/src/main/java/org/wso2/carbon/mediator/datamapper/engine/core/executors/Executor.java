@@ -31,10 +31,11 @@ public interface Executor {
      * input variable and returns the output model
      *
      * @param mappingResource mapping resource model
-     * @param inputVariable   input variable
+     * @param inputVariable   input variable, either as a JSON string or as a tree of maps and lists
+     * @param properties      runtime properties, either as a JSON string or as a map of maps
      * @return model output model
      * @throws JSException if mapping throws an exception
      */
-    public Model execute(MappingResource mappingResource, String inputVariable, String properties)
+    public Model execute(MappingResource mappingResource, Object inputVariable, Object properties)
             throws JSException, SchemaException;
 }
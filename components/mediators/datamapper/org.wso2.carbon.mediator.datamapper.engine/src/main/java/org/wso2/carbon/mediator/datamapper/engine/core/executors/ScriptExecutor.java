@@ -29,14 +29,24 @@ import org.wso2.carbon.mediator.datamapper.engine.output.formatters.MapOutputFor
 import org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants;
 import org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineUtils;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.util.Map;
+import java.util.WeakHashMap;
 
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.BRACKET_CLOSE;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.BRACKET_OPEN;
 import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.ENCODE_CHAR_HYPHEN;
 import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.EQUALS_SIGN;
 import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.HYPHEN;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.INPUT_VARIABLE_BINDING_NAME;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.JS_PARSE;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.JS_TO_NATIVE;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.PROPERTIES_BINDING_NAME;
 import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.PROPERTIES_OBJECT_NAME;
 
 /**
@@ -46,8 +56,46 @@ import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineC
 public class ScriptExecutor implements Executor {
 
     private static final Log log = LogFactory.getLog(ScriptExecutor.class);
+
+    /**
+     * Converts a tree of Java maps and lists bound into the engine to native script objects, so that the mapping
+     * functions see the same objects as they would for a parsed JSON input.
+     */
+    private static final String NATIVE_CONVERTER_FUNCTION = "function " + JS_TO_NATIVE + "(value) {\n"
+            + "    if (value instanceof java.util.Map) {\n"
+            + "        var object = {};\n"
+            + "        for (var it = value.entrySet().iterator(); it.hasNext();) {\n"
+            + "            var entry = it.next();\n"
+            + "            object[String(entry.getKey())] = " + JS_TO_NATIVE + "(entry.getValue());\n"
+            + "        }\n"
+            + "        return object;\n"
+            + "    }\n"
+            + "    if (value instanceof java.util.List) {\n"
+            + "        var array = [];\n"
+            + "        for (var i = 0; i < value.size(); i++) {\n"
+            + "            array.push(" + JS_TO_NATIVE + "(value.get(i)));\n"
+            + "        }\n"
+            + "        return array;\n"
+            + "    }\n"
+            + "    if (value instanceof java.lang.String) {\n"
+            + "        return String(value);\n"
+            + "    }\n"
+            + "    if (value instanceof java.lang.Number) {\n"
+            + "        return Number(value);\n"
+            + "    }\n"
+            + "    if (value instanceof java.lang.Boolean) {\n"
+            + "        return value.booleanValue();\n"
+            + "    }\n"
+            + "    return value;\n"
+            + "}";
     private ScriptEngine scriptEngine;
 
+    /**
+     * Mappings compiled for this script engine, keyed by the identity of the mapping resource. Mapping resources of
+     * undeployed mediators are released with their keys.
+     */
+    private final Map<MappingResource, CompiledMapping> compiledMappings = new WeakHashMap<>();
+
     /**
      * Create a script executor of the provided script executor type
      *
@@ -71,14 +119,28 @@ public class ScriptExecutor implements Executor {
     }
 
     @Override
-    public Model execute(MappingResource mappingResource, String inputVariable, String properties)
+    public Model execute(MappingResource mappingResource, Object inputVariable, Object properties)
             throws JSException, SchemaException {
+        CompiledMapping compiledMapping = getCompiledMapping(mappingResource);
+        boolean firstExecution = !compiledMapping.initialized;
+        Bindings bindings = compiledMapping.bindings;
         try {
-            JSFunction jsFunction = mappingResource.getFunction();
-            injectPropertiesToEngine(properties);
-            injectInputVariableToEngine(mappingResource.getInputSchema().getName(), inputVariable);
-            scriptEngine.eval(jsFunction.getFunctionBody());
-            Object result = scriptEngine.eval(jsFunction.getFunctionName());
+            bindings.put(PROPERTIES_BINDING_NAME, properties);
+            bindings.put(INPUT_VARIABLE_BINDING_NAME, inputVariable);
+            if (firstExecution) {
+                // the mapping functions are defined once in the bindings of the mapping and reused afterwards
+                compiledMapping.nativeConverter.eval(bindings);
+            }
+            if (inputVariable instanceof String) {
+                compiledMapping.jsonInputInjector.eval(bindings);
+            } else {
+                compiledMapping.modelInputInjector.eval(bindings);
+            }
+            if (firstExecution) {
+                compiledMapping.mappingConfig.eval(bindings);
+                compiledMapping.initialized = true;
+            }
+            Object result = compiledMapping.mappingFunction.eval(bindings);
             if (result instanceof Map) {
                 return new MapModel((Map<String, Object>) result);
             } else if (result instanceof String) {
@@ -89,16 +151,95 @@ public class ScriptExecutor implements Executor {
             }
         } catch (ScriptException e) {
             throw new JSException("Script engine unable to execute the script " + e);
+        } finally {
+            bindings.remove(PROPERTIES_BINDING_NAME);
+            bindings.remove(INPUT_VARIABLE_BINDING_NAME);
         }
         throw new JSException("Failed to execute mapping function");
     }
 
-    private void injectInputVariableToEngine(String inputSchemaName, String inputVariable) throws ScriptException {
-        scriptEngine.eval("var input" + inputSchemaName.replace(':', '_').replace('=', '_').replace(',', '_').replace(HYPHEN, ENCODE_CHAR_HYPHEN) + "="
-                + inputVariable);
+    /**
+     * Compiles the given mapping for this script engine ahead of its first execution.
+     *
+     * @param mappingResource mapping resource model
+     * @throws JSException if the mapping configuration can not be compiled
+     */
+    public void prepare(MappingResource mappingResource) throws JSException {
+        getCompiledMapping(mappingResource);
+    }
+
+    private CompiledMapping getCompiledMapping(MappingResource mappingResource) throws JSException {
+        CompiledMapping compiledMapping = compiledMappings.get(mappingResource);
+        if (compiledMapping == null) {
+            compiledMapping = compileMapping(mappingResource);
+            compiledMappings.put(mappingResource, compiledMapping);
+        }
+        return compiledMapping;
+    }
+
+    /**
+     * Compiles the mapping configuration, the mapping function call and the injection of the input variable and
+     * the properties of the given mapping resource for this script engine.
+     *
+     * @param mappingResource mapping resource model
+     * @return compiled mapping
+     * @throws JSException if the mapping configuration can not be compiled
+     */
+    private CompiledMapping compileMapping(MappingResource mappingResource) throws JSException {
+        if (!(scriptEngine instanceof Compilable)) {
+            throw new JSException("Script engine " + scriptEngine.getFactory().getEngineName()
+                    + " does not support compiling scripts");
+        }
+        Compilable compiler = (Compilable) scriptEngine;
+        JSFunction jsFunction = mappingResource.getFunction();
+        try {
+            CompiledMapping compiledMapping = new CompiledMapping();
+            compiledMapping.bindings = scriptEngine.createBindings();
+            String inputVariableName = "input" + getInputVariableName(mappingResource.getInputSchema().getName());
+            compiledMapping.nativeConverter = compiler.compile(NATIVE_CONVERTER_FUNCTION);
+            compiledMapping.jsonInputInjector = compiler.compile(getInputInjector(inputVariableName, JS_PARSE));
+            compiledMapping.modelInputInjector = compiler.compile(getInputInjector(inputVariableName, JS_TO_NATIVE));
+            compiledMapping.mappingConfig = compiler.compile(jsFunction.getFunctionBody());
+            compiledMapping.mappingFunction = compiler.compile(jsFunction.getFunctionName());
+            if (log.isDebugEnabled()) {
+                log.debug("Compiled mapping function " + jsFunction.getFunctionName());
+            }
+            return compiledMapping;
+        } catch (ScriptException e) {
+            throw new JSException("Script engine unable to compile the script " + e);
+        } catch (SchemaException e) {
+            throw new JSException("Unable to read the input schema of the mapping " + e.getMessage());
+        }
     }
 
-    private void injectPropertiesToEngine(String properties) throws ScriptException {
-        scriptEngine.eval("var " + PROPERTIES_OBJECT_NAME + EQUALS_SIGN + properties);
+    /**
+     * Creates the script which declares the properties and the input variable of a mapping from their bindings.
+     *
+     * @param inputVariableName name of the input variable of the mapping
+     * @param converter         function which converts the bound values to native script objects
+     * @return script which declares the properties and the input variable
+     */
+    private String getInputInjector(String inputVariableName, String converter) {
+        return "var " + PROPERTIES_OBJECT_NAME + EQUALS_SIGN + converter + BRACKET_OPEN + PROPERTIES_BINDING_NAME
+                + BRACKET_CLOSE + ";\n" + "var " + inputVariableName + EQUALS_SIGN + converter + BRACKET_OPEN
+                + INPUT_VARIABLE_BINDING_NAME + BRACKET_CLOSE + ";";
+    }
+
+    private String getInputVariableName(String inputSchemaName) {
+        return inputSchemaName.replace(':', '_').replace('=', '_').replace(',', '_')
+                .replace(HYPHEN, ENCODE_CHAR_HYPHEN);
+    }
+
+    /**
+     * Scripts of a mapping compiled for this script engine, evaluated in the bindings of the mapping.
+     */
+    private static class CompiledMapping {
+        private boolean initialized;
+        private Bindings bindings;
+        private CompiledScript nativeConverter;
+        private CompiledScript jsonInputInjector;
+        private CompiledScript modelInputInjector;
+        private CompiledScript mappingConfig;
+        private CompiledScript mappingFunction;
     }
 }
@@ -18,17 +18,25 @@ package org.wso2.carbon.mediator.datamapper.engine.core.executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.JSException;
+import org.wso2.carbon.mediator.datamapper.engine.core.mapper.MappingResource;
 
-import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants
-        .DEFAULT_DATAMAPPER_ENGINE_POOL_SIZE;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
- * This class act as a factory to get the requested script executor
+ * This class act as a factory to get the requested script executor. Each mapping has a pool of script executors of
+ * its own, so that a slow mapping can not hold the executors of the other mappings.
  */
 public class ScriptExecutorFactory {
 
-    private static ScriptExecutorPool executorPool = null;
-    private static ScriptExecutorType scriptExecutorType = ScriptExecutorType.NASHORN;
+    private static final String MBEAN_NAME_PREFIX = "org.wso2.carbon.mediator.datamapper:type=ScriptExecutorPool,name=";
+    private static final ConcurrentMap<MappingResource, ScriptExecutorPool> executorPools = new ConcurrentHashMap<>();
+    private static volatile ScriptExecutorType scriptExecutorType = null;
     private static final Log log = LogFactory.getLog(ScriptExecutorFactory.class);
 
     /**
@@ -38,50 +46,84 @@ public class ScriptExecutorFactory {
     }
 
     /**
-     * This method will return the script executor according to the given {@link
-     * ScriptExecutorType}
+     * This method will return the pool of script executors of the given mapping, creating and warming it up on the
+     * first call for the mapping
      *
-     * @return script executor
+     * @param mappingResource mapping executed by the executors of the pool
+     * @param poolConfig      sizes and acquire timeout of the pool
+     * @return script executor pool of the mapping
+     * @throws JSException if the mapping can not be compiled
      */
-    public static Executor getScriptExecutor(String executorPoolSize) throws InterruptedException {
+    public static ScriptExecutorPool getExecutorPool(MappingResource mappingResource,
+                                                     ScriptExecutorPoolConfig poolConfig) throws JSException {
+        ScriptExecutorPool executorPool = executorPools.get(mappingResource);
         if (executorPool == null) {
-            initializeExecutorPool(executorPoolSize);
+            executorPool = initializeExecutorPool(mappingResource, poolConfig);
         }
-        return executorPool.take();
+        return executorPool;
     }
 
     /**
-     * Initialize a script executors pool. If Java8, use Nashorn as the script engine or if Java7
-     * or 6 use Rhino
-     * which is the default javascript engine provided in Java
+     * Initialize the script executor pool of a mapping. If Java8, use Nashorn as the script engine or if Java7
+     * or 6 use Rhino which is the default javascript engine provided in Java
      *
-     * @param executorPoolSizeStr size of the executor pool
+     * @param mappingResource mapping executed by the executors of the pool
+     * @param poolConfig      sizes and acquire timeout of the pool
      */
-    private synchronized static void initializeExecutorPool(String executorPoolSizeStr) {
+    private static synchronized ScriptExecutorPool initializeExecutorPool(MappingResource mappingResource,
+            ScriptExecutorPoolConfig poolConfig) throws JSException {
+        ScriptExecutorPool executorPool = executorPools.get(mappingResource);
         if (executorPool == null) {
+            executorPool = new ScriptExecutorPool(getScriptExecutorType(), mappingResource, poolConfig);
+            executorPools.put(mappingResource, executorPool);
+            registerMBean(mappingResource, executorPool);
+        }
+        return executorPool;
+    }
+
+    private static ScriptExecutorType getScriptExecutorType() {
+        if (scriptExecutorType == null) {
             String javaVersion = System.getProperty("java.version");
             if (javaVersion.startsWith("1.7") || javaVersion.startsWith("1.6")) {
                 scriptExecutorType = ScriptExecutorType.RHINO;
                 log.debug("Script Engine set to Rhino");
             } else {
+                scriptExecutorType = ScriptExecutorType.NASHORN;
                 log.debug("Script Engine set to Nashorn");
             }
-
-            int executorPoolSize = DEFAULT_DATAMAPPER_ENGINE_POOL_SIZE;
-            if (executorPoolSizeStr != null) {
-                executorPoolSize = Integer.parseInt(executorPoolSizeStr);
-                log.debug("Script executor pool size set to " + executorPoolSize);
-            } else {
-                log.debug("Using default script executor pool size " + executorPoolSize);
-            }
-            executorPool = new ScriptExecutorPool(scriptExecutorType, executorPoolSize);
         }
+        return scriptExecutorType;
     }
 
     /**
-     * This method will release the script executor to the pool
+     * This method will remove the script executor pool of a mapping which is no longer used
+     *
+     * @param mappingResource mapping executed by the executors of the pool
      */
-    public static void releaseScriptExecutor(Executor executor) throws InterruptedException {
-        executorPool.put(executor);
+    public static void removeExecutorPool(MappingResource mappingResource) {
+        if (mappingResource != null && executorPools.remove(mappingResource) != null) {
+            try {
+                getMBeanServer().unregisterMBean(getMBeanName(mappingResource));
+            } catch (JMException e) {
+                log.warn("Unable to unregister the script executor pool MBean " + e.getMessage());
+            }
+        }
+    }
+
+    private static void registerMBean(MappingResource mappingResource, ScriptExecutorPool executorPool) {
+        try {
+            getMBeanServer().registerMBean(executorPool, getMBeanName(mappingResource));
+        } catch (JMException e) {
+            log.warn("Unable to register the script executor pool MBean " + e.getMessage());
+        }
+    }
+
+    private static ObjectName getMBeanName(MappingResource mappingResource) throws JMException {
+        return new ObjectName(MBEAN_NAME_PREFIX + ObjectName.quote(mappingResource.getFunction().getFunctionName()
+                + "@" + Integer.toHexString(System.identityHashCode(mappingResource))));
+    }
+
+    private static MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
     }
 }
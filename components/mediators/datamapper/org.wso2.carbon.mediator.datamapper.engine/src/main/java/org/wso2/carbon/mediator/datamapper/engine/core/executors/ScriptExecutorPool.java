@@ -17,32 +17,216 @@
 
 package org.wso2.carbon.mediator.datamapper.engine.core.executors;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.JSException;
+import org.wso2.carbon.mediator.datamapper.engine.core.mapper.MappingResource;
+
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of script executors of a single mapping. The pool is warmed up with executors which have the mapping compiled
+ * and grows up to its maximum size on demand. When all the executors are busy, a request waits for a bounded time and
+ * then falls back to a transient executor outside the pool, which is discarded once returned, so that a burst beyond
+ * the maximum size neither blocks the mediation threads nor fails the messages. Failing the request instead is an
+ * opt-in setting of the pool.
+ */
+public class ScriptExecutorPool implements ScriptExecutorPoolMBean {
 
-public class ScriptExecutorPool {
+    private static final Log log = LogFactory.getLog(ScriptExecutorPool.class);
 
     private BlockingQueue<Executor> executors;
+    private ScriptExecutorType executorType;
+    private MappingResource mappingResource;
+    private ScriptExecutorPoolConfig poolConfig;
+
+    /* Number of executors created by the pool, never more than its maximum size */
+    private final AtomicInteger createdExecutors = new AtomicInteger();
+    /* Executors created outside the pool after the acquire timeout, discarded once returned */
+    private final Set<Executor> transientExecutors =
+            Collections.newSetFromMap(new ConcurrentHashMap<Executor, Boolean>());
+    private final AtomicInteger activeExecutors = new AtomicInteger();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicLong totalWaitTimeNanos = new AtomicLong();
+    private final AtomicLong maxWaitTimeNanos = new AtomicLong();
+
+    /**
+     * Creates a pool of executors for the given mapping and warms it up with the core number of executors, each of
+     * which has the mapping compiled.
+     *
+     * @param executorType    type of the script executors
+     * @param mappingResource mapping executed by the executors of the pool
+     * @param poolConfig      sizes and acquire timeout of the pool
+     * @throws JSException if the mapping can not be compiled
+     */
+    public ScriptExecutorPool(ScriptExecutorType executorType, MappingResource mappingResource,
+                              ScriptExecutorPoolConfig poolConfig) throws JSException {
+        this.executors = new LinkedBlockingQueue<>();
+        this.executorType = executorType;
+        this.mappingResource = mappingResource;
+        this.poolConfig = poolConfig;
+        for (int i = 0; i < poolConfig.getCoreSize(); i++) {
+            createdExecutors.incrementAndGet();
+            executors.add(createPreparedExecutor());
+        }
+    }
+
+    /**
+     * Creates an executor which has the mapping of the pool compiled.
+     *
+     * @throws JSException if the mapping can not be compiled
+     */
+    protected Executor createPreparedExecutor() throws JSException {
+        ScriptExecutor executor = new ScriptExecutor(executorType);
+        executor.prepare(mappingResource);
+        return executor;
+    }
+
+    /**
+     * Takes an idle executor from the pool. If there is none, a new executor is added to the pool unless it has
+     * reached its maximum size, in which case this waits for an executor up to the acquire timeout and then falls
+     * back to a transient executor outside the pool.
+     *
+     * @return script executor, to be returned with {@link #put(Executor)}
+     * @throws InterruptedException if interrupted while waiting for an executor
+     * @throws JSException          if the mapping can not be compiled for a new executor, or no executor is available
+     *                              within the acquire timeout and the pool is set to fail on it
+     */
+    public Executor take() throws InterruptedException, JSException {
+        long startTime = System.nanoTime();
+        Executor executor = executors.poll();
+        if (executor == null) {
+            executor = createWithinMaxSize();
+        }
+        if (executor == null) {
+            executor = executors.poll(poolConfig.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (executor == null) {
+            timeoutCount.incrementAndGet();
+            String message = "No script executor available within " + poolConfig.getAcquireTimeoutMillis()
+                    + "ms, all " + poolConfig.getMaxSize() + " executors of the pool are busy";
+            if (poolConfig.isFailOnAcquireTimeout()) {
+                log.warn(message);
+                throw new JSException(message);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(message + ", creating a transient executor outside the pool");
+            }
+            executor = createPreparedExecutor();
+            transientExecutors.add(executor);
+            fallbackCount.incrementAndGet();
+        }
+        recordWaitTime(System.nanoTime() - startTime);
+        activeExecutors.incrementAndGet();
+        executionCount.incrementAndGet();
+        return executor;
+    }
 
-    public ScriptExecutorPool(ScriptExecutorType executorType, int executorPoolSize) {
-        executors = new LinkedBlockingQueue<>();
-        for (int i = 0; i < executorPoolSize; i++) {
-            Executor executor = createScriptExecutor(executorType);
-            if (executor != null) {
-                executors.add(executor);
+    /**
+     * Returns an executor to the pool. Transient executors created outside the pool are discarded.
+     *
+     * @param executor executor taken from this pool
+     */
+    public void put(Executor executor) {
+        activeExecutors.decrementAndGet();
+        if (transientExecutors.remove(executor)) {
+            return;
+        }
+        executors.offer(executor);
+    }
+
+    private Executor createWithinMaxSize() throws JSException {
+        int created;
+        do {
+            created = createdExecutors.get();
+            if (created >= poolConfig.getMaxSize()) {
+                return null;
             }
+        } while (!createdExecutors.compareAndSet(created, created + 1));
+        try {
+            return createPreparedExecutor();
+        } catch (JSException e) {
+            createdExecutors.decrementAndGet();
+            throw e;
         }
     }
 
-    private Executor createScriptExecutor(ScriptExecutorType executorType) {
-        return new ScriptExecutor(executorType);
+    private void recordWaitTime(long waitTimeNanos) {
+        totalWaitTimeNanos.addAndGet(waitTimeNanos);
+        long maxWaitTime;
+        do {
+            maxWaitTime = maxWaitTimeNanos.get();
+        } while (waitTimeNanos > maxWaitTime && !maxWaitTimeNanos.compareAndSet(maxWaitTime, waitTimeNanos));
+    }
+
+    @Override
+    public int getCoreSize() {
+        return poolConfig.getCoreSize();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return poolConfig.getMaxSize();
+    }
+
+    @Override
+    public int getCreatedExecutors() {
+        return createdExecutors.get();
+    }
+
+    @Override
+    public int getActiveExecutors() {
+        return activeExecutors.get();
+    }
+
+    @Override
+    public int getIdleExecutors() {
+        return executors.size();
+    }
+
+    @Override
+    public double getUtilization() {
+        return (double) activeExecutors.get() / poolConfig.getMaxSize();
+    }
+
+    @Override
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    @Override
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    @Override
+    public int getTransientExecutors() {
+        return transientExecutors.size();
     }
 
-    public Executor take() throws InterruptedException {
-        return executors.take();
+    @Override
+    public double getAverageWaitTimeMillis() {
+        long executions = executionCount.get();
+        return executions == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(totalWaitTimeNanos.get()) / executions
+                / 1000;
     }
 
-    public void put(Executor executor) throws InterruptedException {
-        executors.put(executor);
+    @Override
+    public double getMaxWaitTimeMillis() {
+        return (double) TimeUnit.NANOSECONDS.toMicros(maxWaitTimeNanos.get()) / 1000;
     }
 }
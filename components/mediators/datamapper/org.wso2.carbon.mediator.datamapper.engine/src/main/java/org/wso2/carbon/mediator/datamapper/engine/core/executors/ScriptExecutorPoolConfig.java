@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mediator.datamapper.engine.core.executors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants
+        .DEFAULT_DATAMAPPER_ENGINE_ACQUIRE_TIMEOUT;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants
+        .DEFAULT_DATAMAPPER_ENGINE_POOL_CORE_SIZE;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants
+        .DEFAULT_DATAMAPPER_ENGINE_POOL_SIZE;
+
+/**
+ * Sizes, acquire timeout and acquire timeout policy of a {@link ScriptExecutorPool}
+ */
+public class ScriptExecutorPoolConfig {
+
+    private static final Log log = LogFactory.getLog(ScriptExecutorPoolConfig.class);
+
+    private int coreSize;
+    private int maxSize;
+    private long acquireTimeoutMillis;
+    private boolean failOnAcquireTimeout;
+
+    public ScriptExecutorPoolConfig(int coreSize, int maxSize, long acquireTimeoutMillis) {
+        this(coreSize, maxSize, acquireTimeoutMillis, false);
+    }
+
+    /**
+     * @param failOnAcquireTimeout whether a request which gets no executor of the pool within the acquire timeout
+     *                             fails, instead of falling back to a transient executor outside the pool
+     */
+    public ScriptExecutorPoolConfig(int coreSize, int maxSize, long acquireTimeoutMillis,
+                                    boolean failOnAcquireTimeout) {
+        this.maxSize = Math.max(maxSize, 1);
+        this.coreSize = Math.max(Math.min(coreSize, this.maxSize), 0);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.failOnAcquireTimeout = failOnAcquireTimeout;
+    }
+
+    /**
+     * Creates the pool configuration from the configured property values, using the defaults for the values which
+     * are not set.
+     *
+     * @param coreSizeStr       number of executors the pool is warmed up with
+     * @param maxSizeStr        maximum number of executors in the pool
+     * @param acquireTimeoutStr maximum time in milliseconds to wait for an executor of the pool
+     * @return pool configuration
+     */
+    public static ScriptExecutorPoolConfig fromProperties(String coreSizeStr, String maxSizeStr,
+                                                          String acquireTimeoutStr) {
+        return fromProperties(coreSizeStr, maxSizeStr, acquireTimeoutStr, null);
+    }
+
+    /**
+     * Creates the pool configuration from the configured property values, using the defaults for the values which
+     * are not set.
+     *
+     * @param coreSizeStr             number of executors the pool is warmed up with
+     * @param maxSizeStr              maximum number of executors in the pool
+     * @param acquireTimeoutStr       maximum time in milliseconds to wait for an executor of the pool
+     * @param failOnAcquireTimeoutStr whether to fail a request which gets no executor within the acquire timeout,
+     *                                false by default
+     * @return pool configuration
+     */
+    public static ScriptExecutorPoolConfig fromProperties(String coreSizeStr, String maxSizeStr,
+                                                          String acquireTimeoutStr, String failOnAcquireTimeoutStr) {
+        int maxSize = DEFAULT_DATAMAPPER_ENGINE_POOL_SIZE;
+        if (maxSizeStr != null) {
+            maxSize = Integer.parseInt(maxSizeStr.trim());
+        }
+        int coreSize = DEFAULT_DATAMAPPER_ENGINE_POOL_CORE_SIZE;
+        if (coreSizeStr != null) {
+            coreSize = Integer.parseInt(coreSizeStr.trim());
+        }
+        long acquireTimeout = DEFAULT_DATAMAPPER_ENGINE_ACQUIRE_TIMEOUT;
+        if (acquireTimeoutStr != null) {
+            acquireTimeout = Long.parseLong(acquireTimeoutStr.trim());
+        }
+        boolean failOnAcquireTimeout = failOnAcquireTimeoutStr != null
+                && Boolean.parseBoolean(failOnAcquireTimeoutStr.trim());
+        if (log.isDebugEnabled()) {
+            log.debug("Script executor pool core size " + coreSize + ", maximum size " + maxSize
+                    + ", acquire timeout " + acquireTimeout + "ms, fail on acquire timeout " + failOnAcquireTimeout);
+        }
+        return new ScriptExecutorPoolConfig(coreSize, maxSize, acquireTimeout, failOnAcquireTimeout);
+    }
+
+    public int getCoreSize() {
+        return coreSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    public boolean isFailOnAcquireTimeout() {
+        return failOnAcquireTimeout;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mediator.datamapper.engine.core.executors;
+
+/**
+ * JMX view of the usage of a {@link ScriptExecutorPool}
+ */
+public interface ScriptExecutorPoolMBean {
+
+    /**
+     * @return number of executors the pool is warmed up with
+     */
+    int getCoreSize();
+
+    /**
+     * @return maximum number of executors in the pool
+     */
+    int getMaxSize();
+
+    /**
+     * @return number of executors currently created by the pool
+     */
+    int getCreatedExecutors();
+
+    /**
+     * @return number of transient executors currently created outside the pool
+     */
+    int getTransientExecutors();
+
+    /**
+     * @return number of executors currently executing a mapping, including the transient ones
+     */
+    int getActiveExecutors();
+
+    /**
+     * @return number of executors waiting in the pool
+     */
+    int getIdleExecutors();
+
+    /**
+     * @return ratio of the active executors to the maximum size of the pool
+     */
+    double getUtilization();
+
+    /**
+     * @return number of mapping executions since the pool was created
+     */
+    long getExecutionCount();
+
+    /**
+     * @return number of executions which did not get an executor of the pool within the acquire timeout
+     */
+    long getTimeoutCount();
+
+    /**
+     * @return number of executions which ran on a transient executor after the acquire timeout
+     */
+    long getFallbackCount();
+
+    /**
+     * @return average time spent acquiring an executor, in milliseconds
+     */
+    double getAverageWaitTimeMillis();
+
+    /**
+     * @return maximum time spent acquiring an executor, in milliseconds
+     */
+    double getMaxWaitTimeMillis();
+}
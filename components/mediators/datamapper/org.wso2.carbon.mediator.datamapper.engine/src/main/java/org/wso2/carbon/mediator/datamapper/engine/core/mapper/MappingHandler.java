@@ -24,6 +24,8 @@ import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.SchemaExceptio
 import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.WriterException;
 import org.wso2.carbon.mediator.datamapper.engine.core.executors.Executor;
 import org.wso2.carbon.mediator.datamapper.engine.core.executors.ScriptExecutorFactory;
+import org.wso2.carbon.mediator.datamapper.engine.core.executors.ScriptExecutorPool;
+import org.wso2.carbon.mediator.datamapper.engine.core.executors.ScriptExecutorPoolConfig;
 import org.wso2.carbon.mediator.datamapper.engine.core.models.Model;
 import org.wso2.carbon.mediator.datamapper.engine.core.notifiers.InputVariableNotifier;
 import org.wso2.carbon.mediator.datamapper.engine.core.notifiers.OutputVariableNotifier;
@@ -38,25 +40,41 @@ import java.util.Map;
 
 public class MappingHandler implements InputVariableNotifier, OutputVariableNotifier {
 
-    private String dmExecutorPoolSize;
-    private String inputVariable;
+    private ScriptExecutorPoolConfig executorPoolConfig;
+    private ScriptExecutorPool executorPool;
+    private Object inputVariable;
     private String outputVariable;
     private MappingResource mappingResource;
     private OutputMessageBuilder outputMessageBuilder;
     private Executor scriptExecutor;
     private InputBuilder inputBuilder;
-    private String propertiesInJSON;
+    private Object propertiesInJSON;
+    private ModelType inputModelType;
 
     public MappingHandler(MappingResource mappingResource, String inputType, String outputType,
             String dmExecutorPoolSize) throws IOException, SchemaException, WriterException {
+        this(mappingResource, inputType, outputType, ScriptExecutorPoolConfig.fromProperties(null,
+                dmExecutorPoolSize, null), ModelType.JSON_STRING);
+    }
+
+    /**
+     * @param executorPoolConfig configuration of the script executor pool of the mapping
+     * @param inputModelType type of the model the input message and the properties are handed over to the script
+     *                       engine as. {@link ModelType#JAVA_MAP} binds them into the engine without serializing
+     *                       them to JSON.
+     */
+    public MappingHandler(MappingResource mappingResource, String inputType, String outputType,
+            ScriptExecutorPoolConfig executorPoolConfig, ModelType inputModelType)
+            throws IOException, SchemaException, WriterException {
 
-        this.inputBuilder = new InputBuilder(InputOutputDataType.fromString(inputType),
+        this.inputBuilder = new InputBuilder(InputOutputDataType.fromString(inputType), inputModelType,
                 mappingResource.getInputSchema());
+        this.inputModelType = inputModelType;
 
         this.outputMessageBuilder = new OutputMessageBuilder(InputOutputDataType.fromString(outputType),
                 ModelType.JAVA_MAP, mappingResource.getOutputSchema());
 
-        this.dmExecutorPoolSize = dmExecutorPoolSize;
+        this.executorPoolConfig = executorPoolConfig;
         this.mappingResource = mappingResource;
     }
 
@@ -69,7 +87,8 @@ public class MappingHandler implements InputVariableNotifier, OutputVariableNoti
      *  value.
      * </p>
      * <p>
-     *  Map of maps will be converted to a JSON object to be injected to the JavaScript processing engine.
+     *  Map of maps will be converted to a JSON object, or bound as it is with the JAVA_MAP input model, to be injected
+     *  to the JavaScript processing engine.
      * </p>
      *
      * @param inputMsg  Input message as an InputStream
@@ -83,25 +102,19 @@ public class MappingHandler implements InputVariableNotifier, OutputVariableNoti
      */
 	public String doMap(InputStream inputMsg, Map<String, Map<String, Object>> propertiesMap)
 			throws ReaderException, InterruptedException, IOException, SchemaException, JSException {
-		ReaderException readerException = null;
 		try {
-			this.scriptExecutor = ScriptExecutorFactory.getScriptExecutor(dmExecutorPoolSize);
-			this.propertiesInJSON = propertiesMapToJSON(propertiesMap);
+			this.executorPool = ScriptExecutorFactory.getExecutorPool(mappingResource, executorPoolConfig);
+			this.scriptExecutor = executorPool.take();
+			if (ModelType.JAVA_MAP == inputModelType) {
+				this.propertiesInJSON = propertiesMap;
+			} else {
+				this.propertiesInJSON = propertiesMapToJSON(propertiesMap);
+			}
 			inputBuilder.buildInputModel(inputMsg, this);
-		} catch (ReaderException re) {
-			readerException = re;
-			throw re;
 		} finally {
 			// Fix for https://github.com/wso2/product-ei/issues/650
 			if (scriptExecutor != null) {
-				try {
-					releaseExecutor();
-				} catch (InterruptedException ie) {
-					if (readerException != null) {
-						ie.initCause(readerException);
-					}
-					throw ie;
-				}
+				releaseExecutor();
 			}
 		}
 		return outputVariable;
@@ -109,7 +122,7 @@ public class MappingHandler implements InputVariableNotifier, OutputVariableNoti
 
     @Override
     public void notifyInputVariable(Object variable) throws SchemaException, JSException, ReaderException {
-        this.inputVariable = (String) variable;
+        this.inputVariable = variable;
         Model outputModel = scriptExecutor.execute(mappingResource, inputVariable, propertiesInJSON);
         try {
             releaseExecutor();
@@ -119,13 +132,13 @@ public class MappingHandler implements InputVariableNotifier, OutputVariableNoti
                 notifyOutputVariable(outputModel.getModel());
             }
 
-        } catch (InterruptedException | WriterException e) {
+        } catch (WriterException e) {
             throw new ReaderException(e.getMessage());
         }
     }
 
-    private void releaseExecutor() throws InterruptedException {
-        ScriptExecutorFactory.releaseScriptExecutor(scriptExecutor);
+    private void releaseExecutor() {
+        executorPool.put(scriptExecutor);
         this.scriptExecutor = null;
     }
 
@@ -24,6 +24,7 @@ import org.wso2.carbon.mediator.datamapper.engine.core.schemas.Schema;
 import org.wso2.carbon.mediator.datamapper.engine.input.readers.InputReader;
 import org.wso2.carbon.mediator.datamapper.engine.input.readers.InputReaderFactory;
 import org.wso2.carbon.mediator.datamapper.engine.utils.InputOutputDataType;
+import org.wso2.carbon.mediator.datamapper.engine.utils.ModelType;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -44,7 +45,18 @@ public class InputBuilder {
      * @throws IOException
      */
     public InputBuilder(InputOutputDataType inputType, Schema inputSchema) throws IOException {
-        this.inputReader = InputReaderFactory.getReader(inputType);
+        this(inputType, ModelType.JSON_STRING, inputSchema);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param modelType   Type of the model the input message is built into
+     * @param inputSchema Input message JSON schema
+     * @throws IOException
+     */
+    public InputBuilder(InputOutputDataType inputType, ModelType modelType, Schema inputSchema) throws IOException {
+        this.inputReader = InputReaderFactory.getReader(inputType, modelType);
         this.inputSchema = inputSchema;
     }
 
@@ -62,12 +74,12 @@ public class InputBuilder {
     /**
      * This method will be called by the XMLInputReader instance to notify with the output
      *
-     * @param builtMessage Built JSON message
+     * @param builtMessage Built JSON message, or the built Map model
      * @throws JSException
      * @throws ReaderException
      * @throws SchemaException
      */
-    public void notifyWithResult(String builtMessage) throws JSException, ReaderException, SchemaException {
+    public void notifyWithResult(Object builtMessage) throws JSException, ReaderException, SchemaException {
         inputVariableNotifier.notifyInputVariable(builtMessage);
     }
 
@@ -230,6 +230,15 @@ public interface Builder {
      */
     String getContent() throws IOException;
 
+    /**
+     * Method called to get the built model after closing the builder, in the form it is handed over to the script
+     * engine
+     *
+     * @return built model
+     * @throws IOException
+     */
+    Object getModel() throws IOException;
+
     /**
      * Convenience method for outputting a primitive
      * that has a primitive value.
@@ -29,6 +29,8 @@ public class BuilderFactory {
         switch (inputType) {
             case JSON_STRING:
                 return new JSONBuilder();
+            case JAVA_MAP:
+                return new MapBuilder();
             default:
                 throw new IllegalArgumentException("Model builder for type " + inputType + " is not implemented.");
         }
@@ -165,4 +165,8 @@ public class JSONBuilder implements Builder {
         return inputJSVariable;
     }
 
+    @Override public Object getModel() throws IOException {
+        return getContent();
+    }
+
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.mediator.datamapper.engine.input.builders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.BOOLEAN_ELEMENT_TYPE;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.INTEGER_ELEMENT_TYPE;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.NUMBER_ELEMENT_TYPE;
+
+/**
+ * This class implements {@link Builder} interface and builds the input message as a tree of {@link Map}s and
+ * {@link List}s, which is handed over to the script engine without serializing it to JSON
+ */
+public class MapBuilder implements Builder {
+
+    private Deque<Object> containers = new ArrayDeque<>();
+    private String fieldName;
+    private Object model;
+
+    @Override public void writeStartArray() throws IOException {
+        List<Object> array = new ArrayList<>();
+        addValue(array);
+        containers.push(array);
+    }
+
+    @Override public void writeEndArray() throws IOException {
+        containers.pop();
+    }
+
+    @Override public void writeStartObject() throws IOException {
+        Map<String, Object> object = new LinkedHashMap<>();
+        addValue(object);
+        containers.push(object);
+    }
+
+    @Override public void writeEndObject() throws IOException {
+        containers.pop();
+    }
+
+    @Override public void writeFieldName(String name) throws IOException {
+        fieldName = name;
+    }
+
+    @Override public void writeString(String text) throws IOException {
+        addValue(text);
+    }
+
+    @Override public void writeBinary(byte[] data, int offset, int len) throws IOException {
+        byte[] value = new byte[len];
+        System.arraycopy(data, offset, value, 0, len);
+        addValue(value);
+    }
+
+    @Override public void writeNumber(int number) throws IOException {
+        addValue(number);
+    }
+
+    @Override public void writeNumber(double number) throws IOException {
+        addValue(number);
+    }
+
+    @Override public void writeBoolean(boolean state) throws IOException {
+        addValue(state);
+    }
+
+    @Override public void writeStringField(String fieldName, String value) throws IOException {
+        writeFieldName(fieldName);
+        writeString(value);
+    }
+
+    @Override public void writeField(String fieldName, Object value, String fieldType) throws IOException {
+        writeFieldName(fieldName);
+        writePrimitive(value, fieldType);
+    }
+
+    @Override public void writeBooleanField(String fieldName, boolean value) throws IOException {
+        writeFieldName(fieldName);
+        writeBoolean(value);
+    }
+
+    @Override public void writeNumberField(String fieldName, int value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override public void writeNumberField(String fieldName, double value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override public void writeBinaryField(String fieldName, byte[] data) throws IOException {
+        writeFieldName(fieldName);
+        writeBinary(data, 0, data.length);
+    }
+
+    @Override public void writeArrayFieldStart(String fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeStartArray();
+    }
+
+    @Override public void writeObjectFieldStart(String fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeStartObject();
+    }
+
+    @Override public void close() throws IOException {
+        containers.clear();
+    }
+
+    @Override public void writePrimitive(Object value, String fieldType) throws IOException {
+        switch (fieldType) {
+            case BOOLEAN_ELEMENT_TYPE:
+            case NUMBER_ELEMENT_TYPE:
+            case INTEGER_ELEMENT_TYPE:
+                addValue(value);
+                break;
+            default:
+                addValue(value == null ? null : value.toString());
+        }
+    }
+
+    /**
+     * Serializes the built model to JSON. Only used when the model is required as text.
+     */
+    @Override public String getContent() throws IOException {
+        return new ObjectMapper().writeValueAsString(model);
+    }
+
+    @Override public Object getModel() throws IOException {
+        return model;
+    }
+
+    private void addValue(Object value) {
+        Object container = containers.peek();
+        if (container == null) {
+            model = value;
+        } else if (container instanceof List) {
+            ((List<Object>) container).add(value);
+        } else {
+            ((Map<String, Object>) container).put(fieldName, value);
+            fieldName = null;
+        }
+    }
+}
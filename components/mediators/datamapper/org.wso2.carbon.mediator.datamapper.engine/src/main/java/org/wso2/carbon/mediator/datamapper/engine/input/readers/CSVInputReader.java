@@ -26,7 +26,9 @@ import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.ReaderExceptio
 import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.SchemaException;
 import org.wso2.carbon.mediator.datamapper.engine.core.schemas.Schema;
 import org.wso2.carbon.mediator.datamapper.engine.input.InputBuilder;
-import org.wso2.carbon.mediator.datamapper.engine.input.builders.JSONBuilder;
+import org.wso2.carbon.mediator.datamapper.engine.input.builders.Builder;
+import org.wso2.carbon.mediator.datamapper.engine.input.builders.BuilderFactory;
+import org.wso2.carbon.mediator.datamapper.engine.utils.ModelType;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -53,8 +55,8 @@ public class CSVInputReader implements InputReader {
     private Map jsonSchema;
     /* JSON schema of the input message */
     private Schema inputSchema;
-    /* JSON message builder instance */
-    private JSONBuilder jsonBuilder;
+    /* Input model builder instance */
+    private Builder modelBuilder;
     /* Reference of the InputBuilder object to send the built JSON message */
     private InputBuilder messageBuilder;
 
@@ -64,7 +66,17 @@ public class CSVInputReader implements InputReader {
      * @throws IOException
      */
     public CSVInputReader() throws IOException {
-        this.jsonBuilder = new JSONBuilder();
+        this(ModelType.JSON_STRING);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param modelType type of the model the input message is built into
+     * @throws IOException
+     */
+    public CSVInputReader(ModelType modelType) throws IOException {
+        this.modelBuilder = BuilderFactory.getBuilder(modelType);
     }
 
     @Override
@@ -108,18 +120,18 @@ public class CSVInputReader implements InputReader {
             fieldMap = (Map<String, Object>) ((Map<String, Object>) ((ArrayList) jsonSchemaMap.get(ITEMS_KEY)).get(0))
                     .get(PROPERTIES_KEY);
             fieldNamesList = new ArrayList<>(fieldMap.keySet());
-            jsonBuilder.writeStartArray();
+            modelBuilder.writeStartArray();
 
             for (String line : lines) {
-                jsonBuilder.writeStartObject();
+                modelBuilder.writeStartObject();
                 String[] items = line.split(",");
                 for (int i = 0; i < items.length; i++) {
                     writeFieldElement(fieldNamesList.get(i), items[i],
                             getElementTypeByName(fieldNamesList.get(i), fieldMap));
                 }
-                jsonBuilder.writeEndObject();
+                modelBuilder.writeEndObject();
             }
-            jsonBuilder.writeEndArray();
+            modelBuilder.writeEndArray();
         }
         writeTerminateElement();
     }
@@ -160,26 +172,25 @@ public class CSVInputReader implements InputReader {
             throws IOException, JSException, SchemaException, ReaderException {
         switch (fieldType) {
         case STRING_ELEMENT_TYPE:
-            jsonBuilder.writeField(fieldName, valueString, fieldType);
+            modelBuilder.writeField(fieldName, valueString, fieldType);
             break;
         case BOOLEAN_ELEMENT_TYPE:
-            jsonBuilder.writeField(fieldName, Boolean.parseBoolean(valueString), fieldType);
+            modelBuilder.writeField(fieldName, Boolean.parseBoolean(valueString), fieldType);
             break;
         case NUMBER_ELEMENT_TYPE:
-            jsonBuilder.writeField(fieldName, Double.parseDouble(valueString), fieldType);
+            modelBuilder.writeField(fieldName, Double.parseDouble(valueString), fieldType);
             break;
         case INTEGER_ELEMENT_TYPE:
-            jsonBuilder.writeField(fieldName, Integer.parseInt(valueString), fieldType);
+            modelBuilder.writeField(fieldName, Integer.parseInt(valueString), fieldType);
             break;
         default:
-            jsonBuilder.writeField(fieldName, valueString, fieldType);
+            modelBuilder.writeField(fieldName, valueString, fieldType);
 
         }
     }
 
     private void writeTerminateElement() throws IOException, JSException, SchemaException, ReaderException {
-        jsonBuilder.close();
-        String jsonBuiltMessage = jsonBuilder.getContent();
-        messageBuilder.notifyWithResult(jsonBuiltMessage);
+        modelBuilder.close();
+        messageBuilder.notifyWithResult(modelBuilder.getModel());
     }
 }
\ No newline at end of file
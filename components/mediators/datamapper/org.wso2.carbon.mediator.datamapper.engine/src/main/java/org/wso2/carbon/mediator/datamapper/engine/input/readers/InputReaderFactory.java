@@ -17,6 +17,7 @@
 package org.wso2.carbon.mediator.datamapper.engine.input.readers;
 
 import org.wso2.carbon.mediator.datamapper.engine.utils.InputOutputDataType;
+import org.wso2.carbon.mediator.datamapper.engine.utils.ModelType;
 
 import java.io.IOException;
 
@@ -26,13 +27,17 @@ import java.io.IOException;
 public class InputReaderFactory {
 
     public static InputReader getReader(InputOutputDataType inputType) throws IOException {
+        return getReader(inputType, ModelType.JSON_STRING);
+    }
+
+    public static InputReader getReader(InputOutputDataType inputType, ModelType modelType) throws IOException {
         switch (inputType) {
         case XML:
-            return new XMLInputReader();
+            return new XMLInputReader(modelType);
         case JSON:
-            return new JSONInputReader();
+            return new JSONInputReader(modelType);
         case CSV:
-            return new CSVInputReader();
+            return new CSVInputReader(modelType);
         default:
             throw new IllegalArgumentException("Input Reader for type " + inputType + " is not implemented.");
         }
@@ -16,6 +16,7 @@
  */
 package org.wso2.carbon.mediator.datamapper.engine.input.readers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.JSException;
@@ -23,6 +24,7 @@ import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.ReaderExceptio
 import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.SchemaException;
 import org.wso2.carbon.mediator.datamapper.engine.core.schemas.Schema;
 import org.wso2.carbon.mediator.datamapper.engine.input.InputBuilder;
+import org.wso2.carbon.mediator.datamapper.engine.utils.ModelType;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -36,12 +38,26 @@ public class JSONInputReader implements InputReader {
 
     private static final Log log = LogFactory.getLog(JSONInputReader.class);
 
+    /* Type of the model the input message is built into */
+    private ModelType modelType;
+
     /**
      * Constructor
      *
      * @throws IOException
      */
     public JSONInputReader() throws IOException {
+        this(ModelType.JSON_STRING);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param modelType type of the model the input message is built into
+     * @throws IOException
+     */
+    public JSONInputReader(ModelType modelType) throws IOException {
+        this.modelType = modelType;
     }
 
     /**
@@ -54,9 +70,13 @@ public class JSONInputReader implements InputReader {
      */
     @Override
     public void read(InputStream input, Schema inputSchema, InputBuilder messageBuilder) throws ReaderException {
-        String inputJSONMessage;
+        Object inputJSONMessage;
         try {
-            inputJSONMessage = readFromInputStream(input);
+            if (ModelType.JAVA_MAP == modelType) {
+                inputJSONMessage = new ObjectMapper().readValue(input, Object.class);
+            } else {
+                inputJSONMessage = readFromInputStream(input);
+            }
             messageBuilder.notifyWithResult(inputJSONMessage);
         } catch (IOException | JSException | SchemaException e) {
             throw new ReaderException("Error while reading input stream. " + e.getMessage());
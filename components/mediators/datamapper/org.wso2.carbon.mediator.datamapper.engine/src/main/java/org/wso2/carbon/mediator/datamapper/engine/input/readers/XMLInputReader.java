@@ -31,8 +31,10 @@ import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.SchemaExceptio
 import org.wso2.carbon.mediator.datamapper.engine.core.schemas.JacksonJSONSchema;
 import org.wso2.carbon.mediator.datamapper.engine.core.schemas.Schema;
 import org.wso2.carbon.mediator.datamapper.engine.input.InputBuilder;
-import org.wso2.carbon.mediator.datamapper.engine.input.builders.JSONBuilder;
+import org.wso2.carbon.mediator.datamapper.engine.input.builders.Builder;
+import org.wso2.carbon.mediator.datamapper.engine.input.builders.BuilderFactory;
 import org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants;
+import org.wso2.carbon.mediator.datamapper.engine.utils.ModelType;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -80,8 +82,8 @@ public class XMLInputReader implements InputReader {
     private String localName;
     private String nameSpaceURI;
 
-    /* JSON Builder to build the respective JSON message */
-    private JSONBuilder jsonBuilder;
+    /* Builder to build the respective input model */
+    private Builder modelBuilder;
 
     /* Iterator for the Attribute elements */
     private Iterator<OMAttribute> it_attr;
@@ -95,7 +97,17 @@ public class XMLInputReader implements InputReader {
      * @throws IOException
      */
     public XMLInputReader() throws IOException {
-        this.jsonBuilder = new JSONBuilder();
+        this(ModelType.JSON_STRING);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param modelType type of the model the input message is built into
+     * @throws IOException
+     */
+    public XMLInputReader(ModelType modelType) throws IOException {
+        this.modelBuilder = BuilderFactory.getBuilder(modelType);
     }
 
     /**
@@ -118,7 +130,7 @@ public class XMLInputReader implements InputReader {
 
         try {
             xmlTraverse(root, null, jsonSchema);
-            jsonBuilder.writeEndObject();
+            modelBuilder.writeEndObject();
             writeTerminateElement();
         } catch (IOException | JSException | SchemaException | InvalidPayloadException e) {
             throw new ReaderException("Error while parsing XML input stream. " + e.getMessage());
@@ -643,19 +655,19 @@ public class XMLInputReader implements InputReader {
             throws IOException, JSException, SchemaException, ReaderException {
         switch (fieldType) {
         case STRING_ELEMENT_TYPE:
-            jsonBuilder.writeField(getModifiedFieldName(fieldName), valueString, fieldType);
+            modelBuilder.writeField(getModifiedFieldName(fieldName), valueString, fieldType);
             break;
         case BOOLEAN_ELEMENT_TYPE:
-            jsonBuilder.writeField(getModifiedFieldName(fieldName), Boolean.parseBoolean(valueString), fieldType);
+            modelBuilder.writeField(getModifiedFieldName(fieldName), Boolean.parseBoolean(valueString), fieldType);
             break;
         case NUMBER_ELEMENT_TYPE:
-            jsonBuilder.writeField(getModifiedFieldName(fieldName), Double.parseDouble(valueString), fieldType);
+            modelBuilder.writeField(getModifiedFieldName(fieldName), Double.parseDouble(valueString), fieldType);
             break;
         case INTEGER_ELEMENT_TYPE:
-            jsonBuilder.writeField(getModifiedFieldName(fieldName), Integer.parseInt(valueString), fieldType);
+            modelBuilder.writeField(getModifiedFieldName(fieldName), Integer.parseInt(valueString), fieldType);
             break;
         default:
-            jsonBuilder.writeField(getModifiedFieldName(fieldName), valueString, fieldType);
+            modelBuilder.writeField(getModifiedFieldName(fieldName), valueString, fieldType);
 
         }
     }
@@ -664,49 +676,48 @@ public class XMLInputReader implements InputReader {
             throws IOException, JSException, SchemaException, ReaderException {
         switch (fieldType) {
         case STRING_ELEMENT_TYPE:
-            jsonBuilder.writePrimitive(valueString, fieldType);
+            modelBuilder.writePrimitive(valueString, fieldType);
             break;
         case BOOLEAN_ELEMENT_TYPE:
-            jsonBuilder.writePrimitive(Boolean.parseBoolean(valueString), fieldType);
+            modelBuilder.writePrimitive(Boolean.parseBoolean(valueString), fieldType);
             break;
         case NUMBER_ELEMENT_TYPE:
-            jsonBuilder.writePrimitive(Double.parseDouble(valueString), fieldType);
+            modelBuilder.writePrimitive(Double.parseDouble(valueString), fieldType);
             break;
         case INTEGER_ELEMENT_TYPE:
-            jsonBuilder.writePrimitive(Integer.parseInt(valueString), fieldType);
+            modelBuilder.writePrimitive(Integer.parseInt(valueString), fieldType);
             break;
         default:
-            jsonBuilder.writePrimitive(valueString, fieldType);
+            modelBuilder.writePrimitive(valueString, fieldType);
 
         }
     }
 
     private void writeObjectStartElement(String fieldName)
             throws IOException, JSException, SchemaException, ReaderException {
-        jsonBuilder.writeObjectFieldStart(getModifiedFieldName(fieldName));
+        modelBuilder.writeObjectFieldStart(getModifiedFieldName(fieldName));
     }
 
     private void writeObjectEndElement() throws IOException, JSException, SchemaException, ReaderException {
-        jsonBuilder.writeEndObject();
+        modelBuilder.writeEndObject();
     }
 
     private void writeArrayStartElement(String fieldName)
             throws IOException, JSException, SchemaException, ReaderException {
-        jsonBuilder.writeArrayFieldStart(getModifiedFieldName(fieldName));
+        modelBuilder.writeArrayFieldStart(getModifiedFieldName(fieldName));
     }
 
     private void writeArrayEndElement() throws IOException, JSException, SchemaException, ReaderException {
-        jsonBuilder.writeEndArray();
+        modelBuilder.writeEndArray();
     }
 
     private void writeTerminateElement() throws IOException, JSException, SchemaException, ReaderException {
-        jsonBuilder.close();
-        String jsonBuiltMessage = jsonBuilder.getContent();
-        messageBuilder.notifyWithResult(jsonBuiltMessage);
+        modelBuilder.close();
+        messageBuilder.notifyWithResult(modelBuilder.getModel());
     }
 
     private void writeAnonymousObjectStartElement() throws IOException, JSException, SchemaException, ReaderException {
-        jsonBuilder.writeStartObject();
+        modelBuilder.writeStartObject();
     }
 
     private String getModifiedFieldName(String fieldName) {
@@ -34,8 +34,16 @@ public class DataMapperEngineConstants {
     public static final String NASHORN_ENGINE_NAME = "nashorn";
     public static final String DEFAULT_ENGINE_NAME = "js"; //rhino
     public static final int DEFAULT_DATAMAPPER_ENGINE_POOL_SIZE = 20;
+    public static final int DEFAULT_DATAMAPPER_ENGINE_POOL_CORE_SIZE = 2;
+    public static final long DEFAULT_DATAMAPPER_ENGINE_ACQUIRE_TIMEOUT = 1000;
     public static final String ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_POOL_SIZE =
             "org.apache.synapse.datamapper.executor.pool.size";
+    public static final String ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_POOL_CORE_SIZE =
+            "org.apache.synapse.datamapper.executor.pool.core.size";
+    public static final String ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_ACQUIRE_TIMEOUT =
+            "org.apache.synapse.datamapper.executor.acquire.timeout";
+    public static final String ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_FAIL_ON_ACQUIRE_TIMEOUT =
+            "org.apache.synapse.datamapper.executor.fail.on.acquire.timeout";
     public static final String SCHEMA_NAMESPACE_NAME_SEPARATOR = ":";
     public static final String SCHEMA_XML_ELEMENT_TEXT_VALUE_FIELD = "_ELEMVAL";
     public static final  String DMC_FILE_FUNCTION_PREFIX = "function ";
@@ -48,6 +56,12 @@ public class DataMapperEngineConstants {
     public static final String ITEMS_KEY = "items";
     public static final String VALUE_KEY = "value";
     public static final String PROPERTIES_OBJECT_NAME = "DM_PROPERTIES";
+    public static final String INPUT_VARIABLE_BINDING_NAME = "DM_INPUT_VARIABLE";
+    public static final String PROPERTIES_BINDING_NAME = "DM_INPUT_PROPERTIES";
+    public static final String JS_PARSE = "JSON.parse";
+    public static final String JS_TO_NATIVE = "DM_toNative";
+    public static final String ORG_APACHE_SYNAPSE_DATAMAPPER_INPUT_MODEL =
+            "org.apache.synapse.datamapper.input.model";
     public static final String EQUALS_SIGN = "=";
     public static final String JS_STRINGIFY = "JSON.stringify";
     public static final String BRACKET_OPEN = "(";
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.mediator.datamapper.engine.core.executors;
+
+import junit.framework.TestCase;
+import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.JSException;
+import org.wso2.carbon.mediator.datamapper.engine.core.mapper.MappingResource;
+import org.wso2.carbon.mediator.datamapper.engine.core.models.Model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test the growth, the acquire timeout policies and the metrics of {@link ScriptExecutorPool}, with executors which
+ * do not compile a mapping
+ */
+public class ScriptExecutorPoolTest extends TestCase {
+
+    private static final long ACQUIRE_TIMEOUT = 50;
+
+    public void testWarmUp() throws Exception {
+        StubExecutorPool pool = new StubExecutorPool(new ScriptExecutorPoolConfig(2, 4, ACQUIRE_TIMEOUT));
+        assertEquals(2, pool.created);
+        assertEquals(2, pool.getCreatedExecutors());
+        assertEquals(2, pool.getIdleExecutors());
+        assertEquals(0, pool.getActiveExecutors());
+    }
+
+    public void testGrowthUpToMaxSize() throws Exception {
+        StubExecutorPool pool = new StubExecutorPool(new ScriptExecutorPoolConfig(1, 3, ACQUIRE_TIMEOUT));
+        Set<Executor> taken = new HashSet<Executor>();
+        for (int i = 0; i < 3; i++) {
+            taken.add(pool.take());
+        }
+        assertEquals("Executors are handed out twice", 3, taken.size());
+        assertEquals(3, pool.getCreatedExecutors());
+        assertEquals(3, pool.getActiveExecutors());
+        assertEquals(0, pool.getIdleExecutors());
+        assertEquals(1.0, pool.getUtilization(), 0.001);
+        assertEquals(0, pool.getTimeoutCount());
+
+        for (Executor executor : taken) {
+            pool.put(executor);
+        }
+        assertEquals(3, pool.getIdleExecutors());
+        assertEquals(0, pool.getActiveExecutors());
+
+        // idle executors are reused instead of creating new ones
+        pool.put(pool.take());
+        assertEquals(3, pool.created);
+        assertEquals(4, pool.getExecutionCount());
+    }
+
+    public void testFallbackAfterAcquireTimeout() throws Exception {
+        StubExecutorPool pool = new StubExecutorPool(new ScriptExecutorPoolConfig(1, 1, ACQUIRE_TIMEOUT));
+        Executor pooled = pool.take();
+
+        long start = System.nanoTime();
+        Executor fallback = pool.take();
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertNotSame(pooled, fallback);
+        assertTrue("Did not wait for the acquire timeout", waited >= ACQUIRE_TIMEOUT - 5);
+        assertEquals(1, pool.getTimeoutCount());
+        assertEquals(1, pool.getFallbackCount());
+        assertEquals(1, pool.getTransientExecutors());
+        assertEquals("Transient executor is counted in the pool", 1, pool.getCreatedExecutors());
+        assertEquals(2, pool.getActiveExecutors());
+        assertTrue(pool.getMaxWaitTimeMillis() >= ACQUIRE_TIMEOUT - 5);
+
+        pool.put(fallback);
+        assertEquals("Transient executor is not discarded", 0, pool.getTransientExecutors());
+        assertEquals(0, pool.getIdleExecutors());
+        pool.put(pooled);
+        assertEquals(1, pool.getIdleExecutors());
+        assertSame(pooled, pool.take());
+    }
+
+    public void testFailOnAcquireTimeout() throws Exception {
+        StubExecutorPool pool = new StubExecutorPool(new ScriptExecutorPoolConfig(1, 1, ACQUIRE_TIMEOUT, true));
+        pool.take();
+        try {
+            pool.take();
+            fail("Executor is handed out beyond the maximum size of the pool");
+        } catch (JSException e) {
+            // expected
+        }
+        assertEquals(1, pool.getTimeoutCount());
+        assertEquals(0, pool.getFallbackCount());
+        assertEquals(1, pool.getActiveExecutors());
+        assertEquals(1, pool.getExecutionCount());
+    }
+
+    public void testWaitForReturnedExecutor() throws Exception {
+        final StubExecutorPool pool = new StubExecutorPool(new ScriptExecutorPoolConfig(1, 1, 5000));
+        final Executor pooled = pool.take();
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final AtomicReference<Executor> acquired = new AtomicReference<Executor>();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                waiting.countDown();
+                try {
+                    acquired.set(pool.take());
+                } catch (Exception e) {
+                    // left unset
+                }
+            }
+        });
+        thread.start();
+        waiting.await();
+        Thread.sleep(20);
+        pool.put(pooled);
+        thread.join(5000);
+
+        assertSame("Waiting request does not get the returned executor", pooled, acquired.get());
+        assertEquals(0, pool.getTimeoutCount());
+        assertEquals(0, pool.getFallbackCount());
+        assertTrue(pool.getAverageWaitTimeMillis() > 0);
+    }
+
+    public void testConcurrentBurst() throws Exception {
+        final StubExecutorPool pool = new StubExecutorPool(new ScriptExecutorPoolConfig(0, 2, ACQUIRE_TIMEOUT));
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 20; j++) {
+                            Executor executor = pool.take();
+                            Thread.sleep(1);
+                            pool.put(executor);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertTrue("Requests failed during the burst: " + errors, errors.isEmpty());
+        assertEquals(160, pool.getExecutionCount());
+        assertEquals(2, pool.getCreatedExecutors());
+        assertEquals(0, pool.getActiveExecutors());
+        assertEquals(0, pool.getTransientExecutors());
+        assertEquals(2, pool.getIdleExecutors());
+    }
+
+    /**
+     * Pool of executors which do not execute a mapping
+     */
+    private static class StubExecutorPool extends ScriptExecutorPool {
+
+        private int created;
+
+        private StubExecutorPool(ScriptExecutorPoolConfig poolConfig) throws JSException {
+            super(ScriptExecutorType.NASHORN, null, poolConfig);
+        }
+
+        @Override
+        protected synchronized Executor createPreparedExecutor() {
+            created++;
+            return new Executor() {
+                public Model execute(MappingResource mappingResource, Object inputVariable, Object properties) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -45,11 +45,15 @@ import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.JSException;
 import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.ReaderException;
 import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.SchemaException;
 import org.wso2.carbon.mediator.datamapper.engine.core.exceptions.WriterException;
+import org.wso2.carbon.mediator.datamapper.engine.core.executors.ScriptExecutorFactory;
+import org.wso2.carbon.mediator.datamapper.engine.core.executors.ScriptExecutorPoolConfig;
 import org.wso2.carbon.mediator.datamapper.engine.core.mapper.MappingHandler;
 import org.wso2.carbon.mediator.datamapper.engine.core.mapper.MappingResource;
 import org.wso2.carbon.mediator.datamapper.engine.core.mapper.XSLTMappingHandler;
 import org.wso2.carbon.mediator.datamapper.engine.core.mapper.XSLTMappingResource;
 import org.wso2.carbon.mediator.datamapper.engine.utils.InputOutputDataType;
+import org.wso2.carbon.mediator.datamapper.engine.utils.ModelType;
+import org.wso2.carbon.mediator.datamapper.util.OMElementInputStream;
 import org.xml.sax.SAXException;
 
 import javax.xml.namespace.QName;
@@ -74,7 +78,11 @@ import static org.wso2.carbon.mediator.datamapper.config.xml.DataMapperMediatorC
 import static org.wso2.carbon.mediator.datamapper.config.xml.DataMapperMediatorConstants.SYNAPSE_CONTEXT;
 import static org.wso2.carbon.mediator.datamapper.config.xml.DataMapperMediatorConstants.TRANSPORT_CONTEXT;
 import static org.wso2.carbon.mediator.datamapper.config.xml.DataMapperMediatorConstants.TRANSPORT_HEADERS;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_ACQUIRE_TIMEOUT;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_FAIL_ON_ACQUIRE_TIMEOUT;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_POOL_CORE_SIZE;
 import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_POOL_SIZE;
+import static org.wso2.carbon.mediator.datamapper.engine.utils.DataMapperEngineConstants.ORG_APACHE_SYNAPSE_DATAMAPPER_INPUT_MODEL;
 
 /**
  * By using the input schema, output schema and mapping configuration,
@@ -100,6 +108,24 @@ public class DataMapperMediator extends AbstractMediator implements ManagedLifec
     private XSLTMappingHandler xsltMappingHandler = null;
     private final Object xsltHandlerLock = new Object();
 
+    /**
+     * Returns the type of the model the input message is handed over to the data mapper engine as. JSON_STRING
+     * serializes the input to JSON, JAVA_MAP binds it into the script engine as a tree of maps and lists.
+     *
+     * @return input model type
+     */
+    private ModelType getInputModelType() {
+        String inputModel = SynapsePropertiesLoader
+                .getPropertyValue(ORG_APACHE_SYNAPSE_DATAMAPPER_INPUT_MODEL, ModelType.JSON_STRING.name());
+        try {
+            return ModelType.valueOf(inputModel.trim());
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid data mapper input model " + inputModel + ". Set to default value : "
+                    + ModelType.JSON_STRING);
+            return ModelType.JSON_STRING;
+        }
+    }
+
     /**
      * Returns registry resources as input streams to create the MappingResourceLoader object
      *
@@ -368,11 +394,18 @@ public class DataMapperMediator extends AbstractMediator implements ManagedLifec
             } else {
                 Map<String, Map<String, Object>> propertiesMap;
 
-                String dmExecutorPoolSize = SynapsePropertiesLoader
-                        .getPropertyValue(ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_POOL_SIZE, null);
+                ScriptExecutorPoolConfig executorPoolConfig = ScriptExecutorPoolConfig.fromProperties(
+                        SynapsePropertiesLoader.getPropertyValue(ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_POOL_CORE_SIZE,
+                                null),
+                        SynapsePropertiesLoader.getPropertyValue(ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_POOL_SIZE,
+                                null),
+                        SynapsePropertiesLoader.getPropertyValue(ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_ACQUIRE_TIMEOUT,
+                                null),
+                        SynapsePropertiesLoader.getPropertyValue(
+                                ORG_APACHE_SYNAPSE_DATAMAPPER_EXECUTOR_FAIL_ON_ACQUIRE_TIMEOUT, null));
 
                 MappingHandler mappingHandler = new MappingHandler(mappingResource, inputType, outputType,
-                        dmExecutorPoolSize);
+                        executorPoolConfig, getInputModelType());
 
                 propertiesMap = getPropertiesMap(mappingResource.getPropertiesList(), synCtx);
 
@@ -435,6 +468,10 @@ public class DataMapperMediator extends AbstractMediator implements ManagedLifec
         }
     }
 
+    /**
+     * Returns the input message as a stream. XML payloads are serialized from the message tree on demand while the
+     * engine reads them, instead of being copied into an intermediate String and byte array.
+     */
     private InputStream getInputStream(MessageContext context, String inputType, String inputStartElement) {
         InputStream inputStream = null;
         try {
@@ -442,11 +479,9 @@ public class DataMapperMediator extends AbstractMediator implements ManagedLifec
             case XML:
             case CSV:
                 if ("soapenv:Envelope".equals(inputStartElement)) {
-                    inputStream = new ByteArrayInputStream(
-                            context.getEnvelope().toString().getBytes(StandardCharsets.UTF_8));
+                    inputStream = new OMElementInputStream(context.getEnvelope());
                 } else {
-                    inputStream = new ByteArrayInputStream(context.getEnvelope().getBody().getFirstElement().toString()
-                            .getBytes(StandardCharsets.UTF_8));
+                    inputStream = new OMElementInputStream(context.getEnvelope().getBody().getFirstElement());
                 }
                 break;
             case JSON:
@@ -456,10 +491,9 @@ public class DataMapperMediator extends AbstractMediator implements ManagedLifec
                 }
                 break;
             default:
-                inputStream = new ByteArrayInputStream(
-                        context.getEnvelope().toString().getBytes(StandardCharsets.UTF_8));
+                inputStream = new OMElementInputStream(context.getEnvelope());
             }
-        } catch (OMException e) {
+        } catch (OMException | XMLStreamException e) {
             handleException("Unable to read input message in Data Mapper mediator reason : " + e.getMessage(), e,
                     context);
         }
@@ -488,10 +522,12 @@ public class DataMapperMediator extends AbstractMediator implements ManagedLifec
     }
 
     /**
-     * destroy the generated unique ID for the DataMapperMediator instance
+     * destroy the generated unique ID for the DataMapperMediator instance and release the script executors of the
+     * mapping
      */
     @Override
     public void destroy() {
+        ScriptExecutorFactory.removeExecutorPool(mappingResource);
     }
 
     /**
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.mediator.datamapper.util;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.StAXUtils;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Pull based input stream over an {@link OMElement}. The element is serialized in small chunks as the consumer
+ * reads, by pumping the events of the element's {@link XMLStreamReader} into an {@link XMLStreamWriter}, so the
+ * message is never materialized as a String or a full byte array. Namespaces declared on ancestors of the element
+ * are re-declared where the serialized fragment uses them.
+ */
+public class OMElementInputStream extends InputStream {
+
+    /* Number of serialized bytes to accumulate before handing a chunk to the consumer */
+    private static final int CHUNK_SIZE = 8192;
+
+    private final XMLStreamReader reader;
+    private final XMLStreamWriter writer;
+    private final ChunkBuffer buffer = new ChunkBuffer();
+
+    /* Prefix to namespace bindings written so far, scoped by the start index of each open element */
+    private final List<String[]> namespaceBindings = new ArrayList<>();
+    private final Deque<Integer> namespaceScopes = new ArrayDeque<>();
+
+    private int position;
+    private int depth;
+    private boolean started;
+    private boolean completed;
+
+    /**
+     * @param element element to serialize, the element is read through a caching reader and left intact
+     * @throws XMLStreamException if the reader or the writer cannot be created
+     */
+    public OMElementInputStream(OMElement element) throws XMLStreamException {
+        this.reader = element.getXMLStreamReader();
+        this.writer = StAXUtils.createXMLStreamWriter(buffer, "UTF-8");
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.array()[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.size() - position);
+        System.arraycopy(buffer.array(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        completed = true;
+        try {
+            writer.close();
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error while closing the element stream", e);
+        }
+    }
+
+    /**
+     * Makes sure there are unread bytes in the buffer, serializing the next chunk of the element if required.
+     *
+     * @return false if the element is fully consumed
+     */
+    private boolean fill() throws IOException {
+        while (position >= buffer.size()) {
+            if (completed) {
+                return false;
+            }
+            buffer.reset();
+            position = 0;
+            try {
+                pump();
+            } catch (XMLStreamException e) {
+                throw new IOException("Error while serializing the input element", e);
+            }
+        }
+        return true;
+    }
+
+    private void pump() throws XMLStreamException {
+        if (!started) {
+            started = true;
+            // depending on the implementation the reader may be positioned on the element itself
+            copyEvent(reader.getEventType());
+        }
+        while (depth > 0 && buffer.size() < CHUNK_SIZE && reader.hasNext()) {
+            copyEvent(reader.next());
+        }
+        if (depth == 0 || !reader.hasNext()) {
+            writer.writeEndDocument();
+            completed = true;
+        }
+        writer.flush();
+    }
+
+    private void copyEvent(int event) throws XMLStreamException {
+        switch (event) {
+        case XMLStreamConstants.START_DOCUMENT:
+            // the root element has to follow, move on to it
+            if (reader.hasNext()) {
+                copyEvent(reader.next());
+            }
+            break;
+        case XMLStreamConstants.START_ELEMENT:
+            writeStartElement();
+            depth++;
+            break;
+        case XMLStreamConstants.END_ELEMENT:
+            writer.writeEndElement();
+            namespaceBindings.subList(namespaceScopes.pop(), namespaceBindings.size()).clear();
+            depth--;
+            break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+            writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            break;
+        case XMLStreamConstants.CDATA:
+            writer.writeCData(reader.getText());
+            break;
+        case XMLStreamConstants.COMMENT:
+            writer.writeComment(reader.getText());
+            break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+            break;
+        case XMLStreamConstants.ENTITY_REFERENCE:
+            writer.writeEntityRef(reader.getLocalName());
+            break;
+        default:
+            // DTDs and document end events are not part of an element
+        }
+    }
+
+    private void writeStartElement() throws XMLStreamException {
+        String prefix = nonNull(reader.getPrefix());
+        String namespaceURI = nonNull(reader.getNamespaceURI());
+        writer.writeStartElement(prefix, reader.getLocalName(), namespaceURI);
+        namespaceScopes.push(namespaceBindings.size());
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            bindNamespace(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+        }
+        bindNamespace(prefix, namespaceURI);
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributePrefix = nonNull(reader.getAttributePrefix(i));
+            String attributeNamespaceURI = nonNull(reader.getAttributeNamespace(i));
+            if (!attributePrefix.isEmpty()) {
+                bindNamespace(attributePrefix, attributeNamespaceURI);
+            }
+            writer.writeAttribute(attributePrefix, attributeNamespaceURI, reader.getAttributeLocalName(i),
+                    reader.getAttributeValue(i));
+        }
+    }
+
+    /**
+     * Declares the given prefix on the current element unless it is already bound to the same namespace in scope.
+     */
+    private void bindNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+            return;
+        }
+        if (getBoundNamespaceURI(prefix).equals(namespaceURI)) {
+            return;
+        }
+        if (prefix.isEmpty()) {
+            writer.writeDefaultNamespace(namespaceURI);
+        } else {
+            writer.writeNamespace(prefix, namespaceURI);
+        }
+        namespaceBindings.add(new String[] { prefix, namespaceURI });
+    }
+
+    private String getBoundNamespaceURI(String prefix) {
+        for (int i = namespaceBindings.size() - 1; i >= 0; i--) {
+            String[] binding = namespaceBindings.get(i);
+            if (binding[0].equals(prefix)) {
+                return binding[1];
+            }
+        }
+        return "";
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Growable byte buffer that exposes its backing array, so chunks are read without copying them again.
+     */
+    private static class ChunkBuffer extends ByteArrayOutputStream {
+
+        ChunkBuffer() {
+            super(CHUNK_SIZE * 2);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
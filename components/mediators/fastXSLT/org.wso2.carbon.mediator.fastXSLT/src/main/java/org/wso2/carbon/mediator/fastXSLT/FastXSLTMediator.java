@@ -7,9 +7,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
@@ -22,6 +25,7 @@ import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -30,7 +34,7 @@ import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMNamespace;
 import org.apache.axiom.om.OMNode;
 import org.apache.axiom.om.OMText;
-import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.om.OMXMLBuilderFactory;
 import org.apache.axiom.soap.SOAPBody;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.soap.SOAPFactory;
@@ -85,11 +89,25 @@ public class FastXSLTMediator extends AbstractMediator implements ManagedLifecyc
     public static final String RESULT_BUILDER_FACTORY =
             "http://ws.apache.org/ns/synapse/transform/attribute/rbf";
 
+    /**
+     * The TransformerFactory implementation used to compile the stylesheets
+     */
+    private static final String SAXON_TRANSFORMER_FACTORY = "net.sf.saxon.TransformerFactoryImpl";
+
+    /**
+     * Maximum number of compiled stylesheets kept per mediator, relevant for dynamic keys
+     */
+    private static final int MAX_CACHED_TEMPLATES = 100;
+
+    /**
+     * Maximum number of idle transformers kept per compiled stylesheet
+     */
+    private static final int MAX_POOLED_TRANSFORMERS = 32;
+
     private Value xsltKey=null;
 
-    private final Object transformerLock = new Object();
-    private Map<String, Templates> cachedTemplatesMap = new Hashtable<String, Templates>();
-    private TransformerFactory transFact = TransformerFactory.newInstance();
+    private final Map<String, CachedTemplates> cachedTemplatesMap = new ConcurrentHashMap<String, CachedTemplates>();
+    private TransformerFactory transFact = createTransformerFactory();
     /**
      * The (optional) XPath expression which yields the source element for a transformation
      */
@@ -142,7 +160,6 @@ public class FastXSLTMediator extends AbstractMediator implements ManagedLifecyc
 
         InputStream inMessage = null;
 
-        Templates cTemplate = null;
         org.apache.axis2.context.MessageContext axis2MC =null;
         SynapseLog synLog = getLog(context);
 
@@ -173,61 +190,35 @@ public class FastXSLTMediator extends AbstractMediator implements ManagedLifecyc
         }
 
         String generatedXsltKey = xsltKey.evaluateValue(context);
-
-        // determine if it is needed to create or create the template
-        if (isCreationOrRecreationRequired(context)) {
-            // many threads can see this and come here for acquiring the lock
-            synchronized (transformerLock) {
-                // only first thread should create the template
-                if (isCreationOrRecreationRequired(context)) {
-                    cTemplate = createTemplate(context, generatedXsltKey);
-                } else {
-                    cTemplate = cachedTemplatesMap.get(generatedXsltKey);
-                }
-            }
-        } else {
-            //If already cached template then load it from cachedTemplatesMap
-            synchronized (transformerLock) {
-                cTemplate = cachedTemplatesMap.get(generatedXsltKey);
-            }
-        }
-
-        System.setProperty("javax.xml.transform.TransformerFactory", "net.sf.saxon.TransformerFactoryImpl");
+        CachedTemplates cTemplate = getTemplates(context, generatedXsltKey);
 
         try {
-            ByteArrayOutputStream _transformedOutMessage = new ByteArrayOutputStream();
-            transform(inMessage, _transformedOutMessage, cTemplate);
-
-            ByteArrayOutputStream _transformedOutMessageNew = new ByteArrayOutputStream();
-            IOUtils.write(_transformedOutMessage.toByteArray(), _transformedOutMessageNew);
-
-            BufferedInputStream bufferedStream = new BufferedInputStream(new ByteArrayInputStream(_transformedOutMessageNew.toByteArray()));
+            ResultBuffer transformedOutMessage = new ResultBuffer(bufferSizeSupport);
+            transform(inMessage, transformedOutMessage, cTemplate);
 
         	Pipe pipe= (Pipe) axis2MC.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
             if(pipe != null) {
                 OutputStream msgContextOutStream = pipe.resetOutputStream();
 
+                BufferedInputStream bufferedStream = new BufferedInputStream(transformedOutMessage.getInputStream());
                 axis2MC.setProperty(PassThroughConstants.BUFFERED_INPUT_STREAM, bufferedStream);
-                boolean fullLenthDone = false;
-                if (_transformedOutMessage.toByteArray().length > bufferSizeSupport) {
-                    RelayUtils.builldMessage(axis2MC, false, bufferedStream);
-                    fullLenthDone = true;
-                }
 
-                if (!fullLenthDone && Boolean.TRUE.equals(axis2MC.getProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED))) {
+                // results larger than the pipe buffer cannot be written to it before the message is sent, so the
+                // message is built from the result instead
+                if (transformedOutMessage.size() > bufferSizeSupport || Boolean.TRUE.equals(
+                        axis2MC.getProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED))) {
                     RelayUtils.builldMessage(axis2MC, false, bufferedStream);
-                } else if (!fullLenthDone) {
-                    IOUtils.write(_transformedOutMessage.toByteArray(), msgContextOutStream);
+                } else {
+                    transformedOutMessage.writeTo(msgContextOutStream);
                     pipe.setRawSerializationComplete(true);
-
                 }
             } else {
                 OMElement omElement = context.getEnvelope().getBody().getFirstElement();
                 if (omElement != null) {
                     omElement.detach();
                 }
-                String omString = _transformedOutMessage.toString();
-                OMElement responseOM = AXIOMUtil.stringToOM(omString);
+                OMElement responseOM = OMXMLBuilderFactory.createOMBuilder(transformedOutMessage.getInputStream())
+                        .getDocumentElement();
                 context.getEnvelope().getBody().addChild(responseOM);
             }
 
@@ -249,36 +240,85 @@ public class FastXSLTMediator extends AbstractMediator implements ManagedLifecyc
         return false;
     }
 
-    private void transform(InputStream xmlIn, OutputStream out, Templates templates)
+    private void transform(InputStream xmlIn, OutputStream out, CachedTemplates templates)
             throws Exception {
 
-        Transformer trans = templates.newTransformer();
-        Source source = new StreamSource(xmlIn);
-        Result resultXML = new StreamResult(out);
-        trans.transform(source, resultXML);
-
+        Transformer trans = templates.borrowTransformer();
+        try {
+            Source source = new StreamSource(xmlIn);
+            Result resultXML = new StreamResult(out);
+            trans.transform(source, resultXML);
+        } finally {
+            templates.returnTransformer(trans);
+        }
     }
 
     /**
-     * Create a XSLT template object and assign it to the cachedTemplates variable
+     * Returns the compiled stylesheet for the given key, compiling it if it is not cached yet or if the registry
+     * resource behind a dynamic key has changed since it was compiled. Lookups are lock free, two threads missing
+     * the cache at the same time may both compile the stylesheet and the last one is kept.
      *
      * @param synCtx  current message
      * @param xsltKey evaluated xslt key(real key value) for dynamic or static key
      * @return cached template
      */
-    private Templates createTemplate(MessageContext synCtx, String xsltKey) {
+    private CachedTemplates getTemplates(MessageContext synCtx, String xsltKey) {
+        CachedTemplates cachedTemplates = cachedTemplatesMap.get(xsltKey);
+        if (cachedTemplates != null && !isRefreshRequired(synCtx, xsltKey)) {
+            cachedTemplates.touch();
+            return cachedTemplates;
+        }
+
+        // loads the resource, or refreshes it if it is a dynamic resource that has been expired
+        Object xsltResource = synCtx.getEntry(xsltKey);
+        Entry entry = synCtx.getConfiguration().getEntryDefinition(xsltKey);
+        long version = entry != null ? entry.getVersion() : Long.MIN_VALUE;
+        if (cachedTemplates != null && cachedTemplates.isCompiledFrom(xsltResource, version)) {
+            // the registry resource has not been changed since the stylesheet was compiled
+            cachedTemplates.touch();
+            return cachedTemplates;
+        }
+
+        Templates templates = createTemplate(synCtx, xsltKey, xsltResource);
+        cachedTemplates = new CachedTemplates(templates, xsltResource, version);
+        if (!cachedTemplatesMap.containsKey(xsltKey) && cachedTemplatesMap.size() >= MAX_CACHED_TEMPLATES) {
+            evictLeastRecentlyUsedTemplates();
+        }
+        cachedTemplatesMap.put(xsltKey, cachedTemplates);
+        return cachedTemplates;
+    }
+
+    private void evictLeastRecentlyUsedTemplates() {
+        String evictionKey = null;
+        long evictionAccessTime = Long.MAX_VALUE;
+        for (Map.Entry<String, CachedTemplates> cacheEntry : cachedTemplatesMap.entrySet()) {
+            if (cacheEntry.getValue().lastAccessTime < evictionAccessTime) {
+                evictionKey = cacheEntry.getKey();
+                evictionAccessTime = cacheEntry.getValue().lastAccessTime;
+            }
+        }
+        if (evictionKey != null) {
+            cachedTemplatesMap.remove(evictionKey);
+        }
+    }
+
+    /**
+     * Create a XSLT template object from the given stylesheet resource
+     *
+     * @param synCtx       current message
+     * @param xsltKey      evaluated xslt key(real key value) for dynamic or static key
+     * @param xsltResource the stylesheet resource looked up with the key
+     * @return compiled template
+     */
+    private Templates createTemplate(MessageContext synCtx, String xsltKey, Object xsltResource) {
         // Assign created template
         Templates cachedTemplates = null;
 
         try {
-            cachedTemplates = transFact.newTemplates(
-                    SynapseConfigUtils.getStreamSource(synCtx.getEntry(xsltKey)));
+            cachedTemplates = transFact.newTemplates(SynapseConfigUtils.getStreamSource(xsltResource));
             if (cachedTemplates == null) {
                 // if cached template creation failed
                 handleException("Error compiling the XSLT with key : " + xsltKey, synCtx);
-            } else {
-                // if cached template is created then put it in to cachedTemplatesMap
-                cachedTemplatesMap.put(xsltKey, cachedTemplates);
             }
         } catch (Exception e) {
             handleException("Error creating XSLT transformer using : " + xsltKey, e, synCtx);
@@ -380,28 +420,29 @@ public class FastXSLTMediator extends AbstractMediator implements ManagedLifecyc
 
 
     /**
-     * Utility method to determine weather it is needed to create a XSLT template
+     * Utility method to determine whether the stylesheet behind a cached template has to be looked up again
      *
-     * @param synCtx current message
-     * @return true if it is needed to create a new XSLT template
+     * @param synCtx  current message
+     * @param xsltKey evaluated xslt key(real key value) for dynamic or static key
+     * @return true if the key refers to a dynamic resource which has been expired
      */
-    private boolean isCreationOrRecreationRequired(MessageContext synCtx) {
-
-        // Derive actual key from message context
-        String generatedXsltKey = xsltKey.evaluateValue(synCtx);
+    private boolean isRefreshRequired(MessageContext synCtx, String xsltKey) {
+        Entry dp = synCtx.getConfiguration().getEntryDefinition(xsltKey);
+        return dp != null && dp.isDynamic() && (!dp.isCached() || dp.isExpired());
+    }
 
-        // if there are no cachedTemplates inside cachedTemplatesMap or
-        // if the template related to this generated key is not cached
-        // then it need to be cached
-        if (cachedTemplatesMap.isEmpty() || !cachedTemplatesMap.containsKey(generatedXsltKey)) {
-            // this is a creation case
-            return true;
-        } else {
-            // build transformer - if necessary
-            Entry dp = synCtx.getConfiguration().getEntryDefinition(generatedXsltKey);
-            // if the xsltKey refers to a dynamic resource, and if it has been expired
-            // it is a recreation case
-            return dp != null && dp.isDynamic() && (!dp.isCached() || dp.isExpired());
+    /**
+     * Creates the Saxon TransformerFactory once per mediator, falling back to the JAXP default implementation with a
+     * warning when Saxon is not visible to this bundle.
+     */
+    private TransformerFactory createTransformerFactory() {
+        try {
+            return TransformerFactory.newInstance(SAXON_TRANSFORMER_FACTORY, FastXSLTMediator.class.getClassLoader());
+        } catch (TransformerFactoryConfigurationError e) {
+            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            log.warn("Unable to load the Saxon TransformerFactory " + SAXON_TRANSFORMER_FACTORY
+                    + ", falling back to " + transformerFactory.getClass().getName(), e);
+            return transformerFactory;
         }
     }
 
@@ -595,4 +636,64 @@ public class FastXSLTMediator extends AbstractMediator implements ManagedLifecyc
 		 PassThroughConfiguration conf = PassThroughConfiguration.getInstance();
 		 bufferSizeSupport =conf.getIOBufferSize();
     }
+
+    /**
+     * A compiled stylesheet together with the idle transformers created from it. Transformers are not thread safe,
+     * so each one is used by a single message at a time and reset before it is returned to the pool.
+     */
+    private static final class CachedTemplates {
+
+        private final Templates templates;
+        private final Object xsltResource;
+        private final long version;
+        private final Queue<Transformer> transformers = new ConcurrentLinkedQueue<Transformer>();
+        private final AtomicInteger idleTransformers = new AtomicInteger();
+        private volatile long lastAccessTime = System.currentTimeMillis();
+
+        private CachedTemplates(Templates templates, Object xsltResource, long version) {
+            this.templates = templates;
+            this.xsltResource = xsltResource;
+            this.version = version;
+        }
+
+        private boolean isCompiledFrom(Object resource, long resourceVersion) {
+            return resource == xsltResource || (resourceVersion != Long.MIN_VALUE && resourceVersion == version);
+        }
+
+        private void touch() {
+            lastAccessTime = System.currentTimeMillis();
+        }
+
+        private Transformer borrowTransformer() throws TransformerConfigurationException {
+            Transformer transformer = transformers.poll();
+            if (transformer == null) {
+                return templates.newTransformer();
+            }
+            idleTransformers.decrementAndGet();
+            return transformer;
+        }
+
+        private void returnTransformer(Transformer transformer) {
+            if (idleTransformers.incrementAndGet() > MAX_POOLED_TRANSFORMERS) {
+                idleTransformers.decrementAndGet();
+                return;
+            }
+            transformer.reset();
+            transformers.offer(transformer);
+        }
+    }
+
+    /**
+     * Holds the transformation result and hands its content out without copying it into further byte arrays.
+     */
+    private static final class ResultBuffer extends ByteArrayOutputStream {
+
+        private ResultBuffer(int initialSize) {
+            super(initialSize);
+        }
+
+        private InputStream getInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
 }